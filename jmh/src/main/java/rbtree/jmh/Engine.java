@@ -0,0 +1,43 @@
+package rbtree.jmh;
+
+import java.util.Iterator;
+
+import rbtree.BPlusTree;
+import rbtree.OrderedSet;
+import rbtree.RBTree;
+
+/**
+ * 有序集合的实现, 同一个基准测试用-p engine=RB,BPLUS对比
+ */
+public enum Engine {
+    RB {
+        @Override
+        OrderedSet<Integer> create() {
+            return new RBTree<Integer>();
+        }
+
+        @Override
+        OrderedSet<Integer> buildFromSorted(Iterator<Integer> keys, int size) {
+            return RBTree.buildFromSorted(keys, size);
+        }
+    },
+
+    BPLUS {
+        @Override
+        OrderedSet<Integer> create() {
+            return new BPlusTree<Integer>();
+        }
+
+        @Override
+        OrderedSet<Integer> buildFromSorted(Iterator<Integer> keys, int size) {
+            return BPlusTree.buildFromSorted(keys, size);
+        }
+    };
+
+    abstract OrderedSet<Integer> create();
+
+    /**
+     * 由size个升序的键值线性建树
+     */
+    abstract OrderedSet<Integer> buildFromSorted(Iterator<Integer> keys, int size);
+}
@@ -0,0 +1,57 @@
+package rbtree.jmh;
+
+import java.util.SplittableRandom;
+
+/**
+ * 基准测试使用的键值分布, 生成的都是[0, n)内的整数
+ */
+public enum KeyDistribution {
+    /**
+     * 0, 1, 2, ... 依次递增(超过n之后回绕)
+     */
+    SEQUENTIAL {
+        @Override
+        int[] generate(int count, int n, long seed) {
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = i % n;
+            }
+            return keys;
+        }
+    },
+
+    /**
+     * [0, n)的随机排列(count大于n时每n个一轮), 每个键值出现的次数相同
+     */
+    RANDOM {
+        @Override
+        int[] generate(int count, int n, long seed) {
+            int[] keys = SEQUENTIAL.generate(count, n, seed);
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = count - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = keys[i];
+                keys[i] = keys[j];
+                keys[j] = tmp;
+            }
+            return keys;
+        }
+    },
+
+    /**
+     * Zipf分布(theta = 0.99), 少数热点键值占了大部分访问; 热点打散在整个区间里
+     */
+    ZIPF {
+        @Override
+        int[] generate(int count, int n, long seed) {
+            ZipfGenerator zipf = new ZipfGenerator(n, ZipfGenerator.DEFAULT_THETA, seed);
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = (int) Long.remainderUnsigned(zipf.next() * 0x9E3779B97F4A7C15L, n);
+            }
+            return keys;
+        }
+    };
+
+    abstract int[] generate(int count, int n, long seed);
+}
@@ -0,0 +1,82 @@
+package rbtree.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import rbtree.OrderedSet;
+
+/**
+ * 通过OrderedSet接口的只读操作, engine选择RBTree或BPlusTree, 对比同样的查询在两种结构上的代价。
+ *
+ * 树里是0, 2, 4, ..., 2(n-1), 查询的键值按keys分布生成, 其中一半是奇数(查不到)。
+ * 用-prof perfnorm可以看到每次查找的缓存缺失(L1-dcache-load-misses, LLC-load-misses)。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LookupBenchmark {
+    private static final int QUERIES = 1 << 16;
+    private static final int SCAN_LENGTH = 100; // 每次区间扫描的键值个数
+
+    @Param({"1000", "100000", "10000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPF"})
+    KeyDistribution keys;
+
+    @Param({"RB", "BPLUS"})
+    Engine engine;
+
+    private OrderedSet<Integer> mSet;
+    private Integer[] mQueries;
+    private int mNext;
+
+    @Setup
+    public void setup() {
+        mSet = Trees.evenKeys(engine, size);
+        mQueries = Trees.box(keys.generate(QUERIES, 2 * size, 42));
+    }
+
+    private Integer nextQuery() {
+        return mQueries[mNext++ & (QUERIES - 1)];
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return mSet.contains(nextQuery());
+    }
+
+    @Benchmark
+    public Integer ceiling() {
+        return mSet.ceiling(nextQuery());
+    }
+
+    @Benchmark
+    public Integer floor() {
+        return mSet.floor(nextQuery());
+    }
+
+    /**
+     * 从查询的键值开始顺序读SCAN_LENGTH个键值
+     */
+    @Benchmark
+    public void scan(Blackhole bh) {
+        Integer lo = nextQuery();
+        mSet.forEachInRange(lo, lo + 2 * SCAN_LENGTH, bh::consume);
+    }
+}
@@ -0,0 +1,95 @@
+package rbtree.jmh;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rbtree.ConcurrentRBTree;
+import rbtree.RBTree;
+
+/**
+ * 读写混合。
+ *
+ * readMostly: 单线程, 每10次操作里9次查找, 1次插入再删除;
+ * concurrent: ConcurrentRBTree上3个读线程和1个写线程同时运行, 分别报告读和写的吞吐量。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixedBenchmark {
+    private static final int OPS = 1 << 16;
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        @Param({"1000", "100000", "10000000"})
+        int size;
+
+        @Param({"SEQUENTIAL", "RANDOM", "ZIPF"})
+        KeyDistribution keys;
+
+        RBTree<Integer> tree;
+        ConcurrentRBTree<Integer> concurrent;
+        Integer[] ops;
+
+        @Setup
+        public void setup() {
+            int[] initial = keys.generate(size, size, 11);
+            tree = Trees.of(initial);
+            concurrent = new ConcurrentRBTree<Integer>();
+            concurrent.insertAll(Arrays.asList(Trees.box(initial)));
+            ops = Trees.box(keys.generate(OPS, size, 12));
+        }
+    }
+
+    /**
+     * 每个线程自己的操作序号
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public Object readMostly(Shared shared, Cursor cursor) {
+        int i = cursor.next++;
+        Integer key = shared.ops[i & (OPS - 1)];
+        if (i % 10 != 9) {
+            return shared.tree.iteraticeSearch(key);
+        }
+        shared.tree.insert(key);
+        shared.tree.remove(key);
+        return shared.tree;
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(3)
+    public boolean read(Shared shared, Cursor cursor) {
+        return shared.concurrent.contains(shared.ops[cursor.next++ & (OPS - 1)]);
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(1)
+    public ConcurrentRBTree<Integer> write(Shared shared, Cursor cursor) {
+        Integer key = shared.ops[cursor.next++ & (OPS - 1)];
+        shared.concurrent.insert(key);
+        shared.concurrent.remove(key);
+        return shared.concurrent;
+    }
+}
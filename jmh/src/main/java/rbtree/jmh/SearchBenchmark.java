@@ -0,0 +1,85 @@
+package rbtree.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rbtree.RBTree;
+
+/**
+ * 只读操作: 递归search和iteraticeSearch的对比, minimum/maximum, 沿successor遍历。
+ *
+ * 树里是0, 2, 4, ..., 2(n-1), 查询的键值按keys分布生成, 其中一半是奇数(查不到)。
+ * 100M的规模需要较大的堆: -p size=100000000 -jvmArgs -Xmx16g
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+    private static final int QUERIES = 1 << 16;
+
+    @Param({"1000", "100000", "10000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPF"})
+    KeyDistribution keys;
+
+    private RBTree<Integer> mTree;
+    private Integer[] mQueries;
+    private int mNext;
+    private RBTree<Integer>.RBTNode<Integer> mNode;
+
+    @Setup
+    public void setup() {
+        mTree = Trees.evenKeys(size);
+        mQueries = Trees.box(keys.generate(QUERIES, 2 * size, 42));
+        mNode = mTree.iteraticeSearch(0);
+    }
+
+    private Integer nextQuery() {
+        return mQueries[mNext++ & (QUERIES - 1)];
+    }
+
+    @Benchmark
+    public Object search() {
+        return mTree.search(nextQuery());
+    }
+
+    @Benchmark
+    public Object iteraticeSearch() {
+        return mTree.iteraticeSearch(nextQuery());
+    }
+
+    @Benchmark
+    public Integer minimum() {
+        return mTree.minimum();
+    }
+
+    @Benchmark
+    public Integer maximum() {
+        return mTree.maximum();
+    }
+
+    /**
+     * 每次走一步successor, 到头之后从最小的结点重新开始; 结果是均摊到每一步的代价
+     */
+    @Benchmark
+    public Object successor() {
+        RBTree<Integer>.RBTNode<Integer> node = mTree.successor(mNode);
+        mNode = node != null ? node : mTree.iteraticeSearch(0);
+        return mNode;
+    }
+}
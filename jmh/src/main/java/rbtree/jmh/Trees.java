@@ -0,0 +1,65 @@
+package rbtree.jmh;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import rbtree.OrderedSet;
+import rbtree.RBTree;
+
+/**
+ * 准备基准测试用的树
+ */
+final class Trees {
+    private Trees() {
+    }
+
+    /**
+     * 由0, 2, 4, ..., 2(n-1)线性建树
+     */
+    static RBTree<Integer> evenKeys(int n) {
+        return RBTree.buildFromSorted(evenIterator(n), n);
+    }
+
+    static OrderedSet<Integer> evenKeys(Engine engine, int n) {
+        return engine.buildFromSorted(evenIterator(n), n);
+    }
+
+    private static Iterator<Integer> evenIterator(final int n) {
+        return new Iterator<Integer>() {
+            private int mNext;
+
+            @Override
+            public boolean hasNext() {
+                return mNext < n;
+            }
+
+            @Override
+            public Integer next() {
+                return 2 * mNext++;
+            }
+        };
+    }
+
+    /**
+     * 由给定的键值(不要求有序)线性建树
+     */
+    static RBTree<Integer> of(int[] keys) {
+        Integer[] sorted = box(keys);
+        Arrays.sort(sorted);
+        return RBTree.buildFromSorted(sorted);
+    }
+
+    static OrderedSet<Integer> of(Engine engine, int[] keys) {
+        Integer[] sorted = box(keys);
+        Arrays.sort(sorted);
+        return engine.buildFromSorted(Arrays.asList(sorted).iterator(), sorted.length);
+    }
+
+    static Integer[] box(int[] keys) {
+        Integer[] boxed = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            boxed[i] = keys[i];
+        }
+        return boxed;
+    }
+}
@@ -0,0 +1,115 @@
+package rbtree.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rbtree.OrderedSet;
+
+/**
+ * 修改操作, engine选择RBTree或BPlusTree。
+ *
+ * insertThenRemove: 在大小为n的树上插入一个键值再把它删掉, 树的大小保持不变, 测的是稳态下一对操作的代价;
+ * build/drain: 按keys分布的顺序把n个键值逐个插入空树/从树中逐个删光, 一次调用测一整轮。
+ * 用-prof gc可以看到每次插入分配的结点大小(gc.alloc.rate.norm)。
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UpdateBenchmark {
+
+    @State(Scope.Thread)
+    public static class Steady {
+        private static final int OPS = 1 << 16;
+
+        @Param({"1000", "100000", "10000000"})
+        int size;
+
+        @Param({"SEQUENTIAL", "RANDOM", "ZIPF"})
+        KeyDistribution keys;
+
+        @Param({"RB", "BPLUS"})
+        Engine engine;
+
+        OrderedSet<Integer> tree;
+        Integer[] ops;
+        int next;
+
+        @Setup
+        public void setup() {
+            tree = Trees.of(engine, keys.generate(size, size, 7));
+            ops = Trees.box(keys.generate(OPS, size, 8));
+        }
+
+        Integer nextKey() {
+            return ops[next++ & (OPS - 1)];
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Batch {
+        @Param({"1000", "100000", "1000000"})
+        int size;
+
+        @Param({"SEQUENTIAL", "RANDOM", "ZIPF"})
+        KeyDistribution keys;
+
+        @Param({"RB", "BPLUS"})
+        Engine engine;
+
+        Integer[] order;
+        OrderedSet<Integer> tree;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            order = Trees.box(keys.generate(size, size, 9));
+        }
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            tree = Trees.of(engine, keys.generate(size, size, 9));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public OrderedSet<Integer> insertThenRemove(Steady state) {
+        Integer key = state.nextKey();
+        state.tree.insert(key);
+        state.tree.remove(key);
+        return state.tree;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public OrderedSet<Integer> build(Batch state) {
+        OrderedSet<Integer> tree = state.engine.create();
+        for (Integer key : state.order) {
+            tree.insert(key);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public OrderedSet<Integer> drain(Batch state) {
+        OrderedSet<Integer> tree = state.tree;
+        for (Integer key : state.order) {
+            tree.remove(key);
+        }
+        return tree;
+    }
+}
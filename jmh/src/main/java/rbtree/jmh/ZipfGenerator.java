@@ -0,0 +1,49 @@
+package rbtree.jmh;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zipf分布的随机数, 取值为[0, n), 0最热。
+ *
+ * 用Gray等人"Quickly Generating Billion-Record Synthetic Databases"中的方法(YCSB也用这个):
+ * 初始化时算一次zeta(n), O(n); 之后每个随机数O(1)。
+ */
+final class ZipfGenerator {
+    static final double DEFAULT_THETA = 0.99;
+
+    private final long mItems;
+    private final double mTheta;
+    private final double mZetaN;
+    private final double mAlpha;
+    private final double mEta;
+    private final SplittableRandom mRandom;
+
+    ZipfGenerator(long items, double theta, long seed) {
+        mItems = items;
+        mTheta = theta;
+        mZetaN = zeta(items, theta);
+        mAlpha = 1.0 / (1.0 - theta);
+        mEta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / mZetaN);
+        mRandom = new SplittableRandom(seed);
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    long next() {
+        double u = mRandom.nextDouble();
+        double uz = u * mZetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, mTheta)) {
+            return Math.min(1, mItems - 1);
+        }
+        return Math.min((long) (mItems * Math.pow(mEta * u - mEta + 1, mAlpha)), mItems - 1);
+    }
+}
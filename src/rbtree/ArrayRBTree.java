@@ -0,0 +1,517 @@
+package rbtree;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * 数组存储的红黑树(struct-of-arrays)。
+ *
+ * 结点不再是单独的对象，而是并行数组中的一个下标：
+ *     mLeft[i]   左孩子
+ *     mRight[i]  右孩子
+ *     mParent[i] 父亲，最高位保存颜色(1为红色)
+ *     mKeys[i]   键值
+ * 下标0为空结点(NIL)。删除的结点挂到空闲链表(通过mLeft串起来)上供后续插入复用，
+ * 所以大量插入删除之后也几乎不产生新的对象。
+ */
+public class ArrayRBTree<T extends Comparable<T>> {
+    public static final int NIL = 0;
+
+    private static final int RED_BIT = 0x80000000;
+    private static final int INDEX_MASK = 0x7fffffff;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] mLeft;
+    private int[] mRight;
+    private int[] mParent;
+    private Object[] mKeys;
+
+    private int mRoot;      // 根节点
+    private int mNext;      // 下一个从未使用过的下标
+    private int mFreeHead;  // 空闲链表头
+    private int mSize;
+
+    public ArrayRBTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ArrayRBTree(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1) + 1; // 多出来的一个是NIL
+        mLeft = new int[capacity];
+        mRight = new int[capacity];
+        mParent = new int[capacity];
+        mKeys = new Object[capacity];
+        mRoot = NIL;
+        mNext = 1;
+        mFreeHead = NIL;
+        mSize = 0;
+    }
+
+    private int parentOf(int node) {
+        return node != NIL ? mParent[node] & INDEX_MASK : NIL;
+    }
+    private boolean isRed(int node) {
+        return node != NIL && mParent[node] < 0;
+    }
+    private boolean isBlack(int node) {
+        return !isRed(node);
+    }
+    private void setBlack(int node) {
+        if (node != NIL)
+            mParent[node] &= INDEX_MASK;
+    }
+    private void setRed(int node) {
+        if (node != NIL)
+            mParent[node] |= RED_BIT;
+    }
+    private void setColor(int node, boolean red) {
+        if (red) {
+            setRed(node);
+        } else {
+            setBlack(node);
+        }
+    }
+    private void setParent(int node, int parent) {
+        if (node != NIL)
+            mParent[node] = (mParent[node] & RED_BIT) | parent;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T keyOf(int node) {
+        return (T) mKeys[node];
+    }
+
+    /**
+     * 分配一个结点：优先从空闲链表取，没有的话再用新的下标，数组满了则按1.5倍扩容。
+     */
+    private int allocNode(T key) {
+        int node;
+        if (mFreeHead != NIL) {
+            node = mFreeHead;
+            mFreeHead = mLeft[node];
+        } else {
+            if (mNext == mKeys.length) {
+                grow();
+            }
+            node = mNext++;
+        }
+        mLeft[node] = NIL;
+        mRight[node] = NIL;
+        mParent[node] = NIL;
+        mKeys[node] = key;
+        return node;
+    }
+
+    /**
+     * 回收结点，挂到空闲链表上；键值置空以免对象无法被回收。
+     */
+    private void freeNode(int node) {
+        mKeys[node] = null;
+        mRight[node] = NIL;
+        mParent[node] = NIL;
+        mLeft[node] = mFreeHead;
+        mFreeHead = node;
+    }
+
+    private void grow() {
+        int capacity = mKeys.length + (mKeys.length >> 1) + 1;
+        if (capacity < 0 || capacity > INDEX_MASK) {
+            capacity = INDEX_MASK;
+            if (mKeys.length == capacity) {
+                throw new IllegalStateException("ArrayRBTree is full");
+            }
+        }
+        mLeft = Arrays.copyOf(mLeft, capacity);
+        mRight = Arrays.copyOf(mRight, capacity);
+        mParent = Arrays.copyOf(mParent, capacity);
+        mKeys = Arrays.copyOf(mKeys, capacity);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * 返回结点的键值
+     */
+    public T getKey(int node) {
+        return keyOf(node);
+    }
+
+    /**
+     * 遍历时的回调, 返回false则提前结束遍历。遍历过程中不能修改树。
+     */
+    public interface Visitor<T> {
+        boolean visit(T key);
+    }
+
+    /**
+     * 中序遍历(升序), 沿父亲下标走, 不递归。全部访问完返回true, 被visitor提前结束返回false
+     */
+    public boolean midOrder(Visitor<? super T> visitor) {
+        for (int x = minimum(mRoot); x != NIL; x = successor(x)) {
+            if (!visitor.visit(keyOf(x))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按升序对每个键值执行action
+     */
+    public void forEach(Consumer<? super T> action) {
+        for (int x = minimum(mRoot); x != NIL; x = successor(x)) {
+            action.accept(keyOf(x));
+        }
+    }
+
+    /**
+     * (非递归实现)查找"红黑树x"中键值为key的节点，没有则返回NIL
+     */
+    private int iteraticeSearch(int x, T key) {
+        while (x != NIL) {
+            int cmp = key.compareTo(keyOf(x));
+            if (cmp < 0) {
+                x = mLeft[x];
+            } else if (cmp > 0) {
+                x = mRight[x];
+            } else {
+                return x;
+            }
+        }
+        return NIL;
+    }
+
+    public int search(T key) {
+        return iteraticeSearch(mRoot, key);
+    }
+
+    public int iteraticeSearch(T key) {
+        return iteraticeSearch(mRoot, key);
+    }
+
+    public boolean contains(T key) {
+        return iteraticeSearch(mRoot, key) != NIL;
+    }
+
+    /**
+     * 查找最小结点：返回tree为根结点的红黑树的最小结点。
+     */
+    private int minimum(int tree) {
+        if (tree == NIL) {
+            return NIL;
+        }
+        while (mLeft[tree] != NIL) {
+            tree = mLeft[tree];
+        }
+        return tree;
+    }
+
+    public T minimum() {
+        int p = minimum(mRoot);
+        if (p != NIL)
+            return keyOf(p);
+
+        return null;
+    }
+
+    /*
+     * 查找最大结点：返回tree为根结点的红黑树的最大结点。
+     */
+    private int maximum(int tree) {
+        if (tree == NIL) {
+            return NIL;
+        }
+        while (mRight[tree] != NIL) {
+            tree = mRight[tree];
+        }
+        return tree;
+    }
+
+    public T maximum() {
+        int p = maximum(mRoot);
+        if (p != NIL)
+            return keyOf(p);
+
+        return null;
+    }
+
+    /*
+     * 找结点(x)的后继结点，没有则返回NIL
+     */
+    public int successor(int x) {
+        if (mRight[x] != NIL) {
+            return minimum(mRight[x]);
+        }
+
+        int y = parentOf(x);
+        while (y != NIL && x == mRight[y]) {
+            x = y;
+            y = parentOf(y);
+        }
+        return y;
+    }
+
+    /*
+     * 找结点(x)的前驱结点，没有则返回NIL
+     */
+    public int predecessor(int x) {
+        if (mLeft[x] != NIL) {
+            return maximum(mLeft[x]);
+        }
+
+        int y = parentOf(x);
+        while (y != NIL && x == mLeft[y]) {
+            x = y;
+            y = parentOf(y);
+        }
+        return y;
+    }
+
+    /*
+     * 对红黑树的节点(x)进行左旋转，见RBTree.leftRotate
+     */
+    private void leftRotate(int x) {
+        int y = mRight[x];
+        int px = parentOf(x);
+
+        mRight[x] = mLeft[y];
+        setParent(mLeft[y], x);
+
+        setParent(y, px);
+        if (px == NIL) {
+            mRoot = y;
+        } else if (mLeft[px] == x) {
+            mLeft[px] = y;
+        } else {
+            mRight[px] = y;
+        }
+
+        mLeft[y] = x;
+        setParent(x, y);
+    }
+
+    /*
+     * 对红黑树的节点(y)进行右旋转，见RBTree.rightRotate
+     */
+    private void rightRotate(int y) {
+        int x = mLeft[y];
+        int py = parentOf(y);
+
+        mLeft[y] = mRight[x];
+        setParent(mRight[x], y);
+
+        setParent(x, py);
+        if (py == NIL) {
+            mRoot = x;
+        } else if (mLeft[py] == y) {
+            mLeft[py] = x;
+        } else {
+            mRight[py] = x;
+        }
+
+        mRight[x] = y;
+        setParent(y, x);
+    }
+
+    /**
+     * 红黑树插入修正函数，见RBTree.insertFixup
+     */
+    private void insertFixup(int node) {
+        int parent, gparent;
+        while ((parent = parentOf(node)) != NIL && isRed(parent)) {
+            gparent = parentOf(parent);
+
+            if (parent == mLeft[gparent]) {
+                int uncle = mRight[gparent];
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (mRight[parent] == node) {
+                    node = parent;
+                    leftRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                rightRotate(gparent);
+            } else {
+                int uncle = mLeft[gparent];
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (mLeft[parent] == node) {
+                    node = parent;
+                    rightRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                leftRotate(gparent);
+            }
+        }
+
+        setBlack(mRoot);
+    }
+
+    public void insert(T key) {
+        int y = NIL;
+        int x = mRoot;
+        int cmp = 0;
+
+        // 找到相应的插入的位置y
+        while (x != NIL) {
+            y = x;
+            cmp = key.compareTo(keyOf(x));
+            x = cmp < 0 ? mLeft[x] : mRight[x];
+        }
+
+        int node = allocNode(key);
+        setParent(node, y);
+        if (y == NIL) {
+            mRoot = node;
+        } else if (cmp < 0) {
+            mLeft[y] = node;
+        } else {
+            mRight[y] = node;
+        }
+
+        setRed(node);
+        mSize++;
+
+        insertFixup(node);
+    }
+
+    /*
+     * 删除结点(node)，被摘下的结点回收到空闲链表
+     */
+    private void remove(int node) {
+        int x, y, xParent;
+        if (mLeft[node] == NIL || mRight[node] == NIL) {
+            y = node;
+        } else {
+            y = successor(node);
+        }
+
+        x = mLeft[y] != NIL ? mLeft[y] : mRight[y];
+
+        xParent = parentOf(y);
+        setParent(x, xParent);
+
+        if (xParent == NIL) {
+            mRoot = x;
+        } else if (y == mLeft[xParent]) {
+            mLeft[xParent] = x;
+        } else {
+            mRight[xParent] = x;
+        }
+
+        if (y != node) {
+            mKeys[node] = mKeys[y];
+        }
+
+        boolean yBlack = isBlack(y);
+        freeNode(y);
+        mSize--;
+
+        if (yBlack) {
+            deleteFixup(x, xParent);
+        }
+    }
+
+    public void remove(T key) {
+        int node;
+        if ((node = iteraticeSearch(mRoot, key)) != NIL) {
+            remove(node);
+        }
+    }
+
+    /**
+     * 红黑树删除修正函数，见RBTree.deleteFixup
+     */
+    private void deleteFixup(int node, int parent) {
+        int brother;
+        while (isBlack(node) && node != mRoot) {
+            if (mLeft[parent] == node) {
+                brother = mRight[parent];
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    leftRotate(parent);
+                    brother = mRight[parent];
+                }
+                if (isBlack(mLeft[brother]) && isBlack(mRight[brother])) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(mRight[brother])) {
+                        setBlack(mLeft[brother]);
+                        setRed(brother);
+                        rightRotate(brother);
+                        brother = mRight[parent];
+                    }
+                    setColor(brother, isRed(parent));
+                    setBlack(parent);
+                    setBlack(mRight[brother]);
+                    leftRotate(parent);
+                    node = mRoot;
+                    break;
+                }
+            } else {
+                brother = mLeft[parent];
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    rightRotate(parent);
+                    brother = mLeft[parent];
+                }
+                if (isBlack(mLeft[brother]) && isBlack(mRight[brother])) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(mLeft[brother])) {
+                        setBlack(mRight[brother]);
+                        setRed(brother);
+                        leftRotate(brother);
+                        brother = mLeft[parent];
+                    }
+                    setColor(brother, isRed(parent));
+                    setBlack(parent);
+                    setBlack(mLeft[brother]);
+                    rightRotate(parent);
+                    node = mRoot;
+                    break;
+                }
+            }
+        }
+        setBlack(node);
+    }
+
+    /**
+     * 清空整棵树。数组保留下来供之后的插入使用，只清掉键值引用。
+     */
+    public void clear() {
+        Arrays.fill(mKeys, 0, mNext, null);
+        mRoot = NIL;
+        mNext = 1;
+        mFreeHead = NIL;
+        mSize = 0;
+    }
+}
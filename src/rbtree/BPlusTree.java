@@ -0,0 +1,553 @@
+package rbtree;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * B+树，和RBTree实现同一个OrderedSet接口，可以按负载换用。
+ *
+ * 红黑树每个结点只有一个键值，查找要沿着约log2(n)个结点往下走，每一步都要等上一步的缓存缺失。
+ * 这里每个结点把最多nodeCapacity个键值放在一个有序数组里，结点内二分查找，树高只有log_B(n)：
+ * 默认每个结点64个键值(压缩指针下是4个缓存行)，一千万个键值只有4层。
+ * 键值都在叶子里，叶子按顺序双向链接，最小最大值、区间扫描和前驱后继都不用回到上层。
+ *
+ * 内部结点的第i个分隔键keys[i]满足：第i个孩子的键值都不大于它，第i+1个孩子的键值都不小于它。
+ * 相等的键值可能跨越相邻的叶子；插入时放在相等键值的后面，和RBTree一致。
+ * 删除之后结点少于一半时，向兄弟借一个键值，兄弟也不够就和兄弟合并。
+ */
+public class BPlusTree<T extends Comparable<T>> implements OrderedSet<T> {
+    private static final int DEFAULT_NODE_CAPACITY = 64;
+    private static final int MIN_NODE_CAPACITY = 4;
+
+    static final class Node {
+        final Object[] keys;   // 叶子中是键值, 内部结点中是分隔键; 多留一个位置, 先插入再分裂
+        final Node[] children; // 内部结点的孩子, 比keys多一个; 叶子为null
+        int count;             // keys中的个数
+        Node prev;             // 叶子的前一个叶子
+        Node next;             // 叶子的后一个叶子
+
+        Node(int capacity, boolean leaf) {
+            keys = new Object[capacity + 1];
+            children = leaf ? null : new Node[capacity + 2];
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+    }
+
+    private final int mCapacity; // 每个结点最多的键值个数
+    private final int mMinKeys;  // 根以外的结点删除之后少于这个数就借或者合并
+    private Node mRoot;          // 空树时为null
+    private Node mFirst;         // 最左的叶子
+    private Node mLast;          // 最右的叶子
+    private int mSize;
+    private Object mSplitKey;    // 分裂时交给父亲的分隔键
+
+    public BPlusTree() {
+        this(DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * nodeCapacity: 每个结点最多的键值个数, 至少为4
+     */
+    public BPlusTree(int nodeCapacity) {
+        if (nodeCapacity < MIN_NODE_CAPACITY) {
+            throw new IllegalArgumentException("nodeCapacity: " + nodeCapacity);
+        }
+        mCapacity = nodeCapacity;
+        mMinKeys = nodeCapacity / 2;
+    }
+
+    /**
+     * 根结点, 供同一个包里的测试检查结构
+     */
+    Node root() {
+        return mRoot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> int compare(T key, Object other) {
+        return key.compareTo((T) other);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T keyAt(Node leaf, int i) {
+        return (T) leaf.keys[i];
+    }
+
+    /**
+     * 第一个不小于key的位置
+     */
+    private static <T extends Comparable<T>> int lowerBound(Node node, T key) {
+        int lo = 0;
+        int hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(key, node.keys[mid]) > 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 第一个大于key的位置
+     */
+    private static <T extends Comparable<T>> int upperBound(Node node, T key) {
+        int lo = 0;
+        int hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(key, node.keys[mid]) >= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 从根往下找到key所在的叶子。afterEqual为false时走向第一个不小于key的键值所在的一侧，
+     * 为true时走向第一个大于key的键值所在的一侧。要找的位置可能恰好在返回叶子的末尾之后，即下一个叶子的开头。
+     */
+    private Node leafFor(T key, boolean afterEqual) {
+        Node x = mRoot;
+        while (!x.isLeaf()) {
+            x = x.children[afterEqual ? upperBound(x, key) : lowerBound(x, key)];
+        }
+        return x;
+    }
+
+    // ---------------------------------------- 查找
+
+    public boolean contains(T key) {
+        T found = ceiling(key);
+        return found != null && key.compareTo(found) == 0;
+    }
+
+    public T minimum() {
+        return mFirst != null ? BPlusTree.<T>keyAt(mFirst, 0) : null;
+    }
+
+    public T maximum() {
+        return mLast != null ? BPlusTree.<T>keyAt(mLast, mLast.count - 1) : null;
+    }
+
+    public T ceiling(T key) {
+        if (mRoot == null) {
+            return null;
+        }
+        Node leaf = leafFor(key, false);
+        return atOrNext(leaf, lowerBound(leaf, key));
+    }
+
+    public T higher(T key) {
+        if (mRoot == null) {
+            return null;
+        }
+        Node leaf = leafFor(key, true);
+        return atOrNext(leaf, upperBound(leaf, key));
+    }
+
+    public T floor(T key) {
+        if (mRoot == null) {
+            return null;
+        }
+        Node leaf = leafFor(key, true);
+        return beforeOrPrev(leaf, upperBound(leaf, key));
+    }
+
+    public T lower(T key) {
+        if (mRoot == null) {
+            return null;
+        }
+        Node leaf = leafFor(key, false);
+        return beforeOrPrev(leaf, lowerBound(leaf, key));
+    }
+
+    /**
+     * leaf中位置i的键值, i在末尾时是下一个叶子的第一个
+     */
+    private T atOrNext(Node leaf, int i) {
+        if (i == leaf.count) {
+            leaf = leaf.next;
+            i = 0;
+        }
+        return leaf != null ? BPlusTree.<T>keyAt(leaf, i) : null;
+    }
+
+    /**
+     * leaf中位置i前面的键值, i为0时是上一个叶子的最后一个
+     */
+    private T beforeOrPrev(Node leaf, int i) {
+        if (i == 0) {
+            leaf = leaf.prev;
+            if (leaf == null) {
+                return null;
+            }
+            i = leaf.count;
+        }
+        return keyAt(leaf, i - 1);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * 树高: 根到叶子的层数, 空树为0
+     */
+    public int height() {
+        int height = 0;
+        for (Node x = mRoot; x != null; x = x.isLeaf() ? null : x.children[0]) {
+            height++;
+        }
+        return height;
+    }
+
+    public void forEach(Consumer<? super T> action) {
+        for (Node leaf = mFirst; leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.count; i++) {
+                action.accept(BPlusTree.<T>keyAt(leaf, i));
+            }
+        }
+    }
+
+    /**
+     * 从lo往下找一次起点，之后沿着叶子链表顺序扫描
+     */
+    public void forEachInRange(T lo, T hi, Consumer<? super T> action) {
+        if (mRoot == null) {
+            return;
+        }
+        Node leaf = mFirst;
+        int i = 0;
+        if (lo != null) {
+            leaf = leafFor(lo, false);
+            i = lowerBound(leaf, lo);
+        }
+        for (; leaf != null; leaf = leaf.next, i = 0) {
+            for (; i < leaf.count; i++) {
+                T key = keyAt(leaf, i);
+                if (hi != null && key.compareTo(hi) >= 0) {
+                    return;
+                }
+                action.accept(key);
+            }
+        }
+    }
+
+    // ---------------------------------------- 插入
+
+    public void insert(T key) {
+        if (mRoot == null) {
+            Node leaf = new Node(mCapacity, true);
+            leaf.keys[0] = key;
+            leaf.count = 1;
+            mRoot = mFirst = mLast = leaf;
+            mSize = 1;
+            return;
+        }
+        Node right = insert(mRoot, key);
+        if (right != null) { // 根分裂了, 树长高一层
+            Node root = new Node(mCapacity, false);
+            root.keys[0] = mSplitKey;
+            root.children[0] = mRoot;
+            root.children[1] = right;
+            root.count = 1;
+            mRoot = root;
+        }
+        mSplitKey = null;
+        mSize++;
+    }
+
+    /**
+     * 把key插入到node为根的子树中。node分裂时返回新的右半边，分隔键放在mSplitKey中，否则返回null。
+     */
+    private Node insert(Node node, T key) {
+        if (node.isLeaf()) {
+            int i = upperBound(node, key);
+            System.arraycopy(node.keys, i, node.keys, i + 1, node.count - i);
+            node.keys[i] = key;
+            node.count++;
+            if (node.count <= mCapacity) {
+                return null;
+            }
+            // 追加到最右的叶子时左边留满，顺序插入时叶子都是满的；否则对半分
+            return splitLeaf(node, node == mLast && i == mCapacity ? mCapacity : node.count / 2);
+        }
+
+        int i = upperBound(node, key);
+        Node right = insert(node.children[i], key);
+        if (right == null) {
+            return null;
+        }
+        System.arraycopy(node.keys, i, node.keys, i + 1, node.count - i);
+        System.arraycopy(node.children, i + 1, node.children, i + 2, node.count - i);
+        node.keys[i] = mSplitKey;
+        node.children[i + 1] = right;
+        node.count++;
+        return node.count <= mCapacity ? null : splitInner(node);
+    }
+
+    /**
+     * 叶子的前keep个键值留下，其余的移到新的右边叶子中，右边叶子的第一个键值作为分隔键
+     */
+    private Node splitLeaf(Node leaf, int keep) {
+        Node right = new Node(mCapacity, true);
+        right.count = leaf.count - keep;
+        System.arraycopy(leaf.keys, keep, right.keys, 0, right.count);
+        Arrays.fill(leaf.keys, keep, leaf.count, null);
+        leaf.count = keep;
+
+        right.prev = leaf;
+        right.next = leaf.next;
+        if (leaf.next != null) {
+            leaf.next.prev = right;
+        } else {
+            mLast = right;
+        }
+        leaf.next = right;
+        mSplitKey = right.keys[0];
+        return right;
+    }
+
+    /**
+     * 内部结点从中间的分隔键处分开，中间的分隔键交给父亲
+     */
+    private Node splitInner(Node node) {
+        int mid = node.count / 2;
+        Node right = new Node(mCapacity, false);
+        right.count = node.count - mid - 1;
+        System.arraycopy(node.keys, mid + 1, right.keys, 0, right.count);
+        System.arraycopy(node.children, mid + 1, right.children, 0, right.count + 1);
+        mSplitKey = node.keys[mid];
+        Arrays.fill(node.keys, mid, node.count, null);
+        Arrays.fill(node.children, mid + 1, node.count + 1, null);
+        node.count = mid;
+        return right;
+    }
+
+    // ---------------------------------------- 删除
+
+    public void remove(T key) {
+        if (mRoot == null || !remove(mRoot, key)) {
+            return;
+        }
+        mSize--;
+        if (mRoot.count == 0) {
+            if (mRoot.isLeaf()) {
+                mRoot = mFirst = mLast = null;
+            } else { // 根只剩一个孩子, 树降低一层
+                mRoot = mRoot.children[0];
+            }
+        }
+    }
+
+    /**
+     * 从node为根的子树中删除一个和key相等的键值，删掉了返回true。
+     * 之后孩子的键值太少时在这一层修正，node本身由它的父亲修正。
+     */
+    private boolean remove(Node node, T key) {
+        if (node.isLeaf()) {
+            int i = lowerBound(node, key);
+            if (i == node.count || compare(key, node.keys[i]) != 0) {
+                return false;
+            }
+            System.arraycopy(node.keys, i + 1, node.keys, i, node.count - i - 1);
+            node.keys[--node.count] = null;
+            return true;
+        }
+
+        // 相等的键值可能跨越几个孩子, 从第一个可能有key的孩子开始找
+        for (int i = lowerBound(node, key); ; i++) {
+            if (remove(node.children[i], key)) {
+                if (node.children[i].count < mMinKeys) {
+                    rebalance(node, i);
+                }
+                return true;
+            }
+            if (i == node.count || compare(key, node.keys[i]) != 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * parent的第i个孩子键值太少：兄弟多于一半就借一个过来，否则和兄弟合并
+     */
+    private void rebalance(Node parent, int i) {
+        if (i > 0 && parent.children[i - 1].count > mMinKeys) {
+            borrowFromLeft(parent, i);
+        } else if (i < parent.count && parent.children[i + 1].count > mMinKeys) {
+            borrowFromRight(parent, i);
+        } else if (i > 0) {
+            merge(parent, i - 1);
+        } else {
+            merge(parent, i);
+        }
+    }
+
+    private void borrowFromLeft(Node parent, int i) {
+        Node node = parent.children[i];
+        Node left = parent.children[i - 1];
+        System.arraycopy(node.keys, 0, node.keys, 1, node.count);
+        if (node.isLeaf()) {
+            node.keys[0] = left.keys[left.count - 1];
+            parent.keys[i - 1] = node.keys[0];
+        } else { // 左兄弟的最后一个孩子移过来, 分隔键经过父亲转一圈
+            System.arraycopy(node.children, 0, node.children, 1, node.count + 1);
+            node.keys[0] = parent.keys[i - 1];
+            node.children[0] = left.children[left.count];
+            parent.keys[i - 1] = left.keys[left.count - 1];
+            left.children[left.count] = null;
+        }
+        node.count++;
+        left.keys[--left.count] = null;
+    }
+
+    private void borrowFromRight(Node parent, int i) {
+        Node node = parent.children[i];
+        Node right = parent.children[i + 1];
+        if (node.isLeaf()) {
+            node.keys[node.count] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.count - 1);
+            parent.keys[i] = right.keys[0];
+        } else { // 右兄弟的第一个孩子移过来
+            node.keys[node.count] = parent.keys[i];
+            node.children[node.count + 1] = right.children[0];
+            parent.keys[i] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.count - 1);
+            System.arraycopy(right.children, 1, right.children, 0, right.count);
+            right.children[right.count] = null;
+        }
+        node.count++;
+        right.keys[--right.count] = null;
+    }
+
+    /**
+     * 把parent的第i+1个孩子并入第i个孩子，内部结点之间的分隔键一起移下来
+     */
+    private void merge(Node parent, int i) {
+        Node left = parent.children[i];
+        Node right = parent.children[i + 1];
+        if (left.isLeaf()) {
+            System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+            left.count += right.count;
+            left.next = right.next;
+            if (right.next != null) {
+                right.next.prev = left;
+            } else {
+                mLast = left;
+            }
+        } else {
+            left.keys[left.count] = parent.keys[i];
+            System.arraycopy(right.keys, 0, left.keys, left.count + 1, right.count);
+            System.arraycopy(right.children, 0, left.children, left.count + 1, right.count + 1);
+            left.count += right.count + 1;
+        }
+        System.arraycopy(parent.keys, i + 1, parent.keys, i, parent.count - i - 1);
+        System.arraycopy(parent.children, i + 2, parent.children, i + 1, parent.count - i - 1);
+        parent.children[parent.count] = null;
+        parent.keys[--parent.count] = null;
+    }
+
+    /**
+     * 清空, 结点由GC回收
+     */
+    public void clear() {
+        mRoot = mFirst = mLast = null;
+        mSize = 0;
+    }
+
+    // ---------------------------------------- 批量建树
+
+    /**
+     * 由升序排列的键值在线性时间内建树，不经过insert：叶子按顺序填满，再逐层往上建内部结点。
+     * 每层的结点个数取最少，键值在这一层的结点之间平均分配，所以除了根每个结点都至少有一半。
+     */
+    public static <T extends Comparable<T>> BPlusTree<T> buildFromSorted(T[] keys) {
+        return buildFromSorted(Arrays.asList(keys).iterator(), keys.length);
+    }
+
+    public static <T extends Comparable<T>> BPlusTree<T> buildFromSorted(Collection<? extends T> keys) {
+        return buildFromSorted(keys.iterator(), keys.size());
+    }
+
+    /**
+     * 由迭代器给出的size个升序键值建树，输入不是升序时抛出IllegalArgumentException。
+     */
+    public static <T extends Comparable<T>> BPlusTree<T> buildFromSorted(Iterator<? extends T> keys, int size) {
+        BPlusTree<T> tree = new BPlusTree<T>();
+        tree.linkSorted(keys, size);
+        return tree;
+    }
+
+    private void linkSorted(Iterator<? extends T> keys, int size) {
+        if (size == 0) {
+            return;
+        }
+        int count = (size + mCapacity - 1) / mCapacity;
+        Node[] level = new Node[count];
+        Object[] mins = new Object[count]; // 每个结点子树中最小的键值, 用作上一层的分隔键
+        T prev = null;
+        for (int n = 0; n < count; n++) {
+            Node leaf = new Node(mCapacity, true);
+            leaf.count = share(size, count, n);
+            for (int i = 0; i < leaf.count; i++) {
+                T key = keys.next();
+                if (prev != null && key.compareTo(prev) < 0) {
+                    throw new IllegalArgumentException("keys are not sorted: " + key + " after " + prev);
+                }
+                leaf.keys[i] = key;
+                prev = key;
+            }
+            if (n > 0) {
+                leaf.prev = level[n - 1];
+                level[n - 1].next = leaf;
+            }
+            level[n] = leaf;
+            mins[n] = leaf.keys[0];
+        }
+        mFirst = level[0];
+        mLast = level[count - 1];
+
+        while (level.length > 1) {
+            int parents = (level.length + mCapacity) / (mCapacity + 1);
+            Node[] upper = new Node[parents];
+            Object[] upperMins = new Object[parents];
+            int from = 0;
+            for (int n = 0; n < parents; n++) {
+                int children = share(level.length, parents, n);
+                Node node = new Node(mCapacity, false);
+                System.arraycopy(level, from, node.children, 0, children);
+                System.arraycopy(mins, from + 1, node.keys, 0, children - 1);
+                node.count = children - 1;
+                upper[n] = node;
+                upperMins[n] = mins[from];
+                from += children;
+            }
+            level = upper;
+            mins = upperMins;
+        }
+        mRoot = level[0];
+        mSize = size;
+    }
+
+    /**
+     * total个元素平均分给parts份时第n份的个数
+     */
+    private static int share(int total, int parts, int n) {
+        return total / parts + (n < total % parts ? 1 : 0);
+    }
+}
@@ -0,0 +1,575 @@
+package rbtree;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Consumer;
+
+/**
+ * byte[]键值的红黑树。
+ *
+ * 默认按无符号字节的字典序比较(和Arrays.compareUnsigned一致)，用Arrays.mismatch找第一个不同的字节，
+ * JDK里它是按机器字长(以及SIMD)批量比较的内建函数。
+ * 从根往下查找时，路径上已经走过的结点给出了当前子树键值的上下界：
+ * 子树里所有的键值都夹在下界和上界之间，和查找的键值至少有min(与下界的公共前缀, 与上界的公共前缀)个相同的字节，
+ * 这一段在后面的比较中直接跳过。键值有很长的公共前缀时(例如编码后的组合键)可以省掉大部分比较。
+ * 也可以传入任意的Comparator，这时逐个结点调用它比较，不做前缀跳过。
+ *
+ * 和RBTree一样允许重复的键值，相等的键值插在右边。树中保存的是传入的数组本身，插入之后不能再修改它。
+ */
+public class ByteArrayRBTree {
+    private RBTNode mRoot; // 根节点
+    private int mSize;
+    private final Comparator<? super byte[]> mComparator; // null表示无符号字典序, 可以跳过公共前缀
+
+    private static final boolean RED = false;
+    private static final boolean BLACK = true;
+
+    public static class RBTNode {
+        boolean color;
+        byte[] key;
+        RBTNode left;
+        RBTNode right;
+        RBTNode parent;
+
+        public RBTNode(boolean color, byte[] key, RBTNode left, RBTNode right, RBTNode parent) {
+            this.color = color;
+            this.key = key;
+            this.left = left;
+            this.right = right;
+            this.parent = parent;
+        }
+
+        public byte[] getKey() {
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return "RBTNode{" +
+                    "color=" + color +
+                    ", key=" + Arrays.toString(key) +
+                    '}';
+        }
+    }
+
+    public ByteArrayRBTree() {
+        this(null);
+    }
+
+    /**
+     * comparator为null时按无符号字节的字典序比较
+     */
+    public ByteArrayRBTree(Comparator<? super byte[]> comparator) {
+        mRoot = null;
+        mComparator = comparator;
+    }
+
+    private RBTNode parentOf(RBTNode node) {
+        return node!=null ? node.parent : null;
+    }
+    private boolean colorOf(RBTNode node) {
+        return node!=null ? node.color : BLACK;
+    }
+    private boolean isRed(RBTNode node) {
+        return (node!=null)&&(node.color==RED);
+    }
+    private boolean isBlack(RBTNode node) {
+        return !isRed(node);
+    }
+    private void setBlack(RBTNode node) {
+        if (node!=null)
+            node.color = BLACK;
+    }
+    private void setRed(RBTNode node) {
+        if (node!=null)
+            node.color = RED;
+    }
+    private void setColor(RBTNode node, boolean color) {
+        if (node!=null)
+            node.color = color;
+    }
+
+    // ---------------------------------------- 比较
+
+    /**
+     * a和b从from开始第一个不同字节的下标，一个是另一个的前缀时为较短的长度，完全相同时为-1。
+     * 调用者保证两者的前from个字节相同。
+     */
+    private static int mismatch(byte[] a, byte[] b, int from) {
+        int i = Arrays.mismatch(a, from, a.length, b, from, b.length);
+        return i < 0 ? -1 : i + from;
+    }
+
+    /**
+     * 已知第一个不同的位置是i(i >= 0)时a和b的无符号字典序
+     */
+    private static int compareAt(byte[] a, byte[] b, int i) {
+        if (i < a.length && i < b.length) {
+            return (a[i] & 0xff) - (b[i] & 0xff);
+        }
+        return a.length - b.length;
+    }
+
+    public Comparator<? super byte[]> comparator() {
+        return mComparator;
+    }
+
+    // ---------------------------------------- 查找
+
+    /**
+     * 查找和key相等的结点, 没有则返回null
+     */
+    public RBTNode search(byte[] key) {
+        RBTNode x = mRoot;
+        if (mComparator != null) {
+            while (x != null) {
+                int cmp = mComparator.compare(key, x.key);
+                if (cmp == 0) {
+                    return x;
+                }
+                x = cmp < 0 ? x.left : x.right;
+            }
+            return null;
+        }
+        int low = 0;  // key和下界(路径上最近的一个比key小的结点)的公共前缀长度, 没有下界时为0
+        int high = 0; // key和上界的公共前缀长度
+        while (x != null) {
+            int i = mismatch(key, x.key, Math.min(low, high));
+            if (i < 0) {
+                return x;
+            }
+            if (compareAt(key, x.key, i) < 0) {
+                high = i;
+                x = x.left;
+            } else {
+                low = i;
+                x = x.right;
+            }
+        }
+        return null;
+    }
+
+    public boolean contains(byte[] key) {
+        return search(key) != null;
+    }
+
+    /**
+     * 大于等于key的最小键值, 没有则返回null
+     */
+    public byte[] ceiling(byte[] key) {
+        RBTNode best = null;
+        RBTNode x = mRoot;
+        int low = 0;
+        int high = 0;
+        while (x != null) {
+            int cmp;
+            if (mComparator != null) {
+                cmp = mComparator.compare(key, x.key);
+            } else {
+                int i = mismatch(key, x.key, Math.min(low, high));
+                if (i < 0) {
+                    return x.key;
+                }
+                cmp = compareAt(key, x.key, i);
+                if (cmp < 0) {
+                    high = i;
+                } else {
+                    low = i;
+                }
+            }
+            if (cmp == 0) {
+                return x.key;
+            }
+            if (cmp < 0) {
+                best = x;
+                x = x.left;
+            } else {
+                x = x.right;
+            }
+        }
+        return best != null ? best.key : null;
+    }
+
+    /**
+     * 小于等于key的最大键值, 没有则返回null
+     */
+    public byte[] floor(byte[] key) {
+        RBTNode best = null;
+        RBTNode x = mRoot;
+        int low = 0;
+        int high = 0;
+        while (x != null) {
+            int cmp;
+            if (mComparator != null) {
+                cmp = mComparator.compare(key, x.key);
+            } else {
+                int i = mismatch(key, x.key, Math.min(low, high));
+                if (i < 0) {
+                    return x.key;
+                }
+                cmp = compareAt(key, x.key, i);
+                if (cmp < 0) {
+                    high = i;
+                } else {
+                    low = i;
+                }
+            }
+            if (cmp == 0) {
+                return x.key;
+            }
+            if (cmp > 0) {
+                best = x;
+                x = x.right;
+            } else {
+                x = x.left;
+            }
+        }
+        return best != null ? best.key : null;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mRoot == null;
+    }
+
+    private RBTNode minimum(RBTNode tree) {
+        if (tree == null) {
+            return null;
+        }
+        while (tree.left != null) {
+            tree = tree.left;
+        }
+        return tree;
+    }
+
+    public byte[] minimum() {
+        RBTNode p = minimum(mRoot);
+        return p != null ? p.key : null;
+    }
+
+    private RBTNode maximum(RBTNode tree) {
+        if (tree == null) {
+            return null;
+        }
+        while (tree.right != null) {
+            tree = tree.right;
+        }
+        return tree;
+    }
+
+    public byte[] maximum() {
+        RBTNode p = maximum(mRoot);
+        return p != null ? p.key : null;
+    }
+
+    /**
+     * 按升序对每个键值执行action, 沿父亲指针走, 不递归。遍历过程中不能修改树。
+     */
+    public void forEach(Consumer<? super byte[]> action) {
+        for (RBTNode x = minimum(mRoot); x != null; x = successor(x)) {
+            action.accept(x.key);
+        }
+    }
+
+    /*
+     * 找结点(x)的后继结点。即，查找"红黑树中数据值大于该结点"的"最小结点"。
+     */
+    public RBTNode successor(RBTNode x) {
+        if (x.right != null) {
+            return minimum(x.right);
+        }
+
+        RBTNode y = x.parent;
+        while (y != null && x == y.right) {
+            x = y;
+            y = y.parent;
+        }
+        return y;
+    }
+
+    /*
+     * 找结点(x)的前驱结点。即，查找"红黑树中数据值小于该结点"的"最大结点"。
+     */
+    public RBTNode predecessor(RBTNode x) {
+        if (x.left != null) {
+            return maximum(x.left);
+        }
+
+        RBTNode y = x.parent;
+        while (y != null && x == y.left) {
+            x = y;
+            y = y.parent;
+        }
+        return y;
+    }
+
+    /*
+     * 对红黑树的节点(x)进行左旋转，见RBTree.leftRotate
+     */
+    private void leftRotate(RBTNode x) {
+        RBTNode y = x.right;
+
+        x.right = y.left;
+        if (y.left != null) {
+            y.left.parent = x;
+        }
+
+        y.parent = x.parent;
+
+        if (x.parent == null) {
+            this.mRoot = y;
+        } else {
+            if (x.parent.left == x) {
+                x.parent.left = y;
+            } else {
+                x.parent.right = y;
+            }
+        }
+
+        y.left = x;
+        x.parent = y;
+    }
+
+    /*
+     * 对红黑树的节点(y)进行右旋转，见RBTree.rightRotate
+     */
+    private void rightRotate(RBTNode y) {
+        RBTNode x = y.left;
+
+        y.left = x.right;
+        if (x.right != null) {
+            x.right.parent = y;
+        }
+
+        x.parent = y.parent;
+        if (y.parent == null) {
+            this.mRoot = x;
+        } else {
+            if (y.parent.left == y) {
+                y.parent.left = x;
+            } else {
+                y.parent.right = x;
+            }
+        }
+        x.right = y;
+        y.parent = x;
+    }
+
+    /**
+     * 红黑树插入修正函数，见RBTree.insertFixup
+     */
+    private void insertFixup(RBTNode node) {
+        RBTNode parent, gparent;
+        while ((parent = parentOf(node)) != null && isRed(parent)) {
+            gparent = parentOf(parent);
+
+            if (parent == gparent.left) {
+                RBTNode uncle = gparent.right;
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (parent.right == node) {
+                    node = parent;
+                    leftRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                rightRotate(gparent);
+            } else {
+                RBTNode uncle = gparent.left;
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (parent.left == node) {
+                    node = parent;
+                    rightRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                leftRotate(gparent);
+            }
+        }
+
+        setBlack(this.mRoot);
+    }
+
+    /**
+     * 将键值插入到红黑树中, 查找插入位置时和search一样跳过已知的公共前缀
+     */
+    public void insert(byte[] key) {
+        RBTNode node = new RBTNode(BLACK, key, null, null, null);
+        RBTNode y = null;
+        RBTNode x = this.mRoot;
+        int cmp = 0;
+        int low = 0;
+        int high = 0;
+
+        // 找到相应的插入的位置y, 相等的键值放在右边
+        while (x != null) {
+            y = x;
+            if (mComparator != null) {
+                cmp = mComparator.compare(key, x.key);
+            } else {
+                int i = mismatch(key, x.key, Math.min(low, high));
+                if (i < 0) {
+                    cmp = 0;
+                    low = key.length;
+                } else if ((cmp = compareAt(key, x.key, i)) < 0) {
+                    high = i;
+                } else {
+                    low = i;
+                }
+            }
+            x = cmp < 0 ? x.left : x.right;
+        }
+
+        node.parent = y;
+        if (y != null) {
+            if (cmp < 0) {
+                y.left = node;
+            } else {
+                y.right = node;
+            }
+        } else {
+            this.mRoot = node;
+        }
+
+        node.color = RED;
+        mSize++;
+        insertFixup(node);
+    }
+
+    /*
+     * 删除结点(node)
+     */
+    private void remove(RBTNode node) {
+        RBTNode x, y, xParent;
+        if (node.left == null || node.right == null) {
+            y = node;
+        } else {
+            y = successor(node);
+        }
+
+        if (y.left != null) {
+            x = y.left;
+        } else {
+            x = y.right;
+        }
+
+        // x可能为空，所以单独记下x的父亲给deleteFixup用
+        xParent = y.parent;
+        if (x != null) {
+            x.parent = xParent;
+        }
+
+        if (xParent == null) {
+            this.mRoot = x;
+        } else {
+            if (y == xParent.left) {
+                xParent.left = x;
+            } else {
+                xParent.right = x;
+            }
+        }
+
+        if (y != node) {
+            node.key = y.key;
+        }
+
+        mSize--;
+
+        if (isBlack(y)) {
+            deleteFixup(x, xParent);
+        }
+    }
+
+    public void remove(byte[] key) {
+        RBTNode node;
+        if ((node = search(key)) != null) {
+            remove(node);
+        }
+    }
+
+    /**
+     * 红黑树删除修正函数，见RBTree.deleteFixup
+     */
+    private void deleteFixup(RBTNode node, RBTNode parent) {
+        RBTNode brother;
+        while (isBlack(node) && node != this.mRoot) {
+            if (parent.left == node) {
+                brother = parent.right;
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    leftRotate(parent);
+                    brother = parent.right;
+                }
+                if (isBlack(brother.left) && isBlack(brother.right)) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(brother.right)) {
+                        setBlack(brother.left);
+                        setRed(brother);
+                        rightRotate(brother);
+                        brother = parent.right;
+                    }
+                    setColor(brother, colorOf(parent));
+                    setBlack(parent);
+                    setBlack(brother.right);
+                    leftRotate(parent);
+                    node = this.mRoot;
+                    break;
+                }
+            } else {
+                brother = parent.left;
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    rightRotate(parent);
+                    brother = parent.left;
+                }
+                if (isBlack(brother.left) && isBlack(brother.right)) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(brother.left)) {
+                        setBlack(brother.right);
+                        setRed(brother);
+                        leftRotate(brother);
+                        brother = parent.left;
+                    }
+                    setColor(brother, colorOf(parent));
+                    setBlack(parent);
+                    setBlack(brother.left);
+                    rightRotate(parent);
+                    node = this.mRoot;
+                    break;
+                }
+            }
+        }
+        setBlack(node);
+    }
+
+    public void clear() {
+        mRoot = null;
+        mSize = 0;
+    }
+}
@@ -0,0 +1,408 @@
+package rbtree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 线程安全的RBTree。
+ *
+ * insert/remove等修改操作获取StampedLock的写锁；
+ * 查找、最小/最大值、floor/ceiling、rank和区间读取先不加锁地做乐观读，读完之后validate，
+ * 期间没有写操作就直接返回，否则退回到读锁再做一次。读线程之间互不阻塞。
+ *
+ * 乐观读的过程中写线程可能正在旋转，读到的指针可能暂时不一致(甚至因为写的重排序出现环)，
+ * 所以乐观读时每次查找最多走MAX_DEPTH步：红黑树的高度不超过2*log2(n+1)，
+ * 超过这个步数说明读到了中间状态，这时validate一定失败，结果会被丢弃。
+ * 结点的字段既不是final也不是volatile，乐观读还可能看到没有发布完整的结点(比如key还是null)，
+ * 这时调用者的compareTo可能抛出NullPointerException、ClassCastException之类的RuntimeException。
+ * 乐观读中的异常一律丢弃，和validate失败一样退回读锁重做；读锁下再抛出的异常才交给调用者。
+ * 乐观读只读取结点字段，不会把可能不一致的数据交给调用者。
+ */
+public class ConcurrentRBTree<T extends Comparable<T>> {
+    private static final int MAX_DEPTH = 2 * Integer.SIZE + 2;
+    private static final int OPTIMISTIC_RANGE_LIMIT = 256; // 区间读超过这么多个键值直接用读锁
+
+    private final RBTree<T> mTree;
+    private final StampedLock mLock;
+
+    public ConcurrentRBTree() {
+        mTree = new RBTree<T>();
+        mLock = new StampedLock();
+    }
+
+    // ---------------------------------------- 写操作
+
+    public void insert(T key) {
+        long stamp = mLock.writeLock();
+        try {
+            mTree.insert(key);
+        } finally {
+            mLock.unlockWrite(stamp);
+        }
+    }
+
+    public void insertAll(Collection<? extends T> keys) {
+        long stamp = mLock.writeLock();
+        try {
+            mTree.insertAll(keys);
+        } finally {
+            mLock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(T key) {
+        long stamp = mLock.writeLock();
+        try {
+            mTree.remove(key);
+        } finally {
+            mLock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = mLock.writeLock();
+        try {
+            mTree.clear();
+        } finally {
+            mLock.unlockWrite(stamp);
+        }
+    }
+
+    // ---------------------------------------- 读操作
+
+    public boolean contains(T key) {
+        return search(key) != null;
+    }
+
+    /**
+     * 查找和key相等的键值, 没有则返回null
+     */
+    public T search(T key) {
+        long stamp = mLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                T result = find(key);
+                if (mLock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // 读到了写到一半的结点, 用读锁重做
+            }
+        }
+        stamp = mLock.readLock();
+        try {
+            return find(key);
+        } finally {
+            mLock.unlockRead(stamp);
+        }
+    }
+
+    public T minimum() {
+        long stamp = mLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                T result = edge(true);
+                if (mLock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // 读到了写到一半的结点, 用读锁重做
+            }
+        }
+        stamp = mLock.readLock();
+        try {
+            return edge(true);
+        } finally {
+            mLock.unlockRead(stamp);
+        }
+    }
+
+    public T maximum() {
+        long stamp = mLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                T result = edge(false);
+                if (mLock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // 读到了写到一半的结点, 用读锁重做
+            }
+        }
+        stamp = mLock.readLock();
+        try {
+            return edge(false);
+        } finally {
+            mLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 大于等于key的最小键值, 没有则返回null
+     */
+    public T ceiling(T key) {
+        return navigate(key, true, true);
+    }
+
+    /**
+     * 大于key的最小键值, 没有则返回null
+     */
+    public T higher(T key) {
+        return navigate(key, true, false);
+    }
+
+    /**
+     * 小于等于key的最大键值, 没有则返回null
+     */
+    public T floor(T key) {
+        return navigate(key, false, true);
+    }
+
+    /**
+     * 小于key的最大键值, 没有则返回null
+     */
+    public T lower(T key) {
+        return navigate(key, false, false);
+    }
+
+    private T navigate(T key, boolean up, boolean inclusive) {
+        long stamp = mLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                T result = bound(key, up, inclusive);
+                if (mLock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // 读到了写到一半的结点, 用读锁重做
+            }
+        }
+        stamp = mLock.readLock();
+        try {
+            return bound(key, up, inclusive);
+        } finally {
+            mLock.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = mLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            RBTree<T>.RBTNode<T> root = mTree.root();
+            int size = root != null ? root.size : 0;
+            if (mLock.validate(stamp)) {
+                return size;
+            }
+        }
+        stamp = mLock.readLock();
+        try {
+            return mTree.size();
+        } finally {
+            mLock.unlockRead(stamp);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 小于key的键值个数
+     */
+    public int rank(T key) {
+        long stamp = mLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                int rank = rankOf(key);
+                if (mLock.validate(stamp)) {
+                    return rank;
+                }
+            } catch (RuntimeException e) {
+                // 读到了写到一半的结点, 用读锁重做
+            }
+        }
+        stamp = mLock.readLock();
+        try {
+            return rankOf(key);
+        } finally {
+            mLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * [lo, hi)区间内的键值个数, lo或hi为null表示该方向没有边界
+     */
+    public int countRange(T lo, T hi) {
+        if (lo != null && hi != null && lo.compareTo(hi) >= 0) {
+            return 0;
+        }
+        long stamp = mLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                int count = countOf(lo, hi);
+                if (mLock.validate(stamp)) {
+                    return count;
+                }
+            } catch (RuntimeException e) {
+                // 读到了写到一半的结点, 用读锁重做
+            }
+        }
+        stamp = mLock.readLock();
+        try {
+            return countOf(lo, hi);
+        } finally {
+            mLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 按升序返回[lo, hi)区间内的键值, lo或hi为null表示该方向没有边界。
+     * 区间较小时先乐观读到一个临时列表里，validate成功才返回；区间较大或者validate失败时用读锁。
+     */
+    public List<T> range(T lo, T hi) {
+        List<T> result = new ArrayList<T>();
+        long stamp = mLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                if (collect(lo, hi, result, OPTIMISTIC_RANGE_LIMIT) && mLock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // 读到了写到一半的结点, 用读锁重做
+            }
+            result.clear();
+        }
+        stamp = mLock.readLock();
+        try {
+            collect(lo, hi, result, Integer.MAX_VALUE);
+            return result;
+        } finally {
+            mLock.unlockRead(stamp);
+        }
+    }
+
+    // ---------------------------------------- 有步数上限的结点遍历, 乐观读和加锁读共用
+
+    private T find(T key) {
+        RBTree<T>.RBTNode<T> x = mTree.root();
+        for (int depth = 0; x != null && depth < MAX_DEPTH; depth++) {
+            T k = x.key;
+            int cmp = key.compareTo(k);
+            if (cmp < 0) {
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                return k;
+            }
+        }
+        return null;
+    }
+
+    private T edge(boolean leftmost) {
+        RBTree<T>.RBTNode<T> node = edgeNode(leftmost);
+        return node != null ? node.key : null;
+    }
+
+    private RBTree<T>.RBTNode<T> edgeNode(boolean leftmost) {
+        RBTree<T>.RBTNode<T> x = mTree.root();
+        if (x == null) {
+            return null;
+        }
+        for (int depth = 0; depth < MAX_DEPTH; depth++) {
+            RBTree<T>.RBTNode<T> next = leftmost ? x.left : x.right;
+            if (next == null) {
+                return x;
+            }
+            x = next;
+        }
+        return null;
+    }
+
+    private RBTree<T>.RBTNode<T> boundNode(T key, boolean up, boolean inclusive) {
+        RBTree<T>.RBTNode<T> best = null;
+        RBTree<T>.RBTNode<T> x = mTree.root();
+        for (int depth = 0; x != null && depth < MAX_DEPTH; depth++) {
+            int cmp = key.compareTo(x.key);
+            boolean goLeft = up ? (inclusive ? cmp <= 0 : cmp < 0) : !(inclusive ? cmp >= 0 : cmp > 0);
+            if (goLeft) {
+                if (up) {
+                    best = x;
+                }
+                x = x.left;
+            } else {
+                if (!up) {
+                    best = x;
+                }
+                x = x.right;
+            }
+        }
+        return best;
+    }
+
+    private T bound(T key, boolean up, boolean inclusive) {
+        RBTree<T>.RBTNode<T> node = boundNode(key, up, inclusive);
+        return node != null ? node.key : null;
+    }
+
+    private int rankOf(T key) {
+        int rank = 0;
+        RBTree<T>.RBTNode<T> x = mTree.root();
+        for (int depth = 0; x != null && depth < MAX_DEPTH; depth++) {
+            if (key.compareTo(x.key) <= 0) {
+                x = x.left;
+            } else {
+                RBTree<T>.RBTNode<T> left = x.left;
+                rank += (left != null ? left.size : 0) + 1;
+                x = x.right;
+            }
+        }
+        return rank;
+    }
+
+    private int countOf(T lo, T hi) {
+        return (hi == null ? mTree.size() : rankOf(hi)) - (lo == null ? 0 : rankOf(lo));
+    }
+
+    /**
+     * 从ceiling(lo)(lo为null时从最小结点)开始沿父亲指针走后继, 收集[lo, hi)的键值。
+     * 超过limit个或者某一步走的步数超过MAX_DEPTH时返回false。
+     */
+    private boolean collect(T lo, T hi, List<T> out, int limit) {
+        RBTree<T>.RBTNode<T> x = lo == null ? edgeNode(true) : boundNode(lo, true, true);
+        while (x != null) {
+            T key = x.key;
+            if (hi != null && key.compareTo(hi) >= 0) {
+                return true;
+            }
+            if (out.size() == limit) {
+                return false;
+            }
+            out.add(key);
+
+            // 后继结点
+            RBTree<T>.RBTNode<T> next = x.right;
+            int depth = 0;
+            if (next != null) {
+                RBTree<T>.RBTNode<T> left;
+                while ((left = next.left) != null && ++depth < MAX_DEPTH) {
+                    next = left;
+                }
+            } else {
+                RBTree<T>.RBTNode<T> child = x;
+                next = x.parent;
+                while (next != null && child == next.right && ++depth < MAX_DEPTH) {
+                    child = next;
+                    next = next.parent;
+                }
+            }
+            if (depth >= MAX_DEPTH) {
+                return false;
+            }
+            x = next;
+        }
+        return true;
+    }
+}
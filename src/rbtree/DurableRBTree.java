@@ -0,0 +1,771 @@
+package rbtree;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 带预写日志(WAL)的RBTree：insert/remove先改内存中的树，同时把操作追加到日志，崩溃之后从检查点和日志恢复。
+ *
+ * 目录里的文件：
+ *     checkpoint.dat       检查点：某一时刻所有键值的有序列表，以及之后接着的日志的代数gen
+ *     wal-<gen>.log        日志：按顺序的insert/remove记录，每条记录带CRC32
+ * 恢复时先用buildFromSorted线性建出检查点的树，再按代数顺序重放代数不小于gen的日志；
+ * 最后一个日志末尾写了一半的记录(长度不够或CRC不对)被截掉。
+ *
+ * 写操作在锁内修改树并把记录放进内存缓冲区，日志的顺序就是修改的顺序；写文件和fsync在锁外做，按Durability：
+ *     FSYNC  返回前记录已经fsync。等待的线程排队拿刷盘锁，拿到的线程把缓冲区里所有线程的记录一起写出并fsync，
+ *            后面的线程发现自己的记录已经落盘就直接返回，所以并发写共用一次fsync(组提交)。
+ *     FLUSH  返回前记录已经写进操作系统(进程崩溃不丢，掉电可能丢)，后台按间隔fsync。
+ *     ASYNC  只放进缓冲区就返回，后台按间隔写文件并fsync，崩溃最多丢一个间隔的操作。
+ *
+ * 日志超过checkpointBytes时后台做一次检查点：在锁内复制树、切换到下一代日志，之后在锁外把副本写成新的检查点，
+ * 原子地替换旧的检查点，再删掉旧的日志。复制整棵树是O(n)的，这期间写操作会停顿，停顿的时间和树的大小成正比；
+ * 之后写检查点文件的过程中不阻塞写操作。
+ */
+public class DurableRBTree<T extends Comparable<T>> implements Closeable {
+    public enum Durability {
+        FSYNC, FLUSH, ASYNC
+    }
+
+    /**
+     * 键值和字节数组之间的转换，encode的结果decode回来要和原来的键值相等
+     */
+    public interface KeyCodec<T> {
+        byte[] encode(T key);
+
+        T decode(byte[] bytes);
+    }
+
+    public static final KeyCodec<Long> LONG_CODEC = new KeyCodec<Long>() {
+        @Override
+        public byte[] encode(Long key) {
+            return ByteBuffer.allocate(8).putLong(key).array();
+        }
+
+        @Override
+        public Long decode(byte[] bytes) {
+            return ByteBuffer.wrap(bytes).getLong();
+        }
+    };
+
+    public static final KeyCodec<String> STRING_CODEC = new KeyCodec<String>() {
+        @Override
+        public byte[] encode(String key) {
+            return key.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    private static final int CHECKPOINT_MAGIC = 0x52425443; // "RBTC"
+    private static final int VERSION = 1;
+    private static final String CHECKPOINT = "checkpoint.dat";
+    private static final String CHECKPOINT_TMP = "checkpoint.tmp";
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+
+    private static final byte OP_INSERT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int RECORD_HEADER = 8;              // 长度(操作+键值) + CRC32
+    private static final int MAX_RECORD = 64 * 1024 * 1024;  // 超过这个长度的记录按损坏处理
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int ASYNC_BUFFER_LIMIT = 4 * 1024 * 1024; // ASYNC下缓冲区超过它时写线程自己写出
+
+    private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 10;
+    private static final long DEFAULT_CHECKPOINT_BYTES = 64L * 1024 * 1024;
+
+    private final Path mDir;
+    private final KeyCodec<T> mCodec;
+    private final Durability mDurability;
+    private final long mCheckpointBytes;
+    private final RBTree<T> mTree;
+
+    // mLock保护树、缓冲区和下面的计数; mFlushLock保证同时只有一个线程写日志文件, 切换日志时两个都要拿(先mFlushLock)
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final ReentrantLock mFlushLock = new ReentrantLock();
+    private final ReentrantLock mCheckpointLock = new ReentrantLock();
+    private ByteBuffer mBuffer;        // 还没写出的记录
+    private ByteBuffer mSpare;         // 正在写出或空闲的另一个缓冲区, 只在mFlushLock内使用
+    private long mAppended;            // 追加过的日志字节数(跨代累计), 写出和fsync的进度用同一个坐标
+    private volatile long mWritten;    // 已经写进文件的位置
+    private volatile long mSynced;     // 已经fsync的位置
+    private volatile long mSyncCount;  // 日志fsync的次数, 只在mFlushLock内修改
+    private long mLogBytes;            // 当前这一代日志的字节数
+    private long mGeneration;          // 当前日志的代数
+    private FileChannel mChannel;      // 当前日志, 只在mFlushLock内切换
+    private boolean mCheckpointPending;
+    private volatile IOException mFailure; // 写日志失败之后所有写操作都报错
+    private volatile boolean mClosed;
+    private final ScheduledExecutorService mExecutor;
+
+    private DurableRBTree(Path dir, KeyCodec<T> codec, Durability durability, long syncIntervalMillis,
+                          long checkpointBytes, RBTree<T> tree, long generation, FileChannel channel,
+                          long logBytes) {
+        mDir = dir;
+        mCodec = codec;
+        mDurability = durability;
+        mCheckpointBytes = checkpointBytes;
+        mTree = tree;
+        mGeneration = generation;
+        mChannel = channel;
+        mLogBytes = logBytes;
+        mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        mSpare = ByteBuffer.allocate(BUFFER_SIZE);
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "rbtree-wal-" + mDir.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (syncIntervalMillis > 0) {
+            mExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    backgroundSync();
+                }
+            }, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 打开(或创建)目录dir中的树：FSYNC，后台每10ms fsync一次，日志超过64MB做检查点
+     */
+    public static <T extends Comparable<T>> DurableRBTree<T> open(Path dir, KeyCodec<T> codec) throws IOException {
+        return open(dir, codec, Durability.FSYNC, DEFAULT_SYNC_INTERVAL_MILLIS, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * 打开(或创建)目录dir中的树，从检查点和日志恢复。
+     * syncIntervalMillis是后台fsync的间隔(FLUSH、ASYNC时必须大于0)，checkpointBytes为0表示不自动做检查点。
+     */
+    public static <T extends Comparable<T>> DurableRBTree<T> open(Path dir, KeyCodec<T> codec, Durability durability,
+                                                                  long syncIntervalMillis, long checkpointBytes)
+            throws IOException {
+        if (durability != Durability.FSYNC && syncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("syncIntervalMillis must be positive for " + durability);
+        }
+        Files.createDirectories(dir);
+        Files.deleteIfExists(dir.resolve(CHECKPOINT_TMP)); // 上次写检查点时崩溃留下的
+
+        List<T> keys = new ArrayList<T>();
+        long generation = 0;
+        Path checkpoint = dir.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            generation = readCheckpoint(checkpoint, codec, keys);
+        }
+        RBTree<T> tree;
+        try {
+            tree = RBTree.buildFromSorted(keys);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt checkpoint: " + checkpoint, e);
+        }
+
+        // 代数比检查点小的日志已经包含在检查点里了
+        List<Long> generations = listLogs(dir);
+        for (long gen : generations) {
+            if (gen < generation) {
+                Files.delete(logPath(dir, gen));
+            }
+        }
+        List<Long> replay = new ArrayList<Long>();
+        for (long gen : generations) {
+            if (gen >= generation) {
+                replay.add(gen);
+            }
+        }
+        for (int i = 0; i < replay.size(); i++) {
+            Path log = logPath(dir, replay.get(i));
+            long valid = replayLog(log, codec, tree);
+            if (valid < Files.size(log)) {
+                // 切换日志时旧日志落盘之后才会往新日志里写，所以只有后面的日志都是空的时候，前面的日志才可能有写了一半的记录。
+                // 否则文件保持原样留给人检查，确认是写了一半的记录之后才截断
+                for (int j = i + 1; j < replay.size(); j++) {
+                    if (Files.size(logPath(dir, replay.get(j))) > 0) {
+                        throw new IOException("Corrupt log: " + log + " has an invalid record at " + valid);
+                    }
+                }
+                truncate(log, valid);
+            }
+        }
+        if (!replay.isEmpty()) {
+            generation = replay.get(replay.size() - 1);
+        }
+
+        FileChannel channel = FileChannel.open(logPath(dir, generation), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            channel.position(size);
+            return new DurableRBTree<T>(dir, codec, durability, syncIntervalMillis, checkpointBytes, tree,
+                    generation, channel, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // ---------------------------------------- 写操作
+
+    public void insert(T key) throws IOException {
+        byte[] record = encodeRecord(OP_INSERT, key);
+        long end;
+        mLock.lock();
+        try {
+            checkWritable();
+            mTree.insert(key);
+            end = append(record);
+        } finally {
+            mLock.unlock();
+        }
+        awaitDurability(end);
+    }
+
+    /**
+     * 删除一个等于key的键值，key不存在时不写日志
+     */
+    public void remove(T key) throws IOException {
+        byte[] record = encodeRecord(OP_REMOVE, key);
+        long end;
+        mLock.lock();
+        try {
+            checkWritable();
+            if (!mTree.contains(key)) {
+                return;
+            }
+            mTree.remove(key);
+            end = append(record);
+        } finally {
+            mLock.unlock();
+        }
+        awaitDurability(end);
+    }
+
+    private void checkWritable() throws IOException {
+        if (mClosed) {
+            throw new IllegalStateException("DurableRBTree is closed");
+        }
+        if (mFailure != null) {
+            throw new IOException("write-ahead log failed", mFailure);
+        }
+    }
+
+    /**
+     * 记录：长度(操作+键值), 操作和键值的CRC32, 操作, 键值
+     */
+    private byte[] encodeRecord(byte op, T key) {
+        byte[] bytes = mCodec.encode(key);
+        CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(bytes);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + 1 + bytes.length);
+        record.putInt(1 + bytes.length).putInt((int) crc.getValue()).put(op).put(bytes);
+        return record.array();
+    }
+
+    /**
+     * 把记录放进缓冲区(调用者持有mLock)，返回它结束的位置
+     */
+    private long append(byte[] record) {
+        if (mBuffer.remaining() < record.length) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(mBuffer.capacity() * 2, mBuffer.position() + record.length));
+            mBuffer.flip();
+            bigger.put(mBuffer);
+            mBuffer = bigger;
+        }
+        mBuffer.put(record);
+        mAppended += record.length;
+        mLogBytes += record.length;
+        if (mCheckpointBytes > 0 && mLogBytes >= mCheckpointBytes && !mCheckpointPending) {
+            mCheckpointPending = true;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    backgroundCheckpoint();
+                }
+            });
+        }
+        return mAppended;
+    }
+
+    private void awaitDurability(long end) throws IOException {
+        switch (mDurability) {
+            case FSYNC:
+                if (mSynced < end) {
+                    flushTo(end, true);
+                }
+                break;
+            case FLUSH:
+                if (mWritten < end) {
+                    flushTo(end, false);
+                }
+                break;
+            default:
+                if (end - mWritten > ASYNC_BUFFER_LIMIT) {
+                    flushTo(end, false);
+                }
+                break;
+        }
+    }
+
+    /**
+     * 等到end之前的记录都写出(force时还要fsync)。排队拿到刷盘锁时，前一个线程可能已经顺带把它们写出了。
+     */
+    private void flushTo(long end, boolean force) throws IOException {
+        mFlushLock.lock();
+        try {
+            if ((force ? mSynced : mWritten) < end) {
+                flush(force);
+            }
+        } finally {
+            mFlushLock.unlock();
+        }
+    }
+
+    /**
+     * 把缓冲区里所有的记录写到当前日志，force时再fsync。调用者持有mFlushLock。
+     * 只在交换缓冲区时短暂地拿mLock，写文件和fsync的时候写操作可以继续往另一个缓冲区里追加。
+     */
+    private void flush(boolean force) throws IOException {
+        if (mFailure != null) {
+            throw new IOException("write-ahead log failed", mFailure);
+        }
+        ByteBuffer buf;
+        long end;
+        mLock.lock();
+        try {
+            buf = mBuffer;
+            mBuffer = mSpare;
+            end = mAppended;
+        } finally {
+            mLock.unlock();
+        }
+        try {
+            buf.flip();
+            writeFully(mChannel, buf);
+            if (force) {
+                mChannel.force(false);
+                mSyncCount++;
+            }
+        } catch (IOException e) {
+            mFailure = e;
+            throw e;
+        } finally {
+            buf.clear();
+            mSpare = buf;
+        }
+        mWritten = end;
+        if (force) {
+            mSynced = end;
+        }
+    }
+
+    /**
+     * 把所有的记录写出并fsync
+     */
+    public void sync() throws IOException {
+        long end;
+        mLock.lock();
+        try {
+            end = mAppended;
+        } finally {
+            mLock.unlock();
+        }
+        if (mSynced < end) {
+            flushTo(end, true);
+        }
+    }
+
+    /**
+     * 日志fsync的次数，测试用来确认并发写共用了fsync
+     */
+    long syncCount() {
+        return mSyncCount;
+    }
+
+    private void backgroundSync() {
+        try {
+            sync();
+        } catch (IOException e) {
+            // 已经记在mFailure里, 下一次写操作会报出来
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    // ---------------------------------------- 检查点
+
+    /**
+     * 做一次检查点：复制当前的树并切换到下一代日志，然后把副本写成新的检查点，删掉旧的日志。
+     * 复制和切换时阻塞写操作，复制是O(n)的，所以停顿的时间和树的大小成正比；写检查点文件时不阻塞。
+     */
+    public void checkpoint() throws IOException {
+        mCheckpointLock.lock();
+        try {
+            RBTree<T> copy;
+            long generation;
+            FileChannel oldChannel;
+            mFlushLock.lock();
+            try {
+                FileChannel newChannel = FileChannel.open(logPath(mDir, mGeneration + 1),
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                mLock.lock();
+                try {
+                    checkWritable();
+                    // 切换之前追加的记录都属于旧日志, 之后的写进新日志
+                    ByteBuffer buf = mBuffer;
+                    buf.flip();
+                    writeFully(mChannel, buf);
+                    buf.clear();
+                    mWritten = mAppended;
+                    copy = mTree.copy();
+                    oldChannel = mChannel;
+                    mChannel = newChannel;
+                    generation = ++mGeneration;
+                    mLogBytes = 0;
+                } catch (IOException e) {
+                    mFailure = e;
+                    newChannel.close();
+                    throw e;
+                } finally {
+                    mLock.unlock();
+                }
+                // 新日志的记录要等旧日志落盘之后才能写出, 否则崩溃时可能新日志有记录而旧日志缺了一段
+                try {
+                    oldChannel.force(false);
+                    mSynced = mWritten;
+                } catch (IOException e) {
+                    mFailure = e;
+                    throw e;
+                }
+            } finally {
+                mFlushLock.unlock();
+            }
+            oldChannel.close();
+
+            writeCheckpoint(copy, generation);
+            for (long gen : listLogs(mDir)) {
+                if (gen < generation) {
+                    Files.deleteIfExists(logPath(mDir, gen));
+                }
+            }
+        } finally {
+            mCheckpointLock.unlock();
+        }
+    }
+
+    private void backgroundCheckpoint() {
+        try {
+            if (!mClosed) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            // 检查点失败不影响日志, 下次超过阈值再试
+        } finally {
+            mLock.lock();
+            mCheckpointPending = false;
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 检查点文件：MAGIC, VERSION, 日志代数, 键值个数, 然后是(长度, 键值)的序列, 最后是前面这些记录的CRC32。
+     * 先写到临时文件并fsync，再原子地改名。
+     */
+    private void writeCheckpoint(RBTree<T> tree, long generation) throws IOException {
+        Path tmp = mDir.resolve(CHECKPOINT_TMP);
+        FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            buf.putInt(CHECKPOINT_MAGIC).putInt(VERSION).putLong(generation).putLong(tree.size());
+            CRC32 crc = new CRC32();
+            RBTree<T>.Cursor c = tree.cursor();
+            while (c.next()) {
+                byte[] bytes = mCodec.encode(c.key());
+                if (buf.remaining() < 4 + bytes.length) {
+                    buf.flip();
+                    writeFully(channel, buf);
+                    buf.clear();
+                    if (buf.remaining() < 4 + bytes.length) {
+                        buf = ByteBuffer.allocate(4 + bytes.length);
+                    }
+                }
+                buf.putInt(bytes.length).put(bytes);
+                crc.update(bytes);
+            }
+            if (buf.remaining() < 4) {
+                buf.flip();
+                writeFully(channel, buf);
+                buf.clear();
+            }
+            buf.putInt((int) crc.getValue());
+            buf.flip();
+            writeFully(channel, buf);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+        Files.move(tmp, mDir.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(mDir);
+    }
+
+    /**
+     * 让改名落盘。不是所有平台都能打开目录做fsync，打不开就算了。
+     */
+    private static void syncDirectory(Path dir) {
+        try {
+            FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+
+    /**
+     * 读检查点，按升序把键值放进keys，返回检查点之后的日志代数
+     */
+    private static <T extends Comparable<T>> long readCheckpoint(Path file, KeyCodec<T> codec, List<T> keys)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+        try {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+            }
+            long generation = in.readLong();
+            long count = in.readLong();
+            if (count < 0 || count > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt checkpoint: " + file);
+            }
+            CRC32 crc = new CRC32();
+            for (long i = 0; i < count; i++) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_RECORD) {
+                    throw new IOException("Corrupt checkpoint: " + file);
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                crc.update(bytes);
+                keys.add(codec.decode(bytes));
+            }
+            if (in.readInt() != (int) crc.getValue()) {
+                throw new IOException("Checkpoint checksum mismatch: " + file);
+            }
+            return generation;
+        } catch (EOFException e) {
+            throw new IOException("Truncated checkpoint: " + file, e);
+        } finally {
+            in.close();
+        }
+    }
+
+    // ---------------------------------------- 日志
+
+    private static Path logPath(Path dir, long generation) {
+        return dir.resolve(LOG_PREFIX + String.format("%016x", generation) + LOG_SUFFIX);
+    }
+
+    /**
+     * 目录中所有日志的代数, 升序
+     */
+    private static List<Long> listLogs(Path dir) throws IOException {
+        List<Long> generations = new ArrayList<Long>();
+        DirectoryStream<Path> stream = Files.newDirectoryStream(dir, LOG_PREFIX + "*" + LOG_SUFFIX);
+        try {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String hex = name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length());
+                try {
+                    generations.add(Long.parseLong(hex, 16));
+                } catch (NumberFormatException e) {
+                    // 不是我们的文件
+                }
+            }
+        } finally {
+            stream.close();
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    /**
+     * 按顺序重放日志，遇到写了一半的记录(崩溃时正在写)就停下，返回有效部分的长度。不修改文件。
+     */
+    private static <T extends Comparable<T>> long replayLog(Path file, KeyCodec<T> codec, RBTree<T> tree)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel),
+                    BUFFER_SIZE));
+            long valid = 0;
+            long size = channel.size();
+            CRC32 crc = new CRC32();
+            while (valid < size) {
+                int length;
+                int checksum;
+                byte[] bytes;
+                byte op;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 1 || length > MAX_RECORD || length > size - valid - RECORD_HEADER) {
+                        break;
+                    }
+                    op = in.readByte();
+                    bytes = new byte[length - 1];
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(op);
+                crc.update(bytes);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                T key = codec.decode(bytes);
+                if (op == OP_INSERT) {
+                    tree.insert(key);
+                } else if (op == OP_REMOVE) {
+                    tree.remove(key);
+                } else {
+                    throw new IOException("Unknown log record " + op + " at " + valid + ": " + file);
+                }
+                valid += RECORD_HEADER + length;
+            }
+            return valid;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * 截掉日志末尾写了一半的记录
+     */
+    private static void truncate(Path file, long size) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(size);
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // ---------------------------------------- 读操作
+
+    public boolean contains(T key) {
+        mLock.lock();
+        try {
+            return mTree.contains(key);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public T minimum() {
+        mLock.lock();
+        try {
+            return mTree.minimum();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public T maximum() {
+        mLock.lock();
+        try {
+            return mTree.maximum();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public int size() {
+        mLock.lock();
+        try {
+            return mTree.size();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 当前内容的副本
+     */
+    public RBTree<T> snapshot() {
+        mLock.lock();
+        try {
+            return mTree.copy();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 停止后台线程，把剩下的记录写出并fsync，关闭日志
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        mExecutor.shutdown();
+        try {
+            mExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mFlushLock.lock();
+        try {
+            if (mFailure == null) {
+                flush(true);
+            }
+        } finally {
+            mFlushLock.unlock();
+            mChannel.close();
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package rbtree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 区间树：以区间为键值的红黑树(《算法导论》14.3)。
+ *
+ * 区间是闭区间[low, high]，按(low, high)的字典序排列，完全相同的区间可以重复，插在右边。
+ * 每个结点另外记着子树中所有区间high的最大值(max)，旋转时和插入、删除经过的路径上顺便维护。
+ * 查询时max小于lo的子树里不可能有和[lo, hi]相交的区间，整棵跳过；
+ * 中序走到low大于hi的结点就可以停下，后面的区间都在hi的右边。
+ * 所以anyOverlap是O(log n)，列出k个相交的区间是O(min(n, (k + 1) log n))，不需要扫描所有的区间。
+ */
+public class IntervalRBTree<T extends Comparable<T>> {
+    private RBTNode<T> mRoot; // 根节点
+    private int mSize;
+
+    private static final boolean RED = false;
+    private static final boolean BLACK = true;
+
+    public static final class RBTNode<T> {
+        boolean color;
+        T low;
+        T high;
+        T max;      // 以该结点为根的子树中high的最大值
+        RBTNode<T> left;
+        RBTNode<T> right;
+        RBTNode<T> parent;
+
+        RBTNode(T low, T high, RBTNode<T> parent) {
+            this.color = BLACK;
+            this.low = low;
+            this.high = high;
+            this.max = high;
+            this.parent = parent;
+        }
+
+        public T getLow() {
+            return low;
+        }
+
+        public T getHigh() {
+            return high;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + low + ", " + high + "]";
+        }
+    }
+
+    /**
+     * 遍历和查询时的回调, 返回false则提前结束。回调中不能修改树。
+     */
+    public interface Visitor<T> {
+        boolean visit(T low, T high);
+    }
+
+    public IntervalRBTree() {
+        mRoot = null;
+    }
+
+    /**
+     * 根结点, 供同一个包里的测试检查结构
+     */
+    RBTNode<T> root() {
+        return mRoot;
+    }
+
+    private static <T> RBTNode<T> parentOf(RBTNode<T> node) {
+        return node != null ? node.parent : null;
+    }
+    private static <T> boolean colorOf(RBTNode<T> node) {
+        return node != null ? node.color : BLACK;
+    }
+    private static <T> boolean isRed(RBTNode<T> node) {
+        return node != null && node.color == RED;
+    }
+    private static <T> boolean isBlack(RBTNode<T> node) {
+        return !isRed(node);
+    }
+    private static <T> void setBlack(RBTNode<T> node) {
+        if (node != null)
+            node.color = BLACK;
+    }
+    private static <T> void setRed(RBTNode<T> node) {
+        if (node != null)
+            node.color = RED;
+    }
+    private static <T> void setColor(RBTNode<T> node, boolean color) {
+        if (node != null)
+            node.color = color;
+    }
+    private static <T extends Comparable<T>> T maxOf(T a, T b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    /**
+     * 由孩子的max重新计算x的max
+     */
+    private static <T extends Comparable<T>> void updateMax(RBTNode<T> x) {
+        T max = x.high;
+        if (x.left != null) {
+            max = maxOf(max, x.left.max);
+        }
+        if (x.right != null) {
+            max = maxOf(max, x.right.max);
+        }
+        x.max = max;
+    }
+
+    private static <T extends Comparable<T>> int compare(T low, T high, RBTNode<T> x) {
+        int cmp = low.compareTo(x.low);
+        return cmp != 0 ? cmp : high.compareTo(x.high);
+    }
+
+    private static <T> RBTNode<T> minimum(RBTNode<T> tree) {
+        if (tree == null) {
+            return null;
+        }
+        while (tree.left != null) {
+            tree = tree.left;
+        }
+        return tree;
+    }
+
+    /*
+     * 找结点(x)的后继结点
+     */
+    private static <T> RBTNode<T> successor(RBTNode<T> x) {
+        if (x.right != null) {
+            return minimum(x.right);
+        }
+        RBTNode<T> y = x.parent;
+        while (y != null && x == y.right) {
+            x = y;
+            y = y.parent;
+        }
+        return y;
+    }
+
+    /*
+     * 对红黑树的节点(x)进行左旋转，见RBTree.leftRotate
+     */
+    private void leftRotate(RBTNode<T> x) {
+        RBTNode<T> y = x.right;
+
+        x.right = y.left;
+        if (y.left != null) {
+            y.left.parent = x;
+        }
+
+        y.parent = x.parent;
+        if (x.parent == null) {
+            mRoot = y;
+        } else if (x.parent.left == x) {
+            x.parent.left = y;
+        } else {
+            x.parent.right = y;
+        }
+
+        y.left = x;
+        x.parent = y;
+
+        // y接替了x原来的位置, 子树不变, max也不变; x重新计算
+        y.max = x.max;
+        updateMax(x);
+    }
+
+    /*
+     * 对红黑树的节点(y)进行右旋转，见RBTree.rightRotate
+     */
+    private void rightRotate(RBTNode<T> y) {
+        RBTNode<T> x = y.left;
+
+        y.left = x.right;
+        if (x.right != null) {
+            x.right.parent = y;
+        }
+
+        x.parent = y.parent;
+        if (y.parent == null) {
+            mRoot = x;
+        } else if (y.parent.left == y) {
+            y.parent.left = x;
+        } else {
+            y.parent.right = x;
+        }
+
+        x.right = y;
+        y.parent = x;
+
+        // x接替了y原来的位置，y重新计算
+        x.max = y.max;
+        updateMax(y);
+    }
+
+    /**
+     * 红黑树插入修正函数，见RBTree.insertFixup
+     */
+    private void insertFixup(RBTNode<T> node) {
+        RBTNode<T> parent, gparent;
+        while ((parent = parentOf(node)) != null && isRed(parent)) {
+            gparent = parentOf(parent);
+
+            if (parent == gparent.left) {
+                RBTNode<T> uncle = gparent.right;
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (parent.right == node) {
+                    node = parent;
+                    leftRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                rightRotate(gparent);
+            } else {
+                RBTNode<T> uncle = gparent.left;
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (parent.left == node) {
+                    node = parent;
+                    rightRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                leftRotate(gparent);
+            }
+        }
+
+        setBlack(mRoot);
+    }
+
+    /**
+     * 红黑树删除修正函数，见RBTree.deleteFixup
+     */
+    private void deleteFixup(RBTNode<T> node, RBTNode<T> parent) {
+        RBTNode<T> brother;
+        while (isBlack(node) && node != mRoot) {
+            if (parent.left == node) {
+                brother = parent.right;
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    leftRotate(parent);
+                    brother = parent.right;
+                }
+                if (isBlack(brother.left) && isBlack(brother.right)) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(brother.right)) {
+                        setBlack(brother.left);
+                        setRed(brother);
+                        rightRotate(brother);
+                        brother = parent.right;
+                    }
+                    setColor(brother, colorOf(parent));
+                    setBlack(parent);
+                    setBlack(brother.right);
+                    leftRotate(parent);
+                    node = mRoot;
+                    break;
+                }
+            } else {
+                brother = parent.left;
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    rightRotate(parent);
+                    brother = parent.left;
+                }
+                if (isBlack(brother.left) && isBlack(brother.right)) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(brother.left)) {
+                        setBlack(brother.right);
+                        setRed(brother);
+                        leftRotate(brother);
+                        brother = parent.left;
+                    }
+                    setColor(brother, colorOf(parent));
+                    setBlack(parent);
+                    setBlack(brother.left);
+                    rightRotate(parent);
+                    node = mRoot;
+                    break;
+                }
+            }
+        }
+        setBlack(node);
+    }
+
+    // ---------------------------------------- 修改
+
+    /**
+     * 插入区间[low, high]，low大于high时抛出IllegalArgumentException
+     */
+    public void insert(T low, T high) {
+        if (low.compareTo(high) > 0) {
+            throw new IllegalArgumentException("low > high: [" + low + ", " + high + "]");
+        }
+        RBTNode<T> y = null;
+        RBTNode<T> x = mRoot;
+        int cmp = 0;
+
+        // 找到插入的位置y，路径上每个结点的子树都多了这个区间
+        while (x != null) {
+            y = x;
+            x.max = maxOf(x.max, high);
+            cmp = compare(low, high, x);
+            x = cmp < 0 ? x.left : x.right;
+        }
+
+        RBTNode<T> node = new RBTNode<T>(low, high, y);
+        if (y == null) {
+            mRoot = node;
+        } else if (cmp < 0) {
+            y.left = node;
+        } else {
+            y.right = node;
+        }
+        node.color = RED;
+        mSize++;
+        insertFixup(node);
+    }
+
+    /**
+     * 删除一个和[low, high]完全相同的区间，不存在时返回false
+     */
+    public boolean remove(T low, T high) {
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            int cmp = compare(low, high, x);
+            if (cmp < 0) {
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                deleteEntry(x);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * 删除结点(node)，用后继结点顶替node的位置，见RBTree.remove
+     */
+    private void deleteEntry(RBTNode<T> node) {
+        RBTNode<T> child, parent;
+        boolean color;
+
+        if (node.left != null && node.right != null) {
+            RBTNode<T> replace = minimum(node.right);
+
+            if (node.parent != null) {
+                if (node.parent.left == node) {
+                    node.parent.left = replace;
+                } else {
+                    node.parent.right = replace;
+                }
+            } else {
+                mRoot = replace;
+            }
+
+            child = replace.right;
+            parent = replace.parent;
+            color = replace.color;
+
+            if (parent == node) {
+                parent = replace;
+            } else {
+                if (child != null) {
+                    child.parent = parent;
+                }
+                parent.left = child;
+
+                replace.right = node.right;
+                node.right.parent = replace;
+            }
+
+            replace.parent = node.parent;
+            replace.color = node.color;
+            replace.left = node.left;
+            node.left.parent = replace;
+        } else {
+            child = node.left != null ? node.left : node.right;
+            parent = node.parent;
+            color = node.color;
+
+            if (child != null) {
+                child.parent = parent;
+            }
+
+            if (parent == null) {
+                mRoot = child;
+            } else if (parent.left == node) {
+                parent.left = child;
+            } else {
+                parent.right = child;
+            }
+        }
+
+        // 从真正摘掉结点的位置到根重新计算max, replace在这条路径上, 也一起算对了
+        for (RBTNode<T> p = parent; p != null; p = p.parent) {
+            updateMax(p);
+        }
+        node.left = node.right = node.parent = null;
+        mSize--;
+
+        if (color == BLACK) {
+            deleteFixup(child, parent);
+        }
+    }
+
+    public void clear() {
+        mRoot = null;
+        mSize = 0;
+    }
+
+    // ---------------------------------------- 查询
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mRoot == null;
+    }
+
+    /**
+     * 找一个和[lo, hi]相交的区间，没有则返回null，O(log n)。
+     *
+     * 左子树的max不小于lo时往左走：左边没有相交的区间，说明左边high最大的那个区间在hi的右边，
+     * 那么右子树里的区间(low更大)也都在hi的右边。否则左边整棵都在lo的左边，只能往右走。
+     */
+    public RBTNode<T> findOverlap(T lo, T hi) {
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            if (x.low.compareTo(hi) <= 0 && lo.compareTo(x.high) <= 0) {
+                return x;
+            }
+            if (x.left != null && x.left.max.compareTo(lo) >= 0) {
+                x = x.left;
+            } else {
+                x = x.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 有没有和[lo, hi]相交的区间, O(log n)
+     */
+    public boolean anyOverlap(T lo, T hi) {
+        return findOverlap(lo, hi) != null;
+    }
+
+    /**
+     * 按low的升序访问所有和[lo, hi]相交的区间，被visitor提前结束时返回false。
+     * 沿父亲指针做中序遍历，跳过max小于lo的子树，走到low大于hi的结点就停下。
+     */
+    public boolean overlapping(T lo, T hi, Visitor<? super T> visitor) {
+        RBTNode<T> x = firstCandidate(mRoot, lo);
+        while (x != null) {
+            if (x.low.compareTo(hi) > 0) {
+                return true;
+            }
+            if (lo.compareTo(x.high) <= 0 && !visitor.visit(x.low, x.high)) {
+                return false;
+            }
+            x = nextCandidate(x, lo);
+        }
+        return true;
+    }
+
+    /**
+     * 以tree为根的子树中，中序第一个可能和[lo, ...]相交的结点：左子树的max不小于lo就一直往左走
+     */
+    private RBTNode<T> firstCandidate(RBTNode<T> tree, T lo) {
+        if (tree == null || tree.max.compareTo(lo) < 0) {
+            return null;
+        }
+        while (tree.left != null && tree.left.max.compareTo(lo) >= 0) {
+            tree = tree.left;
+        }
+        return tree;
+    }
+
+    /**
+     * 中序在x之后第一个可能和[lo, ...]相交的结点：右子树的max不小于lo就进去，否则往上找第一个从左边上来的祖先
+     */
+    private RBTNode<T> nextCandidate(RBTNode<T> x, T lo) {
+        if (x.right != null && x.right.max.compareTo(lo) >= 0) {
+            return firstCandidate(x.right, lo);
+        }
+        RBTNode<T> p = x.parent;
+        while (p != null && x == p.right) {
+            x = p;
+            p = p.parent;
+        }
+        return p;
+    }
+
+    /**
+     * 所有和[lo, hi]相交的区间，按low升序
+     */
+    public List<RBTNode<T>> overlapping(T lo, T hi) {
+        final List<RBTNode<T>> result = new ArrayList<RBTNode<T>>();
+        RBTNode<T> x = firstCandidate(mRoot, lo);
+        while (x != null && x.low.compareTo(hi) <= 0) {
+            if (lo.compareTo(x.high) <= 0) {
+                result.add(x);
+            }
+            x = nextCandidate(x, lo);
+        }
+        return result;
+    }
+
+    /**
+     * 包含point的所有区间(点查询)，按low升序
+     */
+    public List<RBTNode<T>> stab(T point) {
+        return overlapping(point, point);
+    }
+
+    /**
+     * 按(low, high)升序访问所有区间，被visitor提前结束时返回false
+     */
+    public boolean forEach(Visitor<? super T> visitor) {
+        for (RBTNode<T> x = minimum(mRoot); x != null; x = successor(x)) {
+            if (!visitor.visit(x.low, x.high)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
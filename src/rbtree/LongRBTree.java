@@ -0,0 +1,623 @@
+package rbtree;
+
+import java.util.NoSuchElementException;
+import java.util.function.LongConsumer;
+
+/**
+ * long键值的红黑树。
+ *
+ * 与RBTree的接口一致，但键值直接以long保存在结点中，
+ * 插入时不需要装箱，比较时直接比较原始类型，不经过compareTo的虚调用。
+ */
+public class LongRBTree {
+    private RBTNode mRoot; // 根节点
+
+    private static final boolean RED = false;
+    private static final boolean BLACK = true;
+
+    public static class RBTNode {
+        boolean color;
+        long key;
+        RBTNode left;
+        RBTNode right;
+        RBTNode parent;
+
+        public RBTNode(boolean color, long key, RBTNode left, RBTNode right, RBTNode parent) {
+            this.color = color;
+            this.key = key;
+            this.left = left;
+            this.right = right;
+            this.parent = parent;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return "RBTNode{" +
+                    "color=" + color +
+                    ", key=" + key +
+                    ", left=" + (left != null ? String.valueOf(left.key) : "null") +
+                    ", right=" + (right != null ? String.valueOf(right.key) : "null") +
+                    ", parent=" + (parent != null ? String.valueOf(parent.key) : "null") +
+                    '}';
+        }
+    }
+
+    public LongRBTree() {
+        mRoot = null;
+    }
+
+    /**
+     * 根结点, 供同一个包里的测试检查结构
+     */
+    RBTNode root() {
+        return mRoot;
+    }
+
+    private RBTNode parentOf(RBTNode node) {
+        return node!=null ? node.parent : null;
+    }
+    private boolean colorOf(RBTNode node) {
+        return node!=null ? node.color : BLACK;
+    }
+    private boolean isRed(RBTNode node) {
+        return (node!=null)&&(node.color==RED);
+    }
+    private boolean isBlack(RBTNode node) {
+        return !isRed(node);
+    }
+    private void setBlack(RBTNode node) {
+        if (node!=null)
+            node.color = BLACK;
+    }
+    private void setRed(RBTNode node) {
+        if (node!=null)
+            node.color = RED;
+    }
+    private void setColor(RBTNode node, boolean color) {
+        if (node!=null)
+            node.color = color;
+    }
+
+    /**
+     * 遍历时的回调, 返回false则提前结束遍历。遍历过程中不能修改树。
+     */
+    public interface Visitor {
+        boolean visit(long key);
+    }
+
+    /*
+     * 三种遍历都沿着孩子和父亲指针走, 不递归也不用栈, 不分配内存。
+     */
+
+    /**
+     * 前序遍历中x的下一个结点
+     */
+    private RBTNode preOrderNext(RBTNode x) {
+        if (x.left != null) {
+            return x.left;
+        }
+        if (x.right != null) {
+            return x.right;
+        }
+        for (RBTNode p = x.parent; p != null; x = p, p = p.parent) {
+            if (x == p.left && p.right != null) {
+                return p.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 后序遍历中以tree为根的子树的第一个结点
+     */
+    private RBTNode postOrderFirst(RBTNode tree) {
+        if (tree == null) {
+            return null;
+        }
+        while (tree.left != null || tree.right != null) {
+            tree = tree.left != null ? tree.left : tree.right;
+        }
+        return tree;
+    }
+
+    private RBTNode postOrderNext(RBTNode x) {
+        RBTNode p = x.parent;
+        if (p != null && x == p.left && p.right != null) {
+            return postOrderFirst(p.right);
+        }
+        return p;
+    }
+
+    /**
+     * 前序遍历, 被visitor提前结束时返回false
+     */
+    public boolean preOrder(Visitor visitor) {
+        for (RBTNode x = mRoot; x != null; x = preOrderNext(x)) {
+            if (!visitor.visit(x.key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void preOrder() {
+        preOrder(PRINTER);
+    }
+
+    /**
+     * 中序遍历(升序), 被visitor提前结束时返回false
+     */
+    public boolean midOrder(Visitor visitor) {
+        for (RBTNode x = minimum(mRoot); x != null; x = successor(x)) {
+            if (!visitor.visit(x.key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void midOrder() {
+        midOrder(PRINTER);
+    }
+
+    /**
+     * 后序遍历, 被visitor提前结束时返回false
+     */
+    public boolean postOrder(Visitor visitor) {
+        for (RBTNode x = postOrderFirst(mRoot); x != null; x = postOrderNext(x)) {
+            if (!visitor.visit(x.key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void postOrder() {
+        postOrder(PRINTER);
+    }
+
+    /**
+     * 按升序对每个键值执行action, 不装箱
+     */
+    public void forEach(LongConsumer action) {
+        for (RBTNode x = minimum(mRoot); x != null; x = successor(x)) {
+            action.accept(x.key);
+        }
+    }
+
+    private static final Visitor PRINTER = new Visitor() {
+        @Override
+        public boolean visit(long key) {
+            System.out.print(key + " ");
+            return true;
+        }
+    };
+
+    /**
+     * (非递归实现)查找"红黑树x"中键值为key的节点
+     */
+    private RBTNode iteraticeSearch(RBTNode x, long key) {
+        while (x != null) {
+            if (key < x.key) {
+                x = x.left;
+            } else if (key > x.key) {
+                x = x.right;
+            } else {
+                return x;
+            }
+        }
+        return null;
+    }
+
+    public RBTNode search(long key) {
+        return iteraticeSearch(mRoot, key);
+    }
+
+    public RBTNode iteraticeSearch(long key) {
+        return iteraticeSearch(mRoot, key);
+    }
+
+    public boolean isEmpty() {
+        return mRoot == null;
+    }
+
+    /**
+     * 查找最小结点：返回tree为根结点的红黑树的最小结点。
+     */
+    private RBTNode minimum(RBTNode tree) {
+        if (tree == null) {
+            return null;
+        }
+        while (tree.left != null) {
+            tree = tree.left;
+        }
+        return tree;
+    }
+
+    /**
+     * 返回最小键值；树为空时抛出NoSuchElementException(原始类型无法返回null)。
+     */
+    public long minimum() {
+        RBTNode p = minimum(mRoot);
+        if (p == null)
+            throw new NoSuchElementException();
+
+        return p.key;
+    }
+
+    /*
+     * 查找最大结点：返回tree为根结点的红黑树的最大结点。
+     */
+    private RBTNode maximum(RBTNode tree) {
+        if (tree == null) {
+            return null;
+        }
+        while (tree.right != null) {
+            tree = tree.right;
+        }
+        return tree;
+    }
+
+    /**
+     * 返回最大键值；树为空时抛出NoSuchElementException。
+     */
+    public long maximum() {
+        RBTNode p = maximum(mRoot);
+        if (p == null)
+            throw new NoSuchElementException();
+
+        return p.key;
+    }
+
+    /*
+     * 找结点(x)的后继结点。即，查找"红黑树中数据值大于该结点"的"最小结点"。
+     */
+    public RBTNode successor(RBTNode x) {
+        if (x.right != null) {
+            return minimum(x.right);
+        }
+
+        RBTNode y = x.parent;
+        while (y != null && x == y.right) {
+            x = y;
+            y = y.parent;
+        }
+        return y;
+    }
+
+    /*
+     * 找结点(x)的前驱结点。即，查找"红黑树中数据值小于该结点"的"最大结点"。
+     */
+    public RBTNode predecessor(RBTNode x) {
+        if (x.left != null) {
+            return maximum(x.left);
+        }
+
+        RBTNode y = x.parent;
+        while (y != null && x == y.left) {
+            x = y;
+            y = y.parent;
+        }
+        return y;
+    }
+
+    /*
+     * 对红黑树的节点(x)进行左旋转，见RBTree.leftRotate
+     */
+    private void leftRotate(RBTNode x) {
+        RBTNode y = x.right;
+
+        x.right = y.left;
+        if (y.left != null) {
+            y.left.parent = x;
+        }
+
+        y.parent = x.parent;
+
+        if (x.parent == null) {
+            this.mRoot = y;
+        } else {
+            if (x.parent.left == x) {
+                x.parent.left = y;
+            } else {
+                x.parent.right = y;
+            }
+        }
+
+        y.left = x;
+        x.parent = y;
+    }
+
+    /*
+     * 对红黑树的节点(y)进行右旋转，见RBTree.rightRotate
+     */
+    private void rightRotate(RBTNode y) {
+        RBTNode x = y.left;
+
+        y.left = x.right;
+        if (x.right != null) {
+            x.right.parent = y;
+        }
+
+        x.parent = y.parent;
+        if (y.parent == null) {
+            this.mRoot = x;
+        } else {
+            if (y.parent.left == y) {
+                y.parent.left = x;
+            } else {
+                y.parent.right = x;
+            }
+        }
+        x.right = y;
+        y.parent = x;
+    }
+
+    /**
+     * 红黑树插入修正函数，见RBTree.insertFixup
+     */
+    private void insertFixup(RBTNode node) {
+        RBTNode parent, gparent;
+        while ((parent = parentOf(node)) != null && isRed(parent)) {
+            gparent = parentOf(parent);
+
+            if (parent == gparent.left) {
+                RBTNode uncle = gparent.right;
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (parent.right == node) {
+                    node = parent;
+                    leftRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                rightRotate(gparent);
+            } else {
+                RBTNode uncle = gparent.left;
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (parent.left == node) {
+                    node = parent;
+                    rightRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                leftRotate(gparent);
+            }
+        }
+
+        setBlack(this.mRoot);
+    }
+
+    /**
+     * 将结点插入到红黑树中
+     */
+    private void insert(RBTNode node) {
+        RBTNode y = null;
+        RBTNode x = this.mRoot;
+
+        // 找到相应的插入的位置y
+        while (x != null) {
+            y = x;
+            if (node.key < x.key) {
+                x = x.left;
+            } else {
+                x = x.right;
+            }
+        }
+
+        node.parent = y;
+
+        if (y != null) {
+            if (node.key < y.key) {
+                y.left = node;
+            } else {
+                y.right = node;
+            }
+        } else {
+            this.mRoot = node;
+        }
+
+        node.color = RED;
+
+        insertFixup(node);
+    }
+
+    public void insert(long key) {
+        insert(new RBTNode(BLACK, key, null, null, null));
+    }
+
+    /*
+     * 删除结点(node)
+     */
+    private void remove(RBTNode node) {
+        RBTNode x, y, xParent;
+        if (node.left == null || node.right == null) {
+            y = node;
+        } else {
+            y = successor(node);
+        }
+
+        if (y.left != null) {
+            x = y.left;
+        } else {
+            x = y.right;
+        }
+
+        // x可能为空，所以单独记下x的父亲给deleteFixup用
+        xParent = y.parent;
+        if (x != null) {
+            x.parent = xParent;
+        }
+
+        if (xParent == null) {
+            this.mRoot = x;
+        } else {
+            if (y == xParent.left) {
+                xParent.left = x;
+            } else {
+                xParent.right = x;
+            }
+        }
+
+        if (y != node) {
+            node.key = y.key;
+        }
+
+        if (isBlack(y)) {
+            deleteFixup(x, xParent);
+        }
+    }
+
+    public void remove(long key) {
+        RBTNode node;
+        if ((node = iteraticeSearch(mRoot, key)) != null) {
+            remove(node);
+        }
+    }
+
+    /**
+     * 红黑树删除修正函数，见RBTree.deleteFixup
+     */
+    private void deleteFixup(RBTNode node, RBTNode parent) {
+        RBTNode brother;
+        while (isBlack(node) && node != this.mRoot) {
+            if (parent.left == node) {
+                brother = parent.right;
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    leftRotate(parent);
+                    brother = parent.right;
+                }
+                if (isBlack(brother.left) && isBlack(brother.right)) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(brother.right)) {
+                        setBlack(brother.left);
+                        setRed(brother);
+                        rightRotate(brother);
+                        brother = parent.right;
+                    }
+                    setColor(brother, colorOf(parent));
+                    setBlack(parent);
+                    setBlack(brother.right);
+                    leftRotate(parent);
+                    node = this.mRoot;
+                    break;
+                }
+            } else {
+                brother = parent.left;
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    rightRotate(parent);
+                    brother = parent.left;
+                }
+                if (isBlack(brother.left) && isBlack(brother.right)) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(brother.left)) {
+                        setBlack(brother.right);
+                        setRed(brother);
+                        leftRotate(brother);
+                        brother = parent.left;
+                    }
+                    setColor(brother, colorOf(parent));
+                    setBlack(parent);
+                    setBlack(brother.left);
+                    rightRotate(parent);
+                    node = this.mRoot;
+                    break;
+                }
+            }
+        }
+        setBlack(node);
+    }
+
+    public void clear() {
+        mRoot = null;
+    }
+
+    /**
+     * 最小结点，供快照按序写出
+     */
+    RBTNode firstNode() {
+        return minimum(mRoot);
+    }
+
+    /**
+     * 由有序的快照在线性时间内建树，不经过insert和insertFixup。
+     *
+     * 按中序依次读取键值建成一棵完全平衡的二叉树，最底下一层(不满的那一层)的结点设为红色，
+     * 其余结点都是黑色，这样每条路径上的黑色结点数相同。
+     */
+    static LongRBTree buildFromSorted(MappedLongRBTree keys) {
+        LongRBTree tree = new LongRBTree();
+        long size = keys.size();
+        if (size > 0) {
+            tree.mRoot = buildFromSorted(0, 0, size - 1, RBTree.computeRedLevel(size), keys);
+        }
+        return tree;
+    }
+
+    private static RBTNode buildFromSorted(int level, long lo, long hi, int redLevel, MappedLongRBTree keys) {
+        long mid = (lo + hi) >>> 1;
+
+        RBTNode left = null;
+        if (lo < mid) {
+            left = buildFromSorted(level + 1, lo, mid - 1, redLevel, keys);
+        }
+
+        RBTNode middle = new RBTNode(level == redLevel ? RED : BLACK, keys.getKey(mid), left, null, null);
+        if (left != null) {
+            left.parent = middle;
+        }
+
+        if (mid < hi) {
+            RBTNode right = buildFromSorted(level + 1, mid + 1, hi, redLevel, keys);
+            middle.right = right;
+            right.parent = middle;
+        }
+        return middle;
+    }
+
+    /**
+     * 按前序打印每个结点和它的父亲
+     */
+    public void print() {
+        for (RBTNode x = mRoot; x != null; x = preOrderNext(x)) {
+            if (x.parent == null) {
+                System.out.printf("%2d(B) is root\n", x.key);
+            } else {
+                System.out.printf("%2d(%s) is %2d's %6s child\n",
+                        x.key,
+                        isRed(x) ? "R" : "B",
+                        x.parent.key,
+                        x == x.parent.right ? "right" : "left");
+            }
+        }
+    }
+}
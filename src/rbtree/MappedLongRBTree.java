@@ -0,0 +1,274 @@
+package rbtree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+/**
+ * LongRBTree的磁盘快照，以及直接在内存映射文件上提供查询的只读树。
+ *
+ * 文件格式(小端序)：
+ *     [0, 4)    MAGIC
+ *     [4, 8)    VERSION
+ *     [8, 16)   键值个数n
+ *     [16, 32)  保留
+ *     [32, ...) n个按升序排列的long键值
+ *
+ * 有序数组本身就是一棵隐式的平衡二叉搜索树(区间中点为根)，
+ * 所以打开快照时不需要反序列化，查找直接在映射的页上做二分；
+ * 需要可修改的树时用toTree()在线性时间内重建。多个进程映射同一个文件时共享页缓存。
+ */
+public class MappedLongRBTree implements Closeable {
+    private static final int MAGIC = 0x52425453; // "RBTS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int KEY_SIZE = 8;
+
+    // 单个MappedByteBuffer最大2GB，所以按区域分段映射
+    private static final int REGION_SHIFT = 27;
+    private static final long REGION_KEYS = 1L << REGION_SHIFT;
+    private static final long REGION_MASK = REGION_KEYS - 1;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel mChannel;
+    private final LongBuffer[] mRegions;
+    private final long mSize;
+
+    private MappedLongRBTree(FileChannel channel, LongBuffer[] regions, long size) {
+        mChannel = channel;
+        mRegions = regions;
+        mSize = size;
+    }
+
+    /**
+     * 将树按中序写到文件中，边遍历边写，不需要额外的内存。
+     *
+     * 先写到同目录下的临时文件并fsync，再原子地改名替换file：写到一半崩溃时旧的快照完好无损，
+     * 其他进程已经映射的旧文件也不会被截断(截断正在映射的文件会让它们访问时收到SIGBUS)，重新open才看到新快照。
+     */
+    public static void save(LongRBTree tree, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        boolean saved = false;
+        try {
+            write(tree, tmp);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            saved = true;
+        } finally {
+            if (!saved) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        syncDirectory(file.toAbsolutePath().getParent());
+    }
+
+    private static void write(LongRBTree tree, Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer buf = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_SIZE);
+
+            long count = 0;
+            for (LongRBTree.RBTNode x = tree.firstNode(); x != null; x = tree.successor(x)) {
+                if (buf.remaining() < KEY_SIZE) {
+                    buf.flip();
+                    writeFully(channel, buf);
+                    buf.clear();
+                }
+                buf.putLong(x.key);
+                count++;
+            }
+            buf.flip();
+            writeFully(channel, buf);
+
+            // 个数在写完之后才知道，最后回填文件头
+            buf.clear();
+            buf.putInt(MAGIC).putInt(VERSION).putLong(count).putLong(0).putLong(0);
+            buf.flip();
+            channel.position(0);
+            writeFully(channel, buf);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * 让改名落盘。不是所有平台都能打开目录做fsync，打不开就算了。
+     */
+    private static void syncDirectory(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try {
+            FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /**
+     * 以只读方式映射快照文件
+     */
+    public static MappedLongRBTree open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Truncated snapshot header: " + file);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            long size = header.getLong();
+            if (size < 0 || channel.size() < HEADER_SIZE + size * KEY_SIZE) {
+                throw new IOException("Truncated snapshot: " + file);
+            }
+
+            int regionCount = (int) ((size + REGION_KEYS - 1) >>> REGION_SHIFT);
+            LongBuffer[] regions = new LongBuffer[regionCount];
+            for (int i = 0; i < regionCount; i++) {
+                long first = (long) i << REGION_SHIFT;
+                long keys = Math.min(REGION_KEYS, size - first);
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * KEY_SIZE, keys * KEY_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asLongBuffer();
+            }
+            return new MappedLongRBTree(channel, regions, size);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 在线性时间内重建出一棵可修改的LongRBTree
+     */
+    public LongRBTree toTree() {
+        return LongRBTree.buildFromSorted(this);
+    }
+
+    public long size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * 第index个(从0开始)键值
+     */
+    public long getKey(long index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + mSize);
+        }
+        return mRegions[(int) (index >>> REGION_SHIFT)].get((int) (index & REGION_MASK));
+    }
+
+    /**
+     * 第一个大于等于key的键值的下标，没有则返回size()
+     */
+    public long lowerBound(long key) {
+        long lo = 0;
+        long hi = mSize;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (getKey(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 第一个大于key的键值的下标，没有则返回size()
+     */
+    public long upperBound(long key) {
+        long lo = 0;
+        long hi = mSize;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (getKey(mid) <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 查找键值为key的下标，没有则返回-1
+     */
+    public long search(long key) {
+        long i = lowerBound(key);
+        return i < mSize && getKey(i) == key ? i : -1;
+    }
+
+    public boolean contains(long key) {
+        return search(key) >= 0;
+    }
+
+    public long minimum() {
+        if (mSize == 0)
+            throw new NoSuchElementException();
+
+        return getKey(0);
+    }
+
+    public long maximum() {
+        if (mSize == 0)
+            throw new NoSuchElementException();
+
+        return getKey(mSize - 1);
+    }
+
+    /**
+     * [lo, hi)区间内键值的个数。区间扫描：
+     *     for (long i = tree.lowerBound(lo), end = tree.lowerBound(hi); i < end; i++) tree.getKey(i);
+     */
+    public long countRange(long lo, long hi) {
+        if (lo >= hi) {
+            return 0;
+        }
+        return lowerBound(hi) - lowerBound(lo);
+    }
+
+    /**
+     * 关闭文件。映射的内存由GC在缓冲区不可达后解除映射。
+     */
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+}
@@ -0,0 +1,567 @@
+package rbtree;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.NoSuchElementException;
+
+/**
+ * 堆外内存的红黑树，键值为定长的long。
+ *
+ * 结点保存在按块分配的直接缓冲区(ByteBuffer.allocateDirect，本机字节序)中，每块CHUNK_NODES个结点，按需增长，
+ * 不占用Java堆，GC不用扫描结点。直接内存的总量受-XX:MaxDirectMemorySize限制。每个结点占NODE_SIZE字节：
+ *     [0, 8)   key
+ *     [8, 12)  left
+ *     [12, 16) right
+ *     [16, 20) parent，最高位保存颜色(1为红色)
+ * 结点用int下标表示，0为空结点(NIL)。删除的结点通过left串成空闲链表复用。
+ *
+ * clear()或close()丢掉所有块的引用，块占用的本地内存在缓冲区被GC回收时释放；
+ * 不经过sun.misc.Unsafe，所以不能立即释放，但也不会有悬空地址。
+ * 公开方法接受的结点下标都先检查是否在已分配的范围内，非法的下标抛出IllegalArgumentException，不会读到范围之外的内存。
+ */
+public class OffHeapRBTree implements Closeable {
+    public static final int NIL = 0;
+
+    private static final int RED_BIT = 0x80000000;
+    private static final int INDEX_MASK = 0x7fffffff;
+
+    private static final int NODE_SIZE = 24;
+    private static final int KEY_OFFSET = 0;
+    private static final int LEFT_OFFSET = 8;
+    private static final int RIGHT_OFFSET = 12;
+    private static final int PARENT_OFFSET = 16;
+
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_NODES = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_NODES - 1;
+
+    private ByteBuffer[] mChunks; // 每块的直接缓冲区
+    private int mChunkCount;
+
+    private int mRoot;      // 根节点
+    private int mNext;      // 下一个从未使用过的下标
+    private int mFreeHead;  // 空闲链表头
+    private long mSize;
+    private boolean mClosed;
+
+    public OffHeapRBTree() {
+        mChunks = new ByteBuffer[8];
+        reset();
+    }
+
+    private void reset() {
+        mChunkCount = 0;
+        mRoot = NIL;
+        mNext = 1; // 下标0留给NIL
+        mFreeHead = NIL;
+        mSize = 0;
+    }
+
+    private ByteBuffer chunk(int node) {
+        return mChunks[node >>> CHUNK_SHIFT];
+    }
+
+    /**
+     * 结点在所在块中的字节偏移
+     */
+    private static int offset(int node) {
+        return (node & CHUNK_MASK) * NODE_SIZE;
+    }
+
+    private long keyOf(int node) {
+        return chunk(node).getLong(offset(node) + KEY_OFFSET);
+    }
+    private int leftOf(int node) {
+        return chunk(node).getInt(offset(node) + LEFT_OFFSET);
+    }
+    private int rightOf(int node) {
+        return chunk(node).getInt(offset(node) + RIGHT_OFFSET);
+    }
+    private int parentOf(int node) {
+        return node != NIL ? chunk(node).getInt(offset(node) + PARENT_OFFSET) & INDEX_MASK : NIL;
+    }
+    private void setKey(int node, long key) {
+        chunk(node).putLong(offset(node) + KEY_OFFSET, key);
+    }
+    private void setLeft(int node, int left) {
+        chunk(node).putInt(offset(node) + LEFT_OFFSET, left);
+    }
+    private void setRight(int node, int right) {
+        chunk(node).putInt(offset(node) + RIGHT_OFFSET, right);
+    }
+    private void setParent(int node, int parent) {
+        if (node != NIL) {
+            ByteBuffer chunk = chunk(node);
+            int i = offset(node) + PARENT_OFFSET;
+            chunk.putInt(i, (chunk.getInt(i) & RED_BIT) | parent);
+        }
+    }
+    private boolean isRed(int node) {
+        return node != NIL && chunk(node).getInt(offset(node) + PARENT_OFFSET) < 0;
+    }
+    private boolean isBlack(int node) {
+        return !isRed(node);
+    }
+    private void setBlack(int node) {
+        if (node != NIL) {
+            ByteBuffer chunk = chunk(node);
+            int i = offset(node) + PARENT_OFFSET;
+            chunk.putInt(i, chunk.getInt(i) & INDEX_MASK);
+        }
+    }
+    private void setRed(int node) {
+        if (node != NIL) {
+            ByteBuffer chunk = chunk(node);
+            int i = offset(node) + PARENT_OFFSET;
+            chunk.putInt(i, chunk.getInt(i) | RED_BIT);
+        }
+    }
+    private void setColor(int node, boolean red) {
+        if (red) {
+            setRed(node);
+        } else {
+            setBlack(node);
+        }
+    }
+
+    private void ensureOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("OffHeapRBTree is closed");
+        }
+    }
+
+    /**
+     * 检查调用者传进来的结点下标: 不能是NIL, 也不能超出已经分配过的下标。clear()之后旧的下标都失效。
+     */
+    private void checkNode(int node) {
+        ensureOpen();
+        if (node <= NIL || node >= mNext) {
+            throw new IllegalArgumentException("invalid node: " + node);
+        }
+    }
+
+    /**
+     * 分配一个结点：优先从空闲链表取，否则使用新下标，当前的块用完了再申请一块。
+     */
+    private int allocNode(long key) {
+        int node;
+        if (mFreeHead != NIL) {
+            node = mFreeHead;
+            mFreeHead = leftOf(node);
+        } else {
+            if (mNext == INDEX_MASK) {
+                throw new IllegalStateException("OffHeapRBTree is full");
+            }
+            if ((mNext >>> CHUNK_SHIFT) == mChunkCount) {
+                addChunk();
+            }
+            node = mNext++;
+        }
+        ByteBuffer chunk = chunk(node);
+        int i = offset(node);
+        chunk.putLong(i + KEY_OFFSET, key);
+        chunk.putInt(i + LEFT_OFFSET, NIL);
+        chunk.putInt(i + RIGHT_OFFSET, NIL);
+        chunk.putInt(i + PARENT_OFFSET, NIL);
+        return node;
+    }
+
+    private void freeNode(int node) {
+        setLeft(node, mFreeHead);
+        mFreeHead = node;
+    }
+
+    private void addChunk() {
+        if (mChunkCount == mChunks.length) {
+            ByteBuffer[] chunks = new ByteBuffer[mChunks.length << 1];
+            System.arraycopy(mChunks, 0, chunks, 0, mChunkCount);
+            mChunks = chunks;
+        }
+        mChunks[mChunkCount++] = ByteBuffer.allocateDirect(CHUNK_NODES * NODE_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    public long size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * 已申请的本地内存字节数
+     */
+    public long allocatedBytes() {
+        return (long) mChunkCount * CHUNK_NODES * NODE_SIZE;
+    }
+
+    /**
+     * 返回结点的键值
+     */
+    public long getKey(int node) {
+        checkNode(node);
+        return keyOf(node);
+    }
+
+    /**
+     * 查找键值为key的节点，没有则返回NIL
+     */
+    public int search(long key) {
+        ensureOpen();
+        int x = mRoot;
+        while (x != NIL) {
+            long k = keyOf(x);
+            if (key < k) {
+                x = leftOf(x);
+            } else if (key > k) {
+                x = rightOf(x);
+            } else {
+                return x;
+            }
+        }
+        return NIL;
+    }
+
+    public boolean contains(long key) {
+        return search(key) != NIL;
+    }
+
+    private int minimum(int tree) {
+        if (tree == NIL) {
+            return NIL;
+        }
+        int left;
+        while ((left = leftOf(tree)) != NIL) {
+            tree = left;
+        }
+        return tree;
+    }
+
+    private int maximum(int tree) {
+        if (tree == NIL) {
+            return NIL;
+        }
+        int right;
+        while ((right = rightOf(tree)) != NIL) {
+            tree = right;
+        }
+        return tree;
+    }
+
+    /**
+     * 返回最小键值；树为空时抛出NoSuchElementException。
+     */
+    public long minimum() {
+        ensureOpen();
+        int p = minimum(mRoot);
+        if (p == NIL)
+            throw new NoSuchElementException();
+
+        return keyOf(p);
+    }
+
+    /**
+     * 返回最大键值；树为空时抛出NoSuchElementException。
+     */
+    public long maximum() {
+        ensureOpen();
+        int p = maximum(mRoot);
+        if (p == NIL)
+            throw new NoSuchElementException();
+
+        return keyOf(p);
+    }
+
+    /*
+     * 找结点(x)的后继结点，没有则返回NIL
+     */
+    public int successor(int x) {
+        checkNode(x);
+        return nextNode(x);
+    }
+
+    private int nextNode(int x) {
+        if (rightOf(x) != NIL) {
+            return minimum(rightOf(x));
+        }
+
+        int y = parentOf(x);
+        while (y != NIL && x == rightOf(y)) {
+            x = y;
+            y = parentOf(y);
+        }
+        return y;
+    }
+
+    /*
+     * 找结点(x)的前驱结点，没有则返回NIL
+     */
+    public int predecessor(int x) {
+        checkNode(x);
+        if (leftOf(x) != NIL) {
+            return maximum(leftOf(x));
+        }
+
+        int y = parentOf(x);
+        while (y != NIL && x == leftOf(y)) {
+            x = y;
+            y = parentOf(y);
+        }
+        return y;
+    }
+
+    /*
+     * 对红黑树的节点(x)进行左旋转，见RBTree.leftRotate
+     */
+    private void leftRotate(int x) {
+        int y = rightOf(x);
+        int ly = leftOf(y);
+        int px = parentOf(x);
+
+        setRight(x, ly);
+        setParent(ly, x);
+
+        setParent(y, px);
+        if (px == NIL) {
+            mRoot = y;
+        } else if (leftOf(px) == x) {
+            setLeft(px, y);
+        } else {
+            setRight(px, y);
+        }
+
+        setLeft(y, x);
+        setParent(x, y);
+    }
+
+    /*
+     * 对红黑树的节点(y)进行右旋转，见RBTree.rightRotate
+     */
+    private void rightRotate(int y) {
+        int x = leftOf(y);
+        int rx = rightOf(x);
+        int py = parentOf(y);
+
+        setLeft(y, rx);
+        setParent(rx, y);
+
+        setParent(x, py);
+        if (py == NIL) {
+            mRoot = x;
+        } else if (leftOf(py) == y) {
+            setLeft(py, x);
+        } else {
+            setRight(py, x);
+        }
+
+        setRight(x, y);
+        setParent(y, x);
+    }
+
+    /**
+     * 红黑树插入修正函数，见RBTree.insertFixup
+     */
+    private void insertFixup(int node) {
+        int parent, gparent;
+        while ((parent = parentOf(node)) != NIL && isRed(parent)) {
+            gparent = parentOf(parent);
+
+            if (parent == leftOf(gparent)) {
+                int uncle = rightOf(gparent);
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (rightOf(parent) == node) {
+                    node = parent;
+                    leftRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                rightRotate(gparent);
+            } else {
+                int uncle = leftOf(gparent);
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (leftOf(parent) == node) {
+                    node = parent;
+                    rightRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                leftRotate(gparent);
+            }
+        }
+
+        setBlack(mRoot);
+    }
+
+    public void insert(long key) {
+        ensureOpen();
+        int y = NIL;
+        int x = mRoot;
+
+        // 找到相应的插入的位置y
+        while (x != NIL) {
+            y = x;
+            x = key < keyOf(x) ? leftOf(x) : rightOf(x);
+        }
+
+        int node = allocNode(key);
+        setParent(node, y);
+        if (y == NIL) {
+            mRoot = node;
+        } else if (key < keyOf(y)) {
+            setLeft(y, node);
+        } else {
+            setRight(y, node);
+        }
+
+        setRed(node);
+        mSize++;
+
+        insertFixup(node);
+    }
+
+    /*
+     * 删除结点(node)，被摘下的结点回收到空闲链表
+     */
+    private void remove(int node) {
+        int x, y, xParent;
+        if (leftOf(node) == NIL || rightOf(node) == NIL) {
+            y = node;
+        } else {
+            y = nextNode(node);
+        }
+
+        x = leftOf(y) != NIL ? leftOf(y) : rightOf(y);
+
+        xParent = parentOf(y);
+        setParent(x, xParent);
+
+        if (xParent == NIL) {
+            mRoot = x;
+        } else if (y == leftOf(xParent)) {
+            setLeft(xParent, x);
+        } else {
+            setRight(xParent, x);
+        }
+
+        if (y != node) {
+            setKey(node, keyOf(y));
+        }
+
+        boolean yBlack = isBlack(y);
+        freeNode(y);
+        mSize--;
+
+        if (yBlack) {
+            deleteFixup(x, xParent);
+        }
+    }
+
+    public void remove(long key) {
+        ensureOpen();
+        int node;
+        if ((node = search(key)) != NIL) {
+            remove(node);
+        }
+    }
+
+    /**
+     * 红黑树删除修正函数，见RBTree.deleteFixup
+     */
+    private void deleteFixup(int node, int parent) {
+        int brother;
+        while (isBlack(node) && node != mRoot) {
+            if (leftOf(parent) == node) {
+                brother = rightOf(parent);
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    leftRotate(parent);
+                    brother = rightOf(parent);
+                }
+                if (isBlack(leftOf(brother)) && isBlack(rightOf(brother))) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(rightOf(brother))) {
+                        setBlack(leftOf(brother));
+                        setRed(brother);
+                        rightRotate(brother);
+                        brother = rightOf(parent);
+                    }
+                    setColor(brother, isRed(parent));
+                    setBlack(parent);
+                    setBlack(rightOf(brother));
+                    leftRotate(parent);
+                    node = mRoot;
+                    break;
+                }
+            } else {
+                brother = leftOf(parent);
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    rightRotate(parent);
+                    brother = leftOf(parent);
+                }
+                if (isBlack(leftOf(brother)) && isBlack(rightOf(brother))) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(leftOf(brother))) {
+                        setBlack(rightOf(brother));
+                        setRed(brother);
+                        leftRotate(brother);
+                        brother = leftOf(parent);
+                    }
+                    setColor(brother, isRed(parent));
+                    setBlack(parent);
+                    setBlack(leftOf(brother));
+                    rightRotate(parent);
+                    node = mRoot;
+                    break;
+                }
+            }
+        }
+        setBlack(node);
+    }
+
+    /**
+     * 清空整棵树并丢掉所有块(本地内存在GC回收缓冲区时释放)。之后仍然可以继续插入，会重新申请内存。
+     */
+    public void clear() {
+        for (int i = 0; i < mChunkCount; i++) {
+            mChunks[i] = null;
+        }
+        reset();
+    }
+
+    /**
+     * 丢掉所有块，之后不能再修改这棵树。
+     */
+    @Override
+    public void close() {
+        if (!mClosed) {
+            clear();
+            mClosed = true;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package rbtree;
+
+import java.util.function.Consumer;
+
+/**
+ * 有序集合的公共接口。RBTree和BPlusTree都实现了它，可以按负载给每个索引选用不同的实现。
+ *
+ * 允许重复的键值：insert总是插入，相等的键值排在已有键值的后面；remove每次删掉一个。
+ */
+public interface OrderedSet<T extends Comparable<T>> {
+    void insert(T key);
+
+    /**
+     * 删除一个和key相等的键值，没有则什么都不做
+     */
+    void remove(T key);
+
+    boolean contains(T key);
+
+    /**
+     * 最小的键值, 为空则返回null
+     */
+    T minimum();
+
+    /**
+     * 最大的键值, 为空则返回null
+     */
+    T maximum();
+
+    /**
+     * 不小于key的最小键值, 没有则返回null
+     */
+    T ceiling(T key);
+
+    /**
+     * 大于key的最小键值, 没有则返回null
+     */
+    T higher(T key);
+
+    /**
+     * 不大于key的最大键值, 没有则返回null
+     */
+    T floor(T key);
+
+    /**
+     * 小于key的最大键值, 没有则返回null
+     */
+    T lower(T key);
+
+    int size();
+
+    boolean isEmpty();
+
+    void clear();
+
+    /**
+     * 按升序对每个键值执行action
+     */
+    void forEach(Consumer<? super T> action);
+
+    /**
+     * 按升序对[lo, hi)内的每个键值执行action, lo或hi为null表示该方向没有边界
+     */
+    void forEachInRange(T lo, T hi, Consumer<? super T> action);
+}
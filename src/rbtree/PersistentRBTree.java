@@ -0,0 +1,375 @@
+package rbtree;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 不可变(持久化)的红黑树。
+ *
+ * insert/remove不修改原来的树，而是返回一棵新树：只复制从根到修改位置这条路径上的O(log n)个结点，
+ * 其余的子树在新旧版本之间共享。结点没有父亲指针(有父亲指针就没法共享子树)，所以修正过程是
+ * 自底向上重建路径时顺便做的(Okasaki的插入和Kahrs的删除)。
+ * 任何一个版本一旦创建就不会再变，可以不加锁地在多个线程之间共享，见VersionedRBTree。
+ *
+ * 和RBTree一样允许重复的键值，相等的键值插在右边。
+ */
+public final class PersistentRBTree<T extends Comparable<T>> implements Iterable<T> {
+    private static final boolean RED = false;
+    private static final boolean BLACK = true;
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final PersistentRBTree EMPTY = new PersistentRBTree(null);
+
+    static final class RBTNode<T> {
+        final boolean color;
+        final int size;    // 以该结点为根的子树的结点个数
+        final T key;
+        final RBTNode<T> left;
+        final RBTNode<T> right;
+
+        RBTNode(boolean color, RBTNode<T> left, T key, RBTNode<T> right) {
+            this.color = color;
+            this.left = left;
+            this.key = key;
+            this.right = right;
+            this.size = sizeOf(left) + sizeOf(right) + 1;
+        }
+    }
+
+    private final RBTNode<T> mRoot; // 根节点
+
+    private PersistentRBTree(RBTNode<T> root) {
+        mRoot = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends Comparable<T>> PersistentRBTree<T> empty() {
+        return (PersistentRBTree<T>) EMPTY;
+    }
+
+    /**
+     * 根结点, 供同一个包里的测试检查结构
+     */
+    RBTNode<T> root() {
+        return mRoot;
+    }
+
+    private static int sizeOf(RBTNode<?> node) {
+        return node != null ? node.size : 0;
+    }
+    private static boolean isRed(RBTNode<?> node) {
+        return node != null && node.color == RED;
+    }
+    /**
+     * 非空的黑色结点
+     */
+    private static boolean isBlackNode(RBTNode<?> node) {
+        return node != null && node.color == BLACK;
+    }
+    private static <T> RBTNode<T> node(boolean color, RBTNode<T> left, T key, RBTNode<T> right) {
+        return new RBTNode<T>(color, left, key, right);
+    }
+    private static <T> RBTNode<T> blacken(RBTNode<T> node) {
+        return node == null || node.color == BLACK ? node : node(BLACK, node.left, node.key, node.right);
+    }
+    private static <T> RBTNode<T> redden(RBTNode<T> node) {
+        return node(RED, node.left, node.key, node.right);
+    }
+
+    public int size() {
+        return sizeOf(mRoot);
+    }
+
+    public boolean isEmpty() {
+        return mRoot == null;
+    }
+
+    /**
+     * 查找和key相等的键值, 没有则返回null
+     */
+    public T search(T key) {
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            int cmp = key.compareTo(x.key);
+            if (cmp < 0) {
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                return x.key;
+            }
+        }
+        return null;
+    }
+
+    public boolean contains(T key) {
+        return search(key) != null;
+    }
+
+    public T minimum() {
+        RBTNode<T> x = mRoot;
+        if (x == null) {
+            return null;
+        }
+        while (x.left != null) {
+            x = x.left;
+        }
+        return x.key;
+    }
+
+    public T maximum() {
+        RBTNode<T> x = mRoot;
+        if (x == null) {
+            return null;
+        }
+        while (x.right != null) {
+            x = x.right;
+        }
+        return x.key;
+    }
+
+    /**
+     * 大于等于key的最小键值, 没有则返回null
+     */
+    public T ceiling(T key) {
+        T best = null;
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            if (key.compareTo(x.key) <= 0) {
+                best = x.key;
+                x = x.left;
+            } else {
+                x = x.right;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 小于等于key的最大键值, 没有则返回null
+     */
+    public T floor(T key) {
+        T best = null;
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            if (key.compareTo(x.key) >= 0) {
+                best = x.key;
+                x = x.right;
+            } else {
+                x = x.left;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 小于key的键值个数
+     */
+    public int rank(T key) {
+        int rank = 0;
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            if (key.compareTo(x.key) <= 0) {
+                x = x.left;
+            } else {
+                rank += sizeOf(x.left) + 1;
+                x = x.right;
+            }
+        }
+        return rank;
+    }
+
+    // ---------------------------------------- 插入
+
+    /**
+     * 返回插入key之后的新树, 原树不变
+     */
+    public PersistentRBTree<T> insert(T key) {
+        return new PersistentRBTree<T>(blacken(ins(mRoot, key)));
+    }
+
+    private static <T extends Comparable<T>> RBTNode<T> ins(RBTNode<T> t, T key) {
+        if (t == null) {
+            return node(RED, null, key, null);
+        }
+        if (key.compareTo(t.key) < 0) {
+            return t.color == BLACK ? balance(ins(t.left, key), t.key, t.right)
+                    : node(RED, ins(t.left, key), t.key, t.right);
+        }
+        return t.color == BLACK ? balance(t.left, t.key, ins(t.right, key))
+                : node(RED, t.left, t.key, ins(t.right, key));
+    }
+
+    /**
+     * 在黑色结点的位置上消除红-红冲突：四种红-红的形状都重建成"红色的根+两个黑色的孩子"。
+     * 左右孩子都是红色时直接把两个孩子染黑、根染红(删除时需要这种情况)。
+     */
+    private static <T> RBTNode<T> balance(RBTNode<T> l, T key, RBTNode<T> r) {
+        if (isRed(l) && isRed(r)) {
+            return node(RED, blacken(l), key, blacken(r));
+        }
+        if (isRed(l)) {
+            if (isRed(l.left)) {
+                return node(RED, blacken(l.left), l.key, node(BLACK, l.right, key, r));
+            }
+            if (isRed(l.right)) {
+                return node(RED, node(BLACK, l.left, l.key, l.right.left), l.right.key,
+                        node(BLACK, l.right.right, key, r));
+            }
+        }
+        if (isRed(r)) {
+            if (isRed(r.right)) {
+                return node(RED, node(BLACK, l, key, r.left), r.key, blacken(r.right));
+            }
+            if (isRed(r.left)) {
+                return node(RED, node(BLACK, l, key, r.left.left), r.left.key,
+                        node(BLACK, r.left.right, r.key, r.right));
+            }
+        }
+        return node(BLACK, l, key, r);
+    }
+
+    // ---------------------------------------- 删除
+
+    /**
+     * 返回删除一个等于key的键值之后的新树, key不存在时返回this
+     */
+    public PersistentRBTree<T> remove(T key) {
+        if (!contains(key)) {
+            return this;
+        }
+        RBTNode<T> root = blacken(del(mRoot, key));
+        return root == null ? PersistentRBTree.<T>empty() : new PersistentRBTree<T>(root);
+    }
+
+    private static <T extends Comparable<T>> RBTNode<T> del(RBTNode<T> t, T key) {
+        if (t == null) {
+            return null;
+        }
+        int cmp = key.compareTo(t.key);
+        if (cmp < 0) {
+            // 从黑色子树中删除会让左边的黑高减一, 交给balanceLeft修正
+            return isBlackNode(t.left) ? balanceLeft(del(t.left, key), t.key, t.right)
+                    : node(RED, del(t.left, key), t.key, t.right);
+        }
+        if (cmp > 0) {
+            return isBlackNode(t.right) ? balanceRight(t.left, t.key, del(t.right, key))
+                    : node(RED, t.left, t.key, del(t.right, key));
+        }
+        return append(t.left, t.right);
+    }
+
+    /**
+     * 左子树的黑高比右子树少一时重新平衡
+     */
+    private static <T> RBTNode<T> balanceLeft(RBTNode<T> l, T key, RBTNode<T> r) {
+        if (isRed(l)) {
+            return node(RED, blacken(l), key, r);
+        }
+        if (isBlackNode(r)) {
+            return balance(l, key, redden(r));
+        }
+        if (isRed(r) && isBlackNode(r.left)) {
+            return node(RED, node(BLACK, l, key, r.left.left), r.left.key,
+                    balance(r.left.right, r.key, redden(r.right)));
+        }
+        throw new IllegalStateException("invariant violated");
+    }
+
+    /**
+     * 右子树的黑高比左子树少一时重新平衡
+     */
+    private static <T> RBTNode<T> balanceRight(RBTNode<T> l, T key, RBTNode<T> r) {
+        if (isRed(r)) {
+            return node(RED, l, key, blacken(r));
+        }
+        if (isBlackNode(l)) {
+            return balance(redden(l), key, r);
+        }
+        if (isRed(l) && isBlackNode(l.right)) {
+            return node(RED, balance(redden(l.left), l.key, l.right.left), l.right.key,
+                    node(BLACK, l.right.right, key, r));
+        }
+        throw new IllegalStateException("invariant violated");
+    }
+
+    /**
+     * 合并被删除结点的左右子树(左边的键值都不大于右边的)
+     */
+    private static <T> RBTNode<T> append(RBTNode<T> a, RBTNode<T> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (isRed(a) && isRed(b)) {
+            RBTNode<T> bc = append(a.right, b.left);
+            if (isRed(bc)) {
+                return node(RED, node(RED, a.left, a.key, bc.left), bc.key, node(RED, bc.right, b.key, b.right));
+            }
+            return node(RED, a.left, a.key, node(RED, bc, b.key, b.right));
+        }
+        if (!isRed(a) && !isRed(b)) {
+            RBTNode<T> bc = append(a.right, b.left);
+            if (isRed(bc)) {
+                return node(RED, node(BLACK, a.left, a.key, bc.left), bc.key, node(BLACK, bc.right, b.key, b.right));
+            }
+            return balanceLeft(a.left, a.key, node(BLACK, bc, b.key, b.right));
+        }
+        if (isRed(b)) {
+            return node(RED, append(a, b.left), b.key, b.right);
+        }
+        return node(RED, a.left, a.key, append(a.right, b));
+    }
+
+    // ---------------------------------------- 遍历
+
+    /**
+     * 中序遍历。没有父亲指针，所以用一个按树高分配的栈。
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new TreeIterator<T>(mRoot);
+    }
+
+    private static final class TreeIterator<T> implements Iterator<T> {
+        private final RBTNode<?>[] mStack;
+        private int mTop;
+
+        TreeIterator(RBTNode<T> root) {
+            // 红黑树的高度不超过2*log2(n+1)
+            mStack = new RBTNode<?>[2 * (32 - Integer.numberOfLeadingZeros(sizeOf(root))) + 1];
+            pushLeft(root);
+        }
+
+        private void pushLeft(RBTNode<T> x) {
+            while (x != null) {
+                mStack[mTop++] = x;
+                x = x.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mTop > 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (mTop == 0) {
+                throw new NoSuchElementException();
+            }
+            RBTNode<T> x = (RBTNode<T>) mStack[--mTop];
+            mStack[mTop] = null;
+            pushLeft(x.right);
+            return x.key;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,577 @@
+package rbtree;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * 多重集版本的红黑树：每个不同的键值只有一个结点，结点里记着它出现的次数。
+ *
+ * RBTree允许重复的键值，但每次插入都是一个新结点，同一个键值重复一百万次就是一百万个结点，
+ * 树也跟着变高；这里重复的插入只是把次数加一，结点个数等于不同键值的个数。
+ * 每个结点还记着子树中所有键值出现次数的和(weight)，所以按次数的rank、select和区间计数都是O(log n)。
+ * 旋转、插入修正和删除修正与RBTree相同，旋转时顺便维护weight。
+ */
+public class RBMultiset<T extends Comparable<T>> {
+    private RBTNode<T> mRoot; // 根节点
+    private int mDistinct;    // 结点个数, 即不同键值的个数
+
+    private static final boolean RED = false;
+    private static final boolean BLACK = true;
+
+    static final class RBTNode<T> {
+        boolean color;
+        int count;     // 键值出现的次数, 总是大于0
+        long weight;   // 以该结点为根的子树中所有结点count的和
+        T key;
+        RBTNode<T> left;
+        RBTNode<T> right;
+        RBTNode<T> parent;
+
+        RBTNode(T key, int count, RBTNode<T> parent) {
+            this.color = BLACK;
+            this.key = key;
+            this.count = count;
+            this.weight = count;
+            this.parent = parent;
+        }
+
+        @Override
+        public String toString() {
+            return key + "x" + count;
+        }
+    }
+
+    public RBMultiset() {
+        mRoot = null;
+    }
+
+    /**
+     * 根结点, 供同一个包里的测试检查结构
+     */
+    RBTNode<T> root() {
+        return mRoot;
+    }
+
+    private static <T> RBTNode<T> parentOf(RBTNode<T> node) {
+        return node != null ? node.parent : null;
+    }
+    private static <T> boolean colorOf(RBTNode<T> node) {
+        return node != null ? node.color : BLACK;
+    }
+    private static <T> boolean isRed(RBTNode<T> node) {
+        return node != null && node.color == RED;
+    }
+    private static <T> boolean isBlack(RBTNode<T> node) {
+        return !isRed(node);
+    }
+    private static <T> void setBlack(RBTNode<T> node) {
+        if (node != null)
+            node.color = BLACK;
+    }
+    private static <T> void setRed(RBTNode<T> node) {
+        if (node != null)
+            node.color = RED;
+    }
+    private static <T> void setColor(RBTNode<T> node, boolean color) {
+        if (node != null)
+            node.color = color;
+    }
+    private static <T> long weightOf(RBTNode<T> node) {
+        return node != null ? node.weight : 0;
+    }
+
+    private static <T> RBTNode<T> minimum(RBTNode<T> tree) {
+        if (tree == null) {
+            return null;
+        }
+        while (tree.left != null) {
+            tree = tree.left;
+        }
+        return tree;
+    }
+
+    private static <T> RBTNode<T> maximum(RBTNode<T> tree) {
+        if (tree == null) {
+            return null;
+        }
+        while (tree.right != null) {
+            tree = tree.right;
+        }
+        return tree;
+    }
+
+    /*
+     * 找结点(x)的后继结点
+     */
+    private static <T> RBTNode<T> successor(RBTNode<T> x) {
+        if (x.right != null) {
+            return minimum(x.right);
+        }
+        RBTNode<T> y = x.parent;
+        while (y != null && x == y.right) {
+            x = y;
+            y = y.parent;
+        }
+        return y;
+    }
+
+    /*
+     * 对红黑树的节点(x)进行左旋转，见RBTree.leftRotate
+     */
+    private void leftRotate(RBTNode<T> x) {
+        RBTNode<T> y = x.right;
+
+        x.right = y.left;
+        if (y.left != null) {
+            y.left.parent = x;
+        }
+
+        y.parent = x.parent;
+        if (x.parent == null) {
+            mRoot = y;
+        } else if (x.parent.left == x) {
+            x.parent.left = y;
+        } else {
+            x.parent.right = y;
+        }
+
+        y.left = x;
+        x.parent = y;
+
+        // y接替了x原来的位置，x重新计算
+        y.weight = x.weight;
+        x.weight = weightOf(x.left) + weightOf(x.right) + x.count;
+    }
+
+    /*
+     * 对红黑树的节点(y)进行右旋转，见RBTree.rightRotate
+     */
+    private void rightRotate(RBTNode<T> y) {
+        RBTNode<T> x = y.left;
+
+        y.left = x.right;
+        if (x.right != null) {
+            x.right.parent = y;
+        }
+
+        x.parent = y.parent;
+        if (y.parent == null) {
+            mRoot = x;
+        } else if (y.parent.left == y) {
+            y.parent.left = x;
+        } else {
+            y.parent.right = x;
+        }
+
+        x.right = y;
+        y.parent = x;
+
+        // x接替了y原来的位置，y重新计算
+        x.weight = y.weight;
+        y.weight = weightOf(y.left) + weightOf(y.right) + y.count;
+    }
+
+    /**
+     * 红黑树插入修正函数，见RBTree.insertFixup
+     */
+    private void insertFixup(RBTNode<T> node) {
+        RBTNode<T> parent, gparent;
+        while ((parent = parentOf(node)) != null && isRed(parent)) {
+            gparent = parentOf(parent);
+
+            if (parent == gparent.left) {
+                RBTNode<T> uncle = gparent.right;
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (parent.right == node) {
+                    node = parent;
+                    leftRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                rightRotate(gparent);
+            } else {
+                RBTNode<T> uncle = gparent.left;
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (parent.left == node) {
+                    node = parent;
+                    rightRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                leftRotate(gparent);
+            }
+        }
+
+        setBlack(mRoot);
+    }
+
+    /**
+     * 红黑树删除修正函数，见RBTree.deleteFixup
+     */
+    private void deleteFixup(RBTNode<T> node, RBTNode<T> parent) {
+        RBTNode<T> brother;
+        while (isBlack(node) && node != mRoot) {
+            if (parent.left == node) {
+                brother = parent.right;
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    leftRotate(parent);
+                    brother = parent.right;
+                }
+                if (isBlack(brother.left) && isBlack(brother.right)) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(brother.right)) {
+                        setBlack(brother.left);
+                        setRed(brother);
+                        rightRotate(brother);
+                        brother = parent.right;
+                    }
+                    setColor(brother, colorOf(parent));
+                    setBlack(parent);
+                    setBlack(brother.right);
+                    leftRotate(parent);
+                    node = mRoot;
+                    break;
+                }
+            } else {
+                brother = parent.left;
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    rightRotate(parent);
+                    brother = parent.left;
+                }
+                if (isBlack(brother.left) && isBlack(brother.right)) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(brother.left)) {
+                        setBlack(brother.right);
+                        setRed(brother);
+                        leftRotate(brother);
+                        brother = parent.left;
+                    }
+                    setColor(brother, colorOf(parent));
+                    setBlack(parent);
+                    setBlack(brother.left);
+                    rightRotate(parent);
+                    node = mRoot;
+                    break;
+                }
+            }
+        }
+        setBlack(node);
+    }
+
+    /**
+     * 从x到根，子树的weight都加上delta
+     */
+    private static <T> void addWeight(RBTNode<T> x, long delta) {
+        for (; x != null; x = x.parent) {
+            x.weight += delta;
+        }
+    }
+
+    /*
+     * 删除结点(node)，用后继结点顶替node的位置，见RBTree.remove
+     */
+    private void deleteEntry(RBTNode<T> node) {
+        RBTNode<T> child, parent;
+        boolean color;
+
+        if (node.left != null && node.right != null) {
+            RBTNode<T> replace = minimum(node.right);
+
+            if (node.parent != null) {
+                if (node.parent.left == node) {
+                    node.parent.left = replace;
+                } else {
+                    node.parent.right = replace;
+                }
+            } else {
+                mRoot = replace;
+            }
+
+            child = replace.right;
+            parent = replace.parent;
+            color = replace.color;
+
+            if (parent == node) {
+                parent = replace;
+            } else {
+                if (child != null) {
+                    child.parent = parent;
+                }
+                parent.left = child;
+
+                replace.right = node.right;
+                node.right.parent = replace;
+            }
+
+            replace.parent = node.parent;
+            replace.color = node.color;
+            replace.left = node.left;
+            node.left.parent = replace;
+        } else {
+            child = node.left != null ? node.left : node.right;
+            parent = node.parent;
+            color = node.color;
+
+            if (child != null) {
+                child.parent = parent;
+            }
+
+            if (parent == null) {
+                mRoot = child;
+            } else if (parent.left == node) {
+                parent.left = child;
+            } else {
+                parent.right = child;
+            }
+        }
+
+        // 从真正摘掉结点的位置到根重新计算weight, replace在这条路径上, 也一起算对了
+        for (RBTNode<T> p = parent; p != null; p = p.parent) {
+            p.weight = weightOf(p.left) + weightOf(p.right) + p.count;
+        }
+        node.left = node.right = node.parent = null;
+        mDistinct--;
+
+        if (color == BLACK) {
+            deleteFixup(child, parent);
+        }
+    }
+
+    private RBTNode<T> getEntry(T key) {
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            int cmp = key.compareTo(x.key);
+            if (cmp < 0) {
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                return x;
+            }
+        }
+        return null;
+    }
+
+    // ---------------------------------------- 修改
+
+    /**
+     * 加入一个key，返回加入之前的次数
+     */
+    public int add(T key) {
+        return add(key, 1);
+    }
+
+    /**
+     * 加入occurrences个key，返回加入之前的次数。次数超过Integer.MAX_VALUE时抛出IllegalArgumentException。
+     */
+    public int add(T key, int occurrences) {
+        if (occurrences < 0) {
+            throw new IllegalArgumentException("occurrences: " + occurrences);
+        }
+        RBTNode<T> y = null;
+        RBTNode<T> x = mRoot;
+        int cmp = 0;
+        while (x != null) {
+            y = x;
+            cmp = key.compareTo(x.key);
+            if (cmp < 0) {
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                int oldCount = x.count;
+                if (occurrences > Integer.MAX_VALUE - oldCount) {
+                    throw new IllegalArgumentException("too many occurrences: " + oldCount + " + " + occurrences);
+                }
+                x.count += occurrences;
+                addWeight(x, occurrences);
+                return oldCount;
+            }
+        }
+        if (occurrences == 0) {
+            return 0;
+        }
+
+        RBTNode<T> node = new RBTNode<T>(key, occurrences, y);
+        if (y == null) {
+            mRoot = node;
+        } else if (cmp < 0) {
+            y.left = node;
+        } else {
+            y.right = node;
+        }
+        addWeight(y, occurrences);
+        mDistinct++;
+        node.color = RED;
+        insertFixup(node);
+        return 0;
+    }
+
+    /**
+     * 去掉一个key，key不存在时返回false
+     */
+    public boolean removeOne(T key) {
+        return remove(key, 1) > 0;
+    }
+
+    /**
+     * 去掉occurrences个key(不够就全部去掉)，返回去掉之前的次数
+     */
+    public int remove(T key, int occurrences) {
+        if (occurrences < 0) {
+            throw new IllegalArgumentException("occurrences: " + occurrences);
+        }
+        RBTNode<T> x = getEntry(key);
+        if (x == null) {
+            return 0;
+        }
+        int oldCount = x.count;
+        if (occurrences < oldCount) {
+            x.count -= occurrences;
+            addWeight(x, -occurrences);
+        } else {
+            deleteEntry(x);
+        }
+        return oldCount;
+    }
+
+    /**
+     * 去掉所有的key，返回去掉的个数
+     */
+    public int removeAll(T key) {
+        return remove(key, Integer.MAX_VALUE);
+    }
+
+    public void clear() {
+        mRoot = null;
+        mDistinct = 0;
+    }
+
+    // ---------------------------------------- 查询
+
+    /**
+     * key出现的次数, 不存在时为0
+     */
+    public int count(T key) {
+        RBTNode<T> x = getEntry(key);
+        return x != null ? x.count : 0;
+    }
+
+    public boolean contains(T key) {
+        return getEntry(key) != null;
+    }
+
+    /**
+     * 所有键值出现次数的和, O(1)
+     */
+    public long size() {
+        return weightOf(mRoot);
+    }
+
+    /**
+     * 不同键值的个数, 即结点个数
+     */
+    public int distinctSize() {
+        return mDistinct;
+    }
+
+    public boolean isEmpty() {
+        return mRoot == null;
+    }
+
+    public T minimum() {
+        RBTNode<T> p = minimum(mRoot);
+        return p != null ? p.key : null;
+    }
+
+    public T maximum() {
+        RBTNode<T> p = maximum(mRoot);
+        return p != null ? p.key : null;
+    }
+
+    /**
+     * 小于key的键值个数(按出现次数计), O(log n)
+     */
+    public long rank(T key) {
+        long rank = 0;
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            int cmp = key.compareTo(x.key);
+            if (cmp <= 0) {
+                if (cmp == 0) {
+                    return rank + weightOf(x.left);
+                }
+                x = x.left;
+            } else {
+                rank += weightOf(x.left) + x.count;
+                x = x.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * 第k小(从0开始, 按出现次数计)的键值, O(log n)
+     */
+    public T select(long k) {
+        if (k < 0 || k >= size()) {
+            throw new IndexOutOfBoundsException("k: " + k + ", size: " + size());
+        }
+        RBTNode<T> x = mRoot;
+        for (;;) {
+            long left = weightOf(x.left);
+            if (k < left) {
+                x = x.left;
+            } else if (k < left + x.count) {
+                return x.key;
+            } else {
+                k -= left + x.count;
+                x = x.right;
+            }
+        }
+    }
+
+    /**
+     * [lo, hi)区间内的键值个数(按出现次数计), O(log n)
+     */
+    public long countRange(T lo, T hi) {
+        if (lo.compareTo(hi) >= 0) {
+            return 0;
+        }
+        return rank(hi) - rank(lo);
+    }
+
+    /**
+     * 按键值升序遍历每个不同的键值和它出现的次数。沿父亲指针走, 不递归。遍历过程中不能修改。
+     */
+    public void forEachEntry(ObjIntConsumer<? super T> action) {
+        for (RBTNode<T> x = minimum(mRoot); x != null; x = successor(x)) {
+            action.accept(x.key, x.count);
+        }
+    }
+}
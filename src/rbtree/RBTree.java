@@ -1,17 +1,52 @@
 package rbtree;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by linyo_000 on 2016/11/21.
  */
-public class RBTree<T extends Comparable<T>> {
+public class RBTree<T extends Comparable<T>> implements OrderedSet<T> {
     private RBTNode<T> mRoot; // 根节点
+    private int mModCount;    // 结构修改次数, 迭代器用来检测并发修改
+    private boolean mDuplicates; // 是否插入过重复的键值, 只在clear()时复位
+    private RBTreeMetrics mMetrics; // 统计, null表示不统计
+    private int mOpDepth;     // 开启统计时, 当前写操作的下降深度
+    private int mOpRotations; // 开启统计时, 当前写操作的旋转次数
+    private int mOpFixups;    // 开启统计时, 当前写操作的修正循环次数
+    private int mOpCompares;  // 开启统计时, 当前操作调用compareTo的次数
+    private RBTNode<T> mLeftmost;  // 最小的结点, 空树时为null
+    private RBTNode<T> mRightmost; // 最大的结点, 空树时为null
+    private boolean mUseFinger; // 是否从上次访问的结点附近开始查找和插入
+    private RBTNode<T> mFinger; // 上次插入或查到的结点, 没有时为null
+    private RBTNode<T> mGapLow;  // locateGap的结果: 相邻的两个结点,
+    private RBTNode<T> mGapHigh; // mGapLow.key <= key < mGapHigh.key, null表示到头了
+    private int mCapacity;        // 有界模式的容量, 0表示不限
+    private Eviction mEviction;   // 有界模式下满了之后淘汰哪一端
+
+    private static final int FINGER_STEPS = 8; // 从finger出发最多走几步, 走不到就从根开始
 
     private static final boolean RED = false;
     private static final boolean BLACK = true;
 
     public class RBTNode<T extends Comparable<T>> {
         boolean color;
+        int size;    // 以该结点为根的子树的结点个数
         T key;
         RBTNode<T> left;
         RBTNode<T> right;
@@ -23,6 +58,7 @@ public class RBTree<T extends Comparable<T>> {
             this.left = left;
             this.right = right;
             this.parent = parent;
+            this.size = 1;
         }
 
         public T getKey() {
@@ -45,6 +81,13 @@ public class RBTree<T extends Comparable<T>> {
         mRoot = null;
     }
 
+    /**
+     * 根节点, 供同一个包里的并发包装类直接在结点上做乐观读
+     */
+    RBTNode<T> root() {
+        return mRoot;
+    }
+
     private RBTNode<T> parentOf(RBTNode<T> node) {
         return node!=null ? node.parent : null;
     }
@@ -73,71 +116,144 @@ public class RBTree<T extends Comparable<T>> {
         if (node!=null)
             node.color = color;
     }
+    private int sizeOf(RBTNode<T> node) {
+        return node!=null ? node.size : 0;
+    }
+
+    /**
+     * 遍历时的回调, 返回false则提前结束遍历。遍历过程中不能修改树。
+     */
+    public interface Visitor<T> {
+        boolean visit(T key);
+    }
+
+    /*
+     * 三种遍历都沿着孩子和父亲指针走, 不递归也不用栈, 只需要O(1)的额外空间, 不分配内存。
+     */
+
+    /**
+     * 前序遍历中x的下一个结点
+     */
+    private RBTNode<T> preOrderNext(RBTNode<T> x) {
+        if (x.left != null) {
+            return x.left;
+        }
+        if (x.right != null) {
+            return x.right;
+        }
+        // 叶子: 往上找第一个"从左边上来并且有右孩子"的祖先, 下一个是它的右孩子
+        for (RBTNode<T> p = x.parent; p != null; x = p, p = p.parent) {
+            if (x == p.left && p.right != null) {
+                return p.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 后序遍历中以tree为根的子树的第一个结点: 一直往下走, 优先向左
+     */
+    private RBTNode<T> postOrderFirst(RBTNode<T> tree) {
+        if (tree == null) {
+            return null;
+        }
+        while (tree.left != null || tree.right != null) {
+            tree = tree.left != null ? tree.left : tree.right;
+        }
+        return tree;
+    }
 
     /**
-     * 前序遍历
+     * 后序遍历中x的下一个结点
      */
-    private void preOrder(RBTNode<T> tree) {
-        if (tree != null) {
-            System.out.print(tree.key + " ");
-            preOrder(tree.left);
-            preOrder(tree.right);
+    private RBTNode<T> postOrderNext(RBTNode<T> x) {
+        RBTNode<T> p = x.parent;
+        if (p != null && x == p.left && p.right != null) {
+            return postOrderFirst(p.right);
         }
+        return p;
+    }
+
+    /**
+     * 前序遍历, 全部访问完返回true, 被visitor提前结束返回false
+     */
+    public boolean preOrder(Visitor<? super T> visitor) {
+        for (RBTNode<T> x = mRoot; x != null; x = preOrderNext(x)) {
+            if (!visitor.visit(x.key)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public void preOrder() {
-        preOrder(mRoot);
+        preOrder(PRINTER);
     }
 
     /**
-     * 中序遍历
+     * 中序遍历(升序), 全部访问完返回true, 被visitor提前结束返回false
      */
-    private void midOrder(RBTNode<T> tree) {
-        if (tree != null) {
-            midOrder(tree.left);
-            System.out.print(tree.key + " ");
-            midOrder(tree.right);
+    public boolean midOrder(Visitor<? super T> visitor) {
+        for (RBTNode<T> x = minimum(mRoot); x != null; x = successor(x)) {
+            if (!visitor.visit(x.key)) {
+                return false;
+            }
         }
+        return true;
     }
 
     public void midOrder() {
-        midOrder(mRoot);
+        midOrder(PRINTER);
     }
 
     /**
-     * 后序遍历
+     * 后序遍历, 全部访问完返回true, 被visitor提前结束返回false
      */
-    private void postOrder(RBTNode<T> tree) {
-        if (tree != null) {
-            postOrder(tree.left);
-            postOrder(tree.right);
-            System.out.print(tree.key + " ");
+    public boolean postOrder(Visitor<? super T> visitor) {
+        for (RBTNode<T> x = postOrderFirst(mRoot); x != null; x = postOrderNext(x)) {
+            if (!visitor.visit(x.key)) {
+                return false;
+            }
         }
+        return true;
     }
 
     public void postOrder() {
-        postOrder(mRoot);
+        postOrder(PRINTER);
     }
 
-    /*
-     * (递归实现)查找"红黑树x"中键值为key的节点
+    /**
+     * 按升序对每个键值执行action
      */
-    private RBTNode<T> search(RBTNode<T> x, T key) {
-        if (x == null) {
-            return null;
+    public void forEach(Consumer<? super T> action) {
+        for (RBTNode<T> x = minimum(mRoot); x != null; x = successor(x)) {
+            action.accept(x.key);
         }
-        int cmp = key.compareTo(x.key);
-        if (cmp < 0) {
-            return search(x.left, key);
-        } else if (cmp > 0) {
-            return search(x.right, key);
-        } else {
-            return x;
+    }
+
+    /**
+     * 按升序对[lo, hi)内的每个键值执行action, lo或hi为null表示该方向没有边界
+     */
+    public void forEachInRange(T lo, T hi, Consumer<? super T> action) {
+        Cursor c = cursor(lo, hi);
+        while (c.next()) {
+            action.accept(c.key());
         }
     }
 
+    private static final Visitor<Object> PRINTER = new Visitor<Object>() {
+        @Override
+        public boolean visit(Object key) {
+            System.out.print(key + " ");
+            return true;
+        }
+    };
+
+    /**
+     * 查找键值为key的节点, 和iteraticeSearch相同(原来的递归实现已经去掉)
+     */
     public RBTNode<T> search(T key) {
-        return search(mRoot, key);
+        return iteraticeSearch(key);
     }
 
     /**
@@ -158,7 +274,84 @@ public class RBTree<T extends Comparable<T>> {
     }
 
     public RBTNode<T> iteraticeSearch(T key) {
-        return iteraticeSearch(mRoot, key);
+        RBTNode<T> x;
+        if (mMetrics != null) {
+            mOpCompares = 0;
+        }
+        if (mFinger != null && locateGap(key)) {
+            x = mGapLow != null && mGapLow.key.compareTo(key) == 0 ? mGapLow : null;
+            if (mMetrics != null) {
+                mMetrics.recordSearch(mOpDepth, mOpCompares + (mGapLow != null ? 1 : 0));
+            }
+        } else if (mMetrics != null) {
+            x = searchWithMetrics(key);
+        } else {
+            x = iteraticeSearch(mRoot, key);
+        }
+        if (x != null && mUseFinger) {
+            mFinger = x;
+        }
+        return x;
+    }
+
+    /**
+     * 开启或关闭finger：开启后记住上次插入或查到的结点，下一次查找、插入先从它出发沿中序走几步，
+     * 键值就在附近时(例如大致按顺序到达的时间戳)不用从根往下找。走FINGER_STEPS步还没找到就从根开始。
+     */
+    public void setFingerSearch(boolean enabled) {
+        mUseFinger = enabled;
+        mFinger = null;
+    }
+
+    public boolean isFingerSearch() {
+        return mUseFinger;
+    }
+
+    /**
+     * 从mFinger出发沿后继或前驱走，找到相邻的两个结点mGapLow、mGapHigh，使mGapLow.key <= key < mGapHigh.key。
+     * 找到返回true，走的步数放在mOpDepth中；走了FINGER_STEPS步还没找到返回false。
+     * 开启统计时，不管找没找到，调用compareTo的次数都加到mOpCompares上。
+     */
+    private boolean locateGap(T key) {
+        RBTNode<T> low, high;
+        int steps = 1;
+        int compares = 1;
+        if (key.compareTo(mFinger.key) >= 0) {
+            low = mFinger;
+            high = successor(low);
+            for (; high != null; steps++) {
+                compares++;
+                if (key.compareTo(high.key) < 0) {
+                    break;
+                }
+                if (steps == FINGER_STEPS) {
+                    countCompares(compares);
+                    return false;
+                }
+                low = high;
+                high = successor(high);
+            }
+        } else {
+            high = mFinger;
+            low = predecessor(high);
+            for (; low != null; steps++) {
+                compares++;
+                if (key.compareTo(low.key) >= 0) {
+                    break;
+                }
+                if (steps == FINGER_STEPS) {
+                    countCompares(compares);
+                    return false;
+                }
+                high = low;
+                low = predecessor(low);
+            }
+        }
+        countCompares(compares);
+        mGapLow = low;
+        mGapHigh = high;
+        mOpDepth = steps;
+        return true;
     }
 
     /**
@@ -174,12 +367,11 @@ public class RBTree<T extends Comparable<T>> {
         return tree;
     }
 
+    /**
+     * 最小的键值, O(1)
+     */
     public T minimum() {
-        RBTNode<T> p = minimum(mRoot);
-        if (p != null)
-            return p.key;
-
-        return null;
+        return mLeftmost != null ? mLeftmost.key : null;
     }
 
     /*
@@ -197,12 +389,168 @@ public class RBTree<T extends Comparable<T>> {
         return tree;
     }
 
+    /**
+     * 最大的键值, O(1)
+     */
     public T maximum() {
-        RBTNode<T> p = maximum(mRoot);
-        if (p != null)
-            return p.key;
+        return mRightmost != null ? mRightmost.key : null;
+    }
 
-        return null;
+    /**
+     * 整棵树换了根之后(批量建树、分割、合并等)重新找最小和最大的结点, O(log n)。finger可能已经不在树中，一起丢掉。
+     */
+    private void resetEnds() {
+        mLeftmost = minimum(mRoot);
+        mRightmost = maximum(mRoot);
+        mFinger = null;
+    }
+
+    /**
+     * 结点个数, O(1)
+     */
+    public int size() {
+        return sizeOf(mRoot);
+    }
+
+    public boolean isEmpty() {
+        return mRoot == null;
+    }
+
+    /**
+     * 小于key的键值个数, O(log n)
+     */
+    public int rank(T key) {
+        int rank = 0;
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            if (key.compareTo(x.key) <= 0) {
+                x = x.left;
+            } else {
+                rank += sizeOf(x.left) + 1;
+                x = x.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * 第k小(从0开始)的键值, O(log n)。百分位数可以用select((int) (p * (size() - 1)))求得。
+     */
+    public T select(int k) {
+        if (k < 0 || k >= size()) {
+            throw new IndexOutOfBoundsException("k: " + k + ", size: " + size());
+        }
+        return selectNode(k).key;
+    }
+
+    /**
+     * [lo, hi)区间内的键值个数, O(log n)
+     */
+    public int countRange(T lo, T hi) {
+        if (lo.compareTo(hi) >= 0) {
+            return 0;
+        }
+        return rank(hi) - rank(lo);
+    }
+
+    /**
+     * 大于等于key的最小结点(有重复时取最左边的一个)
+     */
+    private RBTNode<T> ceilingNode(T key) {
+        RBTNode<T> best = null;
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            if (key.compareTo(x.key) <= 0) {
+                best = x;
+                x = x.left;
+            } else {
+                x = x.right;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 大于key的最小结点
+     */
+    private RBTNode<T> higherNode(T key) {
+        RBTNode<T> best = null;
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            if (key.compareTo(x.key) < 0) {
+                best = x;
+                x = x.left;
+            } else {
+                x = x.right;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 小于等于key的最大结点(有重复时取最右边的一个)
+     */
+    private RBTNode<T> floorNode(T key) {
+        RBTNode<T> best = null;
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            if (key.compareTo(x.key) >= 0) {
+                best = x;
+                x = x.right;
+            } else {
+                x = x.left;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 小于key的最大结点
+     */
+    private RBTNode<T> lowerNode(T key) {
+        RBTNode<T> best = null;
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            if (key.compareTo(x.key) > 0) {
+                best = x;
+                x = x.right;
+            } else {
+                x = x.left;
+            }
+        }
+        return best;
+    }
+
+    private static <T extends Comparable<T>> T keyOrNull(RBTree<T>.RBTNode<T> node) {
+        return node != null ? node.key : null;
+    }
+
+    /**
+     * 大于等于key的最小键值, 没有则返回null
+     */
+    public T ceiling(T key) {
+        return keyOrNull(ceilingNode(key));
+    }
+
+    /**
+     * 大于key的最小键值, 没有则返回null
+     */
+    public T higher(T key) {
+        return keyOrNull(higherNode(key));
+    }
+
+    /**
+     * 小于等于key的最大键值, 没有则返回null
+     */
+    public T floor(T key) {
+        return keyOrNull(floorNode(key));
+    }
+
+    /**
+     * 小于key的最大键值, 没有则返回null
+     */
+    public T lower(T key) {
+        return keyOrNull(lowerNode(key));
     }
 
 
@@ -307,6 +655,10 @@ public class RBTree<T extends Comparable<T>> {
 
          y.left = x;
          x.parent = y;
+
+         // 子树大小：y接替了x原来的位置，x重新计算
+         y.size = x.size;
+         x.size = sizeOf(x.left) + sizeOf(x.right) + 1;
     }
 
     /*
@@ -348,6 +700,10 @@ public class RBTree<T extends Comparable<T>> {
         x.right = y;
         // 将 “y的父节点” 设为 “x”
         y.parent = x;
+
+        // 子树大小：x接替了y原来的位置，y重新计算
+        x.size = y.size;
+        y.size = sizeOf(y.left) + sizeOf(y.right) + 1;
     }
 
      /**
@@ -358,10 +714,14 @@ public class RBTree<T extends Comparable<T>> {
       *
       * 参数说明：
       *     node 插入的结点        // 对应《算法导论》中的z
+      * 返回值：
+      *     最后把根染黑时根是不是红色的，是则整棵树的黑高加了一(join要用)
       */
-    private void insertFixup(RBTNode<T> node) {
+    private boolean insertFixup(RBTNode<T> node) {
+        int iterations = 0, rotations = 0, recolors = 0; // 开启统计时才报告
         RBTNode<T> parent, gparent; // 父亲节点
         while ((parent =  parentOf(node)) != null && isRed(parent)) { // 当前节点的父亲节点为红色
+            iterations++;
             gparent = parentOf(parent); // 祖父节点
 
             if (parent == gparent.left) { // 父亲节点为祖父节点的左孩子
@@ -373,17 +733,20 @@ public class RBTree<T extends Comparable<T>> {
                     setBlack(uncle);
                     setRed(gparent);
                     node = gparent;
+                    recolors++;
                     continue;
                 } else {
                     // uncle is black
                     if (parent.right == node) { // 蜀黍节点为黑色而且当前节点为父亲节点的右孩子,则以父亲为轴做一次左旋
                         node = parent;
                         leftRotate(node);
+                        rotations++;
                         continue;
                     } else if (parent.left == node) { // 蜀黍节点为黑色而且当前节点为父亲节点的左孩子,则将父亲设置为黑色,将祖父设置为红色,并且以祖父为轴做一次右旋
                         setBlack(parent);
                         setRed(gparent);
                         rightRotate(gparent);
+                        rotations++;
                     }
                 }
             } else {  // 父亲节点为祖父的右孩子
@@ -395,22 +758,33 @@ public class RBTree<T extends Comparable<T>> {
                     setBlack(uncle);
                     setRed(gparent);
                     node = gparent;
+                    recolors++;
                     continue;
                 } else { // 蜀黍节点为黑色或为空
                     if (node == parent.left) {  // 当前节点是左孩子, 则右旋一次
                         node = parent;
                         rightRotate(node);
+                        rotations++;
                     } else if (node == parent.right) { // 当前节点为右孩子, 则将父亲节点设置为黑色,祖父节点设置为红色,以祖父为轴做一次左旋
                         setBlack(parent);
                         setRed(gparent);
                         leftRotate(gparent);
+                        rotations++;
                     }
                 }
             }
         }
 
-        //将根节点设置为黑色
+        //将根节点设置为黑色, 根原来是红色说明整棵树的黑高加了一
+        boolean grown = isRed(this.mRoot);
         setBlack(this.mRoot);
+
+        if (mMetrics != null) {
+            mMetrics.recordFixup(true, iterations, rotations, recolors);
+            mOpRotations = rotations;
+            mOpFixups = iterations;
+        }
+        return grown;
     }
 
     /**
@@ -419,110 +793,416 @@ public class RBTree<T extends Comparable<T>> {
      * 参数说明： node 插入的结点        // 对应《算法导论》中的node
      */
     private void insert(RBTNode<T> node) {
-        int cmp;
+        int depth = insertNear(node);
+        if (depth < 0) {
+            depth = insertFromRoot(node);
+        }
+
+        // 标记为红色
+        node.color = RED;
+        mModCount++;
+        if (mMetrics != null) {
+            mOpDepth = depth;
+        }
+        if (mUseFinger) {
+            mFinger = node;
+        }
+
+        // 修正红黑树
+        insertFixup(node);
+    }
+
+    /**
+     * 不从根往下找插入位置的快速路径：键值不小于最大值时挂在最右结点的右边，小于最小值时挂在最左结点的左边，
+     * 开启finger时在上次访问的结点附近找。然后沿父亲指针往上把子树大小加一，不需要比较。
+     * 返回插入结点的深度，走不了快速路径时返回-1。开启统计时调用compareTo的次数加到mOpCompares上，
+     * 它和深度不一样：快速路径上深度是往上走的步数，比较只有几次。
+     */
+    private int insertNear(RBTNode<T> node) {
+        if (mRoot == null) {
+            return -1;
+        }
+        RBTNode<T> low, high;
+        int cmp = node.key.compareTo(mRightmost.key);
+        boolean belowMinimum = cmp < 0 && node.key.compareTo(mLeftmost.key) < 0;
+        int compares = cmp < 0 ? 2 : 1;
+        if (cmp >= 0) {
+            low = mRightmost;
+            high = null;
+        } else if (belowMinimum) {
+            low = null;
+            high = mLeftmost;
+        } else if (mFinger != null && locateGap(node.key)) {
+            low = mGapLow;
+            high = mGapHigh;
+            if (low != null) {
+                cmp = node.key.compareTo(low.key);
+                compares++;
+            } else {
+                cmp = 1;
+            }
+        } else {
+            countCompares(compares);
+            return -1;
+        }
+        countCompares(compares);
+        if (cmp == 0) {
+            mDuplicates = true;
+        }
+
+        // low和high在中序上相邻，所以要么low没有右孩子，要么high是low右子树的最小结点，没有左孩子
+        RBTNode<T> y;
+        if (low != null && low.right == null) {
+            y = low;
+            y.right = node;
+        } else {
+            y = high;
+            y.left = node;
+        }
+        node.parent = y;
+        if (low == null) {
+            mLeftmost = node;
+        }
+        if (high == null) {
+            mRightmost = node;
+        }
+
+        int depth = 0;
+        for (RBTNode<T> p = y; p != null; p = p.parent) {
+            p.size++;
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * 从根往下找插入位置，返回插入结点的深度
+     */
+    private int insertFromRoot(RBTNode<T> node) {
+        int cmp = 0;
+        int depth = 0;
         RBTNode<T> y = null;
         RBTNode<T> x = this.mRoot;
 
-        // 找到相应的插入的位置y
+        // 找到相应的插入的位置y，路径上每个结点的子树都多了一个结点
         while (x != null) {
             y = x;
+            depth++;
+            x.size++;
             cmp = node.key.compareTo(x.key);
             if (cmp < 0) {
                x = x.left;
             } else {
+                if (cmp == 0) {
+                    mDuplicates = true;
+                }
                 x = x.right;
             }
         }
 
         node.parent = y;
 
-        // 确定插在y的左孩子还是右孩子上
+        // 确定插在y的左孩子还是右孩子上, 和查找时的方向一致(相等的键值放在右边)
         if (y != null) {
-            cmp = node.key.compareTo(y.key);
-            if (cmp > 0) {
-                y.right = node;
-            } else {
+            if (cmp < 0) {
                 y.left = node;
+                if (y == mLeftmost) {
+                    mLeftmost = node;
+                }
+            } else {
+                y.right = node;
+                if (y == mRightmost) {
+                    mRightmost = node;
+                }
             }
         } else {
             this.mRoot = node;
+            mLeftmost = mRightmost = node;
         }
+        countCompares(depth); // 路径上每个结点比较一次
+        return depth;
+    }
 
-        // 标记为红色
-        node.color = RED;
-
-        // 修正红黑树
-        insertFixup(node);
+    /**
+     * 开启统计时把n次比较计入当前操作, 不开启时只多一次判空
+     */
+    private void countCompares(int n) {
+        if (mMetrics != null) {
+            mOpCompares += n;
+        }
     }
 
+    /**
+     * 插入key。有界模式下和offer相同, 满了之后可能淘汰一个端点或者不插入。
+     */
     public void insert(T key) {
-        RBTNode<T> node = new RBTNode<T>(BLACK, key, null, null, null);
+        if (mCapacity > 0) {
+            offer(key);
+            return;
+        }
+        insertNode(new RBTNode<T>(BLACK, key, null, null, null));
+    }
 
-        if (node != null) {
+    private void insertNode(RBTNode<T> node) {
+        if (mMetrics != null) {
+            insertWithMetrics(node);
+        } else if (node != null) {
             insert(node);
         }
     }
 
-    /*
-     * 删除结点(node)
+    /**
+     * 由升序排列的键值在线性时间内建树，不经过insert和insertFixup。
+     */
+    public static <T extends Comparable<T>> RBTree<T> buildFromSorted(T[] keys) {
+        return buildFromSorted(Arrays.asList(keys).iterator(), keys.length);
+    }
+
+    public static <T extends Comparable<T>> RBTree<T> buildFromSorted(Collection<? extends T> keys) {
+        return buildFromSorted(keys.iterator(), keys.size());
+    }
+
+    /**
+     * 由升序的迭代器(例如stream.iterator())建树，size为要读取的键值个数。
+     * 输入不是升序时抛出IllegalArgumentException。
+     */
+    public static <T extends Comparable<T>> RBTree<T> buildFromSorted(Iterator<? extends T> keys, int size) {
+        RBTree<T> tree = new RBTree<T>();
+        tree.linkSorted(keys, size);
+        return tree;
+    }
+
+    /**
+     * 批量插入(不要求有序)。
      *
-     * 参数说明：
-     *     node 删除的结点
+     * 先对这批键值排序；批量相对树的大小很小时逐个插入，
+     * 否则把排好序的批量和树的中序序列归并，复用原有的结点一次性重建整棵树，代价为O(n + m)。
+     * 相等的键值排在树中原有键值的后面，和insert一致。
      */
-    private void remove(RBTNode<T> node) {
-        RBTNode<T> x,y;  // x指操作节点的孩子, y指操作节点
-        if (node.left == null || node.right == null) { // 若左孩子或右孩子为空, y指向当前要删除节点
-            y = node;
-        } else {
-            y = successor(node); // 左右孩子都为空则y取后继节点
+    @SuppressWarnings("unchecked")
+    public void insertAll(Collection<? extends T> keys) {
+        int m = keys.size();
+        if (m == 0) {
+            return;
         }
+        Object[] batch = keys.toArray();
+        Arrays.sort(batch);
 
-        if (y.left != null) {  // 若y左孩子不为空则x取左孩子
-            x = y.left;
-        } else { // x取右孩子
-            x = y.right;
+        // 有界模式下每个键值都可能被拒绝或者淘汰别的键值, 逐个offer
+        if (mCapacity > 0) {
+            for (Object key : batch) {
+                offer((T) key);
+            }
+            return;
         }
 
-        if (x != null) { // 若x不为空则x的父亲指向y的父亲
-            x.parent = y.parent;
+        // m次插入的代价约为m*log(n)，比重建的n+m还小就逐个插入
+        if (mRoot != null && (long) m * (32 - Integer.numberOfLeadingZeros(size())) < size()) {
+            for (Object key : batch) {
+                insert((T) key);
+            }
+            return;
         }
 
-        if (y.parent == null) { // y的父亲为空则说明x为新的根节点
-            this.mRoot = x;
+        for (int k = 1; k < m && !mDuplicates; k++) {
+            mDuplicates = ((T) batch[k]).compareTo((T) batch[k - 1]) == 0;
+        }
+        RBTNode<T>[] nodes = newNodeArray(size() + m);
+        RBTNode<T> x = minimum(mRoot);
+        int i = 0, j = 0;
+        while (x != null || j < m) {
+            int cmp = x == null ? 1 : j == m ? -1 : x.key.compareTo((T) batch[j]);
+            if (cmp == 0) {
+                mDuplicates = true;
+            }
+            if (cmp <= 0) {
+                RBTNode<T> next = successor(x);
+                nodes[i++] = x;
+                x = next;
+            } else {
+                nodes[i++] = new RBTNode<T>(BLACK, (T) batch[j++], null, null, null);
+            }
+        }
+        linkSorted(nodes, i);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private RBTNode<T>[] newNodeArray(int size) {
+        return new RBTree.RBTNode[size];
+    }
+
+    private void linkSorted(Iterator<? extends T> keys, int size) {
+        RBTNode<T>[] nodes = newNodeArray(size);
+        T prev = null;
+        for (int i = 0; i < size; i++) {
+            T key = keys.next();
+            if (prev != null) {
+                int cmp = key.compareTo(prev);
+                if (cmp < 0) {
+                    throw new IllegalArgumentException("keys are not sorted: " + key + " after " + prev);
+                }
+                if (cmp == 0) {
+                    mDuplicates = true;
+                }
+            }
+            nodes[i] = new RBTNode<T>(BLACK, key, null, null, null);
+            prev = key;
+        }
+        linkSorted(nodes, size);
+    }
+
+    /**
+     * 把按中序排好的结点连成一棵完全平衡的树：
+     * 最底下一层(不满的那一层)的结点设为红色，其余都是黑色，每条路径上的黑色结点数相同。
+     */
+    private void linkSorted(RBTNode<T>[] nodes, int size) {
+        mRoot = linkSorted(nodes, 0, size - 1, 0, computeRedLevel(size), null);
+        resetEnds();
+        mModCount++;
+    }
+
+    private RBTNode<T> linkSorted(RBTNode<T>[] nodes, int lo, int hi, int level, int redLevel, RBTNode<T> parent) {
+        if (lo > hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        RBTNode<T> middle = nodes[mid];
+        middle.parent = parent;
+        middle.color = level == redLevel ? RED : BLACK;
+        middle.size = hi - lo + 1;
+        middle.left = linkSorted(nodes, lo, mid - 1, level + 1, redLevel, middle);
+        middle.right = linkSorted(nodes, mid + 1, hi, level + 1, redLevel, middle);
+        return middle;
+    }
+
+    /**
+     * 完全平衡建树时最底层(需要设为红色的那一层)的深度。LongRBTree从快照建树时也用它
+     */
+    static int computeRedLevel(long size) {
+        int level = 0;
+        for (long m = size - 1; m >= 0; m = m / 2 - 1) {
+            level++;
+        }
+        return level;
+    }
+
+    /*
+     * 删除结点(node)
+     *
+     * 参数说明：
+     *     node 删除的结点
+     *
+     * node有两个孩子时用它的后继结点replace顶替node在树中的位置(连同颜色)，
+     * 而不是把后继的键值拷贝到node中，这样其余结点的身份都不变，游标和迭代器持有的结点仍然有效。
+     */
+    private void remove(RBTNode<T> node) {
+        RBTNode<T> child, parent;
+        boolean color;
+
+        // 最左、最右的结点最多只有一个孩子，换成它在中序上的邻居
+        if (node == mLeftmost) {
+            mLeftmost = successor(node);
+        }
+        if (node == mRightmost) {
+            mRightmost = predecessor(node);
+        }
+        if (node == mFinger) {
+            mFinger = node.parent; // 父亲还在树中, 键值也挨着
+        }
+
+        if (node.left != null && node.right != null) { // 左右孩子都不为空
+            RBTNode<T> replace = minimum(node.right); // 后继结点, 它没有左孩子
+
+            // 用replace替换node在父亲中的位置
+            if (node.parent != null) {
+                if (node.parent.left == node) {
+                    node.parent.left = replace;
+                } else {
+                    node.parent.right = replace;
+                }
+            } else {
+                this.mRoot = replace;
+            }
+
+            child = replace.right; // replace真正被摘掉的位置由它的右孩子顶上
+            parent = replace.parent;
+            color = replace.color;
+
+            if (parent == node) { // replace就是node的右孩子
+                parent = replace;
+            } else {
+                if (child != null) {
+                    child.parent = parent;
+                }
+                parent.left = child;
+
+                replace.right = node.right;
+                node.right.parent = replace;
+            }
+
+            replace.parent = node.parent;
+            replace.color = node.color;
+            replace.left = node.left;
+            node.left.parent = replace;
+            replace.size = node.size;
         } else {
-            if (y == y.parent.left) {// 若y是左孩子,y的父亲的左孩子设为x
-                y.parent.left = x;
-            } else { // 若y是右孩子,y的父亲的右孩子设为x
-                y.parent.right = x;
+            child = node.left != null ? node.left : node.right;
+            parent = node.parent;
+            color = node.color;
+
+            if (child != null) {
+                child.parent = parent;
+            }
+
+            if (parent == null) { // 父亲为空则说明child为新的根节点
+                this.mRoot = child;
+            } else if (parent.left == node) {
+                parent.left = child;
+            } else {
+                parent.right = child;
             }
         }
 
-        if (y != node) {
-             node.key = y.key;
+        // 从真正摘掉结点的位置到根, 子树大小都减一
+        for (RBTNode<T> p = parent; p != null; p = p.parent) {
+            p.size--;
         }
+        node.left = node.right = node.parent = null;
+        mModCount++;
 
-        if (isBlack(y)) {  // y为黑色的时候,就是说删了一个黑色的节点,则要修正红黑树
-            deleteFixup(x, x.parent); // 修正的node是用x,即时一开始要删除的点y的孩子x(可能为空)
+        if (color == BLACK) { // 删了一个黑色的节点,则要修正红黑树
+            deleteFixup(child, parent); // child可能为空, 所以把它的父亲一起传进去
         }
     }
 
     public void remove(T key) {
+        if (mMetrics != null) {
+            removeWithMetrics(key);
+            return;
+        }
         RBTNode<T> node;
-        if ((node = search(mRoot, key)) != null) {
+        if ((node = mFinger != null ? iteraticeSearch(key) : iteraticeSearch(mRoot, key)) != null) {
             remove(node);
         }
     }
 
+    public boolean contains(T key) {
+        return iteraticeSearch(key) != null;
+    }
+
     private void deleteFixup(RBTNode<T> node, RBTNode<T> parent) {
+        int iterations = 0, rotations = 0, recolors = 0; // 开启统计时才报告
         RBTNode<T> brother;
         // 若 节点为空 或者 黑色 (空节点即为黑色) 而且不是根的话 循环
         while (((node == null || isBlack(node)) && (node != this.mRoot))) {
+            iterations++;
             if (parent.left == node) {  // 当前节点为左孩子
                 brother = parent.right;  //兄弟节点
                 if (isRed(brother)) {  // 兄弟节点为红色,则兄弟为黑,父亲为红,以父亲为轴左旋,重设置兄弟节点
                     setBlack(brother);
                     setRed(parent);
                     leftRotate(parent);
+                    rotations++;
                     brother = parent.right;
                 }
                 // 前提 兄弟节点为黑色
@@ -531,12 +1211,14 @@ public class RBTree<T extends Comparable<T>> {
                     setRed(brother);
                     node = parent;
                     parent = parentOf(node);
+                    recolors++;
                 } else {
                     if (brother.right == null || isBlack(brother.right)) {  // 兄弟节点在右则此时先看右边,右边为空或者黑色,则兄弟节点的左孩子设置为黑色,
                                                                             // 兄弟节点设置为红色,以兄弟节点为轴右旋一次,重新设置兄弟节点
                         setBlack(brother.left);
                         setRed(brother);
                         rightRotate(brother);
+                        rotations++;
                         brother = parent.right;
                     }
                     // 兄弟节点的右孩子为红色,左孩子颜色随意,
@@ -546,6 +1228,7 @@ public class RBTree<T extends Comparable<T>> {
                     setBlack(parent);
                     setBlack(brother.right);
                     leftRotate(parent);
+                    rotations++;
                     node = this.mRoot;
                     break;
                 }
@@ -555,6 +1238,7 @@ public class RBTree<T extends Comparable<T>> {
                     setBlack(brother);
                     setRed(parent);
                     rightRotate(parent);
+                    rotations++;
                     brother = parent.left;
                 }
 
@@ -563,12 +1247,14 @@ public class RBTree<T extends Comparable<T>> {
                     setRed(brother);
                     node = parent;
                     parent = parentOf(node);
+                    recolors++;
                 } else {
                     if (brother.left == null || isBlack(brother.left)) { // 兄弟节点在左则此时先看左边,左边为空或者黑色,则兄弟节点的右孩子设置为黑色,
                                                                          // 兄弟节点设置为红色,以兄弟节点为轴左旋一次,重新设置兄弟节点
                         setBlack(brother.right);
                         setRed(brother);
                         leftRotate(brother);
+                        rotations++;
                         brother = parent.left;
                     }
                     // 兄弟节点的左孩子为红色,右孩子颜色随意,
@@ -578,6 +1264,7 @@ public class RBTree<T extends Comparable<T>> {
                     setBlack(parent);
                     setBlack(brother.left);
                     rightRotate(parent);
+                    rotations++;
                     node = this.mRoot;
                     break;
                 }
@@ -587,48 +1274,1402 @@ public class RBTree<T extends Comparable<T>> {
         if (node != null) {
             setBlack(node);
         }
+
+        if (mMetrics != null) {
+            mMetrics.recordFixup(false, iterations, rotations, recolors);
+            mOpRotations = rotations;
+            mOpFixups = iterations;
+        }
     }
 
-    private void destory(RBTNode<T> tree) {
-        if (tree == null) {
+    // ---------------------------------------- 有界模式
+
+    /**
+     * 有界模式满了之后淘汰哪一端: SMALLEST淘汰最小的, 树里留下最大的capacity个(top-K);
+     * LARGEST淘汰最大的, 留下最小的capacity个。
+     */
+    public enum Eviction {
+        SMALLEST, LARGEST
+    }
+
+    /**
+     * 进入有界模式: 结点个数不超过capacity, 满了之后insert/offer按eviction淘汰一端。
+     * 当前已经超过capacity时立即淘汰多出来的。
+     */
+    public void setCapacity(int capacity, Eviction eviction) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        if (eviction == null) {
+            throw new NullPointerException("eviction");
+        }
+        mCapacity = capacity;
+        mEviction = eviction;
+        trimToCapacity();
+    }
+
+    /**
+     * 退出有界模式
+     */
+    public void setUnbounded() {
+        mCapacity = 0;
+        mEviction = null;
+    }
+
+    /**
+     * 有界模式的容量, 不限时返回0
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public Eviction getEviction() {
+        return mEviction;
+    }
+
+    /**
+     * 插入key, 返回它是否留在了树里。
+     * 有界模式满了之后: key落在要淘汰的那一端之外(SMALLEST时不大于最小值, LARGEST时不小于最大值)就直接拒绝，
+     * 只和端点比较一次, 不分配内存; 否则摘下那一端的结点, 为key分配新结点插入。
+     * 被淘汰的结点不拿来复用: 停在它上面的游标还是看到原来的键值, 不会变成key。
+     */
+    public boolean offer(T key) {
+        if (mCapacity == 0 || size() < mCapacity) {
+            insertNode(new RBTNode<T>(BLACK, key, null, null, null));
+            return true;
+        }
+        RBTNode<T> victim;
+        if (mEviction == Eviction.SMALLEST) {
+            if (key.compareTo(mLeftmost.key) <= 0) {
+                return false;
+            }
+            victim = mLeftmost;
+        } else {
+            if (key.compareTo(mRightmost.key) >= 0) {
+                return false;
+            }
+            victim = mRightmost;
+        }
+        remove(victim);
+        insertNode(new RBTNode<T>(BLACK, key, null, null, null));
+        return true;
+    }
+
+    /**
+     * 最小的键值, O(1), 树为空则返回null
+     */
+    public T peekFirst() {
+        return mLeftmost != null ? mLeftmost.key : null;
+    }
+
+    /**
+     * 最大的键值, O(1), 树为空则返回null
+     */
+    public T peekLast() {
+        return mRightmost != null ? mRightmost.key : null;
+    }
+
+    /**
+     * 删除并返回最小的键值, 树为空则返回null。直接摘下最左结点, 不用查找。
+     */
+    public T pollFirst() {
+        RBTNode<T> node = mLeftmost;
+        if (node == null) {
+            return null;
+        }
+        remove(node);
+        return node.key;
+    }
+
+    /**
+     * 删除并返回最大的键值, 树为空则返回null。直接摘下最右结点, 不用查找。
+     */
+    public T pollLast() {
+        RBTNode<T> node = mRightmost;
+        if (node == null) {
+            return null;
+        }
+        remove(node);
+        return node.key;
+    }
+
+    /**
+     * 有界模式下淘汰多出来的结点
+     */
+    private void trimToCapacity() {
+        if (mCapacity == 0) {
+            return;
+        }
+        while (size() > mCapacity) {
+            remove(mEviction == Eviction.SMALLEST ? mLeftmost : mRightmost);
+        }
+    }
+
+    // ---------------------------------------- 分割与合并
+
+    /**
+     * 从key处切开：小于key的键值留在这棵树里，大于等于key的键值移到返回的新树中。O(log n)。
+     *
+     * 沿查找key的路径往下走，路径上每个结点连同它不在路径上的那棵子树，
+     * 依次用join拼到左边或右边的结果上。拼接的代价和两边的黑高差成正比，
+     * 沿路径累加起来是O(log n)。结点都是原来的结点，不分配新结点。
+     */
+    public RBTree<T> split(T key) {
+        RBTree<T> right = new RBTree<T>();
+        if (mRoot != null) {
+            Split<T> out = new Split<T>();
+            split(mRoot, blackHeight(), key, false, out);
+            mRoot = out.left;
+            right.mRoot = out.right;
+            setBlack(mRoot);
+            setBlack(right.mRoot);
+            resetEnds();
+            right.resetEnds();
+        }
+        right.mDuplicates = mDuplicates;
+        mModCount++;
+        return right;
+    }
+
+    /**
+     * 合并left、key和right，要求left中的键值都不大于key，right中的都不小于key，否则抛出IllegalArgumentException。
+     * 黑高较低的一棵挂到较高一棵的边上黑高相同的位置，再用insertFixup修正，O(log n)。
+     * left和right的结点都移到返回的新树中，两棵树变为空树。
+     */
+    public static <T extends Comparable<T>> RBTree<T> join(RBTree<T> left, T key, RBTree<T> right) {
+        int cmpLeft = left.mRoot == null ? -1 : left.maximum().compareTo(key);
+        int cmpRight = right.mRoot == null ? 1 : right.minimum().compareTo(key);
+        if (cmpLeft > 0 || cmpRight < 0) {
+            throw new IllegalArgumentException("key ranges overlap: " + key);
+        }
+        RBTree<T> tree = new RBTree<T>();
+        RBTree<T>.RBTNode<T> node = tree.new RBTNode<T>(BLACK, key, null, null, null);
+        tree.join(left.mRoot, left.blackHeight(), node, right.mRoot, right.blackHeight());
+        tree.resetEnds();
+        tree.mDuplicates = left.mDuplicates || right.mDuplicates || cmpLeft == 0 || cmpRight == 0;
+        left.clear();
+        right.clear();
+        return tree;
+    }
+
+    /**
+     * 合并两棵树，要求left中的键值都不大于right中的，否则抛出IllegalArgumentException，两棵树都不变。
+     * 从right中摘下最小的结点作为中间的结点，再做join。
+     */
+    public static <T extends Comparable<T>> RBTree<T> join(RBTree<T> left, RBTree<T> right) {
+        // 先检查再摘结点, 否则抛异常时right已经少了一个键值
+        if (left.mRoot != null && right.mRoot != null && left.maximum().compareTo(right.minimum()) > 0) {
+            throw new IllegalArgumentException("key ranges overlap: " + left.maximum() + " > " + right.minimum());
+        }
+        if (right.mRoot == null) {
+            RBTree<T> tree = new RBTree<T>();
+            tree.mRoot = left.mRoot;
+            tree.resetEnds();
+            tree.mDuplicates = left.mDuplicates;
+            left.clear();
+            return tree;
+        }
+        T key = right.minimum();
+        right.remove(right.minimum(right.mRoot));
+        return join(left, key, right);
+    }
+
+    /**
+     * split的结果: 两棵子树的根和它们的黑高
+     */
+    private static final class Split<T extends Comparable<T>> {
+        RBTree<T>.RBTNode<T> left;
+        int leftHeight;
+        RBTree<T>.RBTNode<T> right;
+        int rightHeight;
+    }
+
+    /**
+     * 切开以x为根、黑高为height的子树。黑高是从结点(含)到叶子路径上黑色结点的个数，空结点为0；
+     * 沿路径往下时由父亲的黑高直接推出孩子的，不需要重新计算。
+     * afterEqual为false时等于key的键值分到右边，为true时分到左边。
+     */
+    private void split(RBTNode<T> x, int height, T key, boolean afterEqual, Split<T> out) {
+        if (x == null) {
+            out.left = out.right = null;
+            out.leftHeight = out.rightHeight = 0;
             return;
         }
-        if (tree.left != null) {
-            destory(tree.left);
+        int childHeight = x.color == BLACK ? height - 1 : height;
+        RBTNode<T> l = detach(x.left);
+        RBTNode<T> r = detach(x.right);
+        int cmp = key.compareTo(x.key);
+        if (afterEqual ? cmp < 0 : cmp <= 0) {
+            // x和右子树都分到右边
+            split(l, childHeight, key, afterEqual, out);
+            out.rightHeight = join(out.right, out.rightHeight, x, r, childHeight);
+            out.right = mRoot;
+        } else {
+            split(r, childHeight, key, afterEqual, out);
+            out.leftHeight = join(l, childHeight, x, out.left, out.leftHeight);
+            out.left = mRoot;
+        }
+    }
+
+    private RBTNode<T> detach(RBTNode<T> node) {
+        if (node != null) {
+            node.parent = null;
+        }
+        return node;
+    }
+
+    /**
+     * 以k为中间结点合并两棵子树，新的根(黑色, 父亲为空)放在这棵树的mRoot中，返回它的黑高。lh、rh是l、r的黑高。
+     *
+     * 先把红色的根染黑，黑高相同时k作为黑色的根直接连上两边；
+     * 否则沿较高一棵的右(左)边往下，找到黑高和较低一棵相同的黑色结点c，
+     * 用红色的k替换c的位置、c和较低的一棵作为k的两个孩子，这时只可能在k和它父亲之间出现红-红冲突，交给insertFixup。
+     * 修正一直变色到根时整棵树的黑高加一。
+     */
+    private int join(RBTNode<T> l, int lh, RBTNode<T> k, RBTNode<T> r, int rh) {
+        if (isRed(l)) {
+            l.color = BLACK;
+            lh++;
+        }
+        if (isRed(r)) {
+            r.color = BLACK;
+            rh++;
+        }
+        k.parent = null;
+        if (lh == rh) {
+            k.color = BLACK;
+            link(k, l, r);
+            mRoot = k;
+            return lh + 1;
         }
 
-        if (tree.right != null) {
-            destory(tree.right);
+        RBTNode<T> p = null;
+        if (lh > rh) {
+            RBTNode<T> c = l;
+            for (int h = lh; h != rh || isRed(c); c = c.right) {
+                if (c.color == BLACK) {
+                    h--;
+                }
+                p = c;
+            }
+            link(k, c, r);
+            p.right = k;
+            mRoot = l;
+        } else {
+            RBTNode<T> c = r;
+            for (int h = rh; h != lh || isRed(c); c = c.left) {
+                if (c.color == BLACK) {
+                    h--;
+                }
+                p = c;
+            }
+            link(k, l, c);
+            p.left = k;
+            mRoot = r;
         }
+        k.parent = p;
+        k.color = RED;
 
-        tree = null;
+        // k下面挂进来的结点(较低的一棵和k自己)都要算到路径上的祖先里
+        int added = k.size - sizeOf(lh > rh ? k.left : k.right);
+        for (; p != null; p = p.parent) {
+            p.size += added;
+        }
+        return insertFixup(k) ? Math.max(lh, rh) + 1 : Math.max(lh, rh);
     }
 
-    public void clear() {
-        destory(mRoot);
-        mRoot = null;
+    private void link(RBTNode<T> node, RBTNode<T> left, RBTNode<T> right) {
+        node.left = left;
+        node.right = right;
+        setParent(left, node);
+        setParent(right, node);
+        node.size = sizeOf(left) + sizeOf(right) + 1;
     }
 
-    private void print(RBTNode<T> tree, T key, int direction) {
-        if (tree != null) {
-            if (direction == 0) {
-                System.out.printf("%2d(B) is root\n", tree.key);
+    // ---------------------------------------- 集合运算
+
+    /*
+     * 并、交、差都用split和join分治(Blelloch等, "Just Join for Parallel Ordered Sets")：
+     * 取一棵树的根k，把另一棵树在k处切成小于k、等于k、大于k三段，两边的子问题递归求解，再用join(或join2)拼回来。
+     * 总的代价是O(m log(n/m + 1))，m为较小的一棵的大小；两个子问题互不相交，较大时在ForkJoinPool上并行。
+     *
+     * 运算把树当作集合：两棵树中都有的键值在并集和交集中只保留一个，差集中去掉所有相等的键值。
+     * 两棵输入树本身都没有重复键值时，结果也没有；否则结果中重复键值的个数没有保证。
+     * 原地的版本直接复用两棵树的结点，参数中的树变为空树；返回新树的版本先复制两棵树，输入保持不变。
+     */
+
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int DIFFERENCE = 2;
+
+    /**
+     * 结构相同的副本(颜色和子树大小都一样)，O(n)，不递归
+     */
+    public RBTree<T> copy() {
+        RBTree<T> tree = new RBTree<T>();
+        tree.mDuplicates = mDuplicates;
+        if (mRoot == null) {
+            return tree;
+        }
+        RBTNode<T> src = mRoot;
+        RBTNode<T> dst = tree.copyOf(src, null);
+        tree.mRoot = dst;
+        // 沿着原树的孩子/父亲指针走，副本同步移动：孩子还没复制就复制并下去，否则回到父亲
+        while (src != null) {
+            if (src.left != null && dst.left == null) {
+                dst.left = tree.copyOf(src.left, dst);
+                src = src.left;
+                dst = dst.left;
+            } else if (src.right != null && dst.right == null) {
+                dst.right = tree.copyOf(src.right, dst);
+                src = src.right;
+                dst = dst.right;
             } else {
-                System.out.printf("%2d(%s) is %2d's %6s child\n",
-                        tree.key,
-                        isRed(tree) ? "R" : "B",
-                        key,
-                        direction == 1 ? "right" : "left");
+                src = src.parent;
+                dst = dst.parent;
             }
-            print(tree.left, tree.key, -1);
-            print(tree.right,tree.key, 1);
         }
+        tree.resetEnds();
+        return tree;
     }
 
-    public void print() {
-        if (mRoot != null) {
-            print(mRoot, mRoot.key, 0);
+    private RBTNode<T> copyOf(RBTNode<T> node, RBTNode<T> parent) {
+        RBTNode<T> copy = new RBTNode<T>(node.color, node.key, null, null, parent);
+        copy.size = node.size;
+        return copy;
+    }
+
+    /**
+     * this = this ∪ other，other的结点移到这棵树中，other变为空树
+     */
+    public void unionWith(RBTree<T> other) {
+        if (other != this) {
+            setOperation(UNION, other);
         }
     }
-}
 
+    /**
+     * this = this ∩ other，other变为空树
+     */
+    public void intersectWith(RBTree<T> other) {
+        if (other != this) {
+            setOperation(INTERSECTION, other);
+        }
+    }
+
+    /**
+     * this = this - other，other变为空树
+     */
+    public void subtract(RBTree<T> other) {
+        if (other == this) {
+            clear();
+        } else {
+            setOperation(DIFFERENCE, other);
+        }
+    }
+
+    /**
+     * a ∪ b，a和b不变
+     */
+    public static <T extends Comparable<T>> RBTree<T> union(RBTree<T> a, RBTree<T> b) {
+        RBTree<T> result = a.copy();
+        result.unionWith(b.copy());
+        return result;
+    }
+
+    /**
+     * a ∩ b，a和b不变
+     */
+    public static <T extends Comparable<T>> RBTree<T> intersection(RBTree<T> a, RBTree<T> b) {
+        RBTree<T> result = a.copy();
+        result.intersectWith(b.copy());
+        return result;
+    }
+
+    /**
+     * a - b，a和b不变
+     */
+    public static <T extends Comparable<T>> RBTree<T> difference(RBTree<T> a, RBTree<T> b) {
+        RBTree<T> result = a.copy();
+        result.subtract(b.copy());
+        return result;
+    }
+
+    private void setOperation(int op, RBTree<T> other) {
+        SetOperation<T> task = new SetOperation<T>(op, mRoot, blackHeight(), other.mRoot, other.blackHeight());
+        if (mRoot != null && other.mRoot != null && mRoot.size + other.mRoot.size > PARALLEL_THRESHOLD) {
+            task.invoke();
+        } else {
+            task.compute();
+        }
+        mRoot = task.mRoot;
+        setBlack(mRoot);
+        resetEnds();
+        if (op == UNION) {
+            mDuplicates |= other.mDuplicates;
+        }
+        mModCount++;
+        other.clear();
+        trimToCapacity();
+    }
+
+    /**
+     * 一个子问题：对以a、b为根(黑高为ah、bh)的两棵子树做op，结果的根和黑高放在mRoot、mHeight中。
+     * 拆分和拼接要借用一棵树的mRoot，每个任务用自己的临时树，所以并行的任务之间互不影响。
+     */
+    @SuppressWarnings("serial") // 和ReduceTask一样, 只在本进程里跑
+    private static final class SetOperation<T extends Comparable<T>> extends RecursiveAction {
+        private final int mOp;
+        private final RBTree<T>.RBTNode<T> mA;
+        private final int mAHeight;
+        private final RBTree<T>.RBTNode<T> mB;
+        private final int mBHeight;
+        RBTree<T>.RBTNode<T> mRoot;
+        int mHeight;
+
+        SetOperation(int op, RBTree<T>.RBTNode<T> a, int ah, RBTree<T>.RBTNode<T> b, int bh) {
+            mOp = op;
+            mA = a;
+            mAHeight = ah;
+            mB = b;
+            mBHeight = bh;
+        }
+
+        private void result(RBTree<T>.RBTNode<T> root, int height) {
+            mRoot = root;
+            mHeight = height;
+        }
+
+        @Override
+        protected void compute() {
+            RBTree<T>.RBTNode<T> a = mA;
+            RBTree<T>.RBTNode<T> b = mB;
+            if (a == null || b == null) {
+                if (mOp == UNION) {
+                    result(a != null ? a : b, a != null ? mAHeight : mBHeight);
+                } else if (mOp == DIFFERENCE && a != null) {
+                    result(a, mAHeight);
+                } else {
+                    result(null, 0);
+                }
+                return;
+            }
+            boolean parallel = a.size + b.size > PARALLEL_THRESHOLD;
+
+            // 差集以b的根为界切a(b的根不进结果)，并和交以a的根为界切b
+            RBTree<T>.RBTNode<T> pivot = mOp == DIFFERENCE ? b : a;
+            int pivotHeight = mOp == DIFFERENCE ? mBHeight : mAHeight;
+            RBTree<T> scratch = new RBTree<T>();
+            Split<T> parts = new Split<T>();
+            boolean found = mOp == DIFFERENCE
+                    ? scratch.split3(a, mAHeight, pivot.key, parts)
+                    : scratch.split3(b, mBHeight, pivot.key, parts);
+
+            int childHeight = pivot.color == BLACK ? pivotHeight - 1 : pivotHeight;
+            RBTree<T>.RBTNode<T> pivotLeft = scratch.detach(pivot.left);
+            RBTree<T>.RBTNode<T> pivotRight = scratch.detach(pivot.right);
+            SetOperation<T> left;
+            SetOperation<T> right;
+            if (mOp == DIFFERENCE) {
+                left = new SetOperation<T>(mOp, parts.left, parts.leftHeight, pivotLeft, childHeight);
+                right = new SetOperation<T>(mOp, parts.right, parts.rightHeight, pivotRight, childHeight);
+            } else {
+                left = new SetOperation<T>(mOp, pivotLeft, childHeight, parts.left, parts.leftHeight);
+                right = new SetOperation<T>(mOp, pivotRight, childHeight, parts.right, parts.rightHeight);
+            }
+            if (parallel) {
+                left.fork();
+                right.compute();
+                left.join();
+            } else {
+                left.compute();
+                right.compute();
+            }
+
+            int height;
+            if (mOp == UNION || (mOp == INTERSECTION && found)) {
+                height = scratch.join(left.mRoot, left.mHeight, pivot, right.mRoot, right.mHeight);
+            } else {
+                height = scratch.join2(left.mRoot, left.mHeight, right.mRoot, right.mHeight);
+            }
+            result(scratch.mRoot, height);
+        }
+    }
+
+    /**
+     * 把以x为根的子树切成小于key、大于key两部分放在out中，等于key的结点都丢掉；有等于key的结点时返回true
+     */
+    private boolean split3(RBTNode<T> x, int height, T key, Split<T> out) {
+        split(x, height, key, false, out);
+        RBTNode<T> less = out.left;
+        int lessHeight = out.leftHeight;
+        split(out.right, out.rightHeight, key, true, out);
+        boolean found = out.left != null;
+        out.left = less;
+        out.leftHeight = lessHeight;
+        return found;
+    }
+
+    /**
+     * 合并两棵子树(l中的键值都不大于r中的)，结果放在mRoot中，返回它的黑高。
+     * 从r中摘下最小的结点作为join的中间结点。
+     */
+    private int join2(RBTNode<T> l, int lh, RBTNode<T> r, int rh) {
+        if (r == null) {
+            mRoot = l;
+            return lh;
+        }
+        if (l == null) {
+            mRoot = r;
+            return rh;
+        }
+        mRoot = r;
+        RBTNode<T> k = minimum(r);
+        remove(k);
+        return join(l, lh, k, mRoot, blackHeight());
+    }
+
+    // ---------------------------------------- 批量删除
+
+    /**
+     * 删除[lo, hi)区间内的所有键值，返回删除的个数。O(log n)，和删除的个数无关。
+     *
+     * 在lo和hi处各切一刀，中间的一段整棵丢掉，两边用join2拼回来：
+     * 不需要逐个查找、逐个deleteFixup，也不用遍历被删除的结点。
+     */
+    public int removeRange(T lo, T hi) {
+        if (lo.compareTo(hi) >= 0) {
+            return 0;
+        }
+        return removeBetween(lo, hi);
+    }
+
+    /**
+     * 删除所有小于toKey的键值，返回删除的个数，O(log n)
+     */
+    public int removeHead(T toKey) {
+        return removeBetween(null, toKey);
+    }
+
+    /**
+     * 删除所有大于等于fromKey的键值，返回删除的个数，O(log n)
+     */
+    public int removeTail(T fromKey) {
+        return removeBetween(fromKey, null);
+    }
+
+    /**
+     * 删除[lo, hi)内的键值，lo或hi为null表示该方向没有边界
+     */
+    private int removeBetween(T lo, T hi) {
+        if (mRoot == null) {
+            return 0;
+        }
+        Split<T> out = new Split<T>();
+        RBTNode<T> rest = mRoot;
+        int restHeight = blackHeight();
+        RBTNode<T> less = null;
+        int lessHeight = 0;
+        if (lo != null) {
+            split(rest, restHeight, lo, false, out);
+            less = out.left;
+            lessHeight = out.leftHeight;
+            rest = out.right;
+            restHeight = out.rightHeight;
+        }
+        RBTNode<T> greater = null;
+        int greaterHeight = 0;
+        if (hi != null) {
+            split(rest, restHeight, hi, false, out);
+            rest = out.left;
+            greater = out.right;
+            greaterHeight = out.rightHeight;
+        }
+        int removed = sizeOf(rest);
+        join2(less, lessHeight, greater, greaterHeight);
+        setBlack(mRoot);
+        resetEnds();
+        mModCount++;
+        return removed;
+    }
+
+    /**
+     * 删除所有满足filter的键值，有删除时返回true。
+     *
+     * 先按中序把所有结点过一遍filter(这时还没有修改树，filter抛出异常时树不变)；
+     * 删除的个数相对树的大小很少时逐个删除，否则用留下的结点一次性重建整棵树，O(n)，只做一次平衡。
+     */
+    public boolean removeIf(Predicate<? super T> filter) {
+        int n = size();
+        RBTNode<T>[] nodes = newNodeArray(n);
+        int kept = 0;
+        int removed = n;
+        for (RBTNode<T> x = mLeftmost; x != null; x = successor(x)) {
+            if (filter.test(x.key)) {
+                nodes[--removed] = x;   // 要删除的从后往前放
+            } else {
+                nodes[kept++] = x;
+            }
+        }
+        if (kept == n) {
+            return false;
+        }
+
+        // k次删除的代价约为k*log(n)，比重建的n还小就逐个删除
+        if ((long) (n - kept) * (32 - Integer.numberOfLeadingZeros(n)) < n) {
+            for (int i = kept; i < n; i++) {
+                remove(nodes[i]);
+            }
+        } else {
+            linkSorted(nodes, kept);
+        }
+        return true;
+    }
+
+    // ---------------------------------------- 流和并行聚合
+
+    /**
+     * 按升序分割的Spliterator。
+     *
+     * 每个Spliterator负责一段连续的秩[index, fence)，trySplit()从中间的秩切开，
+     * 用子树大小在O(log n)内找到分界结点，所以两半的大小都是精确的(SIZED | SUBSIZED)。
+     * 平衡的树上这样切出来的大致就是各层子树的根。
+     * 没有插入过重复键值时同时报告DISTINCT。遍历中发现树被修改则抛出ConcurrentModificationException。
+     */
+    public Spliterator<T> spliterator() {
+        return new TreeSpliterator(null, 0, size(), mModCount);
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * 第k小的结点
+     */
+    private RBTNode<T> selectNode(int k) {
+        RBTNode<T> x = mRoot;
+        while (true) {
+            int leftSize = sizeOf(x.left);
+            if (k < leftSize) {
+                x = x.left;
+            } else if (k > leftSize) {
+                k -= leftSize + 1;
+                x = x.right;
+            } else {
+                return x;
+            }
+        }
+    }
+
+    private final class TreeSpliterator implements Spliterator<T> {
+        private RBTNode<T> mNext;  // 秩为mIndex的结点, null表示还没找
+        private int mIndex;
+        private final int mFence;
+        private final int mExpectedModCount;
+
+        TreeSpliterator(RBTNode<T> next, int index, int fence, int expectedModCount) {
+            mNext = next;
+            mIndex = index;
+            mFence = fence;
+            mExpectedModCount = expectedModCount;
+        }
+
+        private RBTNode<T> next() {
+            if (mNext == null) {
+                mNext = selectNode(mIndex);
+            }
+            return mNext;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int mid = (mIndex + mFence) >>> 1;
+            if (mid <= mIndex) {
+                return null;
+            }
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            // 前一半[mIndex, mid)交出去, 自己留下后一半
+            Spliterator<T> prefix = new TreeSpliterator(mNext, mIndex, mid, mExpectedModCount);
+            mNext = null;
+            mIndex = mid;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (mIndex >= mFence) {
+                return false;
+            }
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            RBTNode<T> x = next();
+            mNext = successor(x);
+            mIndex++;
+            action.accept(x.key);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (mIndex >= mFence) {
+                return;
+            }
+            RBTNode<T> x = next();
+            for (int i = mIndex; i < mFence; i++) {
+                action.accept(x.key);
+                x = successor(x);
+            }
+            mNext = x;
+            mIndex = mFence;
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return mFence - mIndex;
+        }
+
+        @Override
+        public int characteristics() {
+            int characteristics = ORDERED | SORTED | SIZED | SUBSIZED | NONNULL;
+            return mDuplicates ? characteristics : characteristics | DISTINCT;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return null; // 自然顺序
+        }
+    }
+
+    private static final int PARALLEL_THRESHOLD = 1 << 12; // 子树小于这个大小就不再拆分
+
+    /**
+     * 在ForkJoinPool.commonPool()上并行归约, 按子树拆分: 左子树fork出去, 当前线程做结点和右子树。
+     * accumulator和combiner的要求同Stream.reduce(identity, accumulator, combiner):
+     * identity是combiner的单位元, combiner满足结合律。归约期间不能修改树。
+     */
+    public <R> R reduce(R identity, BiFunction<R, ? super T, R> accumulator, BinaryOperator<R> combiner) {
+        if (mRoot == null) {
+            return identity;
+        }
+        int expectedModCount = mModCount;
+        R result = new ReduceTask<R>(mRoot, identity, accumulator, combiner).invoke();
+        if (mModCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        return result;
+    }
+
+    /**
+     * 并行地对每个键值执行action, 不保证顺序, action需要是线程安全的
+     */
+    public void forEachParallel(Consumer<? super T> action) {
+        if (mRoot == null) {
+            return;
+        }
+        int expectedModCount = mModCount;
+        new ForEachTask(mRoot, action).invoke();
+        if (mModCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    @SuppressWarnings("serial") // ForkJoinTask是Serializable, 但这些任务只在本进程里跑, 不会被序列化
+    private final class ReduceTask<R> extends RecursiveTask<R> {
+        private final RBTNode<T> mTree;
+        private final R mIdentity;
+        private final BiFunction<R, ? super T, R> mAccumulator;
+        private final BinaryOperator<R> mCombiner;
+
+        ReduceTask(RBTNode<T> tree, R identity, BiFunction<R, ? super T, R> accumulator, BinaryOperator<R> combiner) {
+            mTree = tree;
+            mIdentity = identity;
+            mAccumulator = accumulator;
+            mCombiner = combiner;
+        }
+
+        @Override
+        protected R compute() {
+            RBTNode<T> tree = mTree;
+            if (tree.size <= PARALLEL_THRESHOLD) {
+                R result = mIdentity;
+                RBTNode<T> x = minimum(tree);
+                for (int i = tree.size; i > 0; i--) {
+                    result = mAccumulator.apply(result, x.key);
+                    x = successor(x);
+                }
+                return result;
+            }
+            ReduceTask<R> left = null;
+            if (tree.left != null) {
+                left = new ReduceTask<R>(tree.left, mIdentity, mAccumulator, mCombiner);
+                left.fork();
+            }
+            R right = mAccumulator.apply(mIdentity, tree.key);
+            if (tree.right != null) {
+                right = mCombiner.apply(right,
+                        new ReduceTask<R>(tree.right, mIdentity, mAccumulator, mCombiner).compute());
+            }
+            return left != null ? mCombiner.apply(left.join(), right) : right;
+        }
+    }
+
+    @SuppressWarnings("serial") // ForkJoinTask是Serializable, 但这些任务只在本进程里跑, 不会被序列化
+    private final class ForEachTask extends RecursiveAction {
+        private final RBTNode<T> mTree;
+        private final Consumer<? super T> mAction;
+        private ForEachTask mNextForked; // 沿右边fork出去的任务串成链表, 最后一起join
+
+        ForEachTask(RBTNode<T> tree, Consumer<? super T> action) {
+            mTree = tree;
+            mAction = action;
+        }
+
+        @Override
+        protected void compute() {
+            RBTNode<T> tree = mTree;
+            // 沿右边往下, 每一层把左子树fork出去
+            ForEachTask forked = null;
+            while (tree != null && tree.size > PARALLEL_THRESHOLD) {
+                if (tree.left != null) {
+                    ForEachTask left = new ForEachTask(tree.left, mAction);
+                    left.fork();
+                    left.mNextForked = forked;
+                    forked = left;
+                }
+                mAction.accept(tree.key);
+                tree = tree.right;
+            }
+            if (tree != null) {
+                RBTNode<T> x = minimum(tree);
+                for (int i = tree.size; i > 0; i--) {
+                    mAction.accept(x.key);
+                    x = successor(x);
+                }
+            }
+            for (; forked != null; forked = forked.mNextForked) {
+                forked.join();
+            }
+        }
+    }
+
+    // ---------------------------------------- 统计
+
+    /**
+     * 开启(metrics不为null)或关闭统计。同一个RBTreeMetrics可以给多棵树共用。
+     */
+    public void setMetrics(RBTreeMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public RBTreeMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * 黑高: 从根到叶子路径上黑色结点的个数, O(log n)
+     */
+    public int blackHeight() {
+        int height = 0;
+        for (RBTNode<T> x = mRoot; x != null; x = x.left) {
+            if (x.color == BLACK) {
+                height++;
+            }
+        }
+        return height;
+    }
+
+    /**
+     * 树高: 最长的根到叶子路径上的结点个数。沿父亲指针做中序遍历, O(n), 不分配内存。
+     */
+    public int height() {
+        int height = 0;
+        int depth = 0;
+        RBTNode<T> x = mRoot;
+        if (x == null) {
+            return 0;
+        }
+        while (x.left != null) {
+            x = x.left;
+            depth++;
+        }
+        while (x != null) {
+            if (x.left == null && x.right == null) {
+                height = Math.max(height, depth + 1);
+            }
+            if (x.right != null) {
+                x = x.right;
+                depth++;
+                while (x.left != null) {
+                    x = x.left;
+                    depth++;
+                }
+            } else {
+                while (x.parent != null && x == x.parent.right) {
+                    x = x.parent;
+                    depth--;
+                }
+                x = x.parent;
+                depth--;
+            }
+        }
+        return height;
+    }
+
+    /**
+     * 开启统计时的查找: 数一下访问的结点个数
+     */
+    private RBTNode<T> searchWithMetrics(T key) {
+        RBTreeOperationEvent event = new RBTreeOperationEvent();
+        event.begin();
+        int depth = 0;
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            depth++;
+            int cmp = key.compareTo(x.key);
+            if (cmp < 0) {
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                break;
+            }
+        }
+        mMetrics.recordSearch(depth, mOpCompares + depth);
+        commit(event, "search", depth, 0, 0);
+        return x;
+    }
+
+    private void insertWithMetrics(RBTNode<T> node) {
+        RBTreeOperationEvent event = new RBTreeOperationEvent();
+        event.begin();
+        mOpRotations = mOpFixups = mOpCompares = 0;
+        insert(node);
+        mMetrics.recordInsert(mOpDepth, mOpCompares);
+        commit(event, "insert", mOpDepth, mOpRotations, mOpFixups);
+    }
+
+    private void removeWithMetrics(T key) {
+        RBTreeOperationEvent event = new RBTreeOperationEvent();
+        event.begin();
+        mOpRotations = mOpFixups = 0;
+        int depth = 0;
+        RBTNode<T> x = mRoot;
+        while (x != null) {
+            depth++;
+            int cmp = key.compareTo(x.key);
+            if (cmp < 0) {
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                remove(x);
+                break;
+            }
+        }
+        mMetrics.recordRemove(depth);
+        commit(event, "remove", depth, mOpRotations, mOpFixups);
+    }
+
+    private void commit(RBTreeOperationEvent event, String operation, int depth, int rotations, int fixups) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.depth = depth;
+            event.rotations = rotations;
+            event.fixupIterations = fixups;
+            event.treeSize = size();
+            event.commit();
+        }
+    }
+
+    /**
+     * 清空。结点之间的引用不用逐个断开, 整棵树不可达之后由GC回收。
+     */
+    public void clear() {
+        mRoot = null;
+        mLeftmost = mRightmost = mFinger = null;
+        mDuplicates = false;
+        mModCount++;
+    }
+
+    /**
+     * 按前序打印每个结点和它的父亲
+     */
+    public void print() {
+        for (RBTNode<T> x = mRoot; x != null; x = preOrderNext(x)) {
+            if (x.parent == null) {
+                System.out.printf("%2d(B) is root\n", x.key);
+            } else {
+                System.out.printf("%2d(%s) is %2d's %6s child\n",
+                        x.key,
+                        isRed(x) ? "R" : "B",
+                        x.parent.key,
+                        x == x.parent.right ? "right" : "left");
+            }
+        }
+    }
+
+    /**
+     * 遍历整棵树的游标
+     */
+    public Cursor cursor() {
+        return new Cursor(null, null);
+    }
+
+    /**
+     * 遍历[lo, hi)的游标, lo或hi为null表示该方向没有边界
+     */
+    public Cursor cursor(T lo, T hi) {
+        return new Cursor(lo, hi);
+    }
+
+    /**
+     * 区间游标。
+     *
+     * 只在开始(或seek)时从根往下找一次起点，之后沿着父亲指针走到前驱/后继，
+     * 每走一步均摊O(1)，不分配任何对象；游标本身可以用reset()反复使用。
+     * 用法：
+     *     RBTree<T>.Cursor c = tree.cursor(lo, hi);
+     *     while (c.next()) { T key = c.key(); ... }
+     */
+    public class Cursor {
+        private static final int UNSTARTED = 0;
+        private static final int ON_NODE = 1;
+        private static final int REMOVED = 2;     // 当前结点刚被remove(), mPrev/mNext记着它的前驱和后继
+        private static final int BEFORE_FIRST = 3;
+        private static final int AFTER_LAST = 4;
+
+        private T mLo;   // 下界(包含), null为无界
+        private T mHi;   // 上界(不包含), null为无界
+        private int mState;
+        private RBTNode<T> mNode;
+        private RBTNode<T> mPrev;
+        private RBTNode<T> mNext;
+
+        private Cursor(T lo, T hi) {
+            reset(lo, hi);
+        }
+
+        /**
+         * 重新设定区间, 回到未开始的状态
+         */
+        public Cursor reset(T lo, T hi) {
+            mLo = lo;
+            mHi = hi;
+            mState = UNSTARTED;
+            mNode = mPrev = mNext = null;
+            return this;
+        }
+
+        private boolean belowHi(RBTNode<T> node) {
+            return mHi == null || node.key.compareTo(mHi) < 0;
+        }
+
+        private boolean aboveLo(RBTNode<T> node) {
+            return mLo == null || node.key.compareTo(mLo) >= 0;
+        }
+
+        private RBTNode<T> first() {
+            return mLo == null ? mLeftmost : ceilingNode(mLo);
+        }
+
+        private RBTNode<T> last() {
+            return mHi == null ? mRightmost : lowerNode(mHi);
+        }
+
+        private boolean moveTo(RBTNode<T> node, boolean forward) {
+            if (node == null || !(forward ? belowHi(node) : aboveLo(node))) {
+                mState = forward ? AFTER_LAST : BEFORE_FIRST;
+                mNode = null;
+                return false;
+            }
+            mState = ON_NODE;
+            mNode = node;
+            return true;
+        }
+
+        /**
+         * 移到下一个键值, 区间内没有了则返回false
+         */
+        public boolean next() {
+            switch (mState) {
+                case ON_NODE:
+                    return moveTo(successor(mNode), true);
+                case REMOVED:
+                    return moveTo(mNext, true);
+                case AFTER_LAST:
+                    return false;
+                default: // UNSTARTED, BEFORE_FIRST
+                    return moveTo(first(), true);
+            }
+        }
+
+        /**
+         * 移到上一个键值, 区间内没有了则返回false。未开始时从区间的最后一个键值开始。
+         */
+        public boolean prev() {
+            switch (mState) {
+                case ON_NODE:
+                    return moveTo(predecessor(mNode), false);
+                case REMOVED:
+                    return moveTo(mPrev, false);
+                case BEFORE_FIRST:
+                    return false;
+                default: // UNSTARTED, AFTER_LAST
+                    return moveTo(last(), false);
+            }
+        }
+
+        /**
+         * 定位到区间内第一个大于等于key的键值
+         */
+        public boolean seek(T key) {
+            if (mLo != null && key.compareTo(mLo) < 0) {
+                key = mLo;
+            }
+            return moveTo(ceilingNode(key), true);
+        }
+
+        /**
+         * 当前键值
+         */
+        public T key() {
+            if (mState != ON_NODE) {
+                throw new NoSuchElementException();
+            }
+            return mNode.key;
+        }
+
+        /**
+         * 删除当前键值, 之后的next()/prev()从它原来的后继/前驱继续
+         */
+        public void remove() {
+            if (mState != ON_NODE) {
+                throw new IllegalStateException();
+            }
+            mPrev = predecessor(mNode);
+            mNext = successor(mNode);
+            RBTree.this.remove(mNode);
+            mNode = null;
+            mState = REMOVED;
+        }
+    }
+
+    /**
+     * [lo, hi)区间的视图, 对视图的修改直接作用在树上
+     */
+    public SortedSet<T> subSet(T lo, T hi) {
+        if (lo.compareTo(hi) > 0) {
+            throw new IllegalArgumentException("lo > hi");
+        }
+        return new SubSet(lo, hi);
+    }
+
+    /**
+     * 小于hi的部分的视图
+     */
+    public SortedSet<T> headSet(T hi) {
+        return new SubSet(null, hi);
+    }
+
+    /**
+     * 大于等于lo的部分的视图
+     */
+    public SortedSet<T> tailSet(T lo) {
+        return new SubSet(lo, null);
+    }
+
+    /**
+     * 由树支撑的区间视图。size()用rank计算, O(log n)。
+     * 树允许重复的键值, add()不会因为键值已经存在而返回false; 但有界模式下add()就是offer(),
+     * 满了之后键值被拒绝时返回false。
+     */
+    private class SubSet extends AbstractSet<T> implements SortedSet<T> {
+        private final T mLo; // 下界(包含), null为无界
+        private final T mHi; // 上界(不包含), null为无界
+
+        SubSet(T lo, T hi) {
+            mLo = lo;
+            mHi = hi;
+        }
+
+        private boolean inRange(T key) {
+            return (mLo == null || key.compareTo(mLo) >= 0) && (mHi == null || key.compareTo(mHi) < 0);
+        }
+
+        private RBTNode<T> firstNode() {
+            RBTNode<T> node = mLo == null ? minimum(mRoot) : ceilingNode(mLo);
+            return node != null && (mHi == null || node.key.compareTo(mHi) < 0) ? node : null;
+        }
+
+        private RBTNode<T> lastNode() {
+            RBTNode<T> node = mHi == null ? maximum(mRoot) : lowerNode(mHi);
+            return node != null && (mLo == null || node.key.compareTo(mLo) >= 0) ? node : null;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new SubSetIterator(firstNode(), mHi);
+        }
+
+        @Override
+        public int size() {
+            int hi = mHi == null ? RBTree.this.size() : rank(mHi);
+            int lo = mLo == null ? 0 : rank(mLo);
+            return Math.max(hi - lo, 0);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return firstNode() == null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean contains(Object o) {
+            T key = (T) o;
+            return inRange(key) && RBTree.this.contains(key);
+        }
+
+        @Override
+        public boolean add(T key) {
+            if (!inRange(key)) {
+                throw new IllegalArgumentException("key out of range: " + key);
+            }
+            return offer(key);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object o) {
+            T key = (T) o;
+            RBTNode<T> node;
+            if (!inRange(key) || (node = iteraticeSearch(mRoot, key)) == null) {
+                return false;
+            }
+            RBTree.this.remove(node);
+            return true;
+        }
+
+        /**
+         * 整段切掉, 见removeRange, O(log n)
+         */
+        @Override
+        public void clear() {
+            removeBetween(mLo, mHi);
+        }
+
+        @Override
+        public Comparator<? super T> comparator() {
+            return null;
+        }
+
+        @Override
+        public T first() {
+            RBTNode<T> node = firstNode();
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            return node.key;
+        }
+
+        @Override
+        public T last() {
+            RBTNode<T> node = lastNode();
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            return node.key;
+        }
+
+        @Override
+        public SortedSet<T> subSet(T lo, T hi) {
+            if (lo.compareTo(hi) > 0) {
+                throw new IllegalArgumentException("lo > hi");
+            }
+            return new SubSet(narrowLo(lo), narrowHi(hi));
+        }
+
+        @Override
+        public SortedSet<T> headSet(T hi) {
+            return new SubSet(mLo, narrowHi(hi));
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T lo) {
+            return new SubSet(narrowLo(lo), mHi);
+        }
+
+        private T narrowLo(T lo) {
+            if ((mLo != null && lo.compareTo(mLo) < 0) || (mHi != null && lo.compareTo(mHi) > 0)) {
+                throw new IllegalArgumentException("key out of range: " + lo);
+            }
+            return lo;
+        }
+
+        private T narrowHi(T hi) {
+            if ((mHi != null && hi.compareTo(mHi) > 0) || (mLo != null && hi.compareTo(mLo) < 0)) {
+                throw new IllegalArgumentException("key out of range: " + hi);
+            }
+            return hi;
+        }
+    }
+
+    private class SubSetIterator implements Iterator<T> {
+        private final T mHi;
+        private RBTNode<T> mNext;
+        private RBTNode<T> mLastReturned;
+        private int mExpectedModCount;
+
+        SubSetIterator(RBTNode<T> first, T hi) {
+            mNext = first;
+            mHi = hi;
+            mExpectedModCount = mModCount;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mNext != null;
+        }
+
+        @Override
+        public T next() {
+            if (mNext == null) {
+                throw new NoSuchElementException();
+            }
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            mLastReturned = mNext;
+            mNext = successor(mNext);
+            if (mNext != null && mHi != null && mNext.key.compareTo(mHi) >= 0) {
+                mNext = null;
+            }
+            return mLastReturned.key;
+        }
+
+        @Override
+        public void remove() {
+            if (mLastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            RBTree.this.remove(mLastReturned);
+            mLastReturned = null;
+            mExpectedModCount = mModCount;
+        }
+    }
+}
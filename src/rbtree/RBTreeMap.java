@@ -0,0 +1,1555 @@
+package rbtree;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 键值对版本的红黑树，实现NavigableMap。
+ *
+ * 值直接保存在树的结点里，不需要再另外用一个HashMap保存。
+ * 旋转、插入修正和删除修正与RBTree相同；键值唯一，put已有的键值时原地更新。
+ * compute/computeIfAbsent/computeIfPresent/merge只从根往下找一次：
+ * 找到了就原地修改值(或直接删掉这个结点)，找不到就挂在查找停下的位置上，不会先删再插。
+ *
+ * firstEntry()等导航方法返回的是快照，不支持setValue；entrySet()迭代出的结点支持setValue，直接写回树中。
+ */
+public class RBTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+    private RBTNode<K, V> mRoot; // 根节点
+    private int mSize;
+    private int mModCount;
+
+    private EntrySet mEntrySet;
+    private KeySet mKeySet;
+    private NavigableMap<K, V> mDescendingMap;
+
+    private static final boolean RED = false;
+    private static final boolean BLACK = true;
+
+    static final class RBTNode<K, V> implements Map.Entry<K, V> {
+        boolean color;
+        K key;
+        V value;
+        RBTNode<K, V> left;
+        RBTNode<K, V> right;
+        RBTNode<K, V> parent;
+
+        RBTNode(K key, V value, RBTNode<K, V> parent) {
+            this.color = BLACK;
+            this.key = key;
+            this.value = value;
+            this.parent = parent;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V oldValue = this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    public RBTreeMap() {
+        mRoot = null;
+    }
+
+    public RBTreeMap(Map<? extends K, ? extends V> m) {
+        this();
+        putAll(m);
+    }
+
+    private static <K, V> RBTNode<K, V> parentOf(RBTNode<K, V> node) {
+        return node != null ? node.parent : null;
+    }
+    private static <K, V> boolean colorOf(RBTNode<K, V> node) {
+        return node != null ? node.color : BLACK;
+    }
+    private static <K, V> boolean isRed(RBTNode<K, V> node) {
+        return node != null && node.color == RED;
+    }
+    private static <K, V> boolean isBlack(RBTNode<K, V> node) {
+        return !isRed(node);
+    }
+    private static <K, V> void setBlack(RBTNode<K, V> node) {
+        if (node != null)
+            node.color = BLACK;
+    }
+    private static <K, V> void setRed(RBTNode<K, V> node) {
+        if (node != null)
+            node.color = RED;
+    }
+    private static <K, V> void setColor(RBTNode<K, V> node, boolean color) {
+        if (node != null)
+            node.color = color;
+    }
+
+    private static <K, V> RBTNode<K, V> minimum(RBTNode<K, V> tree) {
+        if (tree == null) {
+            return null;
+        }
+        while (tree.left != null) {
+            tree = tree.left;
+        }
+        return tree;
+    }
+
+    private static <K, V> RBTNode<K, V> maximum(RBTNode<K, V> tree) {
+        if (tree == null) {
+            return null;
+        }
+        while (tree.right != null) {
+            tree = tree.right;
+        }
+        return tree;
+    }
+
+    /*
+     * 找结点(x)的后继结点
+     */
+    private static <K, V> RBTNode<K, V> successor(RBTNode<K, V> x) {
+        if (x.right != null) {
+            return minimum(x.right);
+        }
+        RBTNode<K, V> y = x.parent;
+        while (y != null && x == y.right) {
+            x = y;
+            y = y.parent;
+        }
+        return y;
+    }
+
+    /*
+     * 找结点(x)的前驱结点
+     */
+    private static <K, V> RBTNode<K, V> predecessor(RBTNode<K, V> x) {
+        if (x.left != null) {
+            return maximum(x.left);
+        }
+        RBTNode<K, V> y = x.parent;
+        while (y != null && x == y.left) {
+            x = y;
+            y = y.parent;
+        }
+        return y;
+    }
+
+    /*
+     * 对红黑树的节点(x)进行左旋转，见RBTree.leftRotate
+     */
+    private void leftRotate(RBTNode<K, V> x) {
+        RBTNode<K, V> y = x.right;
+
+        x.right = y.left;
+        if (y.left != null) {
+            y.left.parent = x;
+        }
+
+        y.parent = x.parent;
+        if (x.parent == null) {
+            mRoot = y;
+        } else if (x.parent.left == x) {
+            x.parent.left = y;
+        } else {
+            x.parent.right = y;
+        }
+
+        y.left = x;
+        x.parent = y;
+    }
+
+    /*
+     * 对红黑树的节点(y)进行右旋转，见RBTree.rightRotate
+     */
+    private void rightRotate(RBTNode<K, V> y) {
+        RBTNode<K, V> x = y.left;
+
+        y.left = x.right;
+        if (x.right != null) {
+            x.right.parent = y;
+        }
+
+        x.parent = y.parent;
+        if (y.parent == null) {
+            mRoot = x;
+        } else if (y.parent.left == y) {
+            y.parent.left = x;
+        } else {
+            y.parent.right = x;
+        }
+
+        x.right = y;
+        y.parent = x;
+    }
+
+    /**
+     * 红黑树插入修正函数，见RBTree.insertFixup
+     */
+    private void insertFixup(RBTNode<K, V> node) {
+        RBTNode<K, V> parent, gparent;
+        while ((parent = parentOf(node)) != null && isRed(parent)) {
+            gparent = parentOf(parent);
+
+            if (parent == gparent.left) {
+                RBTNode<K, V> uncle = gparent.right;
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (parent.right == node) {
+                    node = parent;
+                    leftRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                rightRotate(gparent);
+            } else {
+                RBTNode<K, V> uncle = gparent.left;
+
+                if (isRed(uncle)) {
+                    setBlack(parent);
+                    setBlack(uncle);
+                    setRed(gparent);
+                    node = gparent;
+                    continue;
+                }
+                if (parent.left == node) {
+                    node = parent;
+                    rightRotate(node);
+                    continue;
+                }
+                setBlack(parent);
+                setRed(gparent);
+                leftRotate(gparent);
+            }
+        }
+
+        setBlack(mRoot);
+    }
+
+    /**
+     * 红黑树删除修正函数，见RBTree.deleteFixup
+     */
+    private void deleteFixup(RBTNode<K, V> node, RBTNode<K, V> parent) {
+        RBTNode<K, V> brother;
+        while (isBlack(node) && node != mRoot) {
+            if (parent.left == node) {
+                brother = parent.right;
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    leftRotate(parent);
+                    brother = parent.right;
+                }
+                if (isBlack(brother.left) && isBlack(brother.right)) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(brother.right)) {
+                        setBlack(brother.left);
+                        setRed(brother);
+                        rightRotate(brother);
+                        brother = parent.right;
+                    }
+                    setColor(brother, colorOf(parent));
+                    setBlack(parent);
+                    setBlack(brother.right);
+                    leftRotate(parent);
+                    node = mRoot;
+                    break;
+                }
+            } else {
+                brother = parent.left;
+                if (isRed(brother)) {
+                    setBlack(brother);
+                    setRed(parent);
+                    rightRotate(parent);
+                    brother = parent.left;
+                }
+                if (isBlack(brother.left) && isBlack(brother.right)) {
+                    setRed(brother);
+                    node = parent;
+                    parent = parentOf(node);
+                } else {
+                    if (isBlack(brother.left)) {
+                        setBlack(brother.right);
+                        setRed(brother);
+                        leftRotate(brother);
+                        brother = parent.left;
+                    }
+                    setColor(brother, colorOf(parent));
+                    setBlack(parent);
+                    setBlack(brother.left);
+                    rightRotate(parent);
+                    node = mRoot;
+                    break;
+                }
+            }
+        }
+        setBlack(node);
+    }
+
+    /**
+     * 把新结点挂到查找停下的位置parent上(cmp为最后一次比较的结果)，然后修正
+     */
+    private RBTNode<K, V> addEntry(K key, V value, RBTNode<K, V> parent, int cmp) {
+        RBTNode<K, V> node = new RBTNode<K, V>(key, value, parent);
+        if (parent == null) {
+            mRoot = node;
+        } else if (cmp < 0) {
+            parent.left = node;
+        } else {
+            parent.right = node;
+        }
+        node.color = RED;
+        insertFixup(node);
+        mSize++;
+        mModCount++;
+        return node;
+    }
+
+    /*
+     * 删除结点(node)，用后继结点顶替node的位置，见RBTree.remove
+     */
+    private void deleteEntry(RBTNode<K, V> node) {
+        RBTNode<K, V> child, parent;
+        boolean color;
+
+        if (node.left != null && node.right != null) {
+            RBTNode<K, V> replace = minimum(node.right);
+
+            if (node.parent != null) {
+                if (node.parent.left == node) {
+                    node.parent.left = replace;
+                } else {
+                    node.parent.right = replace;
+                }
+            } else {
+                mRoot = replace;
+            }
+
+            child = replace.right;
+            parent = replace.parent;
+            color = replace.color;
+
+            if (parent == node) {
+                parent = replace;
+            } else {
+                if (child != null) {
+                    child.parent = parent;
+                }
+                parent.left = child;
+
+                replace.right = node.right;
+                node.right.parent = replace;
+            }
+
+            replace.parent = node.parent;
+            replace.color = node.color;
+            replace.left = node.left;
+            node.left.parent = replace;
+        } else {
+            child = node.left != null ? node.left : node.right;
+            parent = node.parent;
+            color = node.color;
+
+            if (child != null) {
+                child.parent = parent;
+            }
+
+            if (parent == null) {
+                mRoot = child;
+            } else if (parent.left == node) {
+                parent.left = child;
+            } else {
+                parent.right = child;
+            }
+        }
+
+        node.left = node.right = node.parent = null;
+        mSize--;
+        mModCount++;
+
+        if (color == BLACK) {
+            deleteFixup(child, parent);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private RBTNode<K, V> getEntry(Object key) {
+        K k = (K) Objects.requireNonNull(key);
+        RBTNode<K, V> x = mRoot;
+        while (x != null) {
+            int cmp = k.compareTo(x.key);
+            if (cmp < 0) {
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                return x;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 大于等于key的最小结点
+     */
+    private RBTNode<K, V> ceilingEntryOf(K key) {
+        RBTNode<K, V> best = null;
+        RBTNode<K, V> x = mRoot;
+        while (x != null) {
+            int cmp = key.compareTo(x.key);
+            if (cmp < 0) {
+                best = x;
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                return x;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 大于key的最小结点
+     */
+    private RBTNode<K, V> higherEntryOf(K key) {
+        RBTNode<K, V> best = null;
+        RBTNode<K, V> x = mRoot;
+        while (x != null) {
+            if (key.compareTo(x.key) < 0) {
+                best = x;
+                x = x.left;
+            } else {
+                x = x.right;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 小于等于key的最大结点
+     */
+    private RBTNode<K, V> floorEntryOf(K key) {
+        RBTNode<K, V> best = null;
+        RBTNode<K, V> x = mRoot;
+        while (x != null) {
+            int cmp = key.compareTo(x.key);
+            if (cmp > 0) {
+                best = x;
+                x = x.right;
+            } else if (cmp < 0) {
+                x = x.left;
+            } else {
+                return x;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 小于key的最大结点
+     */
+    private RBTNode<K, V> lowerEntryOf(K key) {
+        RBTNode<K, V> best = null;
+        RBTNode<K, V> x = mRoot;
+        while (x != null) {
+            if (key.compareTo(x.key) > 0) {
+                best = x;
+                x = x.right;
+            } else {
+                x = x.left;
+            }
+        }
+        return best;
+    }
+
+    private static <K, V> Map.Entry<K, V> exportEntry(RBTNode<K, V> e) {
+        return e == null ? null : new AbstractMap.SimpleImmutableEntry<K, V>(e.key, e.value);
+    }
+
+    private static <K> K keyOrNull(RBTNode<K, ?> e) {
+        return e == null ? null : e.key;
+    }
+
+    private static <K> K key(RBTNode<K, ?> e) {
+        if (e == null) {
+            throw new NoSuchElementException();
+        }
+        return e.key;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getEntry(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        RBTNode<K, V> e = getEntry(key);
+        return e == null ? null : e.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        RBTNode<K, V> y = null;
+        RBTNode<K, V> x = mRoot;
+        int cmp = 0;
+        while (x != null) {
+            y = x;
+            cmp = key.compareTo(x.key);
+            if (cmp < 0) {
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                return x.setValue(value);
+            }
+        }
+        addEntry(key, value, y, cmp);
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        RBTNode<K, V> e = getEntry(key);
+        if (e == null) {
+            return null;
+        }
+        V oldValue = e.value;
+        deleteEntry(e);
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        mRoot = null;
+        mSize = 0;
+        mModCount++;
+    }
+
+    /**
+     * 一次查找完成的compute：找到就原地修改或删除该结点，找不到就直接挂在查找停下的位置
+     */
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(remappingFunction);
+        RBTNode<K, V> y = null;
+        RBTNode<K, V> x = mRoot;
+        int cmp = 0;
+        while (x != null) {
+            y = x;
+            cmp = key.compareTo(x.key);
+            if (cmp < 0) {
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                int modCount = mModCount;
+                V newValue = remappingFunction.apply(key, x.value);
+                checkModCount(modCount);
+                return remapValue(x, newValue);
+            }
+        }
+        int modCount = mModCount;
+        V newValue = remappingFunction.apply(key, null);
+        return addIfNotNull(key, newValue, y, cmp, modCount);
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(mappingFunction);
+        RBTNode<K, V> y = null;
+        RBTNode<K, V> x = mRoot;
+        int cmp = 0;
+        while (x != null) {
+            y = x;
+            cmp = key.compareTo(x.key);
+            if (cmp < 0) {
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                if (x.value == null) {
+                    int modCount = mModCount;
+                    V newValue = mappingFunction.apply(key);
+                    checkModCount(modCount);
+                    x.value = newValue;
+                }
+                return x.value;
+            }
+        }
+        int modCount = mModCount;
+        V newValue = mappingFunction.apply(key);
+        return addIfNotNull(key, newValue, y, cmp, modCount);
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(remappingFunction);
+        RBTNode<K, V> x = getEntry(key);
+        if (x == null || x.value == null) {
+            return null;
+        }
+        int modCount = mModCount;
+        V newValue = remappingFunction.apply(key, x.value);
+        checkModCount(modCount);
+        return remapValue(x, newValue);
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        RBTNode<K, V> y = null;
+        RBTNode<K, V> x = mRoot;
+        int cmp = 0;
+        while (x != null) {
+            y = x;
+            cmp = key.compareTo(x.key);
+            if (cmp < 0) {
+                x = x.left;
+            } else if (cmp > 0) {
+                x = x.right;
+            } else {
+                if (x.value == null) {
+                    x.value = value;
+                    return value;
+                }
+                int modCount = mModCount;
+                V newValue = remappingFunction.apply(x.value, value);
+                checkModCount(modCount);
+                return remapValue(x, newValue);
+            }
+        }
+        addEntry(key, value, y, cmp);
+        return value;
+    }
+
+    /**
+     * 函数返回null则删掉结点，否则原地更新值。函数执行期间不允许修改结构。
+     */
+    private V remapValue(RBTNode<K, V> x, V newValue) {
+        if (newValue == null) {
+            deleteEntry(x);
+        } else {
+            x.value = newValue;
+        }
+        return newValue;
+    }
+
+    private V addIfNotNull(K key, V value, RBTNode<K, V> parent, int cmp, int modCount) {
+        checkModCount(modCount);
+        if (value != null) {
+            addEntry(key, value, parent, cmp);
+        }
+        return value;
+    }
+
+    private void checkModCount(int modCount) {
+        if (mModCount != modCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    // ---------------------------------------- 导航方法
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+        return exportEntry(minimum(mRoot));
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+        return exportEntry(maximum(mRoot));
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+        RBTNode<K, V> e = minimum(mRoot);
+        Map.Entry<K, V> result = exportEntry(e);
+        if (e != null) {
+            deleteEntry(e);
+        }
+        return result;
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+        RBTNode<K, V> e = maximum(mRoot);
+        Map.Entry<K, V> result = exportEntry(e);
+        if (e != null) {
+            deleteEntry(e);
+        }
+        return result;
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return exportEntry(lowerEntryOf(key));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(lowerEntryOf(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+        return exportEntry(floorEntryOf(key));
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(floorEntryOf(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return exportEntry(ceilingEntryOf(key));
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(ceilingEntryOf(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+        return exportEntry(higherEntryOf(key));
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(higherEntryOf(key));
+    }
+
+    @Override
+    public K firstKey() {
+        return key(minimum(mRoot));
+    }
+
+    @Override
+    public K lastKey() {
+        return key(maximum(mRoot));
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return null;
+    }
+
+    // ---------------------------------------- 视图
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet es = mEntrySet;
+        return es != null ? es : (mEntrySet = new EntrySet());
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        KeySet ks = mKeySet;
+        return ks != null ? ks : (mKeySet = new KeySet(this));
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        NavigableMap<K, V> dm = mDescendingMap;
+        return dm != null ? dm : (mDescendingMap = new SubMap(true, null, true, true, null, true, true));
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (fromKey.compareTo(toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return new SubMap(true, null, true, false, Objects.requireNonNull(toKey), inclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return new SubMap(false, Objects.requireNonNull(fromKey), inclusive, true, null, true, false);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    Iterator<K> keyIterator() {
+        return new KeyIterator(minimum(mRoot), null);
+    }
+
+    Iterator<K> descendingKeyIterator() {
+        return new DescendingKeyIterator(maximum(mRoot), null);
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator(minimum(mRoot), null);
+        }
+
+        @Override
+        public int size() {
+            return RBTreeMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            RBTNode<K, V> e = getEntry(entry.getKey());
+            return e != null && Objects.equals(e.value, entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            RBTNode<K, V> e = getEntry(entry.getKey());
+            if (e != null && Objects.equals(e.value, entry.getValue())) {
+                deleteEntry(e);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void clear() {
+            RBTreeMap.this.clear();
+        }
+    }
+
+    /**
+     * 键值集合视图，m为RBTreeMap本身或者它的子视图
+     */
+    private class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+        private final NavigableMap<K, V> m;
+
+        KeySet(NavigableMap<K, V> m) {
+            this.m = m;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return m instanceof RBTreeMap ? keyIterator() : ((SubMap) m).keyIterator();
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return m instanceof RBTreeMap ? descendingKeyIterator() : ((SubMap) m).descendingKeyIterator();
+        }
+
+        @Override
+        public int size() {
+            return m.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return m.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return m.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (m.containsKey(o)) {
+                m.remove(o);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void clear() {
+            m.clear();
+        }
+
+        @Override
+        public K lower(K e) {
+            return m.lowerKey(e);
+        }
+
+        @Override
+        public K floor(K e) {
+            return m.floorKey(e);
+        }
+
+        @Override
+        public K ceiling(K e) {
+            return m.ceilingKey(e);
+        }
+
+        @Override
+        public K higher(K e) {
+            return m.higherKey(e);
+        }
+
+        @Override
+        public K first() {
+            return m.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return m.lastKey();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return m.comparator();
+        }
+
+        @Override
+        public K pollFirst() {
+            Map.Entry<K, V> e = m.pollFirstEntry();
+            return e == null ? null : e.getKey();
+        }
+
+        @Override
+        public K pollLast() {
+            Map.Entry<K, V> e = m.pollLastEntry();
+            return e == null ? null : e.getKey();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return new KeySet(m.descendingMap());
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return new KeySet(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return new KeySet(m.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return new KeySet(m.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+
+    /**
+     * 迭代器基类。fence为区间之外的第一个结点(为null表示一直走到头)，按结点身份比较。
+     * 删除用后继结点顶替，不拷贝键值，所以remove()之后mNext仍然有效。
+     */
+    private abstract class PrivateEntryIterator<T> implements Iterator<T> {
+        private final RBTNode<K, V> mFence;
+        private RBTNode<K, V> mNext;
+        private RBTNode<K, V> mLastReturned;
+        private int mExpectedModCount;
+
+        PrivateEntryIterator(RBTNode<K, V> first, RBTNode<K, V> fence) {
+            mNext = first;
+            mFence = fence;
+            mExpectedModCount = mModCount;
+        }
+
+        @Override
+        public final boolean hasNext() {
+            return mNext != null && mNext != mFence;
+        }
+
+        final RBTNode<K, V> nextEntry() {
+            RBTNode<K, V> e = mNext;
+            if (e == null || e == mFence) {
+                throw new NoSuchElementException();
+            }
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            mNext = successor(e);
+            mLastReturned = e;
+            return e;
+        }
+
+        final RBTNode<K, V> prevEntry() {
+            RBTNode<K, V> e = mNext;
+            if (e == null || e == mFence) {
+                throw new NoSuchElementException();
+            }
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            mNext = predecessor(e);
+            mLastReturned = e;
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            if (mLastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            deleteEntry(mLastReturned);
+            mExpectedModCount = mModCount;
+            mLastReturned = null;
+        }
+    }
+
+    private final class EntryIterator extends PrivateEntryIterator<Map.Entry<K, V>> {
+        EntryIterator(RBTNode<K, V> first, RBTNode<K, V> fence) {
+            super(first, fence);
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            return nextEntry();
+        }
+    }
+
+    private final class KeyIterator extends PrivateEntryIterator<K> {
+        KeyIterator(RBTNode<K, V> first, RBTNode<K, V> fence) {
+            super(first, fence);
+        }
+
+        @Override
+        public K next() {
+            return nextEntry().key;
+        }
+    }
+
+    private final class DescendingEntryIterator extends PrivateEntryIterator<Map.Entry<K, V>> {
+        DescendingEntryIterator(RBTNode<K, V> first, RBTNode<K, V> fence) {
+            super(first, fence);
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            return prevEntry();
+        }
+    }
+
+    private final class DescendingKeyIterator extends PrivateEntryIterator<K> {
+        DescendingKeyIterator(RBTNode<K, V> first, RBTNode<K, V> fence) {
+            super(first, fence);
+        }
+
+        @Override
+        public K next() {
+            return prevEntry().key;
+        }
+    }
+
+    /**
+     * 子视图(包括逆序视图)。
+     *
+     * 边界总是按升序记录为[lo, hi](各自可以不包含、也可以无界)，descending表示对外按逆序呈现。
+     * abs*方法按升序在区间内导航，对外的方法再根据方向换成对应的abs*方法。
+     */
+    private class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+        private final boolean fromStart;
+        private final K lo;
+        private final boolean loInclusive;
+        private final boolean toEnd;
+        private final K hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+
+        SubMap(boolean fromStart, K lo, boolean loInclusive, boolean toEnd, K hi, boolean hiInclusive,
+               boolean descending) {
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(K key) {
+            if (!fromStart) {
+                int c = key.compareTo(lo);
+                if (c < 0 || (c == 0 && !loInclusive)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean tooHigh(K key) {
+            if (!toEnd) {
+                int c = key.compareTo(hi);
+                if (c > 0 || (c == 0 && !hiInclusive)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean inRange(K key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        private boolean inClosedRange(K key) {
+            return (fromStart || key.compareTo(lo) >= 0) && (toEnd || key.compareTo(hi) <= 0);
+        }
+
+        private boolean inRange(K key, boolean inclusive) {
+            return inclusive ? inRange(key) : inClosedRange(key);
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean inRangeObject(Object key) {
+            return inRange((K) Objects.requireNonNull(key));
+        }
+
+        private RBTNode<K, V> absLowest() {
+            RBTNode<K, V> e = fromStart ? minimum(mRoot) : (loInclusive ? ceilingEntryOf(lo) : higherEntryOf(lo));
+            return e == null || tooHigh(e.key) ? null : e;
+        }
+
+        private RBTNode<K, V> absHighest() {
+            RBTNode<K, V> e = toEnd ? maximum(mRoot) : (hiInclusive ? floorEntryOf(hi) : lowerEntryOf(hi));
+            return e == null || tooLow(e.key) ? null : e;
+        }
+
+        private RBTNode<K, V> absCeiling(K key) {
+            if (tooLow(key)) {
+                return absLowest();
+            }
+            RBTNode<K, V> e = ceilingEntryOf(key);
+            return e == null || tooHigh(e.key) ? null : e;
+        }
+
+        private RBTNode<K, V> absHigher(K key) {
+            if (tooLow(key)) {
+                return absLowest();
+            }
+            RBTNode<K, V> e = higherEntryOf(key);
+            return e == null || tooHigh(e.key) ? null : e;
+        }
+
+        private RBTNode<K, V> absFloor(K key) {
+            if (tooHigh(key)) {
+                return absHighest();
+            }
+            RBTNode<K, V> e = floorEntryOf(key);
+            return e == null || tooLow(e.key) ? null : e;
+        }
+
+        private RBTNode<K, V> absLower(K key) {
+            if (tooHigh(key)) {
+                return absHighest();
+            }
+            RBTNode<K, V> e = lowerEntryOf(key);
+            return e == null || tooLow(e.key) ? null : e;
+        }
+
+        /**
+         * 升序方向上区间之后的第一个结点
+         */
+        private RBTNode<K, V> absHighFence() {
+            return toEnd ? null : (hiInclusive ? higherEntryOf(hi) : ceilingEntryOf(hi));
+        }
+
+        /**
+         * 降序方向上区间之后的第一个结点
+         */
+        private RBTNode<K, V> absLowFence() {
+            return fromStart ? null : (loInclusive ? lowerEntryOf(lo) : floorEntryOf(lo));
+        }
+
+        private RBTNode<K, V> subLowest() {
+            return descending ? absHighest() : absLowest();
+        }
+
+        private RBTNode<K, V> subHighest() {
+            return descending ? absLowest() : absHighest();
+        }
+
+        private RBTNode<K, V> subCeiling(K key) {
+            return descending ? absFloor(key) : absCeiling(key);
+        }
+
+        private RBTNode<K, V> subHigher(K key) {
+            return descending ? absLower(key) : absHigher(key);
+        }
+
+        private RBTNode<K, V> subFloor(K key) {
+            return descending ? absCeiling(key) : absFloor(key);
+        }
+
+        private RBTNode<K, V> subLower(K key) {
+            return descending ? absHigher(key) : absLower(key);
+        }
+
+        Iterator<K> keyIterator() {
+            return descending ? new DescendingKeyIterator(absHighest(), absLowFence())
+                    : new KeyIterator(absLowest(), absHighFence());
+        }
+
+        Iterator<K> descendingKeyIterator() {
+            return descending ? new KeyIterator(absLowest(), absHighFence())
+                    : new DescendingKeyIterator(absHighest(), absLowFence());
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRangeObject(key) && RBTreeMap.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRangeObject(key) ? RBTreeMap.this.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (!inRange(key)) {
+                throw new IllegalArgumentException("key out of range: " + key);
+            }
+            return RBTreeMap.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return inRangeObject(key) ? RBTreeMap.this.remove(key) : null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return absLowest() == null;
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            RBTNode<K, V> fence = absHighFence();
+            for (RBTNode<K, V> e = absLowest(); e != null && e != fence; e = successor(e)) {
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public Map.Entry<K, V> firstEntry() {
+            return exportEntry(subLowest());
+        }
+
+        @Override
+        public Map.Entry<K, V> lastEntry() {
+            return exportEntry(subHighest());
+        }
+
+        @Override
+        public Map.Entry<K, V> pollFirstEntry() {
+            RBTNode<K, V> e = subLowest();
+            Map.Entry<K, V> result = exportEntry(e);
+            if (e != null) {
+                deleteEntry(e);
+            }
+            return result;
+        }
+
+        @Override
+        public Map.Entry<K, V> pollLastEntry() {
+            RBTNode<K, V> e = subHighest();
+            Map.Entry<K, V> result = exportEntry(e);
+            if (e != null) {
+                deleteEntry(e);
+            }
+            return result;
+        }
+
+        @Override
+        public Map.Entry<K, V> lowerEntry(K key) {
+            return exportEntry(subLower(key));
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return keyOrNull(subLower(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> floorEntry(K key) {
+            return exportEntry(subFloor(key));
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return keyOrNull(subFloor(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> ceilingEntry(K key) {
+            return exportEntry(subCeiling(key));
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return keyOrNull(subCeiling(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> higherEntry(K key) {
+            return exportEntry(subHigher(key));
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return keyOrNull(subHigher(key));
+        }
+
+        @Override
+        public K firstKey() {
+            return key(subLowest());
+        }
+
+        @Override
+        public K lastKey() {
+            return key(subHighest());
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return descending ? Collections.<K>reverseOrder() : null;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new SubEntrySet();
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap() {
+            return new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (!inRange(fromKey, fromInclusive)) {
+                throw new IllegalArgumentException("fromKey out of range: " + fromKey);
+            }
+            if (!inRange(toKey, toInclusive)) {
+                throw new IllegalArgumentException("toKey out of range: " + toKey);
+            }
+            if (descending) {
+                if (fromKey.compareTo(toKey) < 0) {
+                    throw new IllegalArgumentException("fromKey > toKey");
+                }
+                return new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, true);
+            }
+            if (fromKey.compareTo(toKey) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if (!inRange(toKey, inclusive)) {
+                throw new IllegalArgumentException("toKey out of range: " + toKey);
+            }
+            if (descending) {
+                return new SubMap(false, toKey, inclusive, toEnd, hi, hiInclusive, true);
+            }
+            return new SubMap(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if (!inRange(fromKey, inclusive)) {
+                throw new IllegalArgumentException("fromKey out of range: " + fromKey);
+            }
+            if (descending) {
+                return new SubMap(fromStart, lo, loInclusive, false, fromKey, inclusive, true);
+            }
+            return new SubMap(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        private class SubEntrySet extends AbstractSet<Map.Entry<K, V>> {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return descending ? new DescendingEntryIterator(absHighest(), absLowFence())
+                        : new EntryIterator(absLowest(), absHighFence());
+            }
+
+            @Override
+            public int size() {
+                return SubMap.this.size();
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return SubMap.this.isEmpty();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
+                }
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                if (!inRangeObject(entry.getKey())) {
+                    return false;
+                }
+                RBTNode<K, V> e = getEntry(entry.getKey());
+                return e != null && Objects.equals(e.value, entry.getValue());
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
+                }
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                if (!inRangeObject(entry.getKey())) {
+                    return false;
+                }
+                RBTNode<K, V> e = getEntry(entry.getKey());
+                if (e != null && Objects.equals(e.value, entry.getValue())) {
+                    deleteEntry(e);
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package rbtree;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RBTree热路径上的统计。
+ *
+ * 默认不开启：树里的mMetrics为null，每个操作只多一次判空。用RBTree.setMetrics()开启后统计：
+ *     比较次数(查找/插入/删除调用compareTo的次数, 从根往下找时等于访问的结点数,
+ *     走两端或finger的快速路径时只有几次)、旋转次数、
+ *     insertFixup/deleteFixup的循环次数、只变色不旋转的情况(叔叔为红/兄弟的孩子都为黑)，
+ *     以及下降深度的直方图和见过的最大深度。
+ * 计数器都是LongAdder，多个线程、多棵树(例如ShardedRBTree的各个分片)可以共用一个RBTreeMetrics。
+ *
+ * 开启统计的同时，耗时超过阈值的操作会产生JFR事件RBTreeOperationEvent(默认阈值1 ms，可在JFR配置里修改)。
+ */
+public final class RBTreeMetrics {
+    public static final int DEPTH_BUCKETS = 64; // 深度>=63的都算在最后一个桶里
+
+    private final LongAdder mSearches = new LongAdder();
+    private final LongAdder mInserts = new LongAdder();
+    private final LongAdder mRemoves = new LongAdder();
+    private final LongAdder mCompares = new LongAdder();
+    private final LongAdder mRotations = new LongAdder();
+    private final LongAdder mInsertFixupIterations = new LongAdder();
+    private final LongAdder mDeleteFixupIterations = new LongAdder();
+    private final LongAdder mRecolors = new LongAdder();
+    private final LongAdder[] mDepths;
+    private final LongAccumulator mMaxDepth = new LongAccumulator(Math::max, 0);
+
+    public RBTreeMetrics() {
+        mDepths = new LongAdder[DEPTH_BUCKETS];
+        for (int i = 0; i < DEPTH_BUCKETS; i++) {
+            mDepths[i] = new LongAdder();
+        }
+    }
+
+    void recordSearch(int depth, int compares) {
+        mSearches.increment();
+        recordDescent(depth, compares);
+    }
+
+    void recordInsert(int depth, int compares) {
+        mInserts.increment();
+        recordDescent(depth, compares);
+    }
+
+    void recordRemove(int depth) {
+        mRemoves.increment();
+        recordDescent(depth, depth);
+    }
+
+    private void recordDescent(int depth, int compares) {
+        mCompares.add(compares);
+        mDepths[Math.min(depth, DEPTH_BUCKETS - 1)].increment();
+        mMaxDepth.accumulate(depth);
+    }
+
+    void recordFixup(boolean insert, int iterations, int rotations, int recolors) {
+        (insert ? mInsertFixupIterations : mDeleteFixupIterations).add(iterations);
+        if (rotations != 0) {
+            mRotations.add(rotations);
+        }
+        if (recolors != 0) {
+            mRecolors.add(recolors);
+        }
+    }
+
+    public long searches() {
+        return mSearches.sum();
+    }
+
+    public long inserts() {
+        return mInserts.sum();
+    }
+
+    public long removes() {
+        return mRemoves.sum();
+    }
+
+    /**
+     * 查找/插入/删除调用compareTo的次数
+     */
+    public long compares() {
+        return mCompares.sum();
+    }
+
+    public long rotations() {
+        return mRotations.sum();
+    }
+
+    public long insertFixupIterations() {
+        return mInsertFixupIterations.sum();
+    }
+
+    public long deleteFixupIterations() {
+        return mDeleteFixupIterations.sum();
+    }
+
+    /**
+     * 只变色、把问题交给上一层的修正次数
+     */
+    public long recolors() {
+        return mRecolors.sum();
+    }
+
+    /**
+     * 见过的最大下降深度, 不超过树高
+     */
+    public long maxDepth() {
+        return mMaxDepth.get();
+    }
+
+    /**
+     * 下降深度的直方图, 第i个元素是深度为i的操作次数
+     */
+    public long[] depthHistogram() {
+        long[] histogram = new long[DEPTH_BUCKETS];
+        for (int i = 0; i < DEPTH_BUCKETS; i++) {
+            histogram[i] = mDepths[i].sum();
+        }
+        return histogram;
+    }
+
+    public void reset() {
+        mSearches.reset();
+        mInserts.reset();
+        mRemoves.reset();
+        mCompares.reset();
+        mRotations.reset();
+        mInsertFixupIterations.reset();
+        mDeleteFixupIterations.reset();
+        mRecolors.reset();
+        for (LongAdder depth : mDepths) {
+            depth.reset();
+        }
+        mMaxDepth.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "RBTreeMetrics{" +
+                "searches=" + searches() +
+                ", inserts=" + inserts() +
+                ", removes=" + removes() +
+                ", compares=" + compares() +
+                ", rotations=" + rotations() +
+                ", insertFixupIterations=" + insertFixupIterations() +
+                ", deleteFixupIterations=" + deleteFixupIterations() +
+                ", recolors=" + recolors() +
+                ", maxDepth=" + maxDepth() +
+                '}';
+    }
+}
@@ -0,0 +1,37 @@
+package rbtree;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 慢操作的JFR事件, 只在RBTree开启了RBTreeMetrics时产生。
+ * 耗时低于阈值的事件不会提交; 阈值可以在JFR配置里用rbtree.Operation#threshold修改。
+ */
+@Name("rbtree.Operation")
+@Label("RBTree Operation")
+@Category("RBTree")
+@Description("A search, insert or remove that took longer than the threshold")
+@Threshold("1 ms")
+@StackTrace(true)
+public class RBTreeOperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Depth")
+    @Description("Nodes visited on the way down, i.e. compareTo calls")
+    int depth;
+
+    @Label("Rotations")
+    int rotations;
+
+    @Label("Fixup Iterations")
+    int fixupIterations;
+
+    @Label("Tree Size")
+    int treeSize;
+}
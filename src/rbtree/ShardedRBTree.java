@@ -0,0 +1,396 @@
+package rbtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 按键值区间分片的线程安全红黑树。
+ *
+ * 键值空间按边界bounds切成N段，第i段[bounds[i-1], bounds[i])是一棵独立的RBTree，有自己的读写锁；
+ * 不同分片上的insert/remove互不阻塞，旋转也只发生在各自的分片里。
+ * 分片的布局(边界和分片数组)整体保存在一个volatile字段里：
+ * 操作先读布局、定位并锁住分片，再确认布局没有被替换，被替换了就在新布局上重试。
+ *
+ * 某个分片的大小超过当前布局的阈值(平均大小的SKEW_FACTOR倍)时，会按数据的实际分布重新划分边界：
+ * 按顺序锁住所有分片，把全部键值取出来按个数等分，用buildFromSorted线性重建每个分片，然后发布新布局。
+ * 数据倾斜或者整体增长都会触发。重建之后阈值至少是平均分片大小的SKEW_FACTOR倍，
+ * 两次重建之间至少要插入n/分片数个键值，所以均摊到每次插入上是O(分片数)的；
+ * 但单次重建要锁住所有分片O(n)的时间，期间所有分片上的读写都会阻塞。
+ *
+ * search/contains只访问一个分片；minimum/maximum和区间读取按顺序依次访问各个分片，
+ * 每个分片内部是一致的，跨分片的结果不是同一时刻的快照。
+ */
+public class ShardedRBTree<T extends Comparable<T>> {
+    private static final int DEFAULT_SHARDS = 32;
+    private static final int SKEW_FACTOR = 2;
+    private static final int MIN_SHARD_THRESHOLD = 1024; // 数据太少时不值得重建
+
+    private static final class Shard<T extends Comparable<T>> {
+        final RBTree<T> tree;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        volatile int count;   // tree.size(), 写锁内更新, 给size()和重建的判断用
+
+        Shard(RBTree<T> tree) {
+            this.tree = tree;
+            this.count = tree.size();
+        }
+    }
+
+    private static final class Layout<T extends Comparable<T>> {
+        final T[] bounds;           // 升序, 长度为shards.length - 1
+        final Shard<T>[] shards;
+        final int threshold;        // 分片大小超过它就重新划分
+
+        Layout(T[] bounds, Shard<T>[] shards, int threshold) {
+            this.bounds = bounds;
+            this.shards = shards;
+            this.threshold = threshold;
+        }
+
+        /**
+         * key所在的分片：第一个大于key的边界的下标
+         */
+        int indexOf(T key) {
+            int lo = 0;
+            int hi = bounds.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (key.compareTo(bounds[mid]) < 0) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo;
+        }
+    }
+
+    private final int mShardCount;
+    private final ReentrantLock mRebalanceLock;
+    private volatile Layout<T> mLayout;
+
+    public ShardedRBTree() {
+        this(DEFAULT_SHARDS);
+    }
+
+    /**
+     * 数据量达到MIN_SHARD_THRESHOLD之前只有一个分片，之后按实际数据划分成shards个分片
+     */
+    public ShardedRBTree(int shards) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards: " + shards);
+        }
+        mShardCount = shards;
+        mRebalanceLock = new ReentrantLock();
+        mLayout = newLayout(Collections.<T>emptyList(), 1);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T extends Comparable<T>> Layout<T> newLayout(List<T> keys, int shardCount) {
+        T[] bounds = (T[]) new Comparable[shardCount - 1];
+        Shard<T>[] shards = new Shard[shardCount];
+        int n = keys.size();
+        int from = 0;
+        int largest = 0;
+        for (int i = 0; i < shardCount; i++) {
+            int to = n;
+            if (i < shardCount - 1) {
+                // 按个数等分, 边界取在相等键值的第一个上, 保证重复的键值都在同一个分片。
+                // 多个分片时n > 0, 所以cut < n
+                int cut = (int) ((long) n * (i + 1) / shardCount);
+                bounds[i] = keys.get(cut);
+                to = lowerBound(keys, from, cut, bounds[i]);
+            }
+            shards[i] = new Shard<T>(RBTree.buildFromSorted(keys.subList(from, to)));
+            largest = Math.max(largest, to - from);
+            from = to;
+        }
+        // 大量重复的键值没法再分开, 阈值至少是最大分片的SKEW_FACTOR倍, 避免每次插入都重建
+        int threshold = Math.max(MIN_SHARD_THRESHOLD, SKEW_FACTOR * Math.max(n / shardCount + 1, largest));
+        return new Layout<T>(bounds, shards, threshold);
+    }
+
+    private static <T extends Comparable<T>> int lowerBound(List<T> keys, int lo, int hi, T key) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys.get(mid).compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // ---------------------------------------- 写操作
+
+    public void insert(T key) {
+        for (;;) {
+            Layout<T> layout = mLayout;
+            Shard<T> shard = layout.shards[layout.indexOf(key)];
+            int count;
+            shard.lock.writeLock().lock();
+            try {
+                if (layout != mLayout) {
+                    continue;
+                }
+                shard.tree.insert(key);
+                count = shard.count = shard.tree.size();
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+            if (count > layout.threshold) {
+                tryRebalance(layout);
+            }
+            return;
+        }
+    }
+
+    public void remove(T key) {
+        for (;;) {
+            Layout<T> layout = mLayout;
+            Shard<T> shard = layout.shards[layout.indexOf(key)];
+            shard.lock.writeLock().lock();
+            try {
+                if (layout != mLayout) {
+                    continue;
+                }
+                shard.tree.remove(key);
+                shard.count = shard.tree.size();
+                return;
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 清空所有分片, 保留当前的边界
+     */
+    public void clear() {
+        Layout<T> layout = lockAll();
+        try {
+            for (Shard<T> shard : layout.shards) {
+                shard.tree.clear();
+                shard.count = 0;
+            }
+        } finally {
+            unlockAll(layout);
+        }
+    }
+
+    // ---------------------------------------- 重新划分
+
+    /**
+     * 按当前数据的分布重新划分分片边界。锁住所有分片O(n)的时间, 期间所有读写都会阻塞
+     */
+    public void rebalance() {
+        mRebalanceLock.lock();
+        try {
+            doRebalance();
+        } finally {
+            mRebalanceLock.unlock();
+        }
+    }
+
+    /**
+     * 写操作发现分片过大时调用。已经有线程在重建, 或者布局已经换过了, 就什么都不做。
+     */
+    private void tryRebalance(Layout<T> expected) {
+        if (!mRebalanceLock.tryLock()) {
+            return;
+        }
+        try {
+            if (mLayout == expected) {
+                doRebalance();
+            }
+        } finally {
+            mRebalanceLock.unlock();
+        }
+    }
+
+    private void doRebalance() {
+        Layout<T> layout = lockAll();
+        try {
+            int n = 0;
+            for (Shard<T> shard : layout.shards) {
+                n += shard.count;
+            }
+            List<T> keys = new ArrayList<T>(n);
+            for (Shard<T> shard : layout.shards) {
+                RBTree<T>.Cursor c = shard.tree.cursor();
+                while (c.next()) {
+                    keys.add(c.key());
+                }
+            }
+            int shardCount = n < MIN_SHARD_THRESHOLD ? 1 : mShardCount;
+            // 先发布新布局再解锁: 等在旧分片上的线程拿到锁之后会发现布局变了
+            mLayout = newLayout(keys, shardCount);
+        } finally {
+            unlockAll(layout);
+        }
+    }
+
+    /**
+     * 按顺序锁住当前布局的所有分片。写操作同时只持有一个分片的锁, 所以不会死锁。
+     */
+    private Layout<T> lockAll() {
+        for (;;) {
+            Layout<T> layout = mLayout;
+            for (Shard<T> shard : layout.shards) {
+                shard.lock.writeLock().lock();
+            }
+            if (layout == mLayout) {
+                return layout;
+            }
+            unlockAll(layout);
+        }
+    }
+
+    private static <T extends Comparable<T>> void unlockAll(Layout<T> layout) {
+        for (Shard<T> shard : layout.shards) {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    // ---------------------------------------- 读操作
+
+    public boolean contains(T key) {
+        return search(key) != null;
+    }
+
+    /**
+     * 查找和key相等的键值, 没有则返回null
+     */
+    public T search(T key) {
+        for (;;) {
+            Layout<T> layout = mLayout;
+            Shard<T> shard = layout.shards[layout.indexOf(key)];
+            shard.lock.readLock().lock();
+            try {
+                if (layout != mLayout) {
+                    continue;
+                }
+                RBTree<T>.RBTNode<T> node = shard.tree.iteraticeSearch(key);
+                return node != null ? node.key : null;
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 第一个非空分片的最小值, 树为空则返回null
+     */
+    public T minimum() {
+        retry:
+        for (;;) {
+            Layout<T> layout = mLayout;
+            for (Shard<T> shard : layout.shards) {
+                shard.lock.readLock().lock();
+                try {
+                    if (layout != mLayout) {
+                        continue retry;
+                    }
+                    T key = shard.tree.minimum();
+                    if (key != null) {
+                        return key;
+                    }
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 最后一个非空分片的最大值, 树为空则返回null
+     */
+    public T maximum() {
+        retry:
+        for (;;) {
+            Layout<T> layout = mLayout;
+            for (int i = layout.shards.length - 1; i >= 0; i--) {
+                Shard<T> shard = layout.shards[i];
+                shard.lock.readLock().lock();
+                try {
+                    if (layout != mLayout) {
+                        continue retry;
+                    }
+                    T key = shard.tree.maximum();
+                    if (key != null) {
+                        return key;
+                    }
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 按顺序返回[lo, hi)内的键值, lo或hi为null表示该方向没有边界。
+     * 只访问和区间相交的分片; 读到一半布局被替换时从头重来。
+     */
+    public List<T> range(T lo, T hi) {
+        List<T> result = new ArrayList<T>();
+        retry:
+        for (;;) {
+            result.clear();
+            Layout<T> layout = mLayout;
+            int first = lo == null ? 0 : layout.indexOf(lo);
+            int last = hi == null ? layout.shards.length - 1 : layout.indexOf(hi);
+            for (int i = first; i <= last; i++) {
+                Shard<T> shard = layout.shards[i];
+                shard.lock.readLock().lock();
+                try {
+                    if (layout != mLayout) {
+                        continue retry;
+                    }
+                    RBTree<T>.Cursor c = shard.tree.cursor(lo, hi);
+                    while (c.next()) {
+                        result.add(c.key());
+                    }
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 各分片大小之和, 并发修改时是个近似值
+     */
+    public int size() {
+        int n = 0;
+        for (Shard<T> shard : mLayout.shards) {
+            n += shard.count;
+        }
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 当前的分片个数
+     */
+    public int shardCount() {
+        return mLayout.shards.length;
+    }
+
+    /**
+     * 当前的分片边界
+     */
+    public List<T> shardBounds() {
+        return Collections.unmodifiableList(Arrays.asList(mLayout.bounds));
+    }
+}
@@ -1,7 +1,5 @@
 package rbtree;
 
-import sun.misc.IOUtils;
-
 /**
  * Created by linyo_000 on 2016/11/21.
  */
@@ -26,19 +24,19 @@ public class TestRBTree {
             System.out.print("\n");
         }
 
-        System.out.printf("== ǰ: ");
+        System.out.printf("== 前序遍历: ");
         tree.preOrder();
 
-        System.out.printf("\n== : ");
+        System.out.printf("\n== 中序遍历: ");
         tree.midOrder();
 
-        System.out.printf("\n== : ");
+        System.out.printf("\n== 后序遍历: ");
         tree.postOrder();
         System.out.printf("\n");
 
-        System.out.printf("== Сֵ: %s\n", tree.minimum());
-        System.out.printf("== ֵ: %s\n", tree.maximum());
-        System.out.printf("== ϸϢ: \n");
+        System.out.printf("== 最小值: %s\n", tree.minimum());
+        System.out.printf("== 最大值: %s\n", tree.maximum());
+        System.out.printf("== 树的详细信息: \n");
         tree.print();
         System.out.printf("\n");
 
@@ -47,8 +45,8 @@ public class TestRBTree {
         for (int i = 0; i < b.length; i++) {
             tree.remove(b[i]);
 
-            System.out.printf("== ɾڵ: %d\n", b[i]);
-            System.out.printf("== ϸϢ: \n");
+            System.out.printf("== 删除节点: %d\n", b[i]);
+            System.out.printf("== 树的详细信息: \n");
             System.out.printf("\n");
         }
 
@@ -0,0 +1,61 @@
+package rbtree;
+
+/**
+ * 多版本的红黑树：当前版本是一个PersistentRBTree，保存在volatile字段里。
+ *
+ * 写操作在旧版本的基础上生成新版本，然后用一次volatile写发布出去；写线程之间互斥。
+ * 读线程不加锁，读一次当前版本之后看到的就是一个一致的时间点快照，
+ * 不会被之后的写操作影响。保存下来的旧版本可以用rollback()重新发布。
+ */
+public class VersionedRBTree<T extends Comparable<T>> {
+    private volatile PersistentRBTree<T> mCurrent;
+    private final Object mWriteLock = new Object();
+
+    public VersionedRBTree() {
+        mCurrent = PersistentRBTree.empty();
+    }
+
+    /**
+     * 当前版本的快照
+     */
+    public PersistentRBTree<T> snapshot() {
+        return mCurrent;
+    }
+
+    public void insert(T key) {
+        synchronized (mWriteLock) {
+            mCurrent = mCurrent.insert(key);
+        }
+    }
+
+    public void remove(T key) {
+        synchronized (mWriteLock) {
+            mCurrent = mCurrent.remove(key);
+        }
+    }
+
+    /**
+     * 把之前保存的某个版本重新发布为当前版本
+     */
+    public void rollback(PersistentRBTree<T> version) {
+        synchronized (mWriteLock) {
+            mCurrent = version;
+        }
+    }
+
+    public boolean contains(T key) {
+        return mCurrent.contains(key);
+    }
+
+    public T minimum() {
+        return mCurrent.minimum();
+    }
+
+    public T maximum() {
+        return mCurrent.maximum();
+    }
+
+    public int size() {
+        return mCurrent.size();
+    }
+}
@@ -0,0 +1,126 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ArrayRBTree和有序列表模型对照: 随机插入删除(含重复键值)之后比较大小、查找、最值和前驱后继的遍历。
+ */
+public class ArrayRBTreeTest {
+
+    @Test
+    public void randomOperationsMatchModel() {
+        Random random = new Random(2);
+        // 初始容量为1, 让插入过程中反复扩容
+        ArrayRBTree<Integer> tree = new ArrayRBTree<>(1);
+        List<Integer> model = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            Integer key = random.nextInt(300);
+            if (random.nextInt(3) > 0) {
+                tree.insert(key);
+                int index = Collections.binarySearch(model, key);
+                model.add(index < 0 ? -index - 1 : index, key);
+            } else {
+                tree.remove(key);
+                model.remove(key);
+            }
+            assertEquals(model.size(), tree.size());
+            assertEquals(model.contains(key), tree.contains(key));
+            assertEquals(model.contains(key), tree.search(key) != ArrayRBTree.NIL);
+            if (i % 500 == 0) {
+                check(tree, model);
+            }
+        }
+        check(tree, model);
+
+        for (Integer key : new ArrayList<>(model)) {
+            tree.remove(key);
+            model.remove(key);
+        }
+        check(tree, model);
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    public void reusesFreedSlotsAndClears() {
+        ArrayRBTree<Integer> tree = new ArrayRBTree<>(4);
+        List<Integer> model = new ArrayList<>();
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 100; i++) {
+                tree.insert(i);
+                model.add(i);
+            }
+            for (int i = 0; i < 100; i += 2) {
+                tree.remove(i);
+                model.remove(Integer.valueOf(i));
+            }
+            check(tree, model);
+            tree.clear();
+            model.clear();
+            check(tree, model);
+        }
+    }
+
+    @Test
+    public void midOrderStopsEarly() {
+        ArrayRBTree<Integer> tree = new ArrayRBTree<>();
+        for (int i = 9; i >= 0; i--) {
+            tree.insert(i);
+        }
+        List<Integer> seen = new ArrayList<>();
+        assertFalse(tree.midOrder(key -> {
+            seen.add(key);
+            return key < 4;
+        }));
+        assertEquals(List.of(0, 1, 2, 3, 4), seen);
+        assertTrue(new ArrayRBTree<Integer>().midOrder(key -> false));
+    }
+
+    private static void check(ArrayRBTree<Integer> tree, List<Integer> model) {
+        assertEquals(model.size(), tree.size());
+        assertEquals(model.isEmpty(), tree.isEmpty());
+        if (model.isEmpty()) {
+            assertNull(tree.minimum());
+            assertNull(tree.maximum());
+        } else {
+            assertEquals(model.get(0), tree.minimum());
+            assertEquals(model.get(model.size() - 1), tree.maximum());
+        }
+
+        // 从最小结点沿后继走, 再从最大结点沿前驱走回来
+        List<Integer> forward = new ArrayList<>();
+        int node = tree.search(tree.minimum());
+        while (node != ArrayRBTree.NIL && tree.predecessor(node) != ArrayRBTree.NIL) {
+            node = tree.predecessor(node);
+        }
+        int last = ArrayRBTree.NIL;
+        for (; node != ArrayRBTree.NIL; node = tree.successor(node)) {
+            forward.add(tree.getKey(node));
+            last = node;
+        }
+        assertEquals(model, forward);
+
+        List<Integer> backward = new ArrayList<>();
+        for (node = last; node != ArrayRBTree.NIL; node = tree.predecessor(node)) {
+            backward.add(tree.getKey(node));
+        }
+        Collections.reverse(backward);
+        assertEquals(model, backward);
+
+        List<Integer> visited = new ArrayList<>();
+        assertTrue(tree.midOrder(visited::add));
+        assertEquals(model, visited);
+        visited.clear();
+        tree.forEach(visited::add);
+        assertEquals(model, visited);
+    }
+}
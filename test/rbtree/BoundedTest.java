@@ -0,0 +1,160 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 有界模式: 留下的键值是到目前为止最大(或最小)的capacity个, offer的返回值, 两端的peek/poll。
+ */
+public class BoundedTest {
+    @Test
+    public void keepsTopK() {
+        Random random = new Random(24);
+        for (RBTree.Eviction eviction : RBTree.Eviction.values()) {
+            for (int capacity : new int[] {1, 2, 10, 100}) {
+                RBTree<Integer> tree = new RBTree<Integer>();
+                tree.setCapacity(capacity, eviction);
+                List<Integer> all = new ArrayList<Integer>();
+                for (int i = 0; i < 3000; i++) {
+                    Integer key = random.nextInt(500);
+                    boolean full = tree.size() == capacity;
+                    Integer end = eviction == RBTree.Eviction.SMALLEST ? tree.peekFirst() : tree.peekLast();
+                    if (i % 2 == 0) {
+                        // 满了之后不比淘汰端更好的键值被拒绝
+                        boolean rejected = full && (eviction == RBTree.Eviction.SMALLEST ? key <= end : key >= end);
+                        assertEquals(!rejected, tree.offer(key));
+                    } else {
+                        tree.insert(key); // 有界模式下和offer相同
+                    }
+                    all.add(key);
+                    assertEquals(Math.min(all.size(), capacity), tree.size());
+                    if (i % 100 == 0) {
+                        RBTreeInvariantTest.checkInvariants(tree);
+                        assertEquals(best(all, capacity, eviction), RBTreeInvariantTest.keys(tree));
+                    }
+                }
+                assertEquals(best(all, capacity, eviction), RBTreeInvariantTest.keys(tree));
+            }
+        }
+    }
+
+    @Test
+    public void capacityChanges() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        for (int i = 0; i < 100; i++) {
+            tree.insert(i);
+        }
+        tree.setCapacity(10, RBTree.Eviction.LARGEST);
+        assertEquals(10, tree.getCapacity());
+        assertEquals(RBTree.Eviction.LARGEST, tree.getEviction());
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), RBTreeInvariantTest.keys(tree));
+
+        tree.insertAll(List.of(-3, 50, -1, -2));
+        assertEquals(List.of(-3, -2, -1, 0, 1, 2, 3, 4, 5, 6), RBTreeInvariantTest.keys(tree));
+        RBTreeInvariantTest.checkInvariants(tree);
+
+        tree.setCapacity(3, RBTree.Eviction.SMALLEST);
+        assertEquals(List.of(4, 5, 6), RBTreeInvariantTest.keys(tree));
+
+        tree.setUnbounded();
+        assertEquals(0, tree.getCapacity());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(tree.offer(-i));
+        }
+        assertEquals(13, tree.size());
+
+        assertThrows(IllegalArgumentException.class, () -> tree.setCapacity(0, RBTree.Eviction.SMALLEST));
+        assertThrows(NullPointerException.class, () -> tree.setCapacity(5, null));
+    }
+
+    @Test
+    public void subSetAddFollowsOffer() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        SortedSet<Integer> view = tree.subSet(0, 100);
+        assertTrue(view.add(5));
+        assertTrue(view.add(5)); // 重复的键值也会插入
+        tree.setCapacity(2, RBTree.Eviction.SMALLEST);
+        assertFalse(view.add(1));
+        assertTrue(view.add(7));
+        assertEquals(List.of(5, 7), RBTreeInvariantTest.keys(tree));
+    }
+
+    /**
+     * 淘汰的结点不复用: 停在被淘汰键值上的游标不会变到新插入的键值上, 迭代器发现树被修改了
+     */
+    @Test
+    public void evictionDoesNotMoveParkedCursor() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        for (int i = 0; i < 10; i++) {
+            tree.insert(i);
+        }
+        tree.setCapacity(10, RBTree.Eviction.SMALLEST);
+        RBTree<Integer>.Cursor c = tree.cursor();
+        assertTrue(c.next());
+        Iterator<Integer> it = tree.tailSet(0).iterator();
+        assertEquals(Integer.valueOf(0), it.next());
+
+        assertTrue(tree.offer(20));
+        assertEquals(Integer.valueOf(0), c.key());
+        assertThrows(ConcurrentModificationException.class, it::next);
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 20), RBTreeInvariantTest.keys(tree));
+        RBTreeInvariantTest.checkInvariants(tree);
+        assertFalse(tree.contains(0));
+    }
+
+    @Test
+    public void pollBothEnds() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        assertNull(tree.peekFirst());
+        assertNull(tree.peekLast());
+        assertNull(tree.pollFirst());
+        assertNull(tree.pollLast());
+
+        Random random = new Random(42);
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            Integer key = random.nextInt(300);
+            tree.insert(key);
+            expected.add(key);
+        }
+        Collections.sort(expected);
+        while (!expected.isEmpty()) {
+            assertEquals(expected.get(0), tree.peekFirst());
+            assertEquals(expected.get(expected.size() - 1), tree.peekLast());
+            if (random.nextBoolean()) {
+                assertEquals(expected.remove(0), tree.pollFirst());
+            } else {
+                assertEquals(expected.remove(expected.size() - 1), tree.pollLast());
+            }
+            assertEquals(expected.size(), tree.size());
+            if (expected.size() % 50 == 0) {
+                RBTreeInvariantTest.checkInvariants(tree);
+            }
+        }
+        assertTrue(tree.isEmpty());
+    }
+
+    /**
+     * all中最大(SMALLEST淘汰时)或最小的capacity个, 升序
+     */
+    private static List<Integer> best(List<Integer> all, int capacity, RBTree.Eviction eviction) {
+        List<Integer> sorted = new ArrayList<Integer>(all);
+        Collections.sort(sorted);
+        int n = Math.min(capacity, sorted.size());
+        return eviction == RBTree.Eviction.SMALLEST
+                ? sorted.subList(sorted.size() - n, sorted.size()) : sorted.subList(0, n);
+    }
+}
@@ -0,0 +1,112 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * removeRange/removeHead/removeTail/removeIf之后的键值、返回值和红黑树的性质。
+ */
+public class BulkRemoveTest {
+    @Test
+    public void removeRanges() {
+        Random random = new Random(22);
+        for (int round = 0; round < 500; round++) {
+            int range = 1 + random.nextInt(200);
+            List<Integer> keys = SplitJoinTest.randomKeys(random, random.nextInt(400), range);
+            RBTree<Integer> tree = RBTree.buildFromSorted(keys);
+            Integer lo = random.nextInt(range + 20) - 10;
+            Integer hi = random.nextInt(range + 20) - 10;
+
+            List<Integer> expected = new ArrayList<Integer>();
+            int removed;
+            switch (round % 3) {
+                case 0:
+                    removed = tree.removeRange(lo, hi);
+                    for (Integer k : keys) {
+                        if (k < lo || k >= hi) {
+                            expected.add(k);
+                        }
+                    }
+                    break;
+                case 1:
+                    removed = tree.removeHead(hi);
+                    for (Integer k : keys) {
+                        if (k >= hi) {
+                            expected.add(k);
+                        }
+                    }
+                    break;
+                default:
+                    removed = tree.removeTail(lo);
+                    for (Integer k : keys) {
+                        if (k < lo) {
+                            expected.add(k);
+                        }
+                    }
+                    break;
+            }
+            RBTreeInvariantTest.checkInvariants(tree);
+            assertEquals(expected, RBTreeInvariantTest.keys(tree));
+            assertEquals(keys.size() - expected.size(), removed);
+            assertEquals(expected.size(), tree.size());
+            assertEquals(expected.isEmpty() ? null : expected.get(0), tree.minimum());
+            assertEquals(expected.isEmpty() ? null : expected.get(expected.size() - 1), tree.maximum());
+            // 删除之后还能正常插入
+            tree.insert(lo);
+            RBTreeInvariantTest.checkInvariants(tree);
+        }
+    }
+
+    @Test
+    public void removeIf() {
+        Random random = new Random(23);
+        for (int round = 0; round < 300; round++) {
+            List<Integer> keys = SplitJoinTest.randomKeys(random, random.nextInt(2000), 1000);
+            RBTree<Integer> tree = RBTree.buildFromSorted(keys);
+            // 有的轮次只删几个(逐个删除), 有的删一大半(重建)
+            int modulus = round % 2 == 0 ? 997 : 2;
+            int residue = random.nextInt(modulus);
+
+            List<Integer> expected = new ArrayList<Integer>();
+            for (Integer k : keys) {
+                if (k % modulus != residue) {
+                    expected.add(k);
+                }
+            }
+            assertEquals(expected.size() != keys.size(), tree.removeIf(k -> k % modulus == residue));
+            RBTreeInvariantTest.checkInvariants(tree);
+            assertEquals(expected, RBTreeInvariantTest.keys(tree));
+            assertEquals(expected.isEmpty() ? null : expected.get(0), tree.minimum());
+            assertEquals(expected.isEmpty() ? null : expected.get(expected.size() - 1), tree.maximum());
+        }
+    }
+
+    @Test
+    public void removeIfFailureLeavesTreeUnchanged() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        for (int i = 0; i < 100; i++) {
+            tree.insert(i);
+        }
+        List<Integer> before = RBTreeInvariantTest.keys(tree);
+        assertThrows(IllegalStateException.class, () -> tree.removeIf(k -> {
+            if (k == 90) {
+                throw new IllegalStateException();
+            }
+            return k % 2 == 0;
+        }));
+        assertEquals(before, RBTreeInvariantTest.keys(tree));
+        assertFalse(tree.removeIf(k -> k < 0));
+        assertTrue(tree.removeIf(k -> true));
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.removeRange(0, 10));
+        assertEquals(0, tree.removeHead(10));
+    }
+}
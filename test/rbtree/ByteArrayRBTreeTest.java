@@ -0,0 +1,131 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ByteArrayRBTree和一个按Arrays.compareUnsigned排序的List对照。键值有很长的公共前缀、互为前缀、
+ * 含有大于0x7f的字节, 覆盖查找时跳过公共前缀的各种情况。
+ */
+public class ByteArrayRBTreeTest {
+    private static final Comparator<byte[]> UNSIGNED = Arrays::compareUnsigned;
+
+    @Test
+    public void unsignedOrderWithSharedPrefixes() {
+        check(new ByteArrayRBTree(), UNSIGNED, new Random(20));
+    }
+
+    @Test
+    public void customComparator() {
+        Comparator<byte[]> signed = Arrays::compare;
+        ByteArrayRBTree tree = new ByteArrayRBTree(signed);
+        assertEquals(signed, tree.comparator());
+        check(tree, signed, new Random(21));
+    }
+
+    @Test
+    public void highBytesSortAfterLowBytes() {
+        ByteArrayRBTree tree = new ByteArrayRBTree();
+        tree.insert(new byte[] {(byte) 0x80});
+        tree.insert(new byte[] {0x7f});
+        tree.insert(new byte[] {0x7f, 0});
+        tree.insert(new byte[0]);
+        List<byte[]> keys = new ArrayList<byte[]>();
+        tree.forEach(keys::add);
+        assertArrayEquals(new byte[0], keys.get(0));
+        assertArrayEquals(new byte[] {0x7f}, keys.get(1));
+        assertArrayEquals(new byte[] {0x7f, 0}, keys.get(2));
+        assertArrayEquals(new byte[] {(byte) 0x80}, keys.get(3));
+    }
+
+    private static void check(ByteArrayRBTree tree, Comparator<byte[]> order, Random random) {
+        byte[][] prefixes = new byte[4][];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = new byte[i * 40];
+            Arrays.fill(prefixes[i], (byte) (i % 2 == 0 ? 0x41 : 0xc3));
+        }
+        List<byte[]> expected = new ArrayList<byte[]>();
+        for (int op = 0; op < 20000; op++) {
+            byte[] key = randomKey(random, prefixes);
+            int choice = random.nextInt(10);
+            if (choice < 5) {
+                tree.insert(key);
+                int i = Collections.binarySearch(expected, key, order);
+                expected.add(i < 0 ? -i - 1 : i, key);
+            } else if (choice < 8) {
+                tree.remove(key);
+                int i = Collections.binarySearch(expected, key, order);
+                if (i >= 0) {
+                    expected.remove(i);
+                }
+            }
+            assertEquals(expected.size(), tree.size());
+            assertEquals(Collections.binarySearch(expected, key, order) >= 0, tree.contains(key));
+            assertSameKey(ceiling(expected, key, order), tree.ceiling(key), order);
+            assertSameKey(floor(expected, key, order), tree.floor(key), order);
+            assertSameKey(expected.isEmpty() ? null : expected.get(0), tree.minimum(), order);
+            assertSameKey(expected.isEmpty() ? null : expected.get(expected.size() - 1), tree.maximum(), order);
+            if (op % 1000 == 0) {
+                List<byte[]> keys = new ArrayList<byte[]>();
+                tree.forEach(keys::add);
+                assertEquals(expected.size(), keys.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    assertEquals(0, order.compare(expected.get(i), keys.get(i)));
+                }
+            }
+        }
+        tree.clear();
+        assertEquals(0, tree.size());
+        assertNull(tree.minimum());
+    }
+
+    /**
+     * 一个共同前缀, 加上0到3个随机字节; 后缀字节只取几个值, 让键值经常相等或互为前缀
+     */
+    private static byte[] randomKey(Random random, byte[][] prefixes) {
+        byte[] prefix = prefixes[random.nextInt(prefixes.length)];
+        byte[] key = Arrays.copyOf(prefix, prefix.length + random.nextInt(4));
+        for (int i = prefix.length; i < key.length; i++) {
+            key[i] = (byte) (0x7e + random.nextInt(4)); // 0x7e..0x81, 跨过有符号的边界
+        }
+        return key;
+    }
+
+    private static byte[] ceiling(List<byte[]> keys, byte[] key, Comparator<byte[]> order) {
+        int i = Collections.binarySearch(keys, key, order);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i < keys.size() ? keys.get(i) : null;
+    }
+
+    private static byte[] floor(List<byte[]> keys, byte[] key, Comparator<byte[]> order) {
+        int i = Collections.binarySearch(keys, key, order);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return i >= 0 ? keys.get(i) : null;
+    }
+
+    /**
+     * 键值可以重复, 只比较内容
+     */
+    private static void assertSameKey(byte[] expected, byte[] actual, Comparator<byte[]> order) {
+        if (expected == null || actual == null) {
+            assertEquals(expected, actual);
+        } else {
+            assertEquals(0, order.compare(expected, actual),
+                    Arrays.toString(expected) + " vs " + Arrays.toString(actual));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 一个写线程不停地插入、删除奇数键值, 几个读线程同时做乐观读。
+ * 偶数键值一直都在树里, 所以每个读操作的结果都有确定的约束; 读线程不能看到异常, 也不能看到不满足约束的结果。
+ */
+public class ConcurrentRBTreeTest {
+    private static final int STABLE = 2000;   // 0, 2, ..., 2(STABLE-1)一直在树里
+    private static final int READERS = 4;
+    private static final long RUN_MILLIS = 1000;
+
+    @Test
+    public void optimisticReadsDuringWrites() throws InterruptedException {
+        ConcurrentRBTree<Integer> tree = new ConcurrentRBTree<Integer>();
+        List<Integer> stable = new ArrayList<Integer>();
+        for (int i = 0; i < STABLE; i++) {
+            stable.add(2 * i);
+        }
+        tree.insertAll(stable);
+
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        threads.add(new Thread(() -> {
+            Random random = new Random(9);
+            try {
+                while (!stop.get()) {
+                    Integer key = 2 * random.nextInt(STABLE) + 1;
+                    if (random.nextBoolean()) {
+                        tree.insert(key);
+                    } else {
+                        tree.remove(key);
+                    }
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }));
+        for (int r = 0; r < READERS; r++) {
+            final long seed = r;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    while (!stop.get()) {
+                        read(tree, random);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        Thread.sleep(RUN_MILLIS);
+        stop.set(true);
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("reader or writer failed", failure.get());
+        }
+    }
+
+    /**
+     * 键值的compareTo在乐观读中抛出一次异常(相当于读到了写到一半的结点)，结果应该由读锁下的重做给出，异常不传给调用者
+     */
+    @Test
+    public void exceptionDuringOptimisticReadFallsBackToReadLock() {
+        ConcurrentRBTree<FlakyKey> tree = new ConcurrentRBTree<FlakyKey>();
+        for (int i = 0; i < 100; i++) {
+            tree.insert(new FlakyKey(2 * i));
+        }
+        FlakyKey.sFailures = 1;
+        assertEquals(40, tree.search(new FlakyKey(40)).value);
+        FlakyKey.sFailures = 1;
+        assertEquals(42, tree.ceiling(new FlakyKey(41)).value);
+        FlakyKey.sFailures = 1;
+        assertEquals(0, tree.minimum().value);
+        FlakyKey.sFailures = 1;
+        assertEquals(20, tree.rank(new FlakyKey(40)));
+        FlakyKey.sFailures = 1;
+        assertEquals(40, tree.floor(new FlakyKey(41)).value);
+        FlakyKey.sFailures = 1;
+        assertEquals(5, tree.range(new FlakyKey(10), new FlakyKey(20)).size());
+    }
+
+    /**
+     * countRange/range的lo或hi为null时该方向没有边界, 和ShardedRBTree.range一致
+     */
+    @Test
+    public void nullBoundsAreUnbounded() {
+        ConcurrentRBTree<Integer> tree = new ConcurrentRBTree<Integer>();
+        assertEquals(0, tree.countRange(null, null));
+        assertTrue(tree.range(null, null).isEmpty());
+        for (int i = 0; i < 100; i++) {
+            tree.insert(i);
+        }
+        assertEquals(100, tree.countRange(null, null));
+        assertEquals(10, tree.countRange(null, 10));
+        assertEquals(10, tree.countRange(90, null));
+        assertEquals(0, tree.countRange(null, -1));
+        assertEquals(0, tree.countRange(100, null));
+        assertEquals(100, tree.range(null, null).size());
+        assertEquals(Arrays.asList(0, 1, 2), tree.range(null, 3));
+        assertEquals(Arrays.asList(97, 98, 99), tree.range(97, null));
+        assertTrue(tree.range(null, 0).isEmpty());
+    }
+
+    private static final class FlakyKey implements Comparable<FlakyKey> {
+        static int sFailures; // 之后的这么多次compareTo抛出异常, 只在单线程的测试里用
+
+        final int value;
+
+        FlakyKey(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(FlakyKey other) {
+            if (sFailures > 0) {
+                sFailures--;
+                throw new NullPointerException("torn read");
+            }
+            return Integer.compare(value, other.value);
+        }
+    }
+
+    private static void read(ConcurrentRBTree<Integer> tree, Random random) {
+        int i = random.nextInt(STABLE - 1);
+        Integer even = 2 * i;
+        Integer odd = even + 1;
+
+        assertTrue(tree.contains(even));
+        Integer found = tree.search(odd);
+        assertTrue(found == null || found.equals(odd));
+
+        Integer ceiling = tree.ceiling(odd);
+        assertTrue(ceiling.equals(odd) || ceiling == even + 2, "ceiling " + ceiling);
+        Integer floor = tree.floor(odd);
+        assertTrue(floor.equals(odd) || floor.equals(even), "floor " + floor);
+        int higher = tree.higher(odd);
+        assertTrue(higher == even + 2 || higher == even + 3, "higher " + higher);
+        assertEquals(Integer.valueOf(0), tree.minimum());
+        assertTrue(tree.maximum() >= 2 * (STABLE - 1));
+        assertNull(tree.lower(0));
+
+        int rank = tree.rank(even);
+        assertTrue(rank >= i, "rank " + rank);
+
+        List<Integer> range = tree.range(even, even + 20);
+        int evens = 0;
+        for (int k = 0; k < range.size(); k++) {
+            if (k > 0) {
+                assertTrue(range.get(k - 1) <= range.get(k)); // 奇数可能被插入了不止一次
+            }
+            if (range.get(k) % 2 == 0) {
+                evens++;
+            }
+        }
+        assertEquals(Math.min(10, STABLE - i), evens);
+
+        List<Integer> head = tree.range(null, 3);
+        assertEquals(Integer.valueOf(0), head.get(0));
+        assertEquals(Integer.valueOf(2), head.get(head.size() - 1));
+        assertTrue(tree.countRange(null, even) >= i);
+        assertTrue(tree.countRange(even, null) >= STABLE - i);
+    }
+}
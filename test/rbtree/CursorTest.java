@@ -0,0 +1,317 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * RBTree.Cursor和subSet/headSet/tailSet视图和TreeSet对照。
+ *
+ * 游标在区间内随机地向前向后走、seek、删除当前键值, 参照是区间内键值的列表加上游标的位置:
+ * 停在第i个键值上, 或者停在第g个键值之前的空隙里(删除之后、走出区间之后)。
+ */
+public class CursorTest {
+
+    @Test
+    public void boundedCursorWalksBothWays() {
+        Random random = new Random(7);
+        for (int round = 0; round < 300; round++) {
+            TreeSet<Integer> expected = new TreeSet<>();
+            RBTree<Integer> tree = new RBTree<>();
+            fill(random, expected, tree, random.nextInt(200));
+            Integer lo = random.nextInt(4) == 0 ? null : random.nextInt(120) - 10;
+            Integer hi = random.nextInt(4) == 0 ? null : random.nextInt(120) - 10;
+            if (lo != null && hi != null && lo > hi) {
+                Integer t = lo;
+                lo = hi;
+                hi = t;
+            }
+            List<Integer> range = new ArrayList<>(view(expected, lo, hi));
+
+            RBTree<Integer>.Cursor c = tree.cursor(lo, hi);
+            List<Integer> forward = new ArrayList<>();
+            while (c.next()) {
+                forward.add(c.key());
+            }
+            assertEquals(range, forward);
+            assertFalse(c.next());
+            assertThrows(NoSuchElementException.class, c::key);
+
+            List<Integer> backward = new ArrayList<>();
+            while (c.prev()) {
+                backward.add(c.key());
+            }
+            Collections.reverse(backward);
+            assertEquals(range, backward);
+            assertFalse(c.prev());
+
+            // 未开始时prev()从最后一个开始
+            c.reset(lo, hi);
+            assertEquals(!range.isEmpty(), c.prev());
+            if (!range.isEmpty()) {
+                assertEquals(range.get(range.size() - 1), c.key());
+            }
+
+            walk(random, c.reset(lo, hi), range, false);
+            assertEquals(new ArrayList<>(expected), RBTreeInvariantTest.keys(tree));
+        }
+    }
+
+    @Test
+    public void removeDuringIteration() {
+        Random random = new Random(8);
+        for (int round = 0; round < 300; round++) {
+            TreeSet<Integer> expected = new TreeSet<>();
+            RBTree<Integer> tree = new RBTree<>();
+            fill(random, expected, tree, random.nextInt(200));
+            Integer lo = random.nextInt(50) - 10;
+            Integer hi = lo + random.nextInt(80);
+            List<Integer> range = new ArrayList<>(expected.subSet(lo, hi));
+
+            walk(random, tree.cursor(lo, hi), range, true);
+            RBTreeInvariantTest.checkInvariants(tree);
+            // 区间外的键值都还在, 区间内剩下的和游标的参照一致
+            List<Integer> rest = new ArrayList<>(expected.headSet(lo));
+            rest.addAll(range);
+            rest.addAll(expected.tailSet(hi));
+            assertEquals(rest, RBTreeInvariantTest.keys(tree));
+        }
+    }
+
+    @Test
+    public void removeTwiceFails() {
+        RBTree<Integer> tree = RBTree.buildFromSorted(new Integer[] {1, 2, 3});
+        RBTree<Integer>.Cursor c = tree.cursor();
+        assertThrows(IllegalStateException.class, c::remove);
+        assertTrue(c.next());
+        c.remove();
+        assertThrows(IllegalStateException.class, c::remove);
+        assertThrows(NoSuchElementException.class, c::key);
+        assertFalse(c.prev());
+        assertTrue(c.next());
+        assertEquals(Integer.valueOf(2), c.key());
+    }
+
+    @Test
+    public void viewsMatchTreeSet() {
+        Random random = new Random(9);
+        for (int round = 0; round < 300; round++) {
+            TreeSet<Integer> expected = new TreeSet<>();
+            RBTree<Integer> tree = new RBTree<>();
+            fill(random, expected, tree, random.nextInt(200));
+            int lo = random.nextInt(120) - 10;
+            int hi = lo + random.nextInt(60);
+
+            Integer vLo = lo;
+            Integer vHi = hi;
+            SortedSet<Integer> expectedView;
+            SortedSet<Integer> view;
+            switch (random.nextInt(4)) {
+                case 0:
+                    expectedView = expected.subSet(lo, hi);
+                    view = tree.subSet(lo, hi);
+                    break;
+                case 1:
+                    vLo = null;
+                    expectedView = expected.headSet(hi);
+                    view = tree.headSet(hi);
+                    break;
+                case 2:
+                    vHi = null;
+                    expectedView = expected.tailSet(lo);
+                    view = tree.tailSet(lo);
+                    break;
+                default:
+                    // 视图上再取视图
+                    expectedView = expected.tailSet(lo).headSet(hi);
+                    view = tree.tailSet(lo).headSet(hi);
+                    break;
+            }
+
+            for (int op = 0; op < 100; op++) {
+                Integer key = random.nextInt(120) - 10;
+                switch (random.nextInt(5)) {
+                    case 0:
+                        if ((vLo != null && key < vLo) || (vHi != null && key >= vHi)) {
+                            assertThrows(IllegalArgumentException.class, () -> view.add(key));
+                        } else if (!expectedView.contains(key)) {
+                            // 树允许重复的键值, 只添加还没有的键值才能和TreeSet比较
+                            assertTrue(expectedView.add(key));
+                            assertTrue(view.add(key));
+                        }
+                        break;
+                    case 1:
+                        assertEquals(expectedView.remove(key), view.remove(key));
+                        break;
+                    case 2:
+                        // 树本身的修改在视图上可见
+                        if (expected.add(key)) {
+                            tree.insert(key);
+                        }
+                        break;
+                    case 3:
+                        iterateAndRemove(random, expectedView, view);
+                        break;
+                    default:
+                        if (random.nextInt(20) == 0) {
+                            expectedView.clear();
+                            view.clear();
+                        }
+                        break;
+                }
+                assertEquals(expectedView.size(), view.size());
+                assertEquals(expectedView.isEmpty(), view.isEmpty());
+                assertEquals(expectedView.contains(key), view.contains(key));
+                if (expectedView.isEmpty()) {
+                    assertThrows(NoSuchElementException.class, view::first);
+                    assertThrows(NoSuchElementException.class, view::last);
+                } else {
+                    assertEquals(expectedView.first(), view.first());
+                    assertEquals(expectedView.last(), view.last());
+                }
+            }
+            assertEquals(new ArrayList<>(expectedView), new ArrayList<>(view));
+            assertEquals(new ArrayList<>(expected), RBTreeInvariantTest.keys(tree));
+            RBTreeInvariantTest.checkInvariants(tree);
+        }
+    }
+
+    @Test
+    public void viewIteratorFailsFast() {
+        RBTree<Integer> tree = RBTree.buildFromSorted(new Integer[] {1, 2, 3, 4, 5});
+        Iterator<Integer> it = tree.subSet(2, 5).iterator();
+        assertEquals(Integer.valueOf(2), it.next());
+        assertThrows(IllegalStateException.class, () -> {
+            it.remove();
+            it.remove();
+        });
+        tree.insert(6);
+        assertThrows(ConcurrentModificationException.class, it::next);
+        assertThrows(IllegalArgumentException.class, () -> tree.subSet(3, 2));
+        assertThrows(IllegalArgumentException.class, () -> tree.subSet(2, 5).tailSet(6));
+        assertThrows(IllegalArgumentException.class, () -> tree.subSet(2, 5).headSet(1));
+    }
+
+    private static void fill(Random random, TreeSet<Integer> expected, RBTree<Integer> tree, int n) {
+        for (int i = 0; i < n; i++) {
+            Integer key = random.nextInt(100);
+            if (expected.add(key)) {
+                tree.insert(key);
+            }
+        }
+    }
+
+    private static SortedSet<Integer> view(TreeSet<Integer> set, Integer lo, Integer hi) {
+        if (lo == null) {
+            return hi == null ? set : set.headSet(hi);
+        }
+        return hi == null ? set.tailSet(lo) : set.subSet(lo, hi);
+    }
+
+    /**
+     * 用视图的迭代器从头走一遍, 随机删掉一些键值
+     */
+    private static void iterateAndRemove(Random random, SortedSet<Integer> expectedView, SortedSet<Integer> view) {
+        Iterator<Integer> expectedIt = expectedView.iterator();
+        Iterator<Integer> it = view.iterator();
+        while (expectedIt.hasNext()) {
+            assertTrue(it.hasNext());
+            assertEquals(expectedIt.next(), it.next());
+            if (random.nextInt(4) == 0) {
+                expectedIt.remove();
+                it.remove();
+            }
+        }
+        assertFalse(it.hasNext());
+        assertThrows(NoSuchElementException.class, it::next);
+    }
+
+    /**
+     * 游标随机走动, 和range(区间内的键值)加上位置比较。canRemove时也随机删除当前键值, range随之更新。
+     */
+    private static void walk(Random random, RBTree<Integer>.Cursor c, List<Integer> range, boolean canRemove) {
+        boolean started = false;
+        boolean onNode = false;
+        int pos = 0; // onNode时是当前键值的下标, 否则是所在空隙之后的那个键值的下标
+        for (int step = 0; step < 200; step++) {
+            int target;
+            boolean moved;
+            switch (random.nextInt(canRemove ? 5 : 4)) {
+                case 0:
+                case 1:
+                    target = !started ? 0 : onNode ? pos + 1 : pos;
+                    moved = c.next();
+                    if (target < range.size()) {
+                        onNode = true;
+                        pos = target;
+                    } else {
+                        onNode = false;
+                        pos = range.size();
+                    }
+                    break;
+                case 2:
+                    target = !started ? range.size() - 1 : pos - 1;
+                    moved = c.prev();
+                    if (target >= 0) {
+                        onNode = true;
+                        pos = target;
+                    } else {
+                        onNode = false;
+                        pos = 0;
+                    }
+                    break;
+                case 3:
+                    Integer key = random.nextInt(120) - 10;
+                    moved = c.seek(key);
+                    pos = lowerBound(range, key);
+                    onNode = pos < range.size();
+                    break;
+                default:
+                    if (!onNode) {
+                        assertThrows(IllegalStateException.class, c::remove);
+                        continue;
+                    }
+                    c.remove();
+                    range.remove(pos);
+                    onNode = false;
+                    moved = false;
+                    break;
+            }
+            started = true;
+            if (onNode) {
+                assertTrue(moved);
+                assertEquals(range.get(pos), c.key());
+            } else {
+                assertFalse(moved);
+                assertThrows(NoSuchElementException.class, c::key);
+            }
+        }
+    }
+
+    private static int lowerBound(List<Integer> sorted, int key) {
+        int lo = 0;
+        int hi = sorted.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted.get(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
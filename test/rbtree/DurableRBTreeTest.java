@@ -0,0 +1,217 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 日志的重放、截断写了一半的记录、检查点之后删掉旧日志、并发写共用fsync。
+ */
+public class DurableRBTreeTest {
+    private static final DurableRBTree.KeyCodec<Long> CODEC = DurableRBTree.LONG_CODEC;
+
+    @TempDir
+    Path mDir;
+
+    @Test
+    public void replayAfterClose() throws IOException {
+        try (DurableRBTree<Long> tree = open()) {
+            for (long k = 0; k < 100; k++) {
+                tree.insert(k);
+            }
+            for (long k = 0; k < 100; k += 3) {
+                tree.remove(k);
+            }
+            tree.insert(50L); // 重复的键值
+        }
+        try (DurableRBTree<Long> tree = open()) {
+            List<Long> expected = new ArrayList<Long>();
+            for (long k = 0; k < 100; k++) {
+                if (k % 3 != 0) {
+                    expected.add(k);
+                }
+            }
+            expected.add(50L);
+            Collections.sort(expected);
+            assertEquals(expected, RBTreeInvariantTest.keys(tree.snapshot()));
+        }
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws IOException {
+        try (DurableRBTree<Long> tree = open()) {
+            tree.insert(1L);
+            tree.insert(2L);
+        }
+        Path log = onlyLog();
+        long size = Files.size(log);
+        // 一条只写了一半的记录: 长度和CRC都在, 内容不够
+        Files.write(log, new byte[] {0, 0, 0, 9, 1, 2, 3, 4, 1, 0, 0}, StandardOpenOption.APPEND);
+
+        try (DurableRBTree<Long> tree = open()) {
+            assertEquals(Arrays.asList(1L, 2L), RBTreeInvariantTest.keys(tree.snapshot()));
+            assertEquals(size, Files.size(log));
+            tree.insert(3L);
+        }
+        try (DurableRBTree<Long> tree = open()) {
+            assertEquals(Arrays.asList(1L, 2L, 3L), RBTreeInvariantTest.keys(tree.snapshot()));
+        }
+    }
+
+    @Test
+    public void tornRecordFollowedByNonEmptyLogIsCorrupt() throws IOException {
+        try (DurableRBTree<Long> tree = open()) {
+            tree.insert(1L);
+        }
+        Path log = onlyLog();
+        byte[] records = Files.readAllBytes(log);
+        Files.write(log, new byte[] {0, 0, 0, 9, 1}, StandardOpenOption.APPEND);
+
+        // 后面的日志是空的: 切换日志时崩溃, 前一个日志的半条记录可以截掉
+        Path next = log.resolveSibling("wal-0000000000000001.log");
+        Files.createFile(next);
+        try (DurableRBTree<Long> tree = open()) {
+            assertEquals(Arrays.asList(1L), RBTreeInvariantTest.keys(tree.snapshot()));
+        }
+        assertArrayEquals(records, Files.readAllBytes(log));
+
+        // 后面的日志有记录: 前一个日志缺的那一段已经找不回来了, 打开失败, 两个日志都保持原样
+        Files.write(log, new byte[] {0, 0, 0, 9, 1}, StandardOpenOption.APPEND);
+        Files.write(next, records);
+        byte[] torn = Files.readAllBytes(log);
+        IOException e = assertThrows(IOException.class, this::open);
+        assertTrue(e.getMessage().startsWith("Corrupt log"), e.getMessage());
+        assertArrayEquals(torn, Files.readAllBytes(log));
+        assertArrayEquals(records, Files.readAllBytes(next));
+        // 再打开一次结果相同, 没有因为上次失败丢掉什么
+        assertThrows(IOException.class, this::open);
+        assertArrayEquals(torn, Files.readAllBytes(log));
+    }
+
+    @Test
+    public void checkpointWithDuplicatesReloads() throws IOException {
+        try (DurableRBTree<Long> tree = open()) {
+            for (long k = 0; k < 1000; k++) {
+                tree.insert(k / 2);
+            }
+            tree.checkpoint();
+        }
+        try (DurableRBTree<Long> tree = open()) {
+            RBTree<Long> snapshot = tree.snapshot();
+            RBTreeInvariantTest.checkInvariants(snapshot);
+            assertEquals(1000, snapshot.size());
+            assertEquals(Long.valueOf(0), snapshot.minimum());
+            assertEquals(Long.valueOf(499), snapshot.maximum());
+        }
+    }
+
+    @Test
+    public void checkpointDeletesOldLogs() throws IOException {
+        try (DurableRBTree<Long> tree = open()) {
+            for (long k = 0; k < 50; k++) {
+                tree.insert(k);
+            }
+            tree.checkpoint();
+            tree.remove(0L);
+            tree.insert(100L);
+        }
+        assertEquals(Arrays.asList("checkpoint.dat", "wal-0000000000000001.log"), files());
+
+        try (DurableRBTree<Long> tree = open()) {
+            assertEquals(50, tree.size());
+            assertEquals(Long.valueOf(1), tree.minimum());
+            assertEquals(Long.valueOf(100), tree.maximum());
+            tree.checkpoint();
+        }
+        assertEquals(Arrays.asList("checkpoint.dat", "wal-0000000000000002.log"), files());
+        try (DurableRBTree<Long> tree = open()) {
+            assertEquals(50, tree.size());
+        }
+    }
+
+    /**
+     * 先拿住刷盘锁, 让所有写线程都把记录放进缓冲区后排队等刷盘; 放开之后第一个线程一次fsync写出所有记录
+     */
+    @Test
+    public void concurrentFsyncWritersShareOneSync() throws Exception {
+        final int writers = 8;
+        DurableRBTree<Long> tree = open();
+        try {
+            Field field = DurableRBTree.class.getDeclaredField("mFlushLock");
+            field.setAccessible(true);
+            ReentrantLock flushLock = (ReentrantLock) field.get(tree);
+
+            long before = tree.syncCount();
+            List<Thread> threads = new ArrayList<Thread>();
+            List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+            flushLock.lock();
+            try {
+                for (int i = 0; i < writers; i++) {
+                    final long key = i;
+                    Thread thread = new Thread(() -> {
+                        try {
+                            tree.insert(key);
+                        } catch (Throwable e) {
+                            failures.add(e);
+                        }
+                    });
+                    thread.start();
+                    threads.add(thread);
+                }
+                while (flushLock.getQueueLength() < writers) {
+                    Thread.sleep(1);
+                }
+            } finally {
+                flushLock.unlock();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(failures.isEmpty(), failures.toString());
+            assertEquals(before + 1, tree.syncCount());
+        } finally {
+            tree.close();
+        }
+        try (DurableRBTree<Long> reopened = open()) {
+            assertEquals(writers, reopened.size());
+        }
+    }
+
+    private DurableRBTree<Long> open() throws IOException {
+        // 不做后台fsync和自动检查点, 测试里的文件只由显式的操作改变
+        return DurableRBTree.open(mDir, CODEC, DurableRBTree.Durability.FSYNC, 0, 0);
+    }
+
+    private Path onlyLog() throws IOException {
+        List<String> names = files();
+        assertEquals(1, names.size(), names.toString());
+        return mDir.resolve(names.get(0));
+    }
+
+    private List<String> files() throws IOException {
+        List<String> names = new ArrayList<String>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(mDir)) {
+            for (Path p : stream) {
+                names.add(p.getFileName().toString());
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,147 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * finger和两端的快速路径: 和不开finger的树做同样的操作, 结果一致; 相等的键值仍然按插入顺序排在后面;
+ * 各种整体换根的操作之后最小、最大值仍然正确。
+ */
+public class FingerSearchTest {
+    /**
+     * 只按value比较, id记录插入顺序
+     */
+    private static final class Key implements Comparable<Key> {
+        final int value;
+        final int id;
+
+        Key(int value, int id) {
+            this.value = value;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            return Integer.compare(value, o.value);
+        }
+    }
+
+    @Test
+    public void fingerMatchesPlainTree() {
+        Random random = new Random(18);
+        RBTree<Key> finger = new RBTree<Key>();
+        finger.setFingerSearch(true);
+        RBTree<Key> plain = new RBTree<Key>();
+        int position = 0;
+        for (int op = 0; op < 30000; op++) {
+            // 大多数键值在上一个附近, 偶尔跳远
+            position = random.nextInt(50) == 0 ? random.nextInt(10000) : Math.max(0, position + random.nextInt(21) - 10);
+            Key key = new Key(position, op);
+            int choice = random.nextInt(10);
+            if (choice < 5) {
+                finger.insert(key);
+                plain.insert(key);
+            } else if (choice < 8) {
+                finger.remove(key);
+                plain.remove(key);
+            } else {
+                assertEquals(plain.contains(key), finger.contains(key));
+            }
+            assertEquals(plain.size(), finger.size());
+            assertEquals(value(plain.minimum()), value(finger.minimum()));
+            assertEquals(value(plain.maximum()), value(finger.maximum()));
+            if (op % 1000 == 0) {
+                RBTreeInvariantTest.checkInvariants(finger);
+                checkInsertionOrder(finger);
+            }
+        }
+        RBTreeInvariantTest.checkInvariants(finger);
+        checkInsertionOrder(finger);
+        List<Key> expected = RBTreeInvariantTest.keys(plain);
+        List<Key> actual = RBTreeInvariantTest.keys(finger);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).value, actual.get(i).value);
+        }
+    }
+
+    @Test
+    public void equalKeysKeepInsertionOrder() {
+        RBTree<Key> tree = new RBTree<Key>();
+        tree.setFingerSearch(true);
+        int id = 0;
+        for (int round = 0; round < 50; round++) {
+            for (int value = 0; value < 20; value++) {
+                tree.insert(new Key(value, id++));
+            }
+            for (int value = 19; value >= 0; value--) {
+                tree.insert(new Key(value, id++));
+            }
+        }
+        RBTreeInvariantTest.checkInvariants(tree);
+        checkInsertionOrder(tree);
+    }
+
+    @Test
+    public void endsTrackedAcrossBulkOperations() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        tree.setFingerSearch(true);
+        for (int i = 0; i < 1000; i++) {
+            tree.insert(i);
+        }
+        tree.search(500);
+        RBTree<Integer> high = tree.split(500);
+        checkEnds(tree);
+        checkEnds(high);
+        tree = RBTree.join(tree, high);
+        checkEnds(tree);
+
+        tree.removeRange(0, 100);
+        checkEnds(tree);
+        tree.removeIf(key -> key >= 900);
+        checkEnds(tree);
+        tree.subtract(RBTree.buildFromSorted(List.of(100, 899)));
+        checkEnds(tree);
+        tree.pollFirst();
+        tree.pollLast();
+        checkEnds(tree);
+        // finger指向的结点被删掉之后仍然可以用
+        tree.search(400);
+        tree.remove(400);
+        tree.insert(400);
+        assertTrue(tree.contains(400));
+        RBTreeInvariantTest.checkInvariants(tree);
+
+        tree.clear();
+        assertNull(tree.minimum());
+        assertNull(tree.maximum());
+        tree.insert(7);
+        checkEnds(tree);
+    }
+
+    private static void checkEnds(RBTree<Integer> tree) {
+        List<Integer> keys = RBTreeInvariantTest.keys(tree);
+        assertEquals(keys.isEmpty() ? null : keys.get(0), tree.minimum());
+        assertEquals(keys.isEmpty() ? null : keys.get(keys.size() - 1), tree.maximum());
+    }
+
+    private static void checkInsertionOrder(RBTree<Key> tree) {
+        Key prev = null;
+        for (Key key : RBTreeInvariantTest.keys(tree)) {
+            if (prev != null && prev.value == key.value) {
+                assertTrue(prev.id < key.id, "equal keys out of insertion order at " + key.value);
+            }
+            prev = key;
+        }
+    }
+
+    private static Integer value(Key key) {
+        return key != null ? key.value : null;
+    }
+}
@@ -0,0 +1,149 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * IntervalRBTree的查询和逐个扫描所有区间的结果对照; 每隔一段检查红黑树的性质和每个结点的max。
+ */
+public class IntervalRBTreeTest {
+    private static final boolean RED = false;
+    private static final Comparator<int[]> ORDER = (a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0])
+            : Integer.compare(a[1], b[1]);
+
+    @Test
+    public void queriesMatchBruteForce() {
+        Random random = new Random(21);
+        for (int round = 0; round < 40; round++) {
+            IntervalRBTree<Integer> tree = new IntervalRBTree<Integer>();
+            List<int[]> expected = new ArrayList<int[]>();
+            int range = 10 + random.nextInt(round % 2 == 0 ? 50 : 5000);
+            for (int op = 0; op < 1000; op++) {
+                int low = random.nextInt(range);
+                int high = low + random.nextInt(1 + range / (random.nextBoolean() ? 50 : 2));
+                if (random.nextInt(10) < 6) {
+                    tree.insert(low, high);
+                    int i = Collections.binarySearch(expected, new int[] {low, high}, ORDER);
+                    expected.add(i < 0 ? -i - 1 : i, new int[] {low, high});
+                } else {
+                    int i = Collections.binarySearch(expected, new int[] {low, high}, ORDER);
+                    assertEquals(i >= 0, tree.remove(low, high));
+                    if (i >= 0) {
+                        expected.remove(i);
+                    }
+                }
+                assertEquals(expected.size(), tree.size());
+
+                int lo = random.nextInt(range + 10) - 5;
+                int hi = lo + random.nextInt(range / 10 + 1);
+                List<int[]> overlapping = new ArrayList<int[]>();
+                for (int[] interval : expected) {
+                    if (interval[0] <= hi && lo <= interval[1]) {
+                        overlapping.add(interval);
+                    }
+                }
+                assertIntervals(overlapping, tree.overlapping(lo, hi));
+                assertEquals(!overlapping.isEmpty(), tree.anyOverlap(lo, hi));
+                IntervalRBTree.RBTNode<Integer> any = tree.findOverlap(lo, hi);
+                if (overlapping.isEmpty()) {
+                    assertNull(any);
+                } else if (any.low > hi || lo > any.high) {
+                    fail("findOverlap returned " + any + " for [" + lo + ", " + hi + "]");
+                }
+
+                List<int[]> stabbed = new ArrayList<int[]>();
+                for (int[] interval : expected) {
+                    if (interval[0] <= lo && lo <= interval[1]) {
+                        stabbed.add(interval);
+                    }
+                }
+                assertIntervals(stabbed, tree.stab(lo));
+
+                if (op % 100 == 0) {
+                    checkStructure(tree);
+                    List<int[]> all = new ArrayList<int[]>();
+                    assertTrue(tree.forEach((l, h) -> all.add(new int[] {l, h})));
+                    assertEquals(expected.size(), all.size());
+                    for (int i = 0; i < all.size(); i++) {
+                        assertEquals(0, ORDER.compare(expected.get(i), all.get(i)));
+                    }
+                }
+            }
+            checkStructure(tree);
+        }
+    }
+
+    @Test
+    public void visitorStopsEarly() {
+        IntervalRBTree<Integer> tree = new IntervalRBTree<Integer>();
+        for (int i = 0; i < 100; i++) {
+            tree.insert(i, i + 10);
+        }
+        List<Integer> lows = new ArrayList<Integer>();
+        assertFalse(tree.overlapping(50, 60, (low, high) -> lows.add(low) && lows.size() < 3));
+        assertEquals(List.of(40, 41, 42), lows);
+        assertTrue(tree.overlapping(200, 300, (low, high) -> false));
+        assertThrows(IllegalArgumentException.class, () -> tree.insert(2, 1));
+        tree.clear();
+        assertTrue(tree.isEmpty());
+        assertNull(tree.findOverlap(0, 1000));
+    }
+
+    private static void assertIntervals(List<int[]> expected, List<IntervalRBTree.RBTNode<Integer>> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i)[0], actual.get(i).getLow().intValue());
+            assertEquals(expected.get(i)[1], actual.get(i).getHigh().intValue());
+        }
+    }
+
+    private static void checkStructure(IntervalRBTree<Integer> tree) {
+        IntervalRBTree.RBTNode<Integer> root = tree.root();
+        if (root == null) {
+            return;
+        }
+        if (root.color == RED || root.parent != null) {
+            fail("bad root");
+        }
+        blackHeight(root);
+    }
+
+    private static int blackHeight(IntervalRBTree.RBTNode<Integer> node) {
+        if (node == null) {
+            return 1;
+        }
+        int max = node.high;
+        for (IntervalRBTree.RBTNode<Integer> child : Arrays.asList(node.left, node.right)) {
+            if (child == null) {
+                continue;
+            }
+            if (child.parent != node) {
+                fail("bad parent link below " + node);
+            }
+            if (node.color == RED && child.color == RED) {
+                fail("red node " + node + " has a red child");
+            }
+            max = Math.max(max, child.max);
+        }
+        assertEquals(max, node.max.intValue(), "max of " + node);
+        int left = blackHeight(node.left);
+        int right = blackHeight(node.right);
+        if (left != right) {
+            fail("black heights differ at " + node);
+        }
+        return left + (node.color == RED ? 0 : 1);
+    }
+}
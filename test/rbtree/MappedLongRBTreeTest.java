@@ -0,0 +1,76 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 覆盖保存快照时, 已经映射旧快照的读者不受影响, 也不留下临时文件; 从快照建出的树满足红黑树的性质。
+ */
+public class MappedLongRBTreeTest {
+    @TempDir
+    Path mDir;
+
+    @Test
+    public void saveReplacesSnapshotWithoutDisturbingMappedReaders() throws IOException {
+        Path file = mDir.resolve("keys.snap");
+        MappedLongRBTree.save(tree(0, 1000), file);
+
+        try (MappedLongRBTree old = MappedLongRBTree.open(file)) {
+            MappedLongRBTree.save(tree(5000, 10), file);
+
+            // 旧的映射仍然是旧的内容
+            assertEquals(1000, old.size());
+            assertEquals(999, old.maximum());
+            assertTrue(old.contains(500));
+
+            try (MappedLongRBTree fresh = MappedLongRBTree.open(file)) {
+                assertEquals(10, fresh.size());
+                assertEquals(5000, fresh.minimum());
+                assertFalse(fresh.contains(500));
+            }
+        }
+        assertFalse(Files.exists(mDir.resolve("keys.snap.tmp")));
+    }
+
+    /**
+     * 从快照线性建树(和RBTree共用computeRedLevel), 各种大小下都满足红黑树的性质
+     */
+    @Test
+    public void toTreeKeepsInvariants() throws IOException {
+        Path file = mDir.resolve("keys.snap");
+        for (int n = 0; n < 70; n++) {
+            LongRBTree source = new LongRBTree();
+            for (int i = 0; i < n; i++) {
+                source.insert(i / 3);  // 带重复的键值
+            }
+            MappedLongRBTree.save(source, file);
+            try (MappedLongRBTree mapped = MappedLongRBTree.open(file)) {
+                LongRBTree tree = mapped.toTree();
+                PrimitiveRBTreeTest.checkInvariants(tree);
+                List<Long> keys = new ArrayList<>();
+                tree.forEach(keys::add);
+                List<Long> expected = new ArrayList<>();
+                source.forEach(expected::add);
+                assertEquals(expected, keys);
+            }
+        }
+    }
+
+    private static LongRBTree tree(long first, int count) {
+        LongRBTree tree = new LongRBTree();
+        for (int i = 0; i < count; i++) {
+            tree.insert(first + i);
+        }
+        return tree;
+    }
+}
@@ -0,0 +1,46 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 非法的结点下标和关闭之后的访问要抛出Java异常, 不能读到已分配范围之外的本地内存。
+ */
+public class OffHeapRBTreeTest {
+
+    @Test
+    public void invalidHandlesThrow() {
+        try (OffHeapRBTree tree = new OffHeapRBTree()) {
+            assertThrows(IllegalArgumentException.class, () -> tree.getKey(tree.search(42)));
+            assertThrows(IllegalArgumentException.class, () -> tree.successor(OffHeapRBTree.NIL));
+            assertThrows(IllegalArgumentException.class, () -> tree.predecessor(-1));
+
+            for (long key = 0; key < 10; key++) {
+                tree.insert(key);
+            }
+            int node = tree.search(5);
+            assertEquals(5, tree.getKey(node));
+            assertEquals(6, tree.getKey(tree.successor(node)));
+            assertEquals(4, tree.getKey(tree.predecessor(node)));
+            assertThrows(IllegalArgumentException.class, () -> tree.getKey(1 << 20));
+
+            tree.clear();
+            assertThrows(IllegalArgumentException.class, () -> tree.getKey(node));
+        }
+    }
+
+    @Test
+    public void closedTreeThrows() {
+        OffHeapRBTree tree = new OffHeapRBTree();
+        tree.insert(1);
+        int node = tree.search(1);
+        tree.close();
+        assertThrows(IllegalStateException.class, () -> tree.getKey(node));
+        assertThrows(IllegalStateException.class, () -> tree.successor(node));
+        assertThrows(IllegalStateException.class, () -> tree.contains(1));
+        assertThrows(IllegalStateException.class, tree::minimum);
+        assertThrows(IllegalStateException.class, tree::maximum);
+    }
+}
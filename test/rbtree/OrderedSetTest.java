@@ -0,0 +1,223 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * OrderedSet的约定, 对RBTree和各种结点容量的BPlusTree用同样的随机操作序列检查。
+ *
+ * 参照是一个有序的List(允许重复)。每一步之后比较size、contains、ceiling/higher/floor/lower和最小最大值，
+ * 隔一段比较全部键值和区间扫描；BPlusTree另外检查结构: 结点内有序、键值在分隔键的范围内、叶子都在同一层、
+ * 根以外的结点不为空。小容量(4, 5, 7)让分裂、借用、合并和跨叶子的重复键值频繁出现。
+ */
+public class OrderedSetTest {
+    private static final int[] CAPACITIES = {4, 5, 7, 64};
+    private static final int ROUNDS = 60;
+    private static final int OPS = 1500;
+
+    @Test
+    public void rbTree() {
+        check("RBTree", keys -> keys == null ? new RBTree<Integer>() : RBTree.buildFromSorted(keys));
+    }
+
+    @Test
+    public void bPlusTree() {
+        for (final int capacity : CAPACITIES) {
+            check("BPlusTree(" + capacity + ")", keys -> {
+                BPlusTree<Integer> tree = new BPlusTree<Integer>(capacity);
+                if (keys != null) {
+                    for (Integer key : keys) {
+                        tree.insert(key); // 有序插入: 最右叶子不对半分裂的路径
+                    }
+                }
+                return tree;
+            });
+        }
+        // 批量建树只有默认容量
+        check("BPlusTree.buildFromSorted", keys -> keys == null ? new BPlusTree<Integer>() : BPlusTree.buildFromSorted(keys));
+    }
+
+    @Test
+    public void emptySet() {
+        for (OrderedSet<Integer> set : List.<OrderedSet<Integer>>of(new RBTree<Integer>(), new BPlusTree<Integer>())) {
+            assertTrue(set.isEmpty());
+            assertNull(set.minimum());
+            assertNull(set.maximum());
+            assertNull(set.ceiling(1));
+            assertNull(set.floor(1));
+            set.remove(1);
+            assertEquals(0, set.size());
+            set.forEachInRange(null, null, key -> fail("empty"));
+        }
+    }
+
+    /**
+     * factory(null)返回空集合, factory(keys)返回包含这些有序键值的集合
+     */
+    private static void check(String name, Function<List<Integer>, OrderedSet<Integer>> factory) {
+        Random random = new Random(name.hashCode());
+        for (int round = 0; round < ROUNDS; round++) {
+            // 一半的轮次键值范围很小, 大量重复的键值跨越多个叶子
+            int range = 1 + random.nextInt(round % 2 == 0 ? 20 : 2000);
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int i = random.nextInt(400); i > 0; i--) {
+                expected.add(random.nextInt(range));
+            }
+            Collections.sort(expected);
+            OrderedSet<Integer> set = round % 3 == 0 ? factory.apply(null) : factory.apply(expected);
+            if (round % 3 == 0) {
+                List<Integer> shuffled = new ArrayList<Integer>(expected);
+                Collections.shuffle(shuffled, random);
+                for (Integer key : shuffled) {
+                    set.insert(key);
+                }
+            }
+            try {
+                runRound(set, expected, random, range);
+            } catch (AssertionError e) {
+                throw new AssertionError(name + " round " + round + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static void runRound(OrderedSet<Integer> set, List<Integer> expected, Random random, int range) {
+        for (int op = 0; op < OPS; op++) {
+            Integer key = random.nextInt(range + 2) - 1;
+            int choice = random.nextInt(100);
+            if (choice < 45) {
+                set.insert(key);
+                int i = Collections.binarySearch(expected, key);
+                expected.add(i < 0 ? -i - 1 : i, key);
+            } else if (choice < 90) {
+                set.remove(key);
+                expected.remove(key);
+            } else if (choice == 90) {
+                set.clear();
+                expected.clear();
+            }
+
+            assertEquals(expected.size(), set.size());
+            assertEquals(expected.isEmpty(), set.isEmpty());
+            assertEquals(expected.contains(key), set.contains(key), "contains " + key);
+            assertEquals(ceiling(expected, key, true), set.ceiling(key), "ceiling " + key);
+            assertEquals(ceiling(expected, key, false), set.higher(key), "higher " + key);
+            assertEquals(floor(expected, key, true), set.floor(key), "floor " + key);
+            assertEquals(floor(expected, key, false), set.lower(key), "lower " + key);
+            assertEquals(expected.isEmpty() ? null : expected.get(0), set.minimum());
+            assertEquals(expected.isEmpty() ? null : expected.get(expected.size() - 1), set.maximum());
+
+            if (op % 25 == 0) {
+                List<Integer> all = new ArrayList<Integer>();
+                set.forEach(all::add);
+                assertEquals(expected, all);
+
+                Integer lo = random.nextInt(range);
+                Integer hi = lo + random.nextInt(range);
+                List<Integer> inRange = new ArrayList<Integer>();
+                set.forEachInRange(lo, hi, inRange::add);
+                assertEquals(slice(expected, lo, hi), inRange, "range [" + lo + ", " + hi + ")");
+                List<Integer> tail = new ArrayList<Integer>();
+                set.forEachInRange(lo, null, tail::add);
+                assertEquals(slice(expected, lo, null), tail);
+
+                if (set instanceof BPlusTree) {
+                    checkStructure((BPlusTree<Integer>) set);
+                }
+            }
+        }
+    }
+
+    private static Integer ceiling(List<Integer> keys, Integer key, boolean inclusive) {
+        for (Integer k : keys) {
+            if (inclusive ? k >= key : k > key) {
+                return k;
+            }
+        }
+        return null;
+    }
+
+    private static Integer floor(List<Integer> keys, Integer key, boolean inclusive) {
+        Integer result = null;
+        for (Integer k : keys) {
+            if (inclusive ? k <= key : k < key) {
+                result = k;
+            }
+        }
+        return result;
+    }
+
+    private static List<Integer> slice(List<Integer> keys, Integer lo, Integer hi) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (Integer k : keys) {
+            if (k >= lo && (hi == null || k < hi)) {
+                result.add(k);
+            }
+        }
+        return result;
+    }
+
+    // ---------------------------------------- BPlusTree的结构
+
+    static void checkStructure(BPlusTree<Integer> tree) {
+        BPlusTree.Node root = tree.root();
+        if (root == null) {
+            assertEquals(0, tree.size());
+            return;
+        }
+        int[] leafDepth = {-1};
+        assertEquals(tree.size(), checkNode(root, null, null, true, 0, leafDepth));
+    }
+
+    /**
+     * 检查子树的结构, 键值都在[lo, hi]内(null表示没有边界), 返回子树中的键值个数
+     */
+    private static int checkNode(BPlusTree.Node node, Integer lo, Integer hi, boolean isRoot, int depth,
+                                 int[] leafDepth) {
+        int capacity = node.keys.length - 1;
+        if (node.count > capacity || (!isRoot && node.count == 0)) {
+            fail("bad key count " + node.count);
+        }
+        for (int i = 0; i < node.keys.length; i++) {
+            if (i >= node.count) {
+                assertNull(node.keys[i], "stale key");
+                continue;
+            }
+            Integer key = (Integer) node.keys[i];
+            if (i > 0 && key < (Integer) node.keys[i - 1]) {
+                fail("keys out of order in node");
+            }
+            if (lo != null && key < lo || hi != null && key > hi) {
+                fail("key " + key + " outside [" + lo + ", " + hi + "]");
+            }
+        }
+        if (node.isLeaf()) {
+            if (leafDepth[0] < 0) {
+                leafDepth[0] = depth;
+            } else if (leafDepth[0] != depth) {
+                fail("leaves at depths " + leafDepth[0] + " and " + depth);
+            }
+            return node.count;
+        }
+        int size = 0;
+        for (int i = 0; i < node.children.length; i++) {
+            if (i > node.count) {
+                assertNull(node.children[i], "stale child");
+                continue;
+            }
+            Integer childLo = i == 0 ? lo : (Integer) node.keys[i - 1];
+            Integer childHi = i == node.count ? hi : (Integer) node.keys[i];
+            size += checkNode(node.children[i], childLo, childHi, false, depth + 1, leafDepth);
+        }
+        return size;
+    }
+}
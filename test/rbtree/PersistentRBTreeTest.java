@@ -0,0 +1,233 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * PersistentRBTree和有序列表模型对照: 每个旧版本在之后的插入删除中保持不变, 每个版本都满足红黑树的性质;
+ * VersionedRBTree在写线程修改时, 读线程拿到的快照是一致的。
+ */
+public class PersistentRBTreeTest {
+    private static final boolean RED = false;
+
+    @Test
+    public void oldVersionsStayUnchanged() {
+        Random random = new Random(10);
+        List<PersistentRBTree<Integer>> versions = new ArrayList<>();
+        List<List<Integer>> models = new ArrayList<>();
+        PersistentRBTree<Integer> tree = PersistentRBTree.empty();
+        List<Integer> model = new ArrayList<>();
+        for (int op = 0; op < 5000; op++) {
+            Integer key = random.nextInt(200);
+            if (random.nextInt(3) > 0) {
+                tree = tree.insert(key);
+                int index = Collections.binarySearch(model, key);
+                model.add(index < 0 ? -index - 1 : index, key);
+            } else {
+                PersistentRBTree<Integer> removed = tree.remove(key);
+                if (model.remove(key)) {
+                    assertFalse(removed == tree);
+                } else {
+                    assertSame(tree, removed);
+                }
+                tree = removed;
+            }
+            if (op % 50 == 0) {
+                versions.add(tree);
+                models.add(new ArrayList<>(model));
+            }
+        }
+        versions.add(tree);
+        models.add(model);
+
+        for (int i = 0; i < versions.size(); i++) {
+            check(versions.get(i), models.get(i), random);
+        }
+    }
+
+    @Test
+    public void removeEverythingReturnsEmpty() {
+        PersistentRBTree<Integer> tree = PersistentRBTree.empty();
+        for (int i = 0; i < 100; i++) {
+            tree = tree.insert(i % 10);
+        }
+        PersistentRBTree<Integer> full = tree;
+        for (int i = 0; i < 100; i++) {
+            tree = tree.remove(i % 10);
+            checkStructure(tree);
+        }
+        assertSame(PersistentRBTree.empty(), tree);
+        assertTrue(tree.isEmpty());
+        assertNull(tree.minimum());
+        assertNull(tree.maximum());
+        assertEquals(100, full.size());
+    }
+
+    @Test
+    public void versionedRollback() {
+        VersionedRBTree<Integer> tree = new VersionedRBTree<>();
+        for (int i = 0; i < 10; i++) {
+            tree.insert(i);
+        }
+        PersistentRBTree<Integer> saved = tree.snapshot();
+        tree.remove(3);
+        tree.insert(20);
+        assertFalse(tree.contains(3));
+        assertEquals(Integer.valueOf(20), tree.maximum());
+        assertTrue(saved.contains(3));
+        assertFalse(saved.contains(20));
+
+        tree.rollback(saved);
+        assertSame(saved, tree.snapshot());
+        assertTrue(tree.contains(3));
+        assertEquals(10, tree.size());
+        assertEquals(Integer.valueOf(0), tree.minimum());
+        assertEquals(Integer.valueOf(9), tree.maximum());
+    }
+
+    /**
+     * 写线程先按顺序插入0..n-1, 再按顺序删除, 所以任何一个版本都是一段连续的整数。
+     * 读线程检查自己拿到的快照确实是这样, 并且在读的过程中不变。
+     */
+    @Test
+    public void readersSeeConsistentSnapshots() throws InterruptedException {
+        final int n = 5000;
+        final VersionedRBTree<Integer> tree = new VersionedRBTree<>();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        PersistentRBTree<Integer> snapshot = tree.snapshot();
+                        int size = snapshot.size();
+                        Integer first = snapshot.minimum();
+                        int expected = first == null ? 0 : first;
+                        int count = 0;
+                        for (Integer key : snapshot) {
+                            assertEquals(expected++, key.intValue());
+                            count++;
+                        }
+                        assertEquals(size, count);
+                        assertEquals(size, snapshot.size());
+                        if (size > 0) {
+                            assertEquals(expected - 1, snapshot.maximum().intValue());
+                            assertEquals(size - 1, snapshot.rank(snapshot.maximum()));
+                        }
+                        checkStructure(snapshot);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        for (int i = 0; i < n; i++) {
+            tree.insert(i);
+        }
+        for (int i = 0; i < n; i++) {
+            tree.remove(i);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(0, tree.size());
+    }
+
+    private static void check(PersistentRBTree<Integer> tree, List<Integer> model, Random random) {
+        checkStructure(tree);
+        assertEquals(model.size(), tree.size());
+        assertEquals(model.isEmpty(), tree.isEmpty());
+        List<Integer> keys = new ArrayList<>();
+        for (Integer key : tree) {
+            keys.add(key);
+        }
+        assertEquals(model, keys);
+        if (!model.isEmpty()) {
+            assertEquals(model.get(0), tree.minimum());
+            assertEquals(model.get(model.size() - 1), tree.maximum());
+        }
+        for (int i = 0; i < 20; i++) {
+            Integer key = random.nextInt(210) - 5;
+            int index = Collections.binarySearch(model, key);
+            assertEquals(index >= 0, tree.contains(key));
+            int lower = lowerBound(model, key);
+            assertEquals(lower, tree.rank(key));
+            int upper = lowerBound(model, key + 1);
+            assertEquals(lower < model.size() ? model.get(lower) : null, tree.ceiling(key));
+            assertEquals(upper > 0 ? model.get(upper - 1) : null, tree.floor(key));
+        }
+    }
+
+    private static int lowerBound(List<Integer> sorted, int key) {
+        int lo = 0;
+        int hi = sorted.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted.get(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static <T extends Comparable<T>> void checkStructure(PersistentRBTree<T> tree) {
+        PersistentRBTree.RBTNode<T> root = tree.root();
+        if (root != null && root.color == RED) {
+            fail("red root");
+        }
+        blackHeight(root);
+    }
+
+    private static <T extends Comparable<T>> int blackHeight(PersistentRBTree.RBTNode<T> node) {
+        if (node == null) {
+            return 1;
+        }
+        if (node.left != null) {
+            if (node.left.key.compareTo(node.key) > 0) {
+                fail("bad left child of " + node.key);
+            }
+            if (node.color == RED && node.left.color == RED) {
+                fail("red node " + node.key + " has a red child");
+            }
+        }
+        if (node.right != null) {
+            if (node.right.key.compareTo(node.key) < 0) {
+                fail("bad right child of " + node.key);
+            }
+            if (node.color == RED && node.right.color == RED) {
+                fail("red node " + node.key + " has a red child");
+            }
+        }
+        int left = blackHeight(node.left);
+        int right = blackHeight(node.right);
+        if (left != right) {
+            fail("black heights differ at " + node.key);
+        }
+        int size = (node.left != null ? node.left.size : 0) + (node.right != null ? node.right.size : 0) + 1;
+        assertEquals(size, node.size, "size of " + node.key);
+        return left + (node.color == RED ? 0 : 1);
+    }
+}
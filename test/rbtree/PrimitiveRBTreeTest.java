@@ -0,0 +1,228 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * IntRBTree和LongRBTree和有序列表模型对照: 随机插入删除(含重复键值)之后检查红黑树的性质、
+ * 查找、最值、前驱后继和遍历。LongRBTree的键值取在整个long范围内, 覆盖比较时不能用减法的情况。
+ */
+public class PrimitiveRBTreeTest {
+    private static final boolean RED = false;
+
+    @Test
+    public void intTreeMatchesModel() {
+        Random random = new Random(1);
+        for (int round = 0; round < 100; round++) {
+            IntRBTree tree = new IntRBTree();
+            List<Integer> model = new ArrayList<>();
+            int range = 1 + random.nextInt(round % 2 == 0 ? 20 : 1000);
+            for (int op = 0; op < 500; op++) {
+                int key = random.nextInt(range) - range / 2;
+                if (random.nextInt(3) > 0) {
+                    tree.insert(key);
+                    int index = Collections.binarySearch(model, key);
+                    model.add(index < 0 ? -index - 1 : index, key);
+                } else {
+                    tree.remove(key);
+                    model.remove(Integer.valueOf(key));
+                }
+                assertEquals(model.contains(key), tree.search(key) != null);
+                if (op % 50 == 0) {
+                    check(tree, model);
+                }
+            }
+            check(tree, model);
+            for (Integer key : new ArrayList<>(model)) {
+                tree.remove(key);
+                model.remove(key);
+            }
+            check(tree, model);
+        }
+    }
+
+    @Test
+    public void longTreeMatchesModel() {
+        Random random = new Random(2);
+        long[] pool = new long[64];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = random.nextLong();
+        }
+        pool[0] = Long.MIN_VALUE;
+        pool[1] = Long.MAX_VALUE;
+        pool[2] = 0;
+        for (int round = 0; round < 100; round++) {
+            LongRBTree tree = new LongRBTree();
+            List<Long> model = new ArrayList<>();
+            for (int op = 0; op < 500; op++) {
+                long key = pool[random.nextInt(pool.length)];
+                if (random.nextInt(3) > 0) {
+                    tree.insert(key);
+                    int index = Collections.binarySearch(model, key);
+                    model.add(index < 0 ? -index - 1 : index, key);
+                } else {
+                    tree.remove(key);
+                    model.remove(Long.valueOf(key));
+                }
+                assertEquals(model.contains(key), tree.search(key) != null);
+                if (op % 50 == 0) {
+                    checkLong(tree, model);
+                }
+            }
+            checkLong(tree, model);
+        }
+    }
+
+    @Test
+    public void emptyTrees() {
+        IntRBTree ints = new IntRBTree();
+        assertTrue(ints.isEmpty());
+        assertThrows(NoSuchElementException.class, ints::minimum);
+        assertThrows(NoSuchElementException.class, ints::maximum);
+        assertNull(ints.search(0));
+        ints.remove(0);
+        ints.insert(5);
+        ints.insert(5);
+        ints.remove(5);
+        assertFalse(ints.isEmpty());
+        ints.clear();
+        assertTrue(ints.isEmpty());
+
+        LongRBTree longs = new LongRBTree();
+        assertThrows(NoSuchElementException.class, longs::minimum);
+        assertThrows(NoSuchElementException.class, longs::maximum);
+        assertNull(longs.search(0));
+    }
+
+    private static void check(IntRBTree tree, List<Integer> model) {
+        checkStructure(tree.root());
+        assertEquals(model.isEmpty(), tree.isEmpty());
+        if (!model.isEmpty()) {
+            assertEquals(model.get(0).intValue(), tree.minimum());
+            assertEquals(model.get(model.size() - 1).intValue(), tree.maximum());
+        }
+        List<Integer> keys = new ArrayList<>();
+        assertTrue(tree.midOrder(keys::add));
+        assertEquals(model, keys);
+        keys.clear();
+        tree.forEach(keys::add);
+        assertEquals(model, keys);
+
+        // 从最大结点沿前驱走回来
+        List<Integer> backward = new ArrayList<>();
+        IntRBTree.RBTNode x = tree.root();
+        while (x != null && x.right != null) {
+            x = x.right;
+        }
+        for (; x != null; x = tree.predecessor(x)) {
+            backward.add(x.getKey());
+        }
+        Collections.reverse(backward);
+        assertEquals(model, backward);
+        for (Integer key : model) {
+            assertEquals(key.intValue(), tree.search(key).getKey());
+        }
+    }
+
+    private static void checkLong(LongRBTree tree, List<Long> model) {
+        checkInvariants(tree);
+        assertEquals(model.isEmpty(), tree.isEmpty());
+        if (!model.isEmpty()) {
+            assertEquals(model.get(0).longValue(), tree.minimum());
+            assertEquals(model.get(model.size() - 1).longValue(), tree.maximum());
+        }
+        List<Long> keys = new ArrayList<>();
+        assertTrue(tree.midOrder(keys::add));
+        assertEquals(model, keys);
+
+        List<Long> backward = new ArrayList<>();
+        LongRBTree.RBTNode x = tree.root();
+        while (x != null && x.right != null) {
+            x = x.right;
+        }
+        for (; x != null; x = tree.predecessor(x)) {
+            backward.add(x.getKey());
+        }
+        Collections.reverse(backward);
+        assertEquals(model, backward);
+    }
+
+    private static void checkStructure(IntRBTree.RBTNode root) {
+        if (root != null && (root.color == RED || root.parent != null)) {
+            fail("bad root");
+        }
+        blackHeight(root);
+    }
+
+    private static int blackHeight(IntRBTree.RBTNode node) {
+        if (node == null) {
+            return 1;
+        }
+        for (IntRBTree.RBTNode child : new IntRBTree.RBTNode[] {node.left, node.right}) {
+            if (child == null) {
+                continue;
+            }
+            if (child.parent != node) {
+                fail("bad parent link below " + node.key);
+            }
+            if (node.color == RED && child.color == RED) {
+                fail("red node " + node.key + " has a red child");
+            }
+        }
+        if (node.left != null && node.left.key > node.key || node.right != null && node.right.key < node.key) {
+            fail("keys out of order at " + node.key);
+        }
+        int left = blackHeight(node.left);
+        int right = blackHeight(node.right);
+        if (left != right) {
+            fail("black heights differ at " + node.key);
+        }
+        return left + (node.color == RED ? 0 : 1);
+    }
+
+    static void checkInvariants(LongRBTree tree) {
+        LongRBTree.RBTNode root = tree.root();
+        if (root != null && (root.color == RED || root.parent != null)) {
+            fail("bad root");
+        }
+        blackHeight(root);
+    }
+
+    private static int blackHeight(LongRBTree.RBTNode node) {
+        if (node == null) {
+            return 1;
+        }
+        for (LongRBTree.RBTNode child : new LongRBTree.RBTNode[] {node.left, node.right}) {
+            if (child == null) {
+                continue;
+            }
+            if (child.parent != node) {
+                fail("bad parent link below " + node.key);
+            }
+            if (node.color == RED && child.color == RED) {
+                fail("red node " + node.key + " has a red child");
+            }
+        }
+        if (node.left != null && node.left.key > node.key || node.right != null && node.right.key < node.key) {
+            fail("keys out of order at " + node.key);
+        }
+        int left = blackHeight(node.left);
+        int right = blackHeight(node.right);
+        if (left != right) {
+            fail("black heights differ at " + node.key);
+        }
+        return left + (node.color == RED ? 0 : 1);
+    }
+}
@@ -0,0 +1,169 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * RBMultiset和TreeMap<键值, 次数>对照: 次数、按次数计的rank/select/countRange和遍历;
+ * 每隔一段检查红黑树的性质和每个结点的weight。
+ */
+public class RBMultisetTest {
+    private static final boolean RED = false;
+
+    @Test
+    public void randomOperationsMatchReference() {
+        Random random = new Random(19);
+        for (int round = 0; round < 50; round++) {
+            RBMultiset<Integer> set = new RBMultiset<Integer>();
+            TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+            int range = 1 + random.nextInt(round % 2 == 0 ? 10 : 500);
+            for (int op = 0; op < 1000; op++) {
+                Integer key = random.nextInt(range);
+                int choice = random.nextInt(10);
+                int before = expected.getOrDefault(key, 0);
+                if (choice < 5) {
+                    int n = random.nextInt(4);
+                    assertEquals(before, set.add(key, n));
+                    if (before + n > 0) {
+                        expected.put(key, before + n);
+                    }
+                } else if (choice < 8) {
+                    int n = random.nextInt(3);
+                    assertEquals(before, set.remove(key, n));
+                    if (before > n) {
+                        expected.put(key, before - n);
+                    } else {
+                        expected.remove(key);
+                    }
+                } else if (choice < 9) {
+                    assertEquals(before, set.removeAll(key));
+                    expected.remove(key);
+                } else {
+                    assertEquals(before > 0, set.removeOne(key));
+                    if (before > 1) {
+                        expected.put(key, before - 1);
+                    } else {
+                        expected.remove(key);
+                    }
+                }
+                assertEquals(expected.getOrDefault(key, 0).intValue(), set.count(key));
+                assertEquals(expected.size(), set.distinctSize());
+                if (op % 50 == 0) {
+                    compare(expected, set, random, range);
+                }
+            }
+            compare(expected, set, random, range);
+        }
+    }
+
+    @Test
+    public void largeCounts() {
+        RBMultiset<String> set = new RBMultiset<String>();
+        set.add("a", 1_000_000);
+        set.add("b");
+        set.add("c", Integer.MAX_VALUE);
+        assertEquals(3, set.distinctSize());
+        assertEquals(1_000_001L + Integer.MAX_VALUE, set.size());
+        assertEquals("a", set.select(999_999));
+        assertEquals("b", set.select(1_000_000));
+        assertEquals("c", set.select(set.size() - 1));
+        assertEquals(1_000_001L, set.rank("c"));
+        assertThrows(IllegalArgumentException.class, () -> set.add("c"));
+        assertThrows(IllegalArgumentException.class, () -> set.add("a", -1));
+        assertThrows(IndexOutOfBoundsException.class, () -> set.select(set.size()));
+        assertEquals(Integer.MAX_VALUE, set.count("c"));
+    }
+
+    private static void compare(TreeMap<Integer, Integer> expected, RBMultiset<Integer> set, Random random,
+                                int range) {
+        checkStructure(set);
+        long size = 0;
+        List<Integer> sorted = new ArrayList<Integer>();
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            size += e.getValue();
+            for (int i = 0; i < e.getValue(); i++) {
+                sorted.add(e.getKey());
+            }
+        }
+        assertEquals(size, set.size());
+        assertEquals(expected.isEmpty(), set.isEmpty());
+        assertEquals(expected.isEmpty() ? null : expected.firstKey(), set.minimum());
+        assertEquals(expected.isEmpty() ? null : expected.lastKey(), set.maximum());
+
+        List<Integer> entries = new ArrayList<Integer>();
+        set.forEachEntry((key, count) -> {
+            assertEquals(expected.get(key).intValue(), count);
+            entries.add(key);
+        });
+        assertEquals(new ArrayList<Integer>(expected.keySet()), entries);
+
+        for (int k = 0; k < sorted.size(); k++) {
+            assertEquals(sorted.get(k), set.select(k));
+        }
+        for (int key = -1; key <= range; key++) {
+            assertEquals(expected.headMap(key).values().stream().mapToLong(Integer::longValue).sum(), set.rank(key));
+        }
+        Integer lo = random.nextInt(range + 1);
+        Integer hi = random.nextInt(range + 1);
+        long inRange = lo < hi ? expected.subMap(lo, hi).values().stream().mapToLong(Integer::longValue).sum() : 0;
+        assertEquals(inRange, set.countRange(lo, hi));
+    }
+
+    private static <T extends Comparable<T>> void checkStructure(RBMultiset<T> set) {
+        RBMultiset.RBTNode<T> root = set.root();
+        if (root == null) {
+            assertEquals(0, set.distinctSize());
+            return;
+        }
+        if (root.color == RED || root.parent != null) {
+            fail("bad root");
+        }
+        int[] nodes = {0};
+        blackHeight(root, nodes);
+        assertEquals(set.distinctSize(), nodes[0]);
+    }
+
+    private static <T extends Comparable<T>> int blackHeight(RBMultiset.RBTNode<T> node, int[] nodes) {
+        if (node == null) {
+            return 1;
+        }
+        nodes[0]++;
+        assertTrue(node.count > 0, "count of " + node.key);
+        long weight = node.count;
+        if (node.left != null) {
+            if (node.left.parent != node || node.left.key.compareTo(node.key) >= 0) {
+                fail("bad left child of " + node.key);
+            }
+            if (node.color == RED && node.left.color == RED) {
+                fail("red node " + node.key + " has a red child");
+            }
+            weight += node.left.weight;
+        }
+        if (node.right != null) {
+            if (node.right.parent != node || node.right.key.compareTo(node.key) <= 0) {
+                fail("bad right child of " + node.key);
+            }
+            if (node.color == RED && node.right.color == RED) {
+                fail("red node " + node.key + " has a red child");
+            }
+            weight += node.right.weight;
+        }
+        assertEquals(weight, node.weight, "weight of " + node.key);
+        int left = blackHeight(node.left, nodes);
+        int right = blackHeight(node.right, nodes);
+        if (left != right) {
+            fail("black heights differ at " + node.key);
+        }
+        return left + (node.color == RED ? 0 : 1);
+    }
+}
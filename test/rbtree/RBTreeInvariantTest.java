@@ -0,0 +1,208 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 随机的insert/remove/insertAll序列, 每一步之后检查红黑树的性质, 并和一个有序的List对照键值。
+ *
+ * 检查的性质:
+ *     (1) 根是黑色;
+ *     (2) 红色结点的孩子都是黑色;
+ *     (3) 从任一结点到其下每个叶子的路径上黑色结点个数相同;
+ *     (4) 中序有序, 父亲指针和子树大小正确, 根的子树大小等于size()。
+ * 隔几步再用子树大小检查rank/select/countRange: select(i)和rank互为反函数, 并和List上的二分查找一致。
+ * 失败时报告种子, 用-Drbtree.check.seed=<seed>可以复现。
+ */
+public class RBTreeInvariantTest {
+    private static final boolean RED = false;
+    private static final boolean BLACK = true;
+    private static final int ROUNDS = Integer.getInteger("rbtree.check.rounds", 200);
+    private static final int OPS = 500;
+
+    @Test
+    public void randomOperationsKeepInvariants() {
+        Long fixed = Long.getLong("rbtree.check.seed");
+        long base = fixed != null ? fixed : System.nanoTime();
+        int rounds = fixed != null ? 1 : ROUNDS;
+        for (int round = 0; round < rounds; round++) {
+            long seed = base + round;
+            try {
+                runRound(new Random(seed));
+            } catch (AssertionError e) {
+                throw new AssertionError("seed " + seed + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Test
+    public void buildFromSortedKeepsInvariants() {
+        for (int n = 0; n < 300; n++) {
+            Integer[] keys = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = i / 3;  // 带重复的键值
+            }
+            RBTree<Integer> tree = RBTree.buildFromSorted(keys);
+            checkInvariants(tree);
+            assertEquals(Arrays.asList(keys), keys(tree));
+        }
+    }
+
+    private void runRound(Random random) {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        List<Integer> expected = new ArrayList<Integer>();
+        int range = 1 + random.nextInt(200);
+        for (int op = 0; op < OPS; op++) {
+            int choice = random.nextInt(10);
+            if (choice < 5) {
+                Integer key = random.nextInt(range);
+                tree.insert(key);
+                insertSorted(expected, key);
+            } else if (choice < 9) {
+                Integer key = random.nextInt(range);
+                tree.remove(key);
+                expected.remove(key);
+            } else {
+                List<Integer> batch = new ArrayList<Integer>();
+                for (int i = random.nextInt(50); i > 0; i--) {
+                    Integer key = random.nextInt(range);
+                    batch.add(key);
+                    insertSorted(expected, key);
+                }
+                tree.insertAll(batch);
+            }
+            checkInvariants(tree);
+            assertEquals(expected, keys(tree));
+            assertEquals(expected.size(), tree.size());
+            if (op % 10 == 0) {
+                checkOrderStatistics(tree, expected, random, range);
+            }
+        }
+        checkOrderStatistics(tree, expected, random, range);
+        if (!expected.isEmpty()) {
+            assertEquals(expected.get(0), tree.minimum());
+            assertEquals(expected.get(expected.size() - 1), tree.maximum());
+        }
+        tree.clear();
+        assertTrue(tree.isEmpty());
+        assertNull(tree.root());
+    }
+
+    private static void insertSorted(List<Integer> list, Integer key) {
+        int i = Collections.binarySearch(list, key);
+        list.add(i < 0 ? -i - 1 : i, key);
+    }
+
+    static <T extends Comparable<T>> void checkInvariants(RBTree<T> tree) {
+        RBTree<T>.RBTNode<T> root = tree.root();
+        if (root == null) {
+            assertEquals(0, tree.size());
+            return;
+        }
+        if (root.size != tree.size()) {
+            fail("root size is " + root.size + ", size() is " + tree.size());
+        }
+        if (root.color != BLACK) {
+            fail("root is red");
+        }
+        if (root.parent != null) {
+            fail("root has a parent");
+        }
+        blackHeight(root);
+    }
+
+    /**
+     * 返回子树的黑高, 同时检查子树的其他性质
+     */
+    private static <T extends Comparable<T>> int blackHeight(RBTree<T>.RBTNode<T> node) {
+        if (node == null) {
+            return 1;
+        }
+        int size = 1;
+        for (RBTree<T>.RBTNode<T> child : Arrays.asList(node.left, node.right)) {
+            if (child == null) {
+                continue;
+            }
+            if (child.parent != node) {
+                fail("bad parent link below " + node.key);
+            }
+            if (node.color == RED && child.color == RED) {
+                fail("red node " + node.key + " has a red child");
+            }
+            size += child.size;
+        }
+        if (node.left != null && node.left.key.compareTo(node.key) > 0
+                || node.right != null && node.right.key.compareTo(node.key) < 0) {
+            fail("keys out of order at " + node.key);
+        }
+        if (node.size != size) {
+            fail("size of " + node.key + " is " + node.size + ", expected " + size);
+        }
+        int left = blackHeight(node.left);
+        int right = blackHeight(node.right);
+        if (left != right) {
+            fail("black heights differ at " + node.key + ": " + left + " vs " + right);
+        }
+        return left + (node.color == BLACK ? 1 : 0);
+    }
+
+    /**
+     * select(i)是第i个键值, rank(select(i))是它第一次出现的下标; 随机区间上countRange和两次二分查找的差一致
+     */
+    private static void checkOrderStatistics(RBTree<Integer> tree, List<Integer> expected, Random random,
+                                             int range) {
+        for (int i = 0; i < expected.size(); i++) {
+            Integer key = tree.select(i);
+            assertEquals(expected.get(i), key);
+            int first = lowerBound(expected, key);
+            assertEquals(first, tree.rank(key));
+            assertTrue(first <= i);
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.select(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.select(expected.size()));
+        for (int i = 0; i < 20; i++) {
+            Integer lo = random.nextInt(range + 2) - 1;
+            Integer hi = random.nextInt(range + 2) - 1;
+            assertEquals(lowerBound(expected, lo), tree.rank(lo));
+            int count = Math.max(lowerBound(expected, hi) - lowerBound(expected, lo), 0);
+            assertEquals(count, tree.countRange(lo, hi));
+        }
+    }
+
+    private static int lowerBound(List<Integer> sorted, int key) {
+        int lo = 0;
+        int hi = sorted.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted.get(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    static <T extends Comparable<T>> List<T> keys(RBTree<T> tree) {
+        List<T> keys = new ArrayList<T>();
+        RBTree<T>.RBTNode<T> x = tree.root();
+        while (x != null && x.left != null) {
+            x = x.left;
+        }
+        for (; x != null; x = tree.successor(x)) {
+            keys.add(x.key);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,300 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * RBTreeMap和java.util.TreeMap做同样的随机操作, 结果(返回值或抛出的异常类型)和内容都一致。
+ * 操作随机地作用在整个map或者它的视图上: subMap/headMap/tailMap/descendingMap以及它们的嵌套,
+ * 包括compute系列、merge、导航方法、poll和迭代器删除。
+ */
+public class RBTreeMapTest {
+    private static final int RANGE = 200;
+
+    @Test
+    public void randomOperationsMatchTreeMap() {
+        Random random = new Random(8);
+        for (int round = 0; round < 200; round++) {
+            RBTreeMap<Integer, Integer> actual = new RBTreeMap<Integer, Integer>();
+            TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+            for (int op = 0; op < 300; op++) {
+                long seed = random.nextLong();
+                List<String> aPath = new ArrayList<String>();
+                List<String> ePath = new ArrayList<String>();
+                NavigableMap<Integer, Integer> a = view(actual, new Random(seed), aPath);
+                NavigableMap<Integer, Integer> e = view(expected, new Random(seed), ePath);
+                assertEquals(ePath, aPath);
+                String name = operate(a, e, random);
+                if (!actual.equals(expected) || !expected.equals(actual)) {
+                    throw new AssertionError("round " + round + " op " + op + " (" + name + "): "
+                            + actual + " vs " + expected);
+                }
+                assertEquals(expected.size(), actual.size());
+            }
+            assertEquals(expected.hashCode(), actual.hashCode());
+            assertEquals(expected.toString(), actual.toString());
+            assertEquals(new ArrayList<Integer>(expected.descendingKeySet()),
+                    new ArrayList<Integer>(actual.descendingKeySet()));
+        }
+    }
+
+    @Test
+    public void iteratorFailsFast() {
+        RBTreeMap<Integer, Integer> map = new RBTreeMap<Integer, Integer>();
+        for (int i = 0; i < 10; i++) {
+            map.put(i, i);
+        }
+        Iterator<Integer> it = map.keySet().iterator();
+        it.next();
+        map.put(100, 100);
+        assertThrows(ConcurrentModificationException.class, it::next);
+
+        Iterator<Map.Entry<Integer, Integer>> entries = map.entrySet().iterator();
+        assertThrows(IllegalStateException.class, entries::remove);
+        Map.Entry<Integer, Integer> first = entries.next();
+        first.setValue(42);
+        assertEquals(Integer.valueOf(42), map.get(0));
+        entries.remove();
+        assertThrows(IllegalStateException.class, entries::remove);
+        assertEquals(10, map.size());
+    }
+
+    @Test
+    public void copyConstructor() {
+        TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+        Random random = new Random(80);
+        for (int i = 0; i < 1000; i++) {
+            expected.put(random.nextInt(5000), i);
+        }
+        RBTreeMap<Integer, Integer> actual = new RBTreeMap<Integer, Integer>(expected);
+        assertEquals(expected, actual);
+        assertEquals(expected.firstEntry(), actual.firstEntry());
+        assertEquals(expected.lastEntry(), actual.lastEntry());
+    }
+
+    /**
+     * 随机地取一个视图, 最多嵌套两层。同一个种子对两个map取出的视图相同, 取视图的过程记在path里。
+     */
+    private static NavigableMap<Integer, Integer> view(NavigableMap<Integer, Integer> map, Random random,
+                                                       List<String> path) {
+        for (int depth = random.nextInt(3); depth > 0; depth--) {
+            int lo = random.nextInt(RANGE + 20) - 10;
+            int hi = lo + random.nextInt(RANGE / 2);
+            boolean loInclusive = random.nextBoolean();
+            boolean hiInclusive = random.nextBoolean();
+            int kind = random.nextInt(4);
+            try {
+                switch (kind) {
+                    case 0:
+                        map = map.subMap(lo, loInclusive, hi, hiInclusive);
+                        break;
+                    case 1:
+                        map = map.headMap(hi, hiInclusive);
+                        break;
+                    case 2:
+                        map = map.tailMap(lo, loInclusive);
+                        break;
+                    default:
+                        map = map.descendingMap();
+                        break;
+                }
+                path.add(kind + ":" + lo + "," + hi);
+            } catch (IllegalArgumentException e) {
+                // 嵌套的视图超出外层的范围, 留在外层
+                path.add(kind + ": out of range");
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 对两个map做同一个随机操作并比较结果, 返回操作的名字
+     */
+    private static String operate(NavigableMap<Integer, Integer> a, NavigableMap<Integer, Integer> e,
+                                  Random random) {
+        Integer key = random.nextInt(RANGE + 20) - 10;
+        Integer value = random.nextInt(1000);
+        switch (random.nextInt(24)) {
+            case 0:
+            case 1:
+            case 2:
+                compare("put", m -> m.put(key, value), a, e);
+                return "put";
+            case 3:
+            case 4:
+                compare("remove", m -> m.remove(key), a, e);
+                return "remove";
+            case 5:
+                compare("get", m -> m.get(key), a, e);
+                compare("containsKey", m -> m.containsKey(key), a, e);
+                compare("containsValue", m -> m.containsValue(value), a, e);
+                return "get";
+            case 6:
+                // 返回null时删掉
+                compare("compute", m -> m.compute(key, (k, v) -> v == null ? value : v % 3 == 0 ? null : v + k), a, e);
+                return "compute";
+            case 7:
+                compare("computeIfAbsent", m -> m.computeIfAbsent(key, k -> value % 5 == 0 ? null : value), a, e);
+                return "computeIfAbsent";
+            case 8:
+                compare("computeIfPresent", m -> m.computeIfPresent(key, (k, v) -> v % 2 == 0 ? null : v + 1), a, e);
+                return "computeIfPresent";
+            case 9:
+                compare("merge", m -> m.merge(key, value, (x, y) -> (x + y) % 7 == 0 ? null : x + y), a, e);
+                return "merge";
+            case 10:
+                compare("putIfAbsent", m -> m.putIfAbsent(key, value), a, e);
+                compare("replace", m -> m.replace(key, value + 1), a, e);
+                return "putIfAbsent";
+            case 11:
+                compare("lower", m -> m.lowerEntry(key), a, e);
+                compare("floor", m -> m.floorEntry(key), a, e);
+                compare("ceiling", m -> m.ceilingEntry(key), a, e);
+                compare("higher", m -> m.higherEntry(key), a, e);
+                compare("lowerKey", m -> m.lowerKey(key), a, e);
+                compare("floorKey", m -> m.floorKey(key), a, e);
+                compare("ceilingKey", m -> m.ceilingKey(key), a, e);
+                compare("higherKey", m -> m.higherKey(key), a, e);
+                return "navigate";
+            case 12:
+                compare("firstEntry", NavigableMap::firstEntry, a, e);
+                compare("lastEntry", NavigableMap::lastEntry, a, e);
+                compare("firstKey", NavigableMap::firstKey, a, e);
+                compare("lastKey", NavigableMap::lastKey, a, e);
+                return "ends";
+            case 13:
+                compare("pollFirstEntry", NavigableMap::pollFirstEntry, a, e);
+                return "pollFirst";
+            case 14:
+                compare("pollLastEntry", NavigableMap::pollLastEntry, a, e);
+                return "pollLast";
+            case 15: {
+                // 迭代时删除一部分
+                int modulus = 2 + random.nextInt(3);
+                compare("entryIteratorRemove", m -> removeWhile(m.entrySet().iterator(),
+                        entry -> entry.getKey() % modulus == 0), a, e);
+                return "entryIteratorRemove";
+            }
+            case 16: {
+                int modulus = 2 + random.nextInt(3);
+                compare("keyIteratorRemove", m -> removeWhile(m.navigableKeySet().descendingIterator(),
+                        k -> k % modulus == 1), a, e);
+                return "keyIteratorRemove";
+            }
+            case 17:
+                compare("valuesRemove", m -> m.values().remove(value), a, e);
+                compare("keySetRemove", m -> m.keySet().remove(key), a, e);
+                return "collectionRemove";
+            case 18:
+                compare("entries", m -> new ArrayList<Map.Entry<Integer, Integer>>(m.entrySet()), a, e);
+                compare("values", m -> new ArrayList<Integer>(m.values()), a, e);
+                compare("size", Map::size, a, e);
+                compare("isEmpty", Map::isEmpty, a, e);
+                return "iterate";
+            case 19: {
+                compare("keySetNavigation", m -> {
+                    NavigableSet<Integer> set = m.navigableKeySet();
+                    List<Object> results = new ArrayList<Object>();
+                    results.add(set.lower(key));
+                    results.add(set.ceiling(key));
+                    results.add(set.headSet(key, true).size());
+                    results.add(set.tailSet(key, false).size());
+                    results.add(new ArrayList<Integer>(set.descendingSet()));
+                    return results;
+                }, a, e);
+                return "keySetNavigation";
+            }
+            case 20:
+                compare("replaceAll", m -> {
+                    m.replaceAll((k, v) -> v + k);
+                    return null;
+                }, a, e);
+                return "replaceAll";
+            case 21:
+                compare("entrySetSetValue", m -> {
+                    for (Map.Entry<Integer, Integer> entry : m.entrySet()) {
+                        if (entry.getKey() % 3 == 0) {
+                            entry.setValue(-entry.getValue());
+                        }
+                    }
+                    return null;
+                }, a, e);
+                return "setValue";
+            case 22:
+                compare("headTailSizes", m -> List.of(m.headMap(key).size(), m.tailMap(key).size(),
+                        m.headMap(key, true).size(), m.tailMap(key, false).size()), a, e);
+                return "headTail";
+            default:
+                if (random.nextInt(20) == 0) {
+                    compare("clear", m -> {
+                        m.clear();
+                        return null;
+                    }, a, e);
+                    return "clear";
+                }
+                compare("putAll", m -> {
+                    m.putAll(Map.of(key, value));
+                    return null;
+                }, a, e);
+                return "putAll";
+        }
+    }
+
+    private static <T> int removeWhile(Iterator<T> it, Predicate<T> filter) {
+        int removed = 0;
+        while (it.hasNext()) {
+            if (filter.test(it.next())) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 比较同一个操作在两个map上的结果, 抛出异常时比较异常的类型
+     */
+    private static void compare(String name, Function<NavigableMap<Integer, Integer>, Object> operation,
+                                NavigableMap<Integer, Integer> actual, NavigableMap<Integer, Integer> expected) {
+        Object e = outcome(operation, expected);
+        Object a = outcome(operation, actual);
+        assertEquals(e, a, name);
+    }
+
+    private static Object outcome(Function<NavigableMap<Integer, Integer>, Object> operation,
+                                  NavigableMap<Integer, Integer> map) {
+        try {
+            Object result = operation.apply(map);
+            // 导航方法返回的Entry按键值和值比较
+            if (result instanceof Map.Entry) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) result;
+                return List.of(entry.getKey(), entry.getValue());
+            }
+            if (result instanceof List) {
+                List<Object> copy = new ArrayList<Object>();
+                for (Object o : (List<?>) result) {
+                    copy.add(o instanceof Map.Entry ? List.of(((Map.Entry<?, ?>) o).getKey(),
+                            ((Map.Entry<?, ?>) o).getValue()) : o);
+                }
+                return copy;
+            }
+            return result;
+        } catch (RuntimeException ex) {
+            return ex.getClass();
+        }
+    }
+}
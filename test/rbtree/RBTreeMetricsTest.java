@@ -0,0 +1,165 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * RBTreeMetrics的计数: 操作次数、旋转和修正次数、深度直方图; 比较次数是真正调用compareTo的次数,
+ * 走快速路径插入时和下降深度不同。
+ */
+public class RBTreeMetricsTest {
+    @Test
+    public void countsOperationsAcrossSharedTrees() {
+        RBTreeMetrics metrics = new RBTreeMetrics();
+        RBTree<Integer> a = new RBTree<Integer>();
+        RBTree<Integer> b = new RBTree<Integer>();
+        a.setMetrics(metrics);
+        b.setMetrics(metrics);
+        Random random = new Random(13);
+        int inserts = 0, removes = 0, searches = 0;
+        for (int i = 0; i < 20000; i++) {
+            RBTree<Integer> tree = random.nextBoolean() ? a : b;
+            int key = random.nextInt(5000);
+            int op = random.nextInt(3);
+            if (op == 0) {
+                tree.insert(key);
+                inserts++;
+            } else if (op == 1) {
+                tree.remove(key);
+                removes++;
+            } else {
+                tree.contains(key);
+                searches++;
+            }
+        }
+        RBTreeInvariantTest.checkInvariants(a);
+        RBTreeInvariantTest.checkInvariants(b);
+
+        assertEquals(inserts, metrics.inserts());
+        assertEquals(removes, metrics.removes());
+        assertEquals(searches, metrics.searches());
+        long operations = 0;
+        for (long count : metrics.depthHistogram()) {
+            operations += count;
+        }
+        assertEquals(inserts + removes + searches, operations);
+        assertTrue(metrics.maxDepth() <= Math.max(a.height(), b.height()) + 1);
+        assertTrue(metrics.rotations() > 0);
+        assertTrue(metrics.insertFixupIterations() > 0);
+        assertTrue(metrics.deleteFixupIterations() > 0);
+        assertTrue(metrics.recolors() > 0);
+
+        metrics.reset();
+        assertEquals(0, metrics.inserts() + metrics.removes() + metrics.searches() + metrics.compares()
+                + metrics.rotations() + metrics.recolors() + metrics.maxDepth());
+    }
+
+    @Test
+    public void singleRotation() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        RBTreeMetrics metrics = new RBTreeMetrics();
+        tree.setMetrics(metrics);
+        tree.insert(1);
+        tree.insert(2);
+        assertEquals(0, metrics.rotations());
+        tree.insert(3); // 1-2-3连成一条右链, 以1为轴左旋一次
+        assertEquals(1, metrics.rotations());
+        assertEquals(0, metrics.recolors());
+    }
+
+    @Test
+    public void disabledRecordsNothing() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        RBTreeMetrics metrics = new RBTreeMetrics();
+        tree.setMetrics(metrics);
+        tree.insert(1);
+        tree.setMetrics(null);
+        for (int i = 2; i < 100; i++) {
+            tree.insert(i);
+            tree.remove(i - 1);
+        }
+        assertEquals(1, metrics.inserts());
+        assertEquals(0, metrics.removes());
+    }
+    /**
+     * 不开启统计时插入和查找都不写比较计数
+     */
+    @Test
+    public void disabledDoesNotCount() throws Exception {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        tree.setFingerSearch(true);
+        for (int i = 0; i < 1000; i++) {
+            tree.insert((i * 7919) % 1000);
+            tree.insert(i);
+            tree.contains(i / 2);
+        }
+        Field field = RBTree.class.getDeclaredField("mOpCompares");
+        field.setAccessible(true);
+        assertEquals(0, field.getInt(tree));
+    }
+
+    @Test
+    public void appendCountsOneCompareEach() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        RBTreeMetrics metrics = new RBTreeMetrics();
+        tree.setMetrics(metrics);
+        for (int i = 0; i < 1000; i++) {
+            tree.insert(i);
+        }
+        // 第一个插入空树, 之后每个只和最大值比一次
+        assertEquals(1000, metrics.inserts());
+        assertEquals(999, metrics.compares());
+        assertTrue(metrics.maxDepth() > 1);
+    }
+
+    @Test
+    public void prependCountsTwoComparesEach() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        RBTreeMetrics metrics = new RBTreeMetrics();
+        tree.setMetrics(metrics);
+        for (int i = 999; i >= 0; i--) {
+            tree.insert(i);
+        }
+        assertEquals(2 * 999, metrics.compares());
+    }
+
+    @Test
+    public void fingerInsertCountsGapCompares() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        for (int i = 0; i < 2000; i += 2) {
+            tree.insert(i);
+        }
+        tree.setFingerSearch(true);
+        tree.search(500);
+        RBTreeMetrics metrics = new RBTreeMetrics();
+        tree.setMetrics(metrics);
+
+        tree.insert(501);
+        // 两端各一次, finger(500)和它的后继(502)各一次, 最后和500比一次决定是否重复
+        assertEquals(5, metrics.compares());
+        assertTrue(metrics.maxDepth() >= 5);
+    }
+
+    @Test
+    public void rootDescentComparesEqualDepth() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        for (int i = 0; i < 2000; i += 2) {
+            tree.insert(i);
+        }
+        RBTreeMetrics metrics = new RBTreeMetrics();
+        tree.setMetrics(metrics);
+
+        tree.insert(1001);
+        // 两端各比一次没走成快速路径, 然后从根往下每层一次
+        assertEquals(2 + metrics.maxDepth(), metrics.compares());
+
+        metrics.reset();
+        tree.search(1001);
+        assertEquals(metrics.maxDepth(), metrics.compares());
+    }
+}
@@ -0,0 +1,106 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 并、交、差和TreeSet的结果对照, 结果满足红黑树的性质。大的一组超过PARALLEL_THRESHOLD, 走并行的分治。
+ */
+public class SetOperationTest {
+    @Test
+    public void smallSets() {
+        Random random = new Random(17);
+        for (int round = 0; round < 300; round++) {
+            int range = 1 + random.nextInt(500);
+            check(randomSet(random, random.nextInt(200), range), randomSet(random, random.nextInt(200), range));
+        }
+    }
+
+    @Test
+    public void largeSetsInParallel() {
+        Random random = new Random(71);
+        check(randomSet(random, 30000, 100000), randomSet(random, 20000, 100000));
+        // 一大一小
+        check(randomSet(random, 50000, 100000), randomSet(random, 10, 100000));
+    }
+
+    @Test
+    public void inPlaceEmptiesArgument() {
+        TreeSet<Integer> a = new TreeSet<Integer>(List.of(1, 3, 5, 7));
+        TreeSet<Integer> b = new TreeSet<Integer>(List.of(3, 4, 5));
+
+        RBTree<Integer> tree = RBTree.buildFromSorted(a);
+        RBTree<Integer> other = RBTree.buildFromSorted(b);
+        tree.unionWith(other);
+        assertEquals(List.of(1, 3, 4, 5, 7), RBTreeInvariantTest.keys(tree));
+        assertTrue(other.isEmpty());
+
+        tree = RBTree.buildFromSorted(a);
+        tree.intersectWith(RBTree.buildFromSorted(b));
+        assertEquals(List.of(3, 5), RBTreeInvariantTest.keys(tree));
+        assertEquals(Integer.valueOf(3), tree.minimum());
+        assertEquals(Integer.valueOf(5), tree.maximum());
+
+        tree = RBTree.buildFromSorted(a);
+        tree.subtract(RBTree.buildFromSorted(b));
+        assertEquals(List.of(1, 7), RBTreeInvariantTest.keys(tree));
+        tree.subtract(tree);
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        RBTree<Integer> tree = RBTree.buildFromSorted(randomSet(new Random(7), 1000, 5000));
+        RBTree<Integer> copy = tree.copy();
+        RBTreeInvariantTest.checkInvariants(copy);
+        assertEquals(RBTreeInvariantTest.keys(tree), RBTreeInvariantTest.keys(copy));
+        assertEquals(tree.height(), copy.height());
+        List<Integer> before = RBTreeInvariantTest.keys(tree);
+        copy.insert(-1);
+        copy.remove(copy.maximum());
+        assertEquals(before, RBTreeInvariantTest.keys(tree));
+        RBTreeInvariantTest.checkInvariants(tree);
+    }
+
+    private static void check(TreeSet<Integer> a, TreeSet<Integer> b) {
+        RBTree<Integer> ta = RBTree.buildFromSorted(a);
+        RBTree<Integer> tb = RBTree.buildFromSorted(b);
+
+        TreeSet<Integer> union = new TreeSet<Integer>(a);
+        union.addAll(b);
+        TreeSet<Integer> intersection = new TreeSet<Integer>(a);
+        intersection.retainAll(b);
+        TreeSet<Integer> difference = new TreeSet<Integer>(a);
+        difference.removeAll(b);
+
+        checkResult(union, RBTree.union(ta, tb));
+        checkResult(intersection, RBTree.intersection(ta, tb));
+        checkResult(difference, RBTree.difference(ta, tb));
+        // 返回新树的版本不改变输入
+        assertEquals(new ArrayList<Integer>(a), RBTreeInvariantTest.keys(ta));
+        assertEquals(new ArrayList<Integer>(b), RBTreeInvariantTest.keys(tb));
+    }
+
+    private static void checkResult(TreeSet<Integer> expected, RBTree<Integer> actual) {
+        RBTreeInvariantTest.checkInvariants(actual);
+        assertEquals(new ArrayList<Integer>(expected), RBTreeInvariantTest.keys(actual));
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.isEmpty() ? null : expected.first(), actual.minimum());
+        assertEquals(expected.isEmpty() ? null : expected.last(), actual.maximum());
+    }
+
+    private static TreeSet<Integer> randomSet(Random random, int n, int range) {
+        TreeSet<Integer> set = new TreeSet<Integer>();
+        for (int i = 0; i < n; i++) {
+            set.add(random.nextInt(range));
+        }
+        return set;
+    }
+}
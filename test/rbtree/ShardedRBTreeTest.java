@@ -0,0 +1,228 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ShardedRBTree和有序列表模型对照: 顺序插入和倾斜插入触发的重新划分、跨越边界的重复键值、
+ * 区间读取, 以及多线程插入删除和重新划分同时进行。
+ */
+public class ShardedRBTreeTest {
+
+    @Test
+    public void sequentialInsertsSplitShards() {
+        ShardedRBTree<Integer> tree = new ShardedRBTree<>(8);
+        List<Integer> model = new ArrayList<>();
+        for (int i = 0; i < 1024; i++) {
+            tree.insert(i);
+            model.add(i);
+        }
+        // 还没有超过MIN_SHARD_THRESHOLD
+        assertEquals(1, tree.shardCount());
+        tree.insert(1024);
+        model.add(1024);
+        assertEquals(8, tree.shardCount());
+        checkBounds(tree);
+
+        for (int i = 1025; i < 20000; i++) {
+            tree.insert(i);
+            model.add(i);
+        }
+        // 一直插在最后一个分片上, 每次超过阈值都会重新划分
+        assertEquals(8, tree.shardCount());
+        checkBounds(tree);
+        List<Integer> bounds = tree.shardBounds();
+        assertTrue(bounds.get(bounds.size() - 1) > 10000, bounds.toString());
+        check(tree, model, new Random(11));
+    }
+
+    @Test
+    public void skewedInsertsRebalance() {
+        Random random = new Random(11);
+        ShardedRBTree<Integer> tree = new ShardedRBTree<>(16);
+        List<Integer> model = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            add(tree, model, random.nextInt(1000000));
+        }
+        assertEquals(16, tree.shardCount());
+        List<Integer> before = tree.shardBounds();
+        // 全部插到最小的那个分片里
+        for (int i = 0; i < 5000; i++) {
+            add(tree, model, random.nextInt(before.get(0)));
+        }
+        List<Integer> after = tree.shardBounds();
+        assertFalse(before.equals(after));
+        assertTrue(after.get(0) < before.get(0), after.toString());
+        checkBounds(tree);
+        check(tree, model, random);
+
+        for (int i = 0; i < 3000; i++) {
+            Integer key = model.get(random.nextInt(model.size()));
+            tree.remove(key);
+            model.remove(key);
+        }
+        tree.rebalance();
+        checkBounds(tree);
+        check(tree, model, random);
+    }
+
+    @Test
+    public void duplicatesStayInOneShard() {
+        ShardedRBTree<Integer> tree = new ShardedRBTree<>(4);
+        List<Integer> model = new ArrayList<>();
+        // 键值7占了一大半, 按个数等分的切点一定落在它的中间
+        for (int i = 0; i < 500; i++) {
+            add(tree, model, i % 7);
+            add(tree, model, 8 + i % 7);
+        }
+        for (int i = 0; i < 3000; i++) {
+            add(tree, model, 7);
+        }
+        tree.rebalance();
+        checkBounds(tree);
+        assertTrue(tree.shardBounds().contains(7), tree.shardBounds().toString());
+        assertEquals(Collections.nCopies(3000, 7), tree.range(7, 8));
+        check(tree, model, new Random(7));
+
+        for (int i = 0; i < 3000; i++) {
+            assertTrue(tree.contains(7));
+            tree.remove(7);
+            model.remove(Integer.valueOf(7));
+        }
+        assertFalse(tree.contains(7));
+        assertTrue(tree.range(7, 8).isEmpty());
+        check(tree, model, new Random(7));
+
+        tree.clear();
+        assertTrue(tree.isEmpty());
+        assertNull(tree.minimum());
+        assertNull(tree.maximum());
+        assertTrue(tree.range(null, null).isEmpty());
+    }
+
+    /**
+     * 每个线程只操作自己的键值(key % threads == 线程号), 最后合起来和各自的模型比较。
+     * 另一个线程不停地调用rebalance, 让写操作经常碰到布局被替换。
+     */
+    @Test
+    public void concurrentInsertRemoveRebalance() throws InterruptedException {
+        final int threads = 4;
+        final ShardedRBTree<Integer> tree = new ShardedRBTree<>(8);
+        final List<List<Integer>> models = new ArrayList<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            final List<Integer> model = new ArrayList<>();
+            models.add(model);
+            Thread writer = new Thread(() -> {
+                try {
+                    Random random = new Random(id);
+                    for (int op = 0; op < 20000; op++) {
+                        Integer key = random.nextInt(5000) * threads + id;
+                        if (random.nextInt(3) > 0) {
+                            tree.insert(key);
+                            model.add(key);
+                        } else {
+                            tree.remove(key);
+                            model.remove(key);
+                        }
+                        assertEquals(model.contains(key), tree.contains(key));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        Thread rebalancer = new Thread(() -> {
+            try {
+                while (writers.stream().anyMatch(Thread::isAlive)) {
+                    tree.rebalance();
+                    List<Integer> keys = tree.range(null, null);
+                    for (int i = 1; i < keys.size(); i++) {
+                        assertTrue(keys.get(i - 1) <= keys.get(i));
+                    }
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        rebalancer.start();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        rebalancer.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        List<Integer> model = new ArrayList<>();
+        for (List<Integer> keys : models) {
+            model.addAll(keys);
+        }
+        Collections.sort(model);
+        checkBounds(tree);
+        check(tree, model, new Random(4));
+    }
+
+    private static void add(ShardedRBTree<Integer> tree, List<Integer> model, Integer key) {
+        tree.insert(key);
+        int index = Collections.binarySearch(model, key);
+        model.add(index < 0 ? -index - 1 : index, key);
+    }
+
+    private static void checkBounds(ShardedRBTree<Integer> tree) {
+        List<Integer> bounds = tree.shardBounds();
+        assertEquals(tree.shardCount() - 1, bounds.size());
+        for (int i = 1; i < bounds.size(); i++) {
+            assertTrue(bounds.get(i - 1) <= bounds.get(i), bounds.toString());
+        }
+    }
+
+    private static void check(ShardedRBTree<Integer> tree, List<Integer> model, Random random) {
+        assertEquals(model.size(), tree.size());
+        assertEquals(model.isEmpty(), tree.isEmpty());
+        assertEquals(model, tree.range(null, null));
+        if (!model.isEmpty()) {
+            assertEquals(model.get(0), tree.minimum());
+            assertEquals(model.get(model.size() - 1), tree.maximum());
+        }
+        int max = model.isEmpty() ? 100 : model.get(model.size() - 1) + 10;
+        for (int i = 0; i < 50; i++) {
+            Integer lo = random.nextInt(max + 10) - 10;
+            Integer hi = lo + random.nextInt(max / 4 + 1);
+            int from = lowerBound(model, lo);
+            int to = lowerBound(model, hi);
+            assertEquals(model.subList(from, to), tree.range(lo, hi));
+            assertEquals(model.subList(from, model.size()), tree.range(lo, null));
+            assertEquals(model.subList(0, to), tree.range(null, hi));
+            assertEquals(Collections.binarySearch(model, lo) >= 0, tree.contains(lo));
+        }
+    }
+
+    private static int lowerBound(List<Integer> sorted, int key) {
+        int lo = 0;
+        int hi = sorted.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted.get(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
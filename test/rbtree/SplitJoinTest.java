@@ -0,0 +1,90 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * split/join之后的红黑树性质和键值, 以及join的参数不合法时两棵树保持不变。
+ */
+public class SplitJoinTest {
+
+    @Test
+    public void splitThenJoinRestoresKeys() {
+        Random random = new Random(16);
+        for (int round = 0; round < 200; round++) {
+            List<Integer> keys = randomKeys(random, random.nextInt(300), 100);
+            RBTree<Integer> tree = RBTree.buildFromSorted(keys);
+            Integer at = random.nextInt(110) - 5;
+
+            RBTree<Integer> high = tree.split(at);
+            RBTreeInvariantTest.checkInvariants(tree);
+            RBTreeInvariantTest.checkInvariants(high);
+            int cut = lowerBound(keys, at);
+            assertEquals(keys.subList(0, cut), RBTreeInvariantTest.keys(tree));
+            assertEquals(keys.subList(cut, keys.size()), RBTreeInvariantTest.keys(high));
+
+            RBTree<Integer> joined = RBTree.join(tree, high);
+            RBTreeInvariantTest.checkInvariants(joined);
+            assertEquals(keys, RBTreeInvariantTest.keys(joined));
+            assertEquals(keys.size(), joined.size());
+            assertEquals(0, tree.size());
+            assertEquals(0, high.size());
+        }
+    }
+
+    @Test
+    public void joinWithKeyKeepsInvariants() {
+        Random random = new Random(17);
+        for (int round = 0; round < 200; round++) {
+            List<Integer> low = randomKeys(random, random.nextInt(200), 50);
+            List<Integer> high = new ArrayList<Integer>();
+            for (Integer k : randomKeys(random, random.nextInt(200), 50)) {
+                high.add(k + 50);
+            }
+            RBTree<Integer> joined = RBTree.join(RBTree.buildFromSorted(low), 50, RBTree.buildFromSorted(high));
+            RBTreeInvariantTest.checkInvariants(joined);
+            List<Integer> expected = new ArrayList<Integer>(low);
+            expected.add(50);
+            expected.addAll(high);
+            assertEquals(expected, RBTreeInvariantTest.keys(joined));
+        }
+    }
+
+    @Test
+    public void overlappingJoinLeavesTreesUnchanged() {
+        RBTree<Integer> left = RBTree.buildFromSorted(new Integer[] {1, 5, 9});
+        RBTree<Integer> right = RBTree.buildFromSorted(new Integer[] {3, 10, 11});
+        assertThrows(IllegalArgumentException.class, () -> RBTree.join(left, right));
+        assertEquals(Arrays.asList(1, 5, 9), RBTreeInvariantTest.keys(left));
+        assertEquals(Arrays.asList(3, 10, 11), RBTreeInvariantTest.keys(right));
+
+        assertThrows(IllegalArgumentException.class, () -> RBTree.join(left, 7, right));
+        assertEquals(Arrays.asList(1, 5, 9), RBTreeInvariantTest.keys(left));
+        assertEquals(Arrays.asList(3, 10, 11), RBTreeInvariantTest.keys(right));
+    }
+
+    static List<Integer> randomKeys(Random random, int n, int range) {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            keys.add(random.nextInt(range));
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private static int lowerBound(List<Integer> keys, Integer key) {
+        int i = 0;
+        while (i < keys.size() && keys.get(i) < key) {
+            i++;
+        }
+        return i;
+    }
+}
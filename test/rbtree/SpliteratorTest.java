@@ -0,0 +1,111 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Spliterator按子树大小精确拆分, 顺序流、并行流、reduce和forEachParallel都看到全部键值。
+ * 树的大小超过PARALLEL_THRESHOLD, 保证fork-join真的拆分了任务。
+ */
+public class SpliteratorTest {
+    private static final int N = 50000;
+
+    private static RBTree<Integer> tree(int n) {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        for (int i = 0; i < n; i++) {
+            tree.insert((i * 7919) % n); // 0..n-1的一个排列
+        }
+        return tree;
+    }
+
+    @Test
+    public void streams() {
+        RBTree<Integer> tree = tree(N);
+        List<Integer> sequential = tree.stream().collect(Collectors.toList());
+        assertEquals(RBTreeInvariantTest.keys(tree), sequential);
+        // 并行流按ORDERED合并, 顺序不变
+        assertEquals(sequential, tree.parallelStream().collect(Collectors.toList()));
+        assertEquals((long) N * (N - 1) / 2, tree.parallelStream().mapToLong(Integer::longValue).sum());
+        assertEquals(0, new RBTree<Integer>().stream().count());
+    }
+
+    @Test
+    public void splitsExactly() {
+        RBTree<Integer> tree = tree(1000);
+        Spliterator<Integer> right = tree.spliterator();
+        assertTrue(right.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED));
+        assertTrue(right.hasCharacteristics(Spliterator.DISTINCT));
+
+        Spliterator<Integer> left = right.trySplit();
+        assertNotNull(left);
+        assertEquals(500, left.estimateSize());
+        assertEquals(500, right.estimateSize());
+        List<Integer> keys = new ArrayList<Integer>();
+        assertTrue(left.tryAdvance(keys::add));
+        left.forEachRemaining(keys::add);
+        right.forEachRemaining(keys::add);
+        assertEquals(RBTreeInvariantTest.keys(tree), keys);
+        assertFalse(right.tryAdvance(keys::add));
+
+        // 一直拆到只剩一个
+        Spliterator<Integer> s = tree.spliterator();
+        while (s.estimateSize() > 1) {
+            assertNotNull(s.trySplit());
+        }
+        assertNull(s.trySplit());
+
+        tree.insert(0);
+        assertFalse(tree.spliterator().hasCharacteristics(Spliterator.DISTINCT));
+    }
+
+    @Test
+    public void modificationIsDetected() {
+        RBTree<Integer> tree = tree(100);
+        Spliterator<Integer> s = tree.spliterator();
+        assertTrue(s.tryAdvance(key -> { }));
+        tree.insert(1000);
+        assertThrows(ConcurrentModificationException.class, () -> s.tryAdvance(key -> { }));
+    }
+
+    @Test
+    public void reduce() {
+        RBTree<Integer> tree = tree(N);
+        long sum = tree.reduce(0L, (acc, key) -> acc + key, Long::sum);
+        assertEquals((long) N * (N - 1) / 2, sum);
+
+        // combiner只满足结合律、不满足交换律时, 结果仍按中序
+        String concatenated = tree(5000).reduce("", (acc, key) -> acc + key + ",", String::concat);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            expected.append(i).append(',');
+        }
+        assertEquals(expected.toString(), concatenated);
+        assertEquals("empty", new RBTree<Integer>().reduce("empty", (acc, key) -> acc + key, String::concat));
+    }
+
+    @Test
+    public void forEachParallel() {
+        RBTree<Integer> tree = tree(N);
+        LongAdder count = new LongAdder();
+        LongAdder sum = new LongAdder();
+        tree.forEachParallel(key -> {
+            count.increment();
+            sum.add(key);
+        });
+        assertEquals(N, count.sum());
+        assertEquals((long) N * (N - 1) / 2, sum.sum());
+    }
+}
@@ -0,0 +1,110 @@
+package rbtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 沿父亲指针走的前序、中序、后序遍历和递归遍历的结果一致, visitor返回false时提前结束。
+ */
+public class TraversalTest {
+    @Test
+    public void matchesRecursiveTraversals() {
+        Random random = new Random(14);
+        for (int n = 0; n < 300; n++) {
+            RBTree<Integer> tree = new RBTree<Integer>();
+            for (int i = 0; i < n; i++) {
+                tree.insert(random.nextInt(100));
+            }
+            for (int i = random.nextInt(n + 1); i > 0; i--) {
+                tree.remove(random.nextInt(100));
+            }
+            List<Integer> pre = new ArrayList<Integer>();
+            List<Integer> mid = new ArrayList<Integer>();
+            List<Integer> post = new ArrayList<Integer>();
+            walk(tree.root(), pre, mid, post);
+
+            assertEquals(pre, collect(tree, 0));
+            assertEquals(mid, collect(tree, 1));
+            assertEquals(post, collect(tree, 2));
+            List<Integer> each = new ArrayList<Integer>();
+            tree.forEach(each::add);
+            assertEquals(mid, each);
+        }
+    }
+
+    @Test
+    public void visitorStopsEarly() {
+        RBTree<Integer> tree = new RBTree<Integer>();
+        for (int i = 0; i < 100; i++) {
+            tree.insert(i);
+        }
+        for (int order = 0; order < 3; order++) {
+            final List<Integer> seen = new ArrayList<Integer>();
+            RBTree.Visitor<Integer> visitor = key -> {
+                seen.add(key);
+                return seen.size() < 10;
+            };
+            boolean completed = order == 0 ? tree.preOrder(visitor)
+                    : order == 1 ? tree.midOrder(visitor) : tree.postOrder(visitor);
+            assertFalse(completed);
+            assertEquals(10, seen.size());
+        }
+        assertTrue(tree.midOrder(key -> true));
+        assertTrue(new RBTree<Integer>().preOrder(key -> false));
+    }
+
+    @Test
+    public void primitiveTrees() {
+        Random random = new Random(41);
+        IntRBTree ints = new IntRBTree();
+        LongRBTree longs = new LongRBTree();
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            int key = random.nextInt();
+            ints.insert(key);
+            longs.insert((long) key << 16);
+            expected.add(key);
+        }
+        Collections.sort(expected);
+
+        List<Integer> intKeys = new ArrayList<Integer>();
+        ints.forEach(intKeys::add);
+        assertEquals(expected, intKeys);
+        List<Long> longKeys = new ArrayList<Long>();
+        longs.forEach(longKeys::add);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals((long) expected.get(i) << 16, (long) longKeys.get(i));
+        }
+
+        final int[] count = {0};
+        assertFalse(ints.midOrder(key -> ++count[0] < 5));
+        assertEquals(5, count[0]);
+    }
+
+    private static List<Integer> collect(RBTree<Integer> tree, int order) {
+        List<Integer> keys = new ArrayList<Integer>();
+        RBTree.Visitor<Integer> visitor = key -> keys.add(key);
+        assertTrue(order == 0 ? tree.preOrder(visitor) : order == 1 ? tree.midOrder(visitor) : tree.postOrder(visitor));
+        return keys;
+    }
+
+    private static void walk(RBTree<Integer>.RBTNode<Integer> node, List<Integer> pre, List<Integer> mid,
+                             List<Integer> post) {
+        if (node == null) {
+            return;
+        }
+        pre.add(node.key);
+        walk(node.left, pre, mid, post);
+        mid.add(node.key);
+        walk(node.right, pre, mid, post);
+        post.add(node.key);
+    }
+}